@@ -77,6 +77,23 @@ public class Configurator {
 	public static int staticFrustumPadding = DEFAULTS.staticFrustumPadding;
 	public static int dynamicFrustumPadding = DEFAULTS.dynamicFrustumPadding;
 	public static boolean cullParticles = DEFAULTS.cullParticles;
+	public static int terrainUploadBudgetMillis = DEFAULTS.terrainUploadBudgetMillis;
+	public static int terrainUploadBudgetMegabytes = DEFAULTS.terrainUploadBudgetMegabytes;
+	public static boolean enableMeshCache = DEFAULTS.enableMeshCache;
+	public static int meshCacheMegabytes = DEFAULTS.meshCacheMegabytes;
+	public static boolean greedyMeshing = DEFAULTS.greedyMeshing;
+	public static int lodDetailDistance = DEFAULTS.lodDetailDistance;
+	public static int lodLeavesDistance = DEFAULTS.lodLeavesDistance;
+	public static boolean enableRelight = DEFAULTS.enableRelight;
+	public static boolean reuseOcclusionRaster = DEFAULTS.reuseOcclusionRaster;
+	public static boolean parallelOcclusionRaster = DEFAULTS.parallelOcclusionRaster;
+	public static boolean mergeOccluders = DEFAULTS.mergeOccluders;
+	public static boolean faceConnectivityCulling = DEFAULTS.faceConnectivityCulling;
+	public static boolean cullBlockEntities = DEFAULTS.cullBlockEntities;
+	public static boolean compactTerrainVertices = DEFAULTS.compactTerrainVertices;
+	public static boolean terrainBufferArenas = DEFAULTS.terrainBufferArenas;
+	public static boolean multiDrawTerrain = DEFAULTS.multiDrawTerrain;
+	public static boolean terrainFaceBuckets = DEFAULTS.terrainFaceBuckets;
 	public static boolean shaderDebug = DEFAULTS.shaderDebug;
 	public static boolean lightmapDebug = DEFAULTS.lightmapDebug;
 	public static boolean conciseErrors = DEFAULTS.conciseErrors;
@@ -181,6 +198,23 @@ public class Configurator {
 		dynamicFrustumPadding = MathHelper.clamp(config.dynamicFrustumPadding, 0, 20);
 		staticFrustumPadding = MathHelper.clamp(config.staticFrustumPadding, 0, 30);
 		cullParticles = config.cullParticles;
+		terrainUploadBudgetMillis = MathHelper.clamp(config.terrainUploadBudgetMillis, 1, 20);
+		terrainUploadBudgetMegabytes = MathHelper.clamp(config.terrainUploadBudgetMegabytes, 1, 64);
+		enableMeshCache = config.enableMeshCache;
+		meshCacheMegabytes = MathHelper.clamp(config.meshCacheMegabytes, 32, 1024);
+		greedyMeshing = config.greedyMeshing;
+		lodDetailDistance = MathHelper.clamp(config.lodDetailDistance, 0, 64);
+		lodLeavesDistance = MathHelper.clamp(config.lodLeavesDistance, 0, 64);
+		enableRelight = config.enableRelight;
+		reuseOcclusionRaster = config.reuseOcclusionRaster;
+		parallelOcclusionRaster = config.parallelOcclusionRaster;
+		mergeOccluders = config.mergeOccluders;
+		faceConnectivityCulling = config.faceConnectivityCulling;
+		cullBlockEntities = config.cullBlockEntities;
+		compactTerrainVertices = config.compactTerrainVertices;
+		terrainBufferArenas = config.terrainBufferArenas;
+		multiDrawTerrain = config.multiDrawTerrain;
+		terrainFaceBuckets = config.terrainFaceBuckets;
 
 		lightmapDebug = config.lightmapDebug;
 		conciseErrors = config.conciseErrors;
@@ -237,6 +271,23 @@ public class Configurator {
 		config.staticFrustumPadding = staticFrustumPadding;
 		config.dynamicFrustumPadding = dynamicFrustumPadding;
 		config.cullParticles = cullParticles;
+		config.terrainUploadBudgetMillis = terrainUploadBudgetMillis;
+		config.terrainUploadBudgetMegabytes = terrainUploadBudgetMegabytes;
+		config.enableMeshCache = enableMeshCache;
+		config.meshCacheMegabytes = meshCacheMegabytes;
+		config.greedyMeshing = greedyMeshing;
+		config.lodDetailDistance = lodDetailDistance;
+		config.lodLeavesDistance = lodLeavesDistance;
+		config.enableRelight = enableRelight;
+		config.reuseOcclusionRaster = reuseOcclusionRaster;
+		config.parallelOcclusionRaster = parallelOcclusionRaster;
+		config.mergeOccluders = mergeOccluders;
+		config.faceConnectivityCulling = faceConnectivityCulling;
+		config.cullBlockEntities = cullBlockEntities;
+		config.compactTerrainVertices = compactTerrainVertices;
+		config.terrainBufferArenas = terrainBufferArenas;
+		config.multiDrawTerrain = multiDrawTerrain;
+		config.terrainFaceBuckets = terrainFaceBuckets;
 
 		config.lightmapDebug = lightmapDebug;
 		config.conciseErrors = conciseErrors;
@@ -589,6 +640,165 @@ public class Configurator {
 				})
 				.build());
 
+		tweaks.addEntry(ENTRY_BUILDER
+				.startIntSlider(new TranslatableText("config.canvas.value.terrain_upload_budget_ms"), terrainUploadBudgetMillis, 1, 20)
+				.setDefaultValue(DEFAULTS.terrainUploadBudgetMillis)
+				.setTooltip(parse("config.canvas.help.terrain_upload_budget_ms"))
+				.setSaveConsumer(b -> {
+					terrainUploadBudgetMillis = b;
+				})
+				.build());
+
+		tweaks.addEntry(ENTRY_BUILDER
+				.startIntSlider(new TranslatableText("config.canvas.value.terrain_upload_budget_mb"), terrainUploadBudgetMegabytes, 1, 64)
+				.setDefaultValue(DEFAULTS.terrainUploadBudgetMegabytes)
+				.setTooltip(parse("config.canvas.help.terrain_upload_budget_mb"))
+				.setSaveConsumer(b -> {
+					terrainUploadBudgetMegabytes = b;
+				})
+				.build());
+
+		tweaks.addEntry(ENTRY_BUILDER
+				.startBooleanToggle(new TranslatableText("config.canvas.value.enable_mesh_cache"), enableMeshCache)
+				.setDefaultValue(DEFAULTS.enableMeshCache)
+				.setTooltip(parse("config.canvas.help.enable_mesh_cache"))
+				.setSaveConsumer(b -> {
+					reload |= enableMeshCache != b;
+					enableMeshCache = b;
+				})
+				.build());
+
+		tweaks.addEntry(ENTRY_BUILDER
+				.startIntSlider(new TranslatableText("config.canvas.value.mesh_cache_mb"), meshCacheMegabytes, 32, 1024)
+				.setDefaultValue(DEFAULTS.meshCacheMegabytes)
+				.setTooltip(parse("config.canvas.help.mesh_cache_mb"))
+				.setSaveConsumer(b -> {
+					reload |= meshCacheMegabytes != b;
+					meshCacheMegabytes = b;
+				})
+				.build());
+
+		tweaks.addEntry(ENTRY_BUILDER
+				.startBooleanToggle(new TranslatableText("config.canvas.value.greedy_meshing"), greedyMeshing)
+				.setDefaultValue(DEFAULTS.greedyMeshing)
+				.setTooltip(parse("config.canvas.help.greedy_meshing"))
+				.setSaveConsumer(b -> {
+					reload |= greedyMeshing != b;
+					greedyMeshing = b;
+				})
+				.build());
+
+		tweaks.addEntry(ENTRY_BUILDER
+				.startIntSlider(new TranslatableText("config.canvas.value.lod_detail_distance"), lodDetailDistance, 0, 64)
+				.setDefaultValue(DEFAULTS.lodDetailDistance)
+				.setTooltip(parse("config.canvas.help.lod_detail_distance"))
+				.setSaveConsumer(b -> {
+					reload |= lodDetailDistance != b;
+					lodDetailDistance = b;
+				})
+				.build());
+
+		tweaks.addEntry(ENTRY_BUILDER
+				.startIntSlider(new TranslatableText("config.canvas.value.lod_leaves_distance"), lodLeavesDistance, 0, 64)
+				.setDefaultValue(DEFAULTS.lodLeavesDistance)
+				.setTooltip(parse("config.canvas.help.lod_leaves_distance"))
+				.setSaveConsumer(b -> {
+					reload |= lodLeavesDistance != b;
+					lodLeavesDistance = b;
+				})
+				.build());
+
+		tweaks.addEntry(ENTRY_BUILDER
+				.startBooleanToggle(new TranslatableText("config.canvas.value.relight"), enableRelight)
+				.setDefaultValue(DEFAULTS.enableRelight)
+				.setTooltip(parse("config.canvas.help.relight"))
+				.setSaveConsumer(b -> {
+					enableRelight = b;
+				})
+				.build());
+
+		tweaks.addEntry(ENTRY_BUILDER
+				.startBooleanToggle(new TranslatableText("config.canvas.value.reuse_occlusion_raster"), reuseOcclusionRaster)
+				.setDefaultValue(DEFAULTS.reuseOcclusionRaster)
+				.setTooltip(parse("config.canvas.help.reuse_occlusion_raster"))
+				.setSaveConsumer(b -> {
+					reuseOcclusionRaster = b;
+				})
+				.build());
+
+		tweaks.addEntry(ENTRY_BUILDER
+				.startBooleanToggle(new TranslatableText("config.canvas.value.parallel_occlusion_raster"), parallelOcclusionRaster)
+				.setDefaultValue(DEFAULTS.parallelOcclusionRaster)
+				.setTooltip(parse("config.canvas.help.parallel_occlusion_raster"))
+				.setSaveConsumer(b -> {
+					parallelOcclusionRaster = b;
+				})
+				.build());
+
+		tweaks.addEntry(ENTRY_BUILDER
+				.startBooleanToggle(new TranslatableText("config.canvas.value.merge_occluders"), mergeOccluders)
+				.setDefaultValue(DEFAULTS.mergeOccluders)
+				.setTooltip(parse("config.canvas.help.merge_occluders"))
+				.setSaveConsumer(b -> {
+					mergeOccluders = b;
+				})
+				.build());
+
+		tweaks.addEntry(ENTRY_BUILDER
+				.startBooleanToggle(new TranslatableText("config.canvas.value.face_connectivity_culling"), faceConnectivityCulling)
+				.setDefaultValue(DEFAULTS.faceConnectivityCulling)
+				.setTooltip(parse("config.canvas.help.face_connectivity_culling"))
+				.setSaveConsumer(b -> {
+					faceConnectivityCulling = b;
+				})
+				.build());
+
+		tweaks.addEntry(ENTRY_BUILDER
+				.startBooleanToggle(new TranslatableText("config.canvas.value.cull_block_entities"), cullBlockEntities)
+				.setDefaultValue(DEFAULTS.cullBlockEntities)
+				.setTooltip(parse("config.canvas.help.cull_block_entities"))
+				.setSaveConsumer(b -> {
+					cullBlockEntities = b;
+				})
+				.build());
+
+		tweaks.addEntry(ENTRY_BUILDER
+				.startBooleanToggle(new TranslatableText("config.canvas.value.compact_terrain_vertices"), compactTerrainVertices)
+				.setDefaultValue(DEFAULTS.compactTerrainVertices)
+				.setTooltip(parse("config.canvas.help.compact_terrain_vertices"))
+				.setSaveConsumer(b -> {
+					reload |= compactTerrainVertices != b;
+					compactTerrainVertices = b;
+				})
+				.build());
+
+		tweaks.addEntry(ENTRY_BUILDER
+				.startBooleanToggle(new TranslatableText("config.canvas.value.terrain_buffer_arenas"), terrainBufferArenas)
+				.setDefaultValue(DEFAULTS.terrainBufferArenas)
+				.setTooltip(parse("config.canvas.help.terrain_buffer_arenas"))
+				.setSaveConsumer(b -> {
+					reload |= terrainBufferArenas != b;
+					terrainBufferArenas = b;
+				})
+				.build());
+
+		tweaks.addEntry(ENTRY_BUILDER
+				.startBooleanToggle(new TranslatableText("config.canvas.value.multi_draw_terrain"), multiDrawTerrain)
+				.setDefaultValue(DEFAULTS.multiDrawTerrain)
+				.setTooltip(parse("config.canvas.help.multi_draw_terrain"))
+				.setSaveConsumer(b -> multiDrawTerrain = b)
+				.build());
+
+		tweaks.addEntry(ENTRY_BUILDER
+				.startBooleanToggle(new TranslatableText("config.canvas.value.terrain_face_buckets"), terrainFaceBuckets)
+				.setDefaultValue(DEFAULTS.terrainFaceBuckets)
+				.setTooltip(parse("config.canvas.help.terrain_face_buckets"))
+				.setSaveConsumer(b -> {
+					reload |= terrainFaceBuckets != b;
+					terrainFaceBuckets = b;
+				})
+				.build());
+
 		// DEBUG
 		final ConfigCategory debug = builder.getOrCreateCategory(new TranslatableText("config.canvas.category.debug"));
 
@@ -827,6 +1037,40 @@ public class Configurator {
 		int dynamicFrustumPadding = 20;
 		@Comment("Culls particles that are not in view. Should always be faster.")
 		boolean cullParticles = true;
+		@Comment("Maximum milliseconds per frame spent sending rebuilt terrain to the GPU. Lower values smooth frame spikes when many chunks load at once. Values 1 to 20.")
+		int terrainUploadBudgetMillis = 4;
+		@Comment("Maximum megabytes per frame of rebuilt terrain sent to the GPU. Lower values smooth frame spikes when many chunks load at once. Values 1 to 64.")
+		int terrainUploadBudgetMegabytes = 8;
+		@Comment("Reuse finished region meshes from a local disk cache when content is unchanged.")
+		boolean enableMeshCache = false;
+		@Comment("Maximum size of region mesh cache file in megabytes. Least-recently used meshes are removed when full. Values 32 to 1024.")
+		int meshCacheMegabytes = 256;
+		@Comment("Merge adjacent identical block faces into larger quads. Reduces vertex count. Default is false.")
+		boolean greedyMeshing = false;
+		@Comment("Chunk distance beyond which small cutout models and block entities are omitted. 0 disables. Values 0 to 64.")
+		int lodDetailDistance = 0;
+		@Comment("Chunk distance beyond which leaves render solid with interior faces removed. 0 disables. Values 0 to 64.")
+		int lodLeavesDistance = 0;
+		@Comment("Recompute only vertex light when a region's light changes. Uses more memory per region.")
+		boolean enableRelight = false;
+		@Comment("Carry the occlusion raster over to rotated views. Default is true.")
+		boolean reuseOcclusionRaster = true;
+		@Comment("Draw occluders in horizontal bands on several threads. Default is true.")
+		boolean parallelOcclusionRaster = true;
+		@Comment("Draw occluder boxes that continue across regions as one box. Default is true.")
+		boolean mergeOccluders = true;
+		@Comment("Skip neighbors not reachable through open space in a region. Default is true.")
+		boolean faceConnectivityCulling = true;
+		@Comment("Test block entities against the terrain occlusion raster. Default is true.")
+		boolean cullBlockEntities = true;
+		@Comment("Smaller terrain vertex format. Less video memory and upload bandwidth.")
+		boolean compactTerrainVertices = true;
+		@Comment("Packs terrain regions into a few large vertex buffers instead of one buffer per region.")
+		boolean terrainBufferArenas = true;
+		@Comment("Groups terrain draws by material into one multi-draw call per render cube.")
+		boolean multiDrawTerrain = true;
+		@Comment("Groups terrain faces by direction so that faces pointing away from the camera are skipped.")
+		boolean terrainFaceBuckets = true;
 
 		// DEBUG
 		@Comment("Output runtime per-material shader source. For shader development debugging.")
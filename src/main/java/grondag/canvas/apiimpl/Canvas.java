@@ -43,7 +43,9 @@ import grondag.canvas.pipeline.Pipeline;
 import grondag.canvas.shader.GlShaderManager;
 import grondag.canvas.shader.MaterialProgramManager;
 import grondag.canvas.shader.ProcessShaders;
+import grondag.canvas.terrain.cache.RegionMeshCache;
 import grondag.canvas.terrain.region.ProtoRenderRegion;
+import grondag.canvas.terrain.util.BlockStateTable;
 import grondag.canvas.terrain.util.ChunkColorCache;
 import grondag.canvas.terrain.util.TerrainModelSpace;
 import grondag.frex.api.Renderer;
@@ -93,6 +95,8 @@ public class Canvas implements Renderer {
 	public void reload() {
 		CanvasMod.LOG.info(I18n.translate("info.canvas.reloading"));
 		ProtoRenderRegion.reload();
+		BlockStateTable.reload();
+		RegionMeshCache.reload();
 		BlockRenderContext.reload();
 		EntityBlockRenderContext.reload();
 		ItemRenderContext.reload();
@@ -19,7 +19,11 @@ package grondag.canvas.apiimpl.rendercontext;
 import static grondag.canvas.buffer.encoding.EncoderUtils.applyBlockLighting;
 import static grondag.canvas.buffer.encoding.EncoderUtils.bufferQuadDirect;
 import static grondag.canvas.buffer.encoding.EncoderUtils.colorizeQuad;
+import static grondag.canvas.buffer.encoding.EncoderUtils.encodeQuadDirect;
 
+import java.util.Arrays;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
 
 import net.minecraft.block.Block;
@@ -30,19 +34,31 @@ import net.minecraft.util.crash.CrashException;
 import net.minecraft.util.crash.CrashReport;
 import net.minecraft.util.crash.CrashReportSection;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
 
+import net.fabricmc.fabric.api.renderer.v1.material.BlendMode;
 import net.fabricmc.fabric.api.renderer.v1.model.FabricBakedModel;
 import net.fabricmc.fabric.api.renderer.v1.model.ModelHelper;
 import net.fabricmc.fabric.api.renderer.v1.render.RenderContext;
 
 import grondag.canvas.Configurator;
 import grondag.canvas.apiimpl.mesh.MutableQuadViewImpl;
+import grondag.canvas.apiimpl.util.ColorHelper;
+import grondag.canvas.buffer.encoding.GreedyQuadEncoder;
+import grondag.canvas.buffer.encoding.VertexCollectorImpl;
 import grondag.canvas.buffer.encoding.VertexCollectorList;
+import grondag.canvas.buffer.format.CanvasVertexFormats;
 import grondag.canvas.light.AoCalculator;
 import grondag.canvas.light.LightSmoother;
+import grondag.canvas.light.RelightRecipes;
+import grondag.canvas.material.state.RenderState;
 import grondag.canvas.mixinterface.Matrix3fExt;
+import grondag.canvas.mixinterface.Matrix4fExt;
+import grondag.canvas.terrain.cache.ContentHash;
 import grondag.canvas.terrain.region.FastRenderRegion;
 import grondag.canvas.terrain.region.ProtoRenderRegion;
+import grondag.canvas.terrain.util.BlockStateTable;
+import grondag.canvas.terrain.util.RegionLod;
 import grondag.canvas.terrain.util.RenderRegionAddressHelper;
 
 /**
@@ -55,6 +71,21 @@ public class TerrainRenderContext extends AbstractBlockRenderContext<FastRenderR
 	public final ObjectOpenHashSet<BlockEntity> nonCullBlockEntities = new ObjectOpenHashSet<>();
 	public final ObjectOpenHashSet<BlockEntity> addedBlockEntities = new ObjectOpenHashSet<>();
 	public final ObjectOpenHashSet<BlockEntity> removedBlockEntities = new ObjectOpenHashSet<>();
+	/** Content hash of the region being built, for mesh cache lookup and store. */
+	public final ContentHash meshHash = new ContentHash();
+	/** Scratch for {@link FastRenderRegion#hashGeometry(ContentHash)} when saving or applying relight data. */
+	public final ContentHash geometryHash = new ContentHash();
+	/** Active only while terrain is built with greedy meshing enabled. */
+	public final GreedyQuadEncoder greedyEncoder = new GreedyQuadEncoder();
+	/** {@link RegionLod} flags of the region being built. */
+	public int lod = RegionLod.NONE;
+	/** Light recipes of the region being built while recording, and evaluator for relight. */
+	public final RelightRecipes relightRecipes = new RelightRecipes();
+	/** Recipe keys of recorded vertices by collector index, in the order vertices were added. */
+	private final IntArrayList[] relightKeys = new IntArrayList[RenderState.MAX_COUNT];
+	private final int[] quadLightKeys = new int[4];
+	private boolean isRecordingLight;
+	private int lastFlatIndex;
 	private final AoCalculator aoCalc = new AoCalculator() {
 		@Override
 		protected int ao(int cacheIndex) {
@@ -70,9 +101,29 @@ public class TerrainRenderContext extends AbstractBlockRenderContext<FastRenderR
 		protected boolean isOpaque(int cacheIndex) {
 			return region.isClosed(cacheIndex);
 		}
+
+		@Override
+		protected void onFaceLight(int vertexIndex, int modelLight, int[] samples, float[] w) {
+			if (isRecordingLight) {
+				quadLightKeys[vertexIndex] = relightRecipes.addFace(modelLight, samples, w);
+			}
+		}
+
+		@Override
+		protected void onFlatLight(int vertexIndex, int modelLight, int cacheIndex) {
+			if (isRecordingLight) {
+				quadLightKeys[vertexIndex] = relightRecipes.addFlat(modelLight, cacheIndex);
+			}
+		}
+
+		@Override
+		protected void onComplexLight() {
+			isRecordingLight = false;
+		}
 	};
 	private int cullCompletionFlags;
 	private int cullResultFlags;
+	private boolean isSolidLeaves;
 
 	public TerrainRenderContext() {
 		super("TerrainRenderContext");
@@ -94,6 +145,32 @@ public class TerrainRenderContext extends AbstractBlockRenderContext<FastRenderR
 		return this;
 	}
 
+	/**
+	 * Starts or disables recording of light recipes for the region about to be built.
+	 * Recording stops on its own if any quad is lit in a way recipes can't describe.
+	 */
+	public void beginLightRecording(boolean enable) {
+		isRecordingLight = enable;
+		relightRecipes.clear();
+
+		for (final IntArrayList keys : relightKeys) {
+			if (keys != null) {
+				keys.clear();
+			}
+		}
+	}
+
+	/** True if every quad encoded since {@link #beginLightRecording(boolean)} has recorded light. */
+	public boolean isRecordingLight() {
+		return isRecordingLight;
+	}
+
+	/** Recipe keys of the vertices in the given collector, or null if none were recorded. */
+	public int[] recordedLightKeys(VertexCollectorImpl collector) {
+		final IntArrayList keys = relightKeys[collector.materialState().collectorIndex];
+		return keys == null || keys.isEmpty() ? null : keys.toIntArray();
+	}
+
 	public void renderFluid(BlockState blockState, BlockPos blockPos, boolean defaultAo, final FabricBakedModel model, MatrixStack matrixStack) {
 		isFluidModel = true;
 		rebnderInner(blockState, blockPos, defaultAo, model, matrixStack);
@@ -114,6 +191,12 @@ public class TerrainRenderContext extends AbstractBlockRenderContext<FastRenderR
 		try {
 			aoCalc.prepare(RenderRegionAddressHelper.interiorIndex(blockPos));
 			prepareForBlock(blockState, blockPos, defaultAo, -1);
+			isSolidLeaves = !isFluidModel && (lod & RegionLod.SOLID_LEAVES) != 0 && (region.stateTable().flags(blockState) & BlockStateTable.LEAVES) != 0;
+
+			if (isSolidLeaves) {
+				defaultBlendMode = BlendMode.SOLID;
+			}
+
 			cullCompletionFlags = 0;
 			cullResultFlags = 0;
 			model.emitBlockQuads(region, blockState, blockPos, randomSupplier, this);
@@ -143,6 +226,15 @@ public class TerrainRenderContext extends AbstractBlockRenderContext<FastRenderR
 			// FEAT: per-vertex light maps will be ignored unless we bake a custom HD map
 			// or retain vertex light maps in buffer format and logic in shader to take max
 			aoCalc.computeFlatHd(quad, flatBrightness(quad));
+		} else if (isRecordingLight) {
+			// emissive blocks don't sample light
+			lastFlatIndex = RelightRecipes.NO_INDEX;
+			final int brightness = flatBrightness(quad);
+
+			for (int i = 0; i < 4; ++i) {
+				quadLightKeys[i] = relightRecipes.addFlat(quad.lightmap(i), lastFlatIndex);
+				quad.lightmap(i, ColorHelper.maxBrightness(quad.lightmap(i), brightness));
+			}
 		} else {
 			computeFlatSimple(quad);
 		}
@@ -150,7 +242,8 @@ public class TerrainRenderContext extends AbstractBlockRenderContext<FastRenderR
 
 	@Override
 	protected int fastBrightness(BlockState blockState, BlockPos pos) {
-		return region.cachedBrightness(pos);
+		lastFlatIndex = region.cacheIndex(pos);
+		return region.cachedBrightness(lastFlatIndex);
 	}
 
 	@Override
@@ -164,7 +257,9 @@ public class TerrainRenderContext extends AbstractBlockRenderContext<FastRenderR
 		if ((cullCompletionFlags & mask) == 0) {
 			cullCompletionFlags |= mask;
 
-			if (Block.shouldDrawSide(blockState, region, blockPos, ModelHelper.faceFromIndex(faceIndex))) {
+			final Direction face = ModelHelper.faceFromIndex(faceIndex);
+
+			if (Block.shouldDrawSide(blockState, region, blockPos, face) && !(isSolidLeaves && isLeavesNeighbor(face))) {
 				cullResultFlags |= mask;
 				return true;
 			} else {
@@ -175,11 +270,54 @@ public class TerrainRenderContext extends AbstractBlockRenderContext<FastRenderR
 		}
 	}
 
+	private boolean isLeavesNeighbor(Direction face) {
+		final BlockState neighbor = region.getBlockState(internalSearchPos.set(blockPos, face));
+		return (region.stateTable().flags(neighbor) & BlockStateTable.LEAVES) != 0;
+	}
+
 	@Override
 	protected void encodeQuad(MutableQuadViewImpl quad) {
+		if (isRecordingLight) {
+			Arrays.fill(quadLightKeys, RelightRecipes.NO_INDEX);
+		}
+
 		// needs to happen before offsets are applied
 		applyBlockLighting(quad, this);
 		colorizeQuad(quad, this);
-		bufferQuadDirect(quad, this, collectors.get(quad.material()));
+
+		if (isRecordingLight) {
+			recordQuadLight(quad);
+		}
+
+		if (greedyEncoder.isActive()) {
+			encodeQuadDirect(quad, this);
+
+			if (!greedyEncoder.add(quad, appendData, (Matrix4fExt) (Object) matrix, blockPos.getX() & 0xF, blockPos.getY() & 0xF, blockPos.getZ() & 0xF)) {
+				collectors.get(quad.material()).add(appendData, CanvasVertexFormats.MATERIAL_QUAD_STRIDE);
+			}
+		} else {
+			bufferQuadDirect(quad, this, collectors.get(quad.material()));
+		}
+	}
+
+	private void recordQuadLight(MutableQuadViewImpl quad) {
+		final int[] quadLightKeys = this.quadLightKeys;
+
+		for (final int key : quadLightKeys) {
+			if (key == RelightRecipes.NO_INDEX) {
+				isRecordingLight = false;
+				return;
+			}
+		}
+
+		final int collectorIndex = quad.material().collectorIndex;
+		IntArrayList keys = relightKeys[collectorIndex];
+
+		if (keys == null) {
+			keys = new IntArrayList();
+			relightKeys[collectorIndex] = keys;
+		}
+
+		keys.addElements(keys.size(), quadLightKeys, 0, 4);
 	}
 }
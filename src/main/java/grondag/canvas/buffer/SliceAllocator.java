@@ -0,0 +1,266 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.buffer;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Free-list sub-allocator for one fixed-size arena. Bookkeeping only - does not touch GL,
+ * so units are whatever the caller chooses. Terrain arenas use vertices so that slice
+ * offsets can be used directly as the first vertex of a draw call.
+ *
+ * <p>Allocation is best fit. Released slices are merged with free neighbors. When free
+ * space is fragmented, {@link #compact(Mover)} packs live slices at the start of the arena
+ * and leaves one free block at the end.
+ *
+ * <p>Not thread-safe.
+ */
+public final class SliceAllocator {
+	public static final class Slice {
+		private final SliceAllocator owner;
+		private final int length;
+		private int offset;
+		/** Position in {@link SliceAllocator#slices}, or -1 once released. */
+		private int index;
+
+		private Slice(SliceAllocator owner, int offset, int length) {
+			this.owner = owner;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		/** Can change when the owning arena is compacted. */
+		public int offset() {
+			return offset;
+		}
+
+		public int length() {
+			return length;
+		}
+
+		public boolean isReleased() {
+			return index == -1;
+		}
+	}
+
+	@FunctionalInterface
+	public interface Mover {
+		/**
+		 * Called for every live slice during compaction, in order of ascending offset, including
+		 * slices that stay put so that content can be copied to a new buffer. Slices only move
+		 * toward the start, so applying moves in order as a memmove is also safe.
+		 */
+		void move(int fromOffset, int toOffset, int length);
+	}
+
+	private static final Comparator<Slice> BY_OFFSET = (a, b) -> Integer.compare(a.offset, b.offset);
+
+	private final int capacity;
+
+	// free blocks in offset order
+	private int[] freeOffsets = new int[16];
+	private int[] freeLengths = new int[16];
+	private int freeCount = 0;
+
+	private Slice[] slices = new Slice[16];
+	private int sliceCount = 0;
+	private int used = 0;
+
+	public SliceAllocator(int capacity) {
+		assert capacity > 0;
+		this.capacity = capacity;
+		freeOffsets[0] = 0;
+		freeLengths[0] = capacity;
+		freeCount = 1;
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	public int used() {
+		return used;
+	}
+
+	public int free() {
+		return capacity - used;
+	}
+
+	public boolean isEmpty() {
+		return used == 0;
+	}
+
+	public int sliceCount() {
+		return sliceCount;
+	}
+
+	public int freeBlockCount() {
+		return freeCount;
+	}
+
+	public int largestFree() {
+		int result = 0;
+
+		for (int i = 0; i < freeCount; ++i) {
+			result = Math.max(result, freeLengths[i]);
+		}
+
+		return result;
+	}
+
+	/** Best fit. Null if no single free block is large enough, even if {@link #free()} is. */
+	public Slice allocate(int length) {
+		assert length > 0;
+
+		int best = -1;
+		int bestLength = Integer.MAX_VALUE;
+
+		for (int i = 0; i < freeCount; ++i) {
+			final int len = freeLengths[i];
+
+			if (len >= length && len < bestLength) {
+				best = i;
+				bestLength = len;
+
+				if (len == length) {
+					break;
+				}
+			}
+		}
+
+		if (best == -1) {
+			return null;
+		}
+
+		final int offset = freeOffsets[best];
+
+		if (bestLength == length) {
+			removeFree(best);
+		} else {
+			freeOffsets[best] = offset + length;
+			freeLengths[best] = bestLength - length;
+		}
+
+		final Slice result = new Slice(this, offset, length);
+		addSlice(result);
+		used += length;
+		return result;
+	}
+
+	public void release(Slice slice) {
+		assert slice.owner == this;
+
+		if (slice.index == -1) {
+			return;
+		}
+
+		removeSlice(slice);
+		used -= slice.length;
+
+		final int offset = slice.offset;
+		final int end = offset + slice.length;
+
+		// position of first free block after the slice
+		int i = 0;
+
+		while (i < freeCount && freeOffsets[i] < offset) {
+			++i;
+		}
+
+		final boolean joinPrior = i > 0 && freeOffsets[i - 1] + freeLengths[i - 1] == offset;
+		final boolean joinNext = i < freeCount && freeOffsets[i] == end;
+
+		if (joinPrior && joinNext) {
+			freeLengths[i - 1] += slice.length + freeLengths[i];
+			removeFree(i);
+		} else if (joinPrior) {
+			freeLengths[i - 1] += slice.length;
+		} else if (joinNext) {
+			freeOffsets[i] = offset;
+			freeLengths[i] += slice.length;
+		} else {
+			insertFree(i, offset, slice.length);
+		}
+	}
+
+	/**
+	 * Moves all live slices to the start of the arena, in offset order, leaving a single
+	 * free block at the end. Slice offsets are updated before this returns.
+	 */
+	public void compact(Mover mover) {
+		final Slice[] slices = this.slices;
+		final int sliceCount = this.sliceCount;
+		Arrays.sort(slices, 0, sliceCount, BY_OFFSET);
+		int offset = 0;
+
+		for (int i = 0; i < sliceCount; ++i) {
+			final Slice slice = slices[i];
+			slice.index = i;
+			mover.move(slice.offset, offset, slice.length);
+			slice.offset = offset;
+			offset += slice.length;
+		}
+
+		assert offset == used;
+
+		if (offset < capacity) {
+			freeOffsets[0] = offset;
+			freeLengths[0] = capacity - offset;
+			freeCount = 1;
+		} else {
+			freeCount = 0;
+		}
+	}
+
+	private void addSlice(Slice slice) {
+		if (sliceCount == slices.length) {
+			slices = Arrays.copyOf(slices, sliceCount * 2);
+		}
+
+		slice.index = sliceCount;
+		slices[sliceCount++] = slice;
+	}
+
+	private void removeSlice(Slice slice) {
+		final int index = slice.index;
+		final Slice last = slices[--sliceCount];
+		slices[index] = last;
+		last.index = index;
+		slices[sliceCount] = null;
+		slice.index = -1;
+	}
+
+	private void insertFree(int index, int offset, int length) {
+		if (freeCount == freeOffsets.length) {
+			freeOffsets = Arrays.copyOf(freeOffsets, freeCount * 2);
+			freeLengths = Arrays.copyOf(freeLengths, freeCount * 2);
+		}
+
+		System.arraycopy(freeOffsets, index, freeOffsets, index + 1, freeCount - index);
+		System.arraycopy(freeLengths, index, freeLengths, index + 1, freeCount - index);
+		freeOffsets[index] = offset;
+		freeLengths[index] = length;
+		++freeCount;
+	}
+
+	private void removeFree(int index) {
+		--freeCount;
+		System.arraycopy(freeOffsets, index + 1, freeOffsets, index, freeCount - index);
+		System.arraycopy(freeLengths, index + 1, freeLengths, index, freeCount - index);
+	}
+}
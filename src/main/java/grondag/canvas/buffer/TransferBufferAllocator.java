@@ -17,60 +17,56 @@
 package grondag.canvas.buffer;
 
 import java.nio.ByteBuffer;
-import java.util.Collections;
-import java.util.IdentityHashMap;
-import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.IntFunction;
 
 import org.lwjgl.BufferUtils;
 import org.lwjgl.system.MemoryUtil;
 
-import net.minecraft.util.math.MathHelper;
-
+import grondag.canvas.CanvasMod;
 import grondag.canvas.Configurator;
 
 /**
- * Tracks all allocations, ensures deallocation on render reload.
+ * Pools native transfer buffers - see {@link TransferBufferPool}.
  * Implements configuration of allocation method.
  */
 public class TransferBufferAllocator {
 	private static final IntFunction<ByteBuffer> SUPPLIER = Configurator.safeNativeMemoryAllocation ? BufferUtils::createByteBuffer : MemoryUtil::memAlloc;
 	private static final Consumer<ByteBuffer> CONSUMER = Configurator.safeNativeMemoryAllocation ? b -> { } : MemoryUtil::memFree;
-	private static final Set<ByteBuffer> OPEN = Collections.newSetFromMap(new IdentityHashMap<ByteBuffer, Boolean>());
-	private static int allocatedBytes = 0;
-	private static int peakBytes = 0;
+	private static final long MAX_POOLED_BYTES = 0x4000000;
+	private static final long IDLE_NANOS = TimeUnit.SECONDS.toNanos(5);
+	private static final TransferBufferPool POOL = new TransferBufferPool(SUPPLIER, CONSUMER, System::nanoTime, MAX_POOLED_BYTES, IDLE_NANOS, Configurator.debugNativeMemoryAllocation);
+	private static long peakBytes = 0;
 	private static int peakSize = 0;
 	private static int zeroCount = 0;
 
-	public static synchronized ByteBuffer claim(int bytes) {
-		if (bytes < 4096) {
-			bytes = 4096;
-		}
-
-		bytes = MathHelper.smallestEncompassingPowerOfTwo(bytes);
-		allocatedBytes += bytes;
+	/** Buffer capacity is a power of two of at least 4096. Position is zero and limit is capacity. */
+	public static ByteBuffer claim(int bytes) {
+		return POOL.claim(bytes);
+	}
 
-		final ByteBuffer result = SUPPLIER.apply(bytes);
-		OPEN.add(result);
-		return result;
+	public static void release(ByteBuffer uploadBuffer) {
+		POOL.release(uploadBuffer);
 	}
 
-	public static synchronized void release(ByteBuffer uploadBuffer) {
-		if (OPEN.remove(uploadBuffer)) {
-			allocatedBytes -= uploadBuffer.capacity();
-			CONSUMER.accept(uploadBuffer);
-		}
+	/** Frees pooled buffers when idle. Call once per frame from the render thread. */
+	public static void trimIfIdle() {
+		POOL.trimIfIdle();
 	}
 
-	public static synchronized void forceReload() {
-		OPEN.forEach(CONSUMER);
-		OPEN.clear();
-		allocatedBytes = 0;
+	/** Frees pooled buffers and, when debugging native memory, logs buffers still open. */
+	public static void forceReload() {
+		POOL.trim();
+
+		if (Configurator.debugNativeMemoryAllocation) {
+			POOL.forEachOpen((b, t) -> CanvasMod.LOG.warn("Transfer buffer of " + b.capacity() + " bytes still open", t));
+		}
 	}
 
 	public static String debugString() {
-		final int size = OPEN.size();
+		final int size = POOL.openCount();
+		final long allocatedBytes = POOL.openBytes();
 
 		if (size == 0 && ++zeroCount >= 10) {
 			peakBytes = 0;
@@ -86,7 +82,10 @@ public class TransferBufferAllocator {
 			}
 		}
 
-		return String.format("Peak transfer buffers: %03d @ %03dMB - %s mode", peakSize, peakBytes / 0x100000,
-			Configurator.safeNativeMemoryAllocation ? "safe" : "fast");
+		final long claims = POOL.claimCount();
+		final long reusePct = claims == 0 ? 0 : (claims - POOL.allocationCount()) * 100 / claims;
+
+		return String.format("Peak transfer buffers: %03d @ %03dMB, %03dMB pooled, %d%% reused - %s mode", peakSize, peakBytes / 0x100000,
+			POOL.idleBytes() / 0x100000, reusePct, Configurator.safeNativeMemoryAllocation ? "safe" : "fast");
 	}
 }
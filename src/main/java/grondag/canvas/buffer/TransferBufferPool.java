@@ -0,0 +1,315 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * Reuses transfer buffers instead of allocating native memory for every claim.
+ * Sizes are powers of two of at least {@link #MIN_BYTES}, with one free list per size.
+ *
+ * <p>Each thread also keeps a few small buffers of each size in a cache of its own, so
+ * that a thread that claims and releases in a loop doesn't touch shared lists. Caches are
+ * lock-free slots that any thread can drain, so idle trimming reaches them too.
+ *
+ * <p>In practice the caches mostly help the render thread. {@link VboBuffer} claims its
+ * upload buffer on a worker thread and releases it on the render thread after upload, so
+ * workers always claim from the shared lists and never find anything in their own caches.
+ *
+ * <p>Free lists hold at most maxPooledBytes. Buffers released beyond that are freed.
+ * Thread caches are bounded separately and are not counted.
+ *
+ * <p>Releasing a buffer twice corrupts the pool. With tracking enabled, open buffers are
+ * recorded with the stack that claimed them, and bad releases are ignored - for debugging leaks.
+ *
+ * <p>Thread-safe. Trimming should be called from one thread only.
+ */
+public class TransferBufferPool {
+	public static final int MIN_SHIFT = 12;
+	public static final int MIN_BYTES = 1 << MIN_SHIFT;
+	private static final int MAX_SHIFT = 30;
+	private static final int SIZE_COUNT = MAX_SHIFT - MIN_SHIFT + 1;
+
+	/** Larger buffers bypass thread caches. */
+	private static final int MAX_CACHED_SHIFT = 20;
+	private static final int CACHED_SIZE_COUNT = MAX_CACHED_SHIFT - MIN_SHIFT + 1;
+	private static final int CACHE_SLOTS = 2;
+
+	private final IntFunction<ByteBuffer> allocator;
+	private final Consumer<ByteBuffer> deallocator;
+	private final LongSupplier nanoTime;
+	private final long maxPooledBytes;
+	private final long idleNanos;
+
+	@SuppressWarnings("unchecked")
+	private final ConcurrentLinkedDeque<ByteBuffer>[] freeLists = new ConcurrentLinkedDeque[SIZE_COUNT];
+	private final AtomicLong pooledBytes = new AtomicLong();
+
+	private final ConcurrentLinkedQueue<AtomicReferenceArray<ByteBuffer>> caches = new ConcurrentLinkedQueue<>();
+	private final ThreadLocal<AtomicReferenceArray<ByteBuffer>> threadCache = ThreadLocal.withInitial(() -> {
+		final AtomicReferenceArray<ByteBuffer> result = new AtomicReferenceArray<>(CACHED_SIZE_COUNT * CACHE_SLOTS);
+		caches.add(result);
+		return result;
+	});
+
+	/** Null unless tracking. */
+	private final Map<ByteBuffer, Throwable> open;
+
+	private final LongAdder claimCount = new LongAdder();
+	private final LongAdder allocationCount = new LongAdder();
+	private final LongAdder openBytes = new LongAdder();
+	private final LongAdder openCount = new LongAdder();
+
+	// trimming thread only
+	private long lastClaimCount = -1;
+	private long idleSince;
+
+	/**
+	 * @param allocator creates a buffer of exactly the given capacity
+	 * @param deallocator frees a buffer created by the allocator
+	 * @param nanoTime clock for idle trimming
+	 * @param maxPooledBytes limit for free lists
+	 * @param idleNanos time without claims before {@link #trimIfIdle()} frees pooled buffers
+	 * @param track true to record open buffers for {@link #forEachOpen(BiConsumer)}
+	 */
+	public TransferBufferPool(IntFunction<ByteBuffer> allocator, Consumer<ByteBuffer> deallocator, LongSupplier nanoTime, long maxPooledBytes, long idleNanos, boolean track) {
+		this.allocator = allocator;
+		this.deallocator = deallocator;
+		this.nanoTime = nanoTime;
+		this.maxPooledBytes = maxPooledBytes;
+		this.idleNanos = idleNanos;
+		open = track ? Collections.synchronizedMap(new IdentityHashMap<>()) : null;
+
+		for (int i = 0; i < SIZE_COUNT; ++i) {
+			freeLists[i] = new ConcurrentLinkedDeque<>();
+		}
+	}
+
+	/** Capacity of buffers claimed for the given size. */
+	public static int capacityFor(int bytes) {
+		assert bytes <= 1 << MAX_SHIFT;
+		return bytes <= MIN_BYTES ? MIN_BYTES : Integer.highestOneBit(bytes - 1) << 1;
+	}
+
+	/**
+	 * Returns a cleared buffer with capacity {@link #capacityFor(int)}. Content is undefined.
+	 */
+	public ByteBuffer claim(int bytes) {
+		final int capacity = capacityFor(bytes);
+		final int sizeIndex = Integer.numberOfTrailingZeros(capacity) - MIN_SHIFT;
+		ByteBuffer result = null;
+
+		if (sizeIndex < CACHED_SIZE_COUNT) {
+			result = takeCached(threadCache.get(), sizeIndex);
+		}
+
+		if (result == null) {
+			result = freeLists[sizeIndex].pollFirst();
+
+			if (result == null) {
+				result = allocator.apply(capacity);
+				allocationCount.increment();
+			} else {
+				pooledBytes.addAndGet(-capacity);
+			}
+		}
+
+		result.clear();
+		claimCount.increment();
+		openCount.increment();
+		openBytes.add(capacity);
+
+		if (open != null) {
+			open.put(result, new Throwable("Transfer buffer claimed here"));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Returns a buffer from {@link #claim(int)} to the pool. Must not be used after this.
+	 */
+	public void release(ByteBuffer buffer) {
+		if (open != null && open.remove(buffer) == null) {
+			// unknown or released twice
+			return;
+		}
+
+		final int capacity = buffer.capacity();
+		final int sizeIndex = Integer.numberOfTrailingZeros(capacity) - MIN_SHIFT;
+		assert Integer.bitCount(capacity) == 1 && sizeIndex >= 0 && sizeIndex < SIZE_COUNT;
+
+		openCount.decrement();
+		openBytes.add(-capacity);
+
+		if (sizeIndex < CACHED_SIZE_COUNT && putCached(threadCache.get(), sizeIndex, buffer)) {
+			return;
+		}
+
+		if (pooledBytes.addAndGet(capacity) <= maxPooledBytes) {
+			freeLists[sizeIndex].offerFirst(buffer);
+		} else {
+			pooledBytes.addAndGet(-capacity);
+			deallocator.accept(buffer);
+		}
+	}
+
+	private static ByteBuffer takeCached(AtomicReferenceArray<ByteBuffer> cache, int sizeIndex) {
+		final int start = sizeIndex * CACHE_SLOTS;
+
+		for (int i = start; i < start + CACHE_SLOTS; ++i) {
+			final ByteBuffer result = cache.get(i);
+
+			// can lose to a trim, then try next slot
+			if (result != null && cache.compareAndSet(i, result, null)) {
+				return result;
+			}
+		}
+
+		return null;
+	}
+
+	private static boolean putCached(AtomicReferenceArray<ByteBuffer> cache, int sizeIndex, ByteBuffer buffer) {
+		final int start = sizeIndex * CACHE_SLOTS;
+
+		for (int i = start; i < start + CACHE_SLOTS; ++i) {
+			if (cache.get(i) == null && cache.compareAndSet(i, null, buffer)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/** Frees all pooled and cached buffers. Open buffers are not affected. */
+	public void trim() {
+		for (final ConcurrentLinkedDeque<ByteBuffer> list : freeLists) {
+			ByteBuffer buffer;
+
+			while ((buffer = list.pollFirst()) != null) {
+				pooledBytes.addAndGet(-buffer.capacity());
+				deallocator.accept(buffer);
+			}
+		}
+
+		for (final AtomicReferenceArray<ByteBuffer> cache : caches) {
+			final int limit = cache.length();
+
+			for (int i = 0; i < limit; ++i) {
+				final ByteBuffer buffer = cache.getAndSet(i, null);
+
+				if (buffer != null) {
+					deallocator.accept(buffer);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Call periodically. Trims when nothing has been claimed for the idle time.
+	 *
+	 * @return true if trimmed
+	 */
+	public boolean trimIfIdle() {
+		final long claims = claimCount.sum();
+		final long now = nanoTime.getAsLong();
+
+		if (claims != lastClaimCount) {
+			lastClaimCount = claims;
+			idleSince = now;
+			return false;
+		}
+
+		if (now - idleSince >= idleNanos) {
+			trim();
+			// don't trim again until after the next claim
+			idleSince = Long.MAX_VALUE / 2;
+			return true;
+		}
+
+		return false;
+	}
+
+	/** Visits open buffers with the stack that claimed them. Does nothing unless tracking. */
+	public void forEachOpen(BiConsumer<ByteBuffer, Throwable> consumer) {
+		if (open != null) {
+			final ArrayList<Map.Entry<ByteBuffer, Throwable>> entries;
+
+			synchronized (open) {
+				entries = new ArrayList<>(open.entrySet());
+			}
+
+			for (final Map.Entry<ByteBuffer, Throwable> e : entries) {
+				consumer.accept(e.getKey(), e.getValue());
+			}
+		}
+	}
+
+	public int openCount() {
+		return openCount.intValue();
+	}
+
+	public long openBytes() {
+		return openBytes.sum();
+	}
+
+	/** Bytes in free lists, not counting thread caches. */
+	public long pooledBytes() {
+		return pooledBytes.get();
+	}
+
+	/** Bytes in free lists and thread caches. */
+	public long idleBytes() {
+		long result = pooledBytes.get();
+
+		for (final AtomicReferenceArray<ByteBuffer> cache : caches) {
+			final int limit = cache.length();
+
+			for (int i = 0; i < limit; ++i) {
+				final ByteBuffer buffer = cache.get(i);
+
+				if (buffer != null) {
+					result += buffer.capacity();
+				}
+			}
+		}
+
+		return result;
+	}
+
+	public long claimCount() {
+		return claimCount.sum();
+	}
+
+	/** Claims that needed a new buffer. */
+	public long allocationCount() {
+		return allocationCount.sum();
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.buffer;
+
+import java.nio.ByteBuffer;
+
+import com.mojang.blaze3d.systems.RenderSystem;
+import org.lwjgl.opengl.GL21;
+import org.lwjgl.opengl.GL31;
+
+import grondag.canvas.buffer.format.CanvasVertexFormat;
+import grondag.canvas.varia.CanvasGlHelper;
+
+/**
+ * One GL buffer shared by many terrain VBOs of the same vertex format, so that
+ * consecutive draws don't need to rebind vertex state. Space is managed by
+ * {@link SliceAllocator} in units of vertices. Render thread only.
+ */
+class VboArena implements VertexBinding {
+	final CanvasVertexFormat format;
+	private final SliceAllocator allocator;
+	private final int capacityBytes;
+	private int glBufferId;
+	private int vaoBufferId = 0;
+
+	VboArena(CanvasVertexFormat format, int capacityVertices) {
+		assert RenderSystem.isOnRenderThread();
+		this.format = format;
+		allocator = new SliceAllocator(capacityVertices);
+		capacityBytes = capacityVertices * format.vertexStrideBytes;
+		glBufferId = createBuffer(capacityBytes);
+	}
+
+	private static int createBuffer(int bytes) {
+		final int result = GlBufferAllocator.claimBuffer(bytes);
+		BindStateManager.bind(result);
+		GL21.glBufferData(GL21.GL_ARRAY_BUFFER, bytes, GL21.GL_STATIC_DRAW);
+		BindStateManager.unbind();
+		return result;
+	}
+
+	/** Null if no free block is large enough. */
+	SliceAllocator.Slice allocate(int vertexCount) {
+		return allocator.allocate(vertexCount);
+	}
+
+	/** Uploads from position to limit of the buffer into the slice. */
+	void upload(SliceAllocator.Slice slice, ByteBuffer buffer) {
+		assert buffer.remaining() <= slice.length() * format.vertexStrideBytes;
+		BindStateManager.bind(glBufferId);
+		GL21.glBufferSubData(GL21.GL_ARRAY_BUFFER, (long) slice.offset() * format.vertexStrideBytes, buffer);
+		BindStateManager.unbind();
+	}
+
+	void release(SliceAllocator.Slice slice) {
+		allocator.release(slice);
+	}
+
+	boolean isEmpty() {
+		return allocator.isEmpty();
+	}
+
+	int capacity() {
+		return allocator.capacity();
+	}
+
+	int used() {
+		return allocator.used();
+	}
+
+	int free() {
+		return allocator.free();
+	}
+
+	int largestFree() {
+		return allocator.largestFree();
+	}
+
+	int capacityBytes() {
+		return capacityBytes;
+	}
+
+	@Override
+	public CanvasVertexFormat format() {
+		return format;
+	}
+
+	@Override
+	public void bind() {
+		if (CanvasGlHelper.isVaoEnabled()) {
+			if (vaoBufferId == 0) {
+				vaoBufferId = VboBuffer.createVao(glBufferId, format);
+			} else {
+				CanvasGlHelper.glBindVertexArray(vaoBufferId);
+			}
+		} else {
+			VboBuffer.bindVbo(glBufferId, format);
+		}
+	}
+
+	/**
+	 * Copies live slices to the start of a new buffer and deletes the old one, leaving
+	 * all free space in one block. Slice offsets change, so callers must not cache them
+	 * across frames. Requires {@link CanvasGlHelper#isCopyBufferEnabled()}.
+	 */
+	void compact() {
+		assert RenderSystem.isOnRenderThread();
+		assert CanvasGlHelper.isCopyBufferEnabled();
+
+		final int oldBufferId = glBufferId;
+		final int newBufferId = createBuffer(capacityBytes);
+		final int stride = format.vertexStrideBytes;
+
+		GL21.glBindBuffer(GL31.GL_COPY_READ_BUFFER, oldBufferId);
+		GL21.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, newBufferId);
+		allocator.compact((from, to, length) -> CanvasGlHelper.glCopyBufferSubData((long) from * stride, (long) to * stride, (long) length * stride));
+		GL21.glBindBuffer(GL31.GL_COPY_READ_BUFFER, 0);
+		GL21.glBindBuffer(GL31.GL_COPY_WRITE_BUFFER, 0);
+
+		// VAO may have bound state for the buffer about to be deleted
+		if (CanvasGlHelper.isVaoEnabled()) {
+			CanvasGlHelper.glBindVertexArray(0);
+		}
+
+		GlBufferAllocator.releaseBuffer(oldBufferId, capacityBytes);
+		glBufferId = newBufferId;
+		releaseVao();
+	}
+
+	void close() {
+		assert RenderSystem.isOnRenderThread();
+
+		if (glBufferId != 0) {
+			// VAO may have bound state for the buffer about to be deleted
+			if (CanvasGlHelper.isVaoEnabled()) {
+				CanvasGlHelper.glBindVertexArray(0);
+			}
+
+			BindStateManager.unbind();
+			GlBufferAllocator.releaseBuffer(glBufferId, capacityBytes);
+			glBufferId = 0;
+			releaseVao();
+		}
+	}
+
+	private void releaseVao() {
+		if (vaoBufferId != 0) {
+			VaoAllocator.releaseVertexArray(vaoBufferId);
+			vaoBufferId = 0;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.buffer;
+
+import com.mojang.blaze3d.systems.RenderSystem;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import grondag.canvas.buffer.format.CanvasVertexFormat;
+import grondag.canvas.varia.CanvasGlHelper;
+
+/**
+ * Finds space for terrain VBOs in shared {@link VboArena} buffers, one pool per vertex format.
+ * An arena is compacted when it has enough free space but no single block large enough,
+ * and is deleted when its last slice is released. Render thread only.
+ */
+public class VboArenaAllocator {
+	/** Minimum arena size. Regions larger than this get an arena of their own size. */
+	private static final int ARENA_BYTES = 0x400000;
+	private static final ObjectArrayList<VboArena> arenas = new ObjectArrayList<>();
+	private static int compactionCount = 0;
+
+	/** Returns an arena with a free block of at least the given size, creating one if needed. */
+	static VboArena arenaFor(CanvasVertexFormat format, int vertexCount) {
+		assert RenderSystem.isOnRenderThread();
+
+		final int limit = arenas.size();
+
+		for (int i = 0; i < limit; ++i) {
+			final VboArena arena = arenas.get(i);
+
+			if (arena.format == format && arena.largestFree() >= vertexCount) {
+				return arena;
+			}
+		}
+
+		if (CanvasGlHelper.isCopyBufferEnabled()) {
+			for (int i = 0; i < limit; ++i) {
+				final VboArena arena = arenas.get(i);
+
+				if (arena.format == format && arena.free() >= vertexCount) {
+					arena.compact();
+					++compactionCount;
+					return arena;
+				}
+			}
+		}
+
+		final VboArena result = new VboArena(format, Math.max(ARENA_BYTES / format.vertexStrideBytes, vertexCount));
+		arenas.add(result);
+		return result;
+	}
+
+	static void release(VboArena arena, SliceAllocator.Slice slice) {
+		assert RenderSystem.isOnRenderThread();
+
+		arena.release(slice);
+
+		if (arena.isEmpty()) {
+			arena.close();
+			arenas.remove(arena);
+		}
+	}
+
+	public static String debugString() {
+		long capacityBytes = 0;
+		long usedBytes = 0;
+		final int limit = arenas.size();
+
+		for (int i = 0; i < limit; ++i) {
+			final VboArena arena = arenas.get(i);
+			capacityBytes += arena.capacityBytes();
+			usedBytes += (long) arena.used() * arena.format.vertexStrideBytes;
+		}
+
+		final int pct = capacityBytes == 0 ? 0 : (int) (usedBytes * 100 / capacityBytes);
+		return String.format("Terrain arenas: %03d @ %05dMB %d%% used, %d compactions", limit, capacityBytes / 0x100000, pct, compactionCount);
+	}
+}
@@ -24,14 +24,12 @@ import com.mojang.blaze3d.systems.RenderSystem;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL21;
 
-import net.minecraft.client.render.VertexFormatElement;
-
 import grondag.canvas.CanvasMod;
 import grondag.canvas.Configurator;
 import grondag.canvas.buffer.format.CanvasVertexFormat;
 import grondag.canvas.varia.CanvasGlHelper;
 
-public class VboBuffer {
+public class VboBuffer implements VertexBinding {
 	private static final int VAO_NONE = -1;
 	public final CanvasVertexFormat format;
 	private final int byteCount;
@@ -43,12 +41,25 @@ public class VboBuffer {
 	 * VAO Buffer name if enabled and initialized.
 	 */
 	private int vaoBufferId = VAO_NONE;
+	/** True if content lives in a shared {@link VboArena} instead of a buffer of its own. */
+	private final boolean useArena;
+	private VboArena arena;
+	private SliceAllocator.Slice slice;
 
 	public VboBuffer(int bytes, CanvasVertexFormat format) {
+		this(bytes, format, false);
+	}
+
+	/**
+	 * @param useArena true to upload into a shared arena buffer. Bytes must be a multiple of the vertex stride.
+	 */
+	public VboBuffer(int bytes, CanvasVertexFormat format, boolean useArena) {
+		assert !useArena || bytes % format.vertexStrideBytes == 0;
 		uploadBuffer = TransferBufferAllocator.claim(bytes);
 		this.format = format;
+		this.useArena = useArena;
 		byteCount = bytes;
-		vertexBinder = CanvasGlHelper.isVaoEnabled() ? this::bindVao : this::bindVbo;
+		vertexBinder = useArena ? this::bindArena : CanvasGlHelper.isVaoEnabled() ? this::bindVao : this::bindVbo;
 	}
 
 	public static void unbind() {
@@ -62,14 +73,46 @@ public class VboBuffer {
 
 		if (uploadBuffer != null) {
 			uploadBuffer.rewind();
-			BindStateManager.bind(glBufferId());
-			GL21.glBufferData(GL21.GL_ARRAY_BUFFER, uploadBuffer, GL21.GL_STATIC_DRAW);
-			BindStateManager.unbind();
+
+			if (useArena) {
+				uploadBuffer.limit(byteCount);
+				final int vertexCount = byteCount / format.vertexStrideBytes;
+				arena = VboArenaAllocator.arenaFor(format, vertexCount);
+				slice = arena.allocate(vertexCount);
+				arena.upload(slice, uploadBuffer);
+			} else {
+				BindStateManager.bind(glBufferId());
+				GL21.glBufferData(GL21.GL_ARRAY_BUFFER, uploadBuffer, GL21.GL_STATIC_DRAW);
+				BindStateManager.unbind();
+			}
+
 			TransferBufferAllocator.release(uploadBuffer);
 			this.uploadBuffer = null;
 		}
 	}
 
+	/**
+	 * First vertex of this buffer's content in the bound GL buffer - add to vertex offsets in draw calls.
+	 * Zero unless in an arena. Can change between frames when the arena is compacted.
+	 */
+	public int baseVertex() {
+		final SliceAllocator.Slice slice = this.slice;
+		return slice == null ? 0 : slice.offset();
+	}
+
+	/**
+	 * Buffers with the same binding share GL vertex state, so consecutive
+	 * draws from them need only one call to {@link #bind()}.
+	 */
+	public VertexBinding binding() {
+		return useArena ? arena : this;
+	}
+
+	@Override
+	public CanvasVertexFormat format() {
+		return format;
+	}
+
 	private int glBufferId() {
 		int result = glBufferId;
 
@@ -85,52 +128,60 @@ public class VboBuffer {
 		return result;
 	}
 
+	@Override
 	public void bind() {
 		assert RenderSystem.isOnRenderThread();
 		vertexBinder.bind();
 	}
 
 	private void bindVao() {
-		final CanvasVertexFormat format = this.format;
-
 		if (vaoBufferId == VAO_NONE) {
-			// Important this happens BEFORE anything that could affect vertex state
-			CanvasGlHelper.glBindVertexArray(0);
-
-			BindStateManager.bind(glBufferId());
-
-			vaoBufferId = VaoAllocator.claimVertexArray();
-			CanvasGlHelper.glBindVertexArray(vaoBufferId);
-
-			if (Configurator.logGlStateChanges) {
-				CanvasMod.LOG.info(String.format("GlState: GlStateManager.enableClientState(%d)", GL11.GL_VERTEX_ARRAY));
-			}
-
-			GlStateManager.enableClientState(GL11.GL_VERTEX_ARRAY);
-
-			if (Configurator.logGlStateChanges) {
-				CanvasMod.LOG.info(String.format("GlState: GlStateManager.vertexPointer(%d, %d, %d, %d)", 3, VertexFormatElement.Format.FLOAT.getGlId(), format.vertexStrideBytes, 0));
-			}
-
-			GlStateManager.vertexPointer(3, VertexFormatElement.Format.FLOAT.getGlId(), format.vertexStrideBytes, 0);
-
-			CanvasGlHelper.enableAttributesVao(format.attributeCount);
-			format.bindAttributeLocations(0);
+			vaoBufferId = createVao(glBufferId(), format);
 		} else {
 			CanvasGlHelper.glBindVertexArray(vaoBufferId);
 		}
 	}
 
 	private void bindVbo() {
-		final CanvasVertexFormat format = this.format;
-		BindStateManager.bind(glBufferId());
+		bindVbo(glBufferId(), format);
+	}
+
+	private void bindArena() {
+		assert arena != null : "arena buffer bound before upload";
+		arena.bind();
+	}
+
+	/**
+	 * Claims a VAO, binds it, and points it to the given buffer.
+	 *
+	 * @return VAO name
+	 */
+	static int createVao(int glBufferId, CanvasVertexFormat format) {
+		// Important this happens BEFORE anything that could affect vertex state
+		CanvasGlHelper.glBindVertexArray(0);
+
+		BindStateManager.bind(glBufferId);
+
+		final int vaoBufferId = VaoAllocator.claimVertexArray();
+		CanvasGlHelper.glBindVertexArray(vaoBufferId);
 
 		if (Configurator.logGlStateChanges) {
-			CanvasMod.LOG.info(String.format("GlState: GlStateManager.vertexPointer(%d, %d, %d, %d)", 3, VertexFormatElement.Format.FLOAT.getGlId(), format.vertexStrideBytes, 0));
+			CanvasMod.LOG.info(String.format("GlState: GlStateManager.enableClientState(%d)", GL11.GL_VERTEX_ARRAY));
 		}
 
 		GlStateManager.enableClientState(GL11.GL_VERTEX_ARRAY);
-		GlStateManager.vertexPointer(3, VertexFormatElement.Format.FLOAT.getGlId(), format.vertexStrideBytes, 0);
+
+		format.vertexPointer(0);
+
+		CanvasGlHelper.enableAttributesVao(format.attributeCount);
+		format.bindAttributeLocations(0);
+		return vaoBufferId;
+	}
+
+	static void bindVbo(int glBufferId, CanvasVertexFormat format) {
+		BindStateManager.bind(glBufferId);
+		GlStateManager.enableClientState(GL11.GL_VERTEX_ARRAY);
+		format.vertexPointer(0);
 		format.enableAndBindAttributes(0);
 	}
 
@@ -168,6 +219,12 @@ public class VboBuffer {
 				VaoAllocator.releaseVertexArray(vaoBufferId);
 				vaoBufferId = VAO_NONE;
 			}
+
+			if (slice != null) {
+				VboArenaAllocator.release(arena, slice);
+				slice = null;
+				arena = null;
+			}
 		}
 	}
 
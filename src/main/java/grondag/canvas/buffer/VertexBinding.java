@@ -0,0 +1,29 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.buffer;
+
+import grondag.canvas.buffer.format.CanvasVertexFormat;
+
+/**
+ * GL vertex state for drawing from a buffer. Buffers in the same arena return the same
+ * binding, so draws from them need only one bind.
+ */
+public interface VertexBinding {
+	CanvasVertexFormat format();
+
+	void bind();
+}
@@ -0,0 +1,225 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.buffer.encoding;
+
+import static grondag.canvas.buffer.format.CanvasVertexFormats.MATERIAL_COLOR_INDEX;
+import static grondag.canvas.buffer.format.CanvasVertexFormats.MATERIAL_LIGHT_INDEX;
+import static grondag.canvas.buffer.format.CanvasVertexFormats.MATERIAL_MATERIAL_INDEX;
+import static grondag.canvas.buffer.format.CanvasVertexFormats.MATERIAL_NORMAL_INDEX;
+import static grondag.canvas.buffer.format.CanvasVertexFormats.MATERIAL_QUAD_STRIDE;
+import static grondag.canvas.buffer.format.CanvasVertexFormats.MATERIAL_TEXTURE_INDEX;
+import static grondag.canvas.buffer.format.CanvasVertexFormats.MATERIAL_VERTEX_STRIDE;
+
+import java.nio.IntBuffer;
+import java.util.Arrays;
+
+/**
+ * Converts vertices in the material vertex format to the compact terrain format,
+ * {@link grondag.canvas.buffer.format.CanvasVertexFormats#COMPACT_MATERIAL}.
+ *
+ * <p>Position is three signed 16-bit fixed-point values relative to the region or render cube
+ * origin. The fourth short holds the normal, octahedron-packed into two bytes. Color, texture,
+ * material and light are copied as-is. Shader flags are not encoded.  Quads in one collector
+ * can have different flags - cutout and solid quads share a collector, for example - so buffers
+ * are written in groups of quads with the same flags and each group is drawn with its flags
+ * in a uniform.  See {@link #shaderFlagSets} and {@link #shaderFlagRunEnd}.
+ *
+ * <p>Decoding here must match {@code _cv_compactPosition} and {@code _cv_compactNormal} in vertex.glsl.
+ */
+public final class CompactVertexEncoder {
+	private CompactVertexEncoder() { }
+
+	/** Fixed-point steps per block. */
+	public static final int POSITION_SCALE = 128;
+
+	/** Coordinate encoded as zero, so that the signed range covers a 256-block render cube with margin on both sides. */
+	public static final float POSITION_OFFSET = 128;
+
+	public static final float MIN_POSITION = POSITION_OFFSET + (float) Short.MIN_VALUE / POSITION_SCALE;
+	public static final float MAX_POSITION = POSITION_OFFSET + (float) Short.MAX_VALUE / POSITION_SCALE;
+
+	/** Vertex stride in the compact format, in integers. */
+	public static final int VERTEX_STRIDE = 6;
+
+	/** Number of distinct shader flag values. */
+	public static final int SHADER_FLAG_VALUES = 256;
+
+	/** Shader flags of the quad starting at the given index of vertex data in the material format. */
+	public static int shaderFlags(int[] source, int quadIndex) {
+		return source[quadIndex + MATERIAL_NORMAL_INDEX] >>> 24;
+	}
+
+	/**
+	 * Finds the shader flags used by quads in vertex data in the material format.
+	 * Both arrays need room for {@link #SHADER_FLAG_VALUES} entries.
+	 *
+	 * @param limit end of vertex data, in integers
+	 * @param flags receives each distinct value, in ascending order
+	 * @param vertexCounts receives the number of vertices with each value in {@code flags}
+	 * @return number of distinct values
+	 */
+	public static int shaderFlagSets(int[] source, int limit, int[] flags, int[] vertexCounts) {
+		Arrays.fill(vertexCounts, 0, SHADER_FLAG_VALUES, 0);
+
+		for (int i = 0; i < limit; i += MATERIAL_QUAD_STRIDE) {
+			vertexCounts[shaderFlags(source, i)] += 4;
+		}
+
+		int count = 0;
+
+		// compacted in place - the write index never passes the read index
+		for (int f = 0; f < SHADER_FLAG_VALUES; ++f) {
+			final int vertexCount = vertexCounts[f];
+
+			if (vertexCount != 0) {
+				flags[count] = f;
+				vertexCounts[count++] = vertexCount;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * For sorted quads, which must stay in order.
+	 *
+	 * @return end of the run of quads starting at {@code start} that share shader flags, in integers
+	 */
+	public static int shaderFlagRunEnd(int[] source, int start, int limit) {
+		final int flags = shaderFlags(source, start);
+		int end = start + MATERIAL_QUAD_STRIDE;
+
+		while (end < limit && shaderFlags(source, end) == flags) {
+			end += MATERIAL_QUAD_STRIDE;
+		}
+
+		return end;
+	}
+
+	/**
+	 * Encodes the quads between {@code start} and {@code end} that have the given shader flags, in order.
+	 *
+	 * @param work scratch array with room for one encoded quad
+	 */
+	public static void encodeQuads(int[] source, int start, int end, int shaderFlags, int[] work, IntBuffer target) {
+		for (int i = start; i < end; i += MATERIAL_QUAD_STRIDE) {
+			if (shaderFlags(source, i) == shaderFlags) {
+				encodeQuad(source, i, work, target);
+			}
+		}
+	}
+
+	/**
+	 * Encodes the quad starting at {@code index} to the target buffer.
+	 *
+	 * @param work scratch array with room for one encoded quad
+	 */
+	public static void encodeQuad(int[] source, int index, int[] work, IntBuffer target) {
+		encodeVertex(source, index, work, 0);
+		encodeVertex(source, index + MATERIAL_VERTEX_STRIDE, work, VERTEX_STRIDE);
+		encodeVertex(source, index + MATERIAL_VERTEX_STRIDE * 2, work, VERTEX_STRIDE * 2);
+		encodeVertex(source, index + MATERIAL_VERTEX_STRIDE * 3, work, VERTEX_STRIDE * 3);
+		target.put(work, 0, VERTEX_STRIDE * 4);
+	}
+
+	/** Coordinates outside {@link #MIN_POSITION} - {@link #MAX_POSITION} are clamped. */
+	public static int packPosition(float coord) {
+		final int result = Math.round((coord - POSITION_OFFSET) * POSITION_SCALE);
+		return result < Short.MIN_VALUE ? Short.MIN_VALUE : result > Short.MAX_VALUE ? Short.MAX_VALUE : result;
+	}
+
+	public static float unpackPosition(int packed) {
+		return (float) (short) packed / POSITION_SCALE + POSITION_OFFSET;
+	}
+
+	/**
+	 * Converts the three unsigned component bytes of a packed material normal
+	 * to two octahedral bytes, u in the low byte. High bits of the input are ignored.
+	 */
+	public static int packNormal(int packedNormal) {
+		final float x = ((packedNormal & 0xFF) - 127f) / 127f;
+		final float y = (((packedNormal >> 8) & 0xFF) - 127f) / 127f;
+		final float z = (((packedNormal >> 16) & 0xFF) - 127f) / 127f;
+		final float sum = Math.abs(x) + Math.abs(y) + Math.abs(z);
+
+		if (sum == 0) {
+			// degenerate input - encode as +Z
+			return quantize(0) | (quantize(0) << 8);
+		}
+
+		float u = x / sum;
+		float v = y / sum;
+
+		if (z < 0) {
+			final float ou = (1 - Math.abs(v)) * signNotZero(u);
+			v = (1 - Math.abs(u)) * signNotZero(v);
+			u = ou;
+		}
+
+		return quantize(u) | (quantize(v) << 8);
+	}
+
+	/**
+	 * Decodes a normal packed by {@link #packNormal(int)} into the given array, same as the shader.
+	 *
+	 * @return the array, for convenience
+	 */
+	public static float[] unpackNormal(int octNormal, float[] result) {
+		final float u = ((octNormal & 0xFF) - 127f) / 127f;
+		final float v = (((octNormal >> 8) & 0xFF) - 127f) / 127f;
+		float x = u;
+		float y = v;
+		final float z = 1 - Math.abs(u) - Math.abs(v);
+
+		if (z < 0) {
+			x = (1 - Math.abs(v)) * signNotZero(u);
+			y = (1 - Math.abs(u)) * signNotZero(v);
+		}
+
+		final float len = (float) Math.sqrt(x * x + y * y + z * z);
+		result[0] = x / len;
+		result[1] = y / len;
+		result[2] = z / len;
+		return result;
+	}
+
+	/**
+	 * Encodes one vertex in the material vertex format as {@link #VERTEX_STRIDE} integers.
+	 * Shader flags in the high byte of the source normal are dropped - callers group quads by
+	 * {@link #shaderFlags} so that each draw has a single set.
+	 */
+	public static void encodeVertex(int[] source, int sourceIndex, int[] target, int targetIndex) {
+		final int x = packPosition(Float.intBitsToFloat(source[sourceIndex]));
+		final int y = packPosition(Float.intBitsToFloat(source[sourceIndex + 1]));
+		final int z = packPosition(Float.intBitsToFloat(source[sourceIndex + 2]));
+
+		target[targetIndex] = (x & 0xFFFF) | (y << 16);
+		target[targetIndex + 1] = (z & 0xFFFF) | (packNormal(source[sourceIndex + MATERIAL_NORMAL_INDEX]) << 16);
+		target[targetIndex + 2] = source[sourceIndex + MATERIAL_COLOR_INDEX];
+		target[targetIndex + 3] = source[sourceIndex + MATERIAL_TEXTURE_INDEX];
+		target[targetIndex + 4] = source[sourceIndex + MATERIAL_MATERIAL_INDEX];
+		target[targetIndex + 5] = source[sourceIndex + MATERIAL_LIGHT_INDEX];
+	}
+
+	private static int quantize(float c) {
+		return Math.round(c * 127) + 127;
+	}
+
+	private static float signNotZero(float c) {
+		return c >= 0 ? 1 : -1;
+	}
+}
@@ -25,6 +25,7 @@ import grondag.canvas.apiimpl.mesh.MutableQuadViewImpl;
 import grondag.canvas.apiimpl.rendercontext.AbstractRenderContext;
 import grondag.canvas.apiimpl.util.ColorHelper;
 import grondag.canvas.apiimpl.util.NormalHelper;
+import grondag.canvas.buffer.format.CanvasVertexFormats;
 import grondag.canvas.material.state.RenderMaterialImpl;
 import grondag.canvas.mixinterface.Matrix3fExt;
 import grondag.canvas.mixinterface.Matrix4fExt;
@@ -103,6 +104,15 @@ public abstract class EncoderUtils {
 	}
 
 	public static void bufferQuadDirect(MutableQuadViewImpl quad, AbstractRenderContext context, VertexCollectorImpl buff) {
+		encodeQuadDirect(quad, context);
+		buff.add(context.appendData, CanvasVertexFormats.MATERIAL_QUAD_STRIDE);
+	}
+
+	/**
+	 * Encodes the quad into {@link AbstractRenderContext#appendData} in the material vertex
+	 * format without buffering it, for callers that inspect the result before adding it.
+	 */
+	public static void encodeQuadDirect(MutableQuadViewImpl quad, AbstractRenderContext context) {
 		final Matrix4fExt matrix = (Matrix4fExt) (Object) context.matrix();
 		final Matrix3fExt normalMatrix = context.normalMatrix();
 		final float[] aoData = quad.ao;
@@ -140,11 +150,7 @@ public abstract class EncoderUtils {
 			appendData[k++] = quad.spriteBufferU(i) | (quad.spriteBufferV(i) << 16);
 			appendData[k++] = spriteIdCoord;
 
-			final int packedLight = quad.lightmap(i);
-			final int blockLight = (packedLight & 0xFF);
-			final int skyLight = ((packedLight >> 16) & 0xFF);
-			final int ao = aoData == null ? 255 : (Math.round(aoData[i] * 255));
-			appendData[k++] = blockLight | (skyLight << 8) | (ao << 16);
+			appendData[k++] = encodeLight(quad.lightmap(i), aoData == null ? 1 : aoData[i]);
 
 			if (useNormals) {
 				final int p = quad.packedNormal(i);
@@ -157,8 +163,18 @@ public abstract class EncoderUtils {
 
 			appendData[k++] = transformedNormal | shaderFlags;
 		}
+	}
 
-		buff.add(appendData, k);
+	/**
+	 * Light element of the material vertex format: block light, sky light and AO, one byte each.
+	 *
+	 * @param packedLight lightmap with block light in the low bits and sky light at bit 16
+	 * @param ao from 0 to 1
+	 */
+	public static int encodeLight(int packedLight, float ao) {
+		final int blockLight = (packedLight & 0xFF);
+		final int skyLight = ((packedLight >> 16) & 0xFF);
+		return blockLight | (skyLight << 8) | (Math.round(ao * 255) << 16);
 	}
 
 	public static void applyBlockLighting(MutableQuadViewImpl quad, AbstractRenderContext context) {
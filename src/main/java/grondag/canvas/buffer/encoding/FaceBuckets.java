@@ -0,0 +1,187 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.buffer.encoding;
+
+/**
+ * Groups terrain quads by the axis they face, so that draws can skip faces that
+ * can't be seen from the camera - backface culling per region instead of per triangle.
+ *
+ * <p>Face indices match {@code Direction.ordinal()}, with {@link #UNASSIGNED} for quads
+ * that are not axis-aligned. A quad is assigned to a face only if all four vertices lie in
+ * one axis-aligned plane, and the side is taken from its winding, same as GL culling.
+ *
+ * <p>For each face, the plane nearest the side that can see it is kept. A face bucket can
+ * be skipped when the camera is behind that plane, because then it is behind every quad
+ * in the bucket. Positions are relative to the same origin as the vertex data.
+ */
+public final class FaceBuckets {
+	private FaceBuckets() { }
+
+	public static final int DOWN = 0;
+	public static final int UP = 1;
+	public static final int NORTH = 2;
+	public static final int SOUTH = 3;
+	public static final int WEST = 4;
+	public static final int EAST = 5;
+	public static final int UNASSIGNED = 6;
+	public static final int BUCKET_COUNT = 7;
+
+	/** All buckets visible. */
+	public static final int ALL = (1 << BUCKET_COUNT) - 1;
+
+	/**
+	 * Distance the camera must be behind a plane before faces are skipped.
+	 * Covers rounding in the compact vertex format.
+	 */
+	public static final float PLANE_MARGIN = 1f / 16f;
+
+	/** Index of the position component that is constant for quads with the given face: 0 for x. */
+	public static int axis(int face) {
+		return face < NORTH ? 1 : face < WEST ? 2 : 0;
+	}
+
+	/** True for faces with normals pointing toward positive coordinates. */
+	public static boolean isPositive(int face) {
+		return (face & 1) == 1;
+	}
+
+	/**
+	 * Finds the face bucket of the quad at the given index.
+	 *
+	 * @param vertexData vertex data with float positions in the first three integers of each vertex
+	 * @param index start of the quad
+	 * @param vertexStride vertex stride in integers
+	 */
+	public static int classify(int[] vertexData, int index, int vertexStride) {
+		final int x0 = vertexData[index];
+		final int y0 = vertexData[index + 1];
+		final int z0 = vertexData[index + 2];
+		int i = index + vertexStride;
+		final int x1 = vertexData[i];
+		final int y1 = vertexData[i + 1];
+		final int z1 = vertexData[i + 2];
+		i += vertexStride;
+		final int x2 = vertexData[i];
+		final int y2 = vertexData[i + 1];
+		final int z2 = vertexData[i + 2];
+		i += vertexStride;
+		final int x3 = vertexData[i];
+		final int y3 = vertexData[i + 1];
+		final int z3 = vertexData[i + 2];
+
+		final int axis;
+
+		// compare bits - planes of block models are exact
+		if (x0 == x1 && x0 == x2 && x0 == x3) {
+			axis = 0;
+		} else if (y0 == y1 && y0 == y2 && y0 == y3) {
+			axis = 1;
+		} else if (z0 == z1 && z0 == z2 && z0 == z3) {
+			axis = 2;
+		} else {
+			return UNASSIGNED;
+		}
+
+		// normal from the cross product of the diagonals, positive for counter-clockwise winding
+		final float ax = Float.intBitsToFloat(x2) - Float.intBitsToFloat(x0);
+		final float ay = Float.intBitsToFloat(y2) - Float.intBitsToFloat(y0);
+		final float az = Float.intBitsToFloat(z2) - Float.intBitsToFloat(z0);
+		final float bx = Float.intBitsToFloat(x3) - Float.intBitsToFloat(x1);
+		final float by = Float.intBitsToFloat(y3) - Float.intBitsToFloat(y1);
+		final float bz = Float.intBitsToFloat(z3) - Float.intBitsToFloat(z1);
+
+		switch (axis) {
+			case 0: {
+				final float n = ay * bz - az * by;
+				return n > 0 ? EAST : n < 0 ? WEST : UNASSIGNED;
+			}
+
+			case 1: {
+				final float n = az * bx - ax * bz;
+				return n > 0 ? UP : n < 0 ? DOWN : UNASSIGNED;
+			}
+
+			default: {
+				final float n = ax * by - ay * bx;
+				return n > 0 ? SOUTH : n < 0 ? NORTH : UNASSIGNED;
+			}
+		}
+	}
+
+	/** Prepares planes for {@link #addPlane(float[], int, float)}. Array has one entry per axis face. */
+	public static void clearPlanes(float[] planes) {
+		for (int face = 0; face < UNASSIGNED; ++face) {
+			planes[face] = isPositive(face) ? Float.POSITIVE_INFINITY : Float.NEGATIVE_INFINITY;
+		}
+	}
+
+	/** Keeps the plane that can be seen from the widest range of camera positions. */
+	public static void addPlane(float[] planes, int face, float coordinate) {
+		if (isPositive(face)) {
+			planes[face] = Math.min(planes[face], coordinate);
+		} else {
+			planes[face] = Math.max(planes[face], coordinate);
+		}
+	}
+
+	/**
+	 * Bit mask of buckets that may be visible from the given camera position.
+	 * {@link #UNASSIGNED} is always included.
+	 */
+	public static int visibleMask(float[] planes, float cameraX, float cameraY, float cameraZ) {
+		int result = 1 << UNASSIGNED;
+
+		if (cameraY < planes[DOWN] + PLANE_MARGIN) result |= 1 << DOWN;
+		if (cameraY > planes[UP] - PLANE_MARGIN) result |= 1 << UP;
+		if (cameraZ < planes[NORTH] + PLANE_MARGIN) result |= 1 << NORTH;
+		if (cameraZ > planes[SOUTH] - PLANE_MARGIN) result |= 1 << SOUTH;
+		if (cameraX < planes[WEST] + PLANE_MARGIN) result |= 1 << WEST;
+		if (cameraX > planes[EAST] - PLANE_MARGIN) result |= 1 << EAST;
+
+		return result;
+	}
+
+	/**
+	 * Finds vertex ranges for visible buckets stored in bucket order starting at first.
+	 * Adjacent visible buckets are merged. Output arrays need room for four ranges.
+	 *
+	 * @return number of ranges
+	 */
+	public static int selectRanges(int first, int[] bucketCounts, int visibleMask, int[] rangeFirsts, int[] rangeCounts) {
+		int rangeCount = 0;
+		int position = first;
+
+		for (int face = 0; face < BUCKET_COUNT; ++face) {
+			final int count = bucketCounts[face];
+
+			if (count != 0 && (visibleMask & (1 << face)) != 0) {
+				final int last = rangeCount - 1;
+
+				if (last >= 0 && rangeFirsts[last] + rangeCounts[last] == position) {
+					rangeCounts[last] += count;
+				} else {
+					rangeFirsts[rangeCount] = position;
+					rangeCounts[rangeCount++] = count;
+				}
+			}
+
+			position += count;
+		}
+
+		return rangeCount;
+	}
+}
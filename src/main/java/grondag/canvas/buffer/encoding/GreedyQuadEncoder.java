@@ -0,0 +1,316 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.buffer.encoding;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenCustomHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import net.fabricmc.fabric.api.renderer.v1.model.ModelHelper;
+
+import grondag.canvas.apiimpl.mesh.MutableQuadViewImpl;
+import grondag.canvas.buffer.format.CanvasVertexFormats;
+import grondag.canvas.material.state.RenderMaterialImpl;
+import grondag.canvas.mixinterface.Matrix4fExt;
+import grondag.canvas.terrain.util.GreedyMesher;
+
+/**
+ * Holds back terrain quads that cover a full block face with a single unrotated sprite
+ * and uniform color, light and normal, then emits them merged by {@link GreedyMesher}
+ * when the region is done.  Merged quads keep the sprite coordinates of a single block
+ * at their corners and carry the repeat counts, less one, in the unused top byte of the
+ * light element.  The material shader scales coordinates by the repeat counts and wraps
+ * them within the sprite when they are set.
+ *
+ * <p>Quads that don't qualify are buffered normally. If more than one quad lands on the
+ * same block face, the face is left unmerged so coplanar overlays keep matching geometry,
+ * and a face already held there is emitted before the quad that lands on it so the
+ * overlay still draws last.
+ */
+public class GreedyQuadEncoder {
+	private static final int STRIDE = CanvasVertexFormats.MATERIAL_VERTEX_STRIDE;
+
+	// template layout, per vertex after the face: corner u, corner v, color, uv, sprite, light, normal
+	static final int TEMPLATE_VERTEX_STRIDE = 7;
+	static final int TEMPLATE_LENGTH = 1 + TEMPLATE_VERTEX_STRIDE * 4;
+
+	@FunctionalInterface
+	interface QuadSink {
+		void accept(RenderMaterialImpl material, int[] data, int length);
+	}
+
+	private final GreedyMesher mesher = new GreedyMesher();
+	private final Object2IntOpenCustomHashMap<int[]> templateKeys = new Object2IntOpenCustomHashMap<>(IntArrays.HASH_STRATEGY);
+	private final ObjectArrayList<int[]> templates = new ObjectArrayList<>();
+	private final ObjectArrayList<RenderMaterialImpl> materials = new ObjectArrayList<>();
+	private final int[] emitData = new int[CanvasVertexFormats.MATERIAL_QUAD_STRIDE];
+	private final int[] template = new int[TEMPLATE_LENGTH];
+	private VertexCollectorList collectors;
+	private final QuadSink collectorSink = (material, data, length) -> collectors.get(material).add(data, length);
+	private QuadSink sink;
+	private float xOffset, yOffset, zOffset;
+	private boolean isActive = false;
+
+	/**
+	 * Starts collecting for a region.  Offsets are the model-space origin of the region -
+	 * quads whose transform differs from that plus the block position are never merged.
+	 */
+	public void prepare(float xModelOffset, float yModelOffset, float zModelOffset, VertexCollectorList collectors) {
+		this.collectors = collectors;
+		prepare(xModelOffset, yModelOffset, zModelOffset, collectorSink);
+	}
+
+	void prepare(float xModelOffset, float yModelOffset, float zModelOffset, QuadSink sink) {
+		xOffset = xModelOffset;
+		yOffset = yModelOffset;
+		zOffset = zModelOffset;
+		this.sink = sink;
+		isActive = true;
+	}
+
+	public boolean isActive() {
+		return isActive;
+	}
+
+	/**
+	 * Call with the quad already encoded in {@code appendData}. Block coordinates
+	 * are relative to the region origin.
+	 *
+	 * @return true if the quad was held back for merging and must not be buffered
+	 */
+	public boolean add(MutableQuadViewImpl quad, int[] appendData, Matrix4fExt matrix, int x, int y, int z) {
+		final int face = quad.cullFaceId();
+
+		if (face == ModelHelper.NULL_FACE_ID || !isUnitTranslation(matrix, x, y, z)) {
+			return false;
+		}
+
+		final RenderMaterialImpl mat = quad.material();
+
+		if (mat.sorted || quad.hasVertexNormals() || !captureTemplate(quad, appendData, face)) {
+			isolate(face, x, y, z);
+			return false;
+		}
+
+		return hold(template, mat, face, x, y, z);
+	}
+
+	/**
+	 * Holds back a quad described by a template in the layout filled by {@link #captureTemplate}.
+	 *
+	 * @return false if another face already landed on the block face, in which case
+	 * that face has been emitted and the quad must be buffered directly after it
+	 */
+	boolean hold(int[] template, RenderMaterialImpl mat, int face, int x, int y, int z) {
+		int key = templateKeys.getInt(template);
+
+		if (key == 0) {
+			final int[] copy = template.clone();
+			templates.add(copy);
+			materials.add(mat);
+			key = templates.size();
+			templateKeys.put(copy, key);
+		}
+
+		if (mesher.add(face, GreedyMesher.plane(face, x, y, z), GreedyMesher.u(face, x, y, z), GreedyMesher.v(face, x, y, z), key)) {
+			return true;
+		} else {
+			isolate(face, x, y, z);
+			return false;
+		}
+	}
+
+	/**
+	 * Keeps the block face unmerged for a quad that will be buffered directly.  A face held
+	 * there came first and is emitted now - otherwise it would be written after the quad
+	 * drawn over it and win the depth test, so overlays such as grass sides would lose their tint.
+	 */
+	void isolate(int face, int x, int y, int z) {
+		final int plane = GreedyMesher.plane(face, x, y, z);
+		final int u = GreedyMesher.u(face, x, y, z);
+		final int v = GreedyMesher.v(face, x, y, z);
+		final int key = mesher.remove(face, plane, u, v);
+		mesher.isolate(face, plane, u, v);
+
+		if (key != 0) {
+			emit(face, plane, u, v, 1, 1, key);
+		}
+	}
+
+	private boolean isUnitTranslation(Matrix4fExt matrix, int x, int y, int z) {
+		return matrix.a00() == 1 && matrix.a11() == 1 && matrix.a22() == 1
+			&& matrix.a01() == 0 && matrix.a02() == 0 && matrix.a10() == 0
+			&& matrix.a12() == 0 && matrix.a20() == 0 && matrix.a21() == 0
+			&& matrix.a03() == x + xOffset && matrix.a13() == y + yOffset && matrix.a23() == z + zOffset;
+	}
+
+	/**
+	 * Fills {@link #template} if the quad is a full block face with uniform attributes and a
+	 * full, axis-aligned sprite. Position and sprite coordinates are exact for these quads.
+	 */
+	private boolean captureTemplate(MutableQuadViewImpl quad, int[] appendData, int face) {
+		final int color = appendData[3];
+		final int light = appendData[6];
+		final int normal = appendData[7];
+		final boolean positive = (face & 1) == 1;
+		final int[] template = this.template;
+		template[0] = face;
+		int cornerMask = 0;
+
+		for (int i = 0; i < 4; ++i) {
+			final int k = i * STRIDE;
+
+			if (appendData[k + 3] != color || appendData[k + 6] != light || appendData[k + 7] != normal) {
+				return false;
+			}
+
+			final float px = quad.x(i);
+			final float py = quad.y(i);
+			final float pz = quad.z(i);
+			final float pu, pv, pPlane;
+
+			if (face < 2) {
+				pu = px;
+				pv = pz;
+				pPlane = py;
+			} else if (face < 4) {
+				pu = px;
+				pv = py;
+				pPlane = pz;
+			} else {
+				pu = pz;
+				pv = py;
+				pPlane = px;
+			}
+
+			if (pPlane != (positive ? 1 : 0) || (pu != 0 && pu != 1) || (pv != 0 && pv != 1)) {
+				return false;
+			}
+
+			final int uv = appendData[k + 4];
+			final int texU = uv & 0xFFFF;
+			final int texV = uv >>> 16;
+
+			if ((texU != 0 && texU != 0xFFFF) || (texV != 0 && texV != 0xFFFF)) {
+				return false;
+			}
+
+			final int cornerU = (int) pu;
+			final int cornerV = (int) pv;
+			cornerMask |= 1 << (cornerU | (cornerV << 1));
+
+			final int t = 1 + i * TEMPLATE_VERTEX_STRIDE;
+			template[t] = cornerU;
+			template[t + 1] = cornerV;
+			template[t + 2] = color;
+			template[t + 3] = uv;
+			template[t + 4] = appendData[k + 5];
+			template[t + 5] = light;
+			template[t + 6] = normal;
+		}
+
+		return cornerMask == 0xF && spriteAxis(template) != 0;
+	}
+
+	/**
+	 * @return 1 if sprite u follows the mesher u axis and sprite v follows v,
+	 * -1 if they are swapped, 0 if the sprite is mirrored onto a single axis
+	 */
+	private static int spriteAxis(int[] template) {
+		final int cornerU0 = template[1];
+		final int cornerV0 = template[2];
+		final int uv0 = template[4];
+		boolean uFollowsU = true;
+		boolean uFollowsV = true;
+		boolean vFollowsU = true;
+		boolean vFollowsV = true;
+
+		// a sprite coordinate follows a corner axis if it changes exactly when that corner coordinate changes
+		for (int i = 1; i < 4; ++i) {
+			final int t = 1 + i * TEMPLATE_VERTEX_STRIDE;
+			final boolean sameCornerU = template[t] == cornerU0;
+			final boolean sameCornerV = template[t + 1] == cornerV0;
+			final boolean sameTexU = (template[t + 3] & 0xFFFF) == (uv0 & 0xFFFF);
+			final boolean sameTexV = (template[t + 3] >>> 16) == (uv0 >>> 16);
+			uFollowsU &= sameCornerU == sameTexU;
+			uFollowsV &= sameCornerV == sameTexU;
+			vFollowsU &= sameCornerU == sameTexV;
+			vFollowsV &= sameCornerV == sameTexV;
+		}
+
+		if (uFollowsU && vFollowsV) {
+			return 1;
+		} else if (uFollowsV && vFollowsU) {
+			return -1;
+		} else {
+			return 0;
+		}
+	}
+
+	/** Emits merged quads to the collectors given at prepare and resets for the next region. */
+	public void flush() {
+		mesher.mesh(this::emit);
+		templateKeys.clear();
+		templates.clear();
+		materials.clear();
+		collectors = null;
+		sink = null;
+		isActive = false;
+	}
+
+	private void emit(int face, int plane, int u0, int v0, int width, int height, int key) {
+		final int[] template = templates.get(key - 1);
+		final int[] data = emitData;
+		final boolean swapped = spriteAxis(template) < 0;
+		final int uRepeat = swapped ? height : width;
+		final int vRepeat = swapped ? width : height;
+		final int repeat = (((uRepeat - 1) << 4) | (vRepeat - 1)) << 24;
+		int k = 0;
+
+		for (int i = 0; i < 4; ++i) {
+			final int t = 1 + i * TEMPLATE_VERTEX_STRIDE;
+			final float u = u0 + template[t] * width;
+			final float v = v0 + template[t + 1] * height;
+			final float x, y, z;
+
+			if (face < 2) {
+				x = u;
+				y = plane;
+				z = v;
+			} else if (face < 4) {
+				x = u;
+				y = v;
+				z = plane;
+			} else {
+				x = plane;
+				y = v;
+				z = u;
+			}
+
+			data[k++] = Float.floatToRawIntBits(x + xOffset);
+			data[k++] = Float.floatToRawIntBits(y + yOffset);
+			data[k++] = Float.floatToRawIntBits(z + zOffset);
+			data[k++] = template[t + 2];
+			data[k++] = template[t + 3];
+			data[k++] = template[t + 4];
+			data[k++] = template[t + 5] | repeat;
+			data[k++] = template[t + 6];
+		}
+
+		sink.accept(materials.get(key - 1), data, k);
+	}
+}
@@ -16,10 +16,14 @@
 
 package grondag.canvas.buffer.encoding;
 
+import static grondag.canvas.buffer.format.CanvasVertexFormats.MATERIAL_LIGHT_INDEX;
 import static grondag.canvas.buffer.format.CanvasVertexFormats.MATERIAL_QUAD_STRIDE;
+import static grondag.canvas.buffer.format.CanvasVertexFormats.MATERIAL_VERTEX_STRIDE;
 
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
 
 import com.mojang.blaze3d.platform.GlStateManager;
 import it.unimi.dsi.fastutil.Swapper;
@@ -31,6 +35,7 @@ import net.minecraft.util.math.MathHelper;
 
 import grondag.canvas.buffer.TransferBufferAllocator;
 import grondag.canvas.buffer.format.CanvasVertexFormats;
+import grondag.canvas.light.RelightRecipes;
 import grondag.canvas.material.state.RenderMaterialImpl;
 import grondag.canvas.material.state.RenderState;
 
@@ -190,10 +195,131 @@ public class VertexCollectorImpl extends AbstractVertexCollector {
 		return this;
 	}
 
+	/**
+	 * Replaces block and sky light of vertex data loaded with {@link #loadState(RenderMaterialImpl, int[])}.
+	 * Keys must be in vertex order.
+	 */
+	public void relight(RelightRecipes evaluator, int[] recipes, int[] keys, IntUnaryOperator brightness) {
+		assert keys.length * MATERIAL_VERTEX_STRIDE == integerSize;
+		evaluator.patch(recipes, keys, vertexData, MATERIAL_VERTEX_STRIDE, MATERIAL_LIGHT_INDEX, brightness);
+	}
+
 	public void toBuffer(IntBuffer intBuffer) {
 		intBuffer.put(vertexData, 0, integerSize);
 	}
 
+	/** Shader flag filter that matches all quads. */
+	public static final int ANY_SHADER_FLAGS = -1;
+
+	private final int[] compactQuad = new int[CanvasVertexFormats.COMPACT_QUAD_STRIDE];
+	private int[] shaderFlagSets;
+	private int[] shaderFlagVertexCounts;
+
+	/**
+	 * Finds the distinct shader flags of quads in this collector, for formats that don't carry them per vertex.
+	 * Values and vertex counts are then available from {@link #shaderFlagSet(int)} and {@link #shaderFlagVertexCount(int)}.
+	 *
+	 * @return number of distinct values
+	 */
+	public int findShaderFlagSets() {
+		if (shaderFlagSets == null) {
+			shaderFlagSets = new int[CompactVertexEncoder.SHADER_FLAG_VALUES];
+			shaderFlagVertexCounts = new int[CompactVertexEncoder.SHADER_FLAG_VALUES];
+		}
+
+		return CompactVertexEncoder.shaderFlagSets(vertexData, integerSize, shaderFlagSets, shaderFlagVertexCounts);
+	}
+
+	public int shaderFlagSet(int index) {
+		return shaderFlagSets[index];
+	}
+
+	public int shaderFlagVertexCount(int index) {
+		return shaderFlagVertexCounts[index];
+	}
+
+	/** Shader flags of the quad starting at the given integer index. */
+	public int shaderFlags(int quadIndex) {
+		return CompactVertexEncoder.shaderFlags(vertexData, quadIndex);
+	}
+
+	/** Integer index after the run of quads starting at the given index that share shader flags. */
+	public int shaderFlagRunEnd(int quadIndex) {
+		return CompactVertexEncoder.shaderFlagRunEnd(vertexData, quadIndex, integerSize);
+	}
+
+	/**
+	 * Writes quads in {@link CanvasVertexFormats#COMPACT_MATERIAL} - for terrain buffers.
+	 * Vertex data stays in the material format so that it can still be sorted and relit.
+	 *
+	 * @param start first integer index to write
+	 * @param end integer index after the last quad to write
+	 * @param shaderFlags only quads with these flags are written
+	 */
+	public void toCompactBuffer(IntBuffer intBuffer, int start, int end, int shaderFlags) {
+		CompactVertexEncoder.encodeQuads(vertexData, start, end, shaderFlags, compactQuad, intBuffer);
+	}
+
+	private byte[] quadFaces = new byte[512];
+
+	/**
+	 * Writes contents grouped by {@link FaceBuckets} face, in bucket order, so that faces
+	 * not visible from the camera can be skipped when drawing. Vertex data is not reordered.
+	 *
+	 * @param compact true to write in {@link CanvasVertexFormats#COMPACT_MATERIAL}
+	 * @param shaderFlags only quads with these flags are written, or {@link #ANY_SHADER_FLAGS}
+	 * @param bucketCounts receives vertex count of each bucket
+	 * @param planes receives the planes of each axis face, see {@link FaceBuckets#addPlane(float[], int, float)}
+	 */
+	public void toBucketedBuffer(IntBuffer intBuffer, boolean compact, int shaderFlags, int[] bucketCounts, float[] planes) {
+		final int[] vertexData = this.vertexData;
+		final int quadCount = quadCount();
+
+		if (quadFaces.length < quadCount) {
+			quadFaces = new byte[MathHelper.smallestEncompassingPowerOfTwo(quadCount)];
+		}
+
+		final byte[] quadFaces = this.quadFaces;
+		Arrays.fill(bucketCounts, 0, FaceBuckets.BUCKET_COUNT, 0);
+		FaceBuckets.clearPlanes(planes);
+
+		for (int q = 0; q < quadCount; ++q) {
+			final int index = q * MATERIAL_QUAD_STRIDE;
+
+			if (shaderFlags != ANY_SHADER_FLAGS && CompactVertexEncoder.shaderFlags(vertexData, index) != shaderFlags) {
+				// matches no bucket
+				quadFaces[q] = -1;
+				continue;
+			}
+
+			final int face = FaceBuckets.classify(vertexData, index, MATERIAL_VERTEX_STRIDE);
+			quadFaces[q] = (byte) face;
+			bucketCounts[face] += 4;
+
+			if (face != FaceBuckets.UNASSIGNED) {
+				FaceBuckets.addPlane(planes, face, Float.intBitsToFloat(vertexData[index + FaceBuckets.axis(face)]));
+			}
+		}
+
+		for (int face = 0; face < FaceBuckets.BUCKET_COUNT; ++face) {
+			if (bucketCounts[face] == 0) {
+				continue;
+			}
+
+			for (int q = 0; q < quadCount; ++q) {
+				if (quadFaces[q] == face) {
+					final int index = q * MATERIAL_QUAD_STRIDE;
+
+					if (compact) {
+						CompactVertexEncoder.encodeQuad(vertexData, index, compactQuad, intBuffer);
+					} else {
+						intBuffer.put(vertexData, index, MATERIAL_QUAD_STRIDE);
+					}
+				}
+			}
+		}
+	}
+
 	public void drawAndClear() {
 		if (!isEmpty()) {
 			drawSingle();
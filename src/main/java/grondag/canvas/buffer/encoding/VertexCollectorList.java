@@ -21,6 +21,9 @@ import java.util.function.Predicate;
 
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 
+import grondag.canvas.Configurator;
+import grondag.canvas.buffer.format.CanvasVertexFormat;
+import grondag.canvas.buffer.format.CanvasVertexFormats;
 import grondag.canvas.material.state.RenderMaterialImpl;
 import grondag.canvas.material.state.RenderState;
 import grondag.canvas.terrain.render.UploadableChunk;
@@ -102,25 +105,26 @@ public class VertexCollectorList {
 		return pool.get(index);
 	}
 
-	public int totalBytes(boolean sorted) {
+	public int totalBytes(boolean sorted, CanvasVertexFormat format) {
 		final int limit = pool.size();
 		final ObjectArrayList<VertexCollectorImpl> pool = this.pool;
-		int intSize = 0;
+		int vertexCount = 0;
 
 		for (int i = 0; i < limit; i++) {
 			final VertexCollectorImpl collector = pool.get(i);
 
 			if (!collector.isEmpty() && collector.materialState.sorted == sorted) {
-				intSize += collector.integerSize();
+				vertexCount += collector.vertexCount();
 			}
 		}
 
-		return intSize * 4;
+		return vertexCount * format.vertexStrideBytes;
 	}
 
 	public UploadableChunk toUploadableChunk(boolean sorted) {
-		final int bytes = totalBytes(sorted);
-		return bytes == 0 ? UploadableChunk.EMPTY_UPLOADABLE : new UploadableChunk(this, sorted, bytes);
+		final CanvasVertexFormat format = Configurator.compactTerrainVertices ? CanvasVertexFormats.COMPACT_MATERIAL : CanvasVertexFormats.POSITION_COLOR_TEXTURE_MATERIAL_LIGHT_NORMAL;
+		final int bytes = totalBytes(sorted, format);
+		return bytes == 0 ? UploadableChunk.EMPTY_UPLOADABLE : new UploadableChunk(this, format, sorted, bytes);
 	}
 
 	/**
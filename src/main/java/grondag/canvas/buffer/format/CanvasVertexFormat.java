@@ -19,7 +19,6 @@ package grondag.canvas.buffer.format;
 import com.mojang.blaze3d.platform.GlStateManager;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL20;
-import org.lwjgl.opengl.GL21;
 
 import grondag.canvas.CanvasMod;
 import grondag.canvas.Configurator;
@@ -79,7 +78,7 @@ public class CanvasVertexFormat {
 
 			if (e.attributeName == null) {
 				assert i == 0 : "position element must be first";
-				GlStateManager.vertexPointer(3, GL21.GL_FLOAT, vertexStrideBytes, memPointer);
+				vertexPointer(memPointer);
 				GlStateManager.enableClientState(GL11.GL_VERTEX_ARRAY);
 			} else {
 				if (Configurator.logGlStateChanges) {
@@ -93,6 +92,20 @@ public class CanvasVertexFormat {
 		}
 	}
 
+	/**
+	 * Sets the standard (GL 2.1) vertex pointer from the position element, which is always first.
+	 */
+	public void vertexPointer(long pointer) {
+		final CanvasVertextFormatElement e = elements[0];
+		assert e.attributeName == null : "position element must be first";
+
+		if (Configurator.logGlStateChanges) {
+			CanvasMod.LOG.info(String.format("GlState: GlStateManager.vertexPointer(%d, %d, %d, %d)", e.elementCount, e.glConstant, vertexStrideBytes, pointer));
+		}
+
+		GlStateManager.vertexPointer(e.elementCount, e.glConstant, vertexStrideBytes, pointer);
+	}
+
 	public static void disableDirect() {
 		CanvasGlHelper.enableAttributes(0);
 		GlStateManager.enableClientState(GL11.GL_VERTEX_ARRAY);
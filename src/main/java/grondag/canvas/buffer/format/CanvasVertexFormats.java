@@ -23,6 +23,7 @@ import static grondag.canvas.buffer.format.CanvasVertextFormatElement.LIGHTMAPS_
 import static grondag.canvas.buffer.format.CanvasVertextFormatElement.MATERIAL_2US;
 import static grondag.canvas.buffer.format.CanvasVertextFormatElement.NORMAL_FLAGS_4UB;
 import static grondag.canvas.buffer.format.CanvasVertextFormatElement.POSITION_3F;
+import static grondag.canvas.buffer.format.CanvasVertextFormatElement.POSITION_4S;
 
 import grondag.canvas.CanvasMod;
 import grondag.canvas.Configurator;
@@ -47,6 +48,17 @@ public final class CanvasVertexFormats {
 	 */
 	public static final CanvasVertexFormat POSITION_COLOR_TEXTURE_MATERIAL_LIGHT_NORMAL = new CanvasVertexFormat(POSITION_3F, BASE_RGBA_4UB, BASE_TEX_2US, MATERIAL_2US, LIGHTMAPS_4UB, NORMAL_FLAGS_4UB);
 
+	/**
+	 * Compact format for terrain buffers, 24 bytes instead of 32.
+	 *
+	 * <p>Position is fixed point relative to the region or render cube origin and the
+	 * fourth position component holds an octahedral normal. Other attributes are the same
+	 * as the common format so attribute locations match. Shader flags are not included -
+	 * buffers are split into draws that share flags and those are passed as a uniform.
+	 * See {@link grondag.canvas.buffer.encoding.CompactVertexEncoder}.
+	 */
+	public static final CanvasVertexFormat COMPACT_MATERIAL = new CanvasVertexFormat(POSITION_4S, BASE_RGBA_4UB, BASE_TEX_2US, MATERIAL_2US, LIGHTMAPS_4UB);
+
 	public static final int MATERIAL_COLOR_INDEX = 3;
 	public static final int MATERIAL_TEXTURE_INDEX = 4;
 	public static final int MATERIAL_MATERIAL_INDEX = 5;
@@ -55,4 +67,7 @@ public final class CanvasVertexFormats {
 
 	public static final int MATERIAL_VERTEX_STRIDE = POSITION_COLOR_TEXTURE_MATERIAL_LIGHT_NORMAL.vertexStrideInts;
 	public static final int MATERIAL_QUAD_STRIDE = MATERIAL_VERTEX_STRIDE * 4;
+
+	public static final int COMPACT_VERTEX_STRIDE = COMPACT_MATERIAL.vertexStrideInts;
+	public static final int COMPACT_QUAD_STRIDE = COMPACT_VERTEX_STRIDE * 4;
 }
@@ -25,6 +25,13 @@ public class CanvasVertextFormatElement {
 	public static final CanvasVertextFormatElement POSITION_3F = new CanvasVertextFormatElement(
 		VertexFormatElement.Format.FLOAT, 3, null);
 
+	/**
+	 * Fixed-point position for compact terrain vertices. Fourth component is not
+	 * a coordinate - it carries the packed normal, see {@link grondag.canvas.buffer.encoding.CompactVertexEncoder}.
+	 */
+	public static final CanvasVertextFormatElement POSITION_4S = new CanvasVertextFormatElement(
+		VertexFormatElement.Format.SHORT, 4, null, false);
+
 	public static final CanvasVertextFormatElement BASE_RGBA_4UB = new CanvasVertextFormatElement(
 		VertexFormatElement.Format.UBYTE, 4, "in_color");
 
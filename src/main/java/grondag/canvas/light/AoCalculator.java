@@ -104,6 +104,18 @@ public abstract class AoCalculator {
 
 	protected abstract boolean isOpaque(int cacheIndex);
 
+	/**
+	 * Called for each vertex lit from the samples of a single face, with the model
+	 * light of the vertex before lighting. Used to record relight recipes.
+	 */
+	protected void onFaceLight(int vertexIndex, int modelLight, int[] samples, float[] w) { }
+
+	/** Called for each vertex lit from the brightness of a single cache index. */
+	protected void onFlatLight(int vertexIndex, int modelLight, int cacheIndex) { }
+
+	/** Called when a quad is lit in a way that can't be described by a relight recipe. */
+	protected void onComplexLight() { }
+
 	private boolean checkBlendDirty(int blendIndex) {
 		if (blendIndex < 64) {
 			final long mask = 1L << blendIndex;
@@ -216,14 +228,18 @@ public abstract class AoCalculator {
 
 	private void blockFace(MutableQuadViewImpl quad, boolean isOnLightFace) {
 		final int lightFace = quad.lightFaceId();
-		final AoFaceCalc faceData = gatherFace(lightFace, isOnLightFace).calc;
+		final AoFaceData fd = gatherFace(lightFace, isOnLightFace);
+		final AoFaceCalc faceData = fd.calc;
 		final AoFace face = AoFace.get(lightFace);
 		final WeightFunction wFunc = face.weightFunc;
 		final float[] w = this.w;
 		final float[] ao = quad.ao;
 
+		final int[] samples = fd.samples;
+
 		for (int i = 0; i < 4; i++) {
 			wFunc.apply(quad, i, w);
+			onFaceLight(i, quad.lightmap(i), samples, w);
 			quad.lightmap(i, ColorHelper.maxBrightness(quad.lightmap(i), faceData.weightedCombinedLight(w)));
 			ao[i] = faceData.weigtedAo(w) * DIVIDE_BY_255;
 		}
@@ -231,18 +247,22 @@ public abstract class AoCalculator {
 
 	private void blockFaceFlat(MutableQuadViewImpl quad, boolean isOnLightFace) {
 		final int lightFace = quad.lightFaceId();
-		final AoFaceCalc faceData = gatherFace(lightFace, isOnLightFace).calc;
+		final AoFaceData fd = gatherFace(lightFace, isOnLightFace);
+		final AoFaceCalc faceData = fd.calc;
 		final AoFace face = AoFace.get(lightFace);
 		final WeightFunction wFunc = face.weightFunc;
 		final float[] w = this.w;
+		final int[] samples = fd.samples;
 
 		for (int i = 0; i < 4; i++) {
 			wFunc.apply(quad, i, w);
+			onFaceLight(i, quad.lightmap(i), samples, w);
 			quad.lightmap(i, ColorHelper.maxBrightness(quad.lightmap(i), faceData.weightedCombinedLight(w)));
 		}
 	}
 
 	private void vanillaPartialFaceSmooth(MutableQuadViewImpl quad, boolean isOnLightFace) {
+		onComplexLight();
 		final int lightFace = quad.lightFaceId();
 		final AoFaceData faceData = gatherFace(lightFace, isOnLightFace);
 		final AoFace face = AoFace.get(lightFace);
@@ -258,6 +278,7 @@ public abstract class AoCalculator {
 	}
 
 	private void flatFaceSmoothHd(MutableQuadViewImpl quad, int flatBrightness) {
+		onComplexLight();
 		final int lightFace = quad.lightFaceId();
 		final AoFaceData faceData = localData;
 		faceData.setFlat(flatBrightness);
@@ -299,6 +320,7 @@ public abstract class AoCalculator {
 	}
 
 	private void blendedFace(MutableQuadViewImpl quad) {
+		onComplexLight();
 		final int lightFace = quad.lightFaceId();
 		final AoFaceCalc faceData = blendedInsetData(quad, 0, lightFace);
 		final AoFace face = AoFace.get(lightFace);
@@ -314,6 +336,7 @@ public abstract class AoCalculator {
 	}
 
 	private void blendedFaceFlat(MutableQuadViewImpl quad) {
+		onComplexLight();
 		final int lightFace = quad.lightFaceId();
 		final AoFaceCalc faceData = blendedInsetData(quad, 0, lightFace);
 		final AoFace face = AoFace.get(lightFace);
@@ -327,6 +350,7 @@ public abstract class AoCalculator {
 	}
 
 	private void blendedPartialFaceSmooth(MutableQuadViewImpl quad) {
+		onComplexLight();
 		final int lightFace = quad.lightFaceId();
 		final float w1 = AoFace.get(lightFace).depthFunc.apply(quad, 0);
 		final float w0 = 1 - w1;
@@ -348,6 +372,7 @@ public abstract class AoCalculator {
 	}
 
 	private void irregularFace(MutableQuadViewImpl quad) {
+		onComplexLight();
 		final Vector3f faceNorm = quad.faceNormal();
 		Vector3f normal;
 		final float[] w = this.w;
@@ -426,6 +451,10 @@ public abstract class AoCalculator {
 	private void irregularFaceFlat(MutableQuadViewImpl quad) {
 		// use center light - interpolatino too expensive given how often this happen for foliage, etc.
 		final int brightness = brightness(regionRelativeCacheIndex);
+		onFlatLight(0, quad.lightmap(0), regionRelativeCacheIndex);
+		onFlatLight(1, quad.lightmap(1), regionRelativeCacheIndex);
+		onFlatLight(2, quad.lightmap(2), regionRelativeCacheIndex);
+		onFlatLight(3, quad.lightmap(3), regionRelativeCacheIndex);
 		quad.lightmap(0, ColorHelper.maxBrightness(quad.lightmap(0), brightness));
 		quad.lightmap(1, ColorHelper.maxBrightness(quad.lightmap(1), brightness));
 		quad.lightmap(2, ColorHelper.maxBrightness(quad.lightmap(2), brightness));
@@ -473,6 +502,8 @@ public abstract class AoCalculator {
 
 		final int packedXyz5 = cacheIndexToXyz5(index);
 
+		final int[] samples = fd.samples;
+		samples[RelightRecipes.CENTER] = index;
 		fd.center = brightness(index);
 		final int aoCenter = ao(index);
 		fd.aoCenter = aoCenter;
@@ -484,24 +515,28 @@ public abstract class AoCalculator {
 		int cacheIndex = fastOffsetRelativeCacheIndex(packedXyz5, aoFace.bottomOffset);
 		final boolean bottomClear = !isOpaque(cacheIndex);
 		fd.bottom = bottomClear ? brightness(cacheIndex) : OPAQUE;
+		samples[RelightRecipes.BOTTOM] = bottomClear ? cacheIndex : RelightRecipes.NO_INDEX;
 		final int aoBottom = ao(cacheIndex);
 		fd.aoBottom = aoBottom;
 
 		cacheIndex = fastOffsetRelativeCacheIndex(packedXyz5, aoFace.topOffset);
 		final boolean topClear = !isOpaque(cacheIndex);
 		fd.top = topClear ? brightness(cacheIndex) : OPAQUE;
+		samples[RelightRecipes.TOP] = topClear ? cacheIndex : RelightRecipes.NO_INDEX;
 		final int aoTop = ao(cacheIndex);
 		fd.aoTop = aoTop;
 
 		cacheIndex = fastOffsetRelativeCacheIndex(packedXyz5, aoFace.leftOffset);
 		final boolean leftClear = !isOpaque(cacheIndex);
 		fd.left = leftClear ? brightness(cacheIndex) : OPAQUE;
+		samples[RelightRecipes.LEFT] = leftClear ? cacheIndex : RelightRecipes.NO_INDEX;
 		final int aoLeft = ao(cacheIndex);
 		fd.aoLeft = aoLeft;
 
 		cacheIndex = fastOffsetRelativeCacheIndex(packedXyz5, aoFace.rightOffset);
 		final boolean rightClear = !isOpaque(cacheIndex);
 		fd.right = rightClear ? brightness(cacheIndex) : OPAQUE;
+		samples[RelightRecipes.RIGHT] = rightClear ? cacheIndex : RelightRecipes.NO_INDEX;
 		final int aoRight = ao(cacheIndex);
 		fd.aoRight = aoRight;
 
@@ -514,10 +549,12 @@ public abstract class AoCalculator {
 			}
 
 			fd.bottomLeft = OPAQUE;
+			samples[RelightRecipes.BOTTOM_LEFT] = RelightRecipes.NO_INDEX;
 		} else { // at least one clear
 			cacheIndex = fastOffsetRelativeCacheIndex(packedXyz5, aoFace.bottomLeftOffset);
 			final boolean cornerClear = !isOpaque(cacheIndex);
 			fd.bottomLeft = cornerClear ? brightness(cacheIndex) : OPAQUE;
+			samples[RelightRecipes.BOTTOM_LEFT] = cornerClear ? cacheIndex : RelightRecipes.NO_INDEX;
 
 			if (hd) {
 				fd.aoBottomLeft = ao(cacheIndex);
@@ -535,10 +572,12 @@ public abstract class AoCalculator {
 			}
 
 			fd.bottomRight = OPAQUE;
+			samples[RelightRecipes.BOTTOM_RIGHT] = RelightRecipes.NO_INDEX;
 		} else { // at least one clear
 			cacheIndex = fastOffsetRelativeCacheIndex(packedXyz5, aoFace.bottomRightOffset);
 			final boolean cornerClear = !isOpaque(cacheIndex);
 			fd.bottomRight = cornerClear ? brightness(cacheIndex) : OPAQUE;
+			samples[RelightRecipes.BOTTOM_RIGHT] = cornerClear ? cacheIndex : RelightRecipes.NO_INDEX;
 
 			if (hd) {
 				fd.aoBottomRight = ao(cacheIndex);
@@ -556,10 +595,12 @@ public abstract class AoCalculator {
 			}
 
 			fd.topLeft = OPAQUE;
+			samples[RelightRecipes.TOP_LEFT] = RelightRecipes.NO_INDEX;
 		} else { // at least one clear
 			cacheIndex = fastOffsetRelativeCacheIndex(packedXyz5, aoFace.topLeftOffset);
 			final boolean cornerClear = !isOpaque(cacheIndex);
 			fd.topLeft = cornerClear ? brightness(cacheIndex) : OPAQUE;
+			samples[RelightRecipes.TOP_LEFT] = cornerClear ? cacheIndex : RelightRecipes.NO_INDEX;
 
 			if (hd) {
 				fd.aoTopLeft = ao(cacheIndex);
@@ -577,10 +618,12 @@ public abstract class AoCalculator {
 			}
 
 			fd.topRight = OPAQUE;
+			samples[RelightRecipes.TOP_RIGHT] = RelightRecipes.NO_INDEX;
 		} else { // at least one clear
 			cacheIndex = fastOffsetRelativeCacheIndex(packedXyz5, aoFace.topRightOffset);
 			final boolean cornerClear = !isOpaque(cacheIndex);
 			fd.topRight = cornerClear ? brightness(cacheIndex) : OPAQUE;
+			samples[RelightRecipes.TOP_RIGHT] = cornerClear ? cacheIndex : RelightRecipes.NO_INDEX;
 
 			if (hd) {
 				fd.aoTopRight = ao(cacheIndex);
@@ -43,6 +43,8 @@ public class AoFaceData {
 	public int aoTopLeft;
 	public int aoTopRight;
 	public int aoCenter;
+	/** Cache indices of the light samples, in {@link RelightRecipes} order. Set only when gathered from a region. */
+	final int[] samples = new int[RelightRecipes.FACE_SAMPLE_COUNT];
 	private int hashCode;
 
 	public static void blendTo(AoFaceData in0, float w0, AoFaceData in1, float w1, AoFaceData out) {
@@ -0,0 +1,155 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.light;
+
+import java.util.function.IntUnaryOperator;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import grondag.canvas.apiimpl.util.ColorHelper;
+
+/**
+ * Records how each vertex of a region got its light, so light can be recomputed
+ * from a new light snapshot without repeating model lookup, culling or encoding.
+ *
+ * <p>A vertex key is the offset of its recipe. Recipes hold the model light, the
+ * region cache indices of the light samples and the geometry-derived weights.
+ * Sample selection, AO and weights depend only on block states, so evaluating a
+ * recipe with new brightness values gives the same result as lighting the quad again.
+ *
+ * <p>Recording and evaluation use scratch state - instances are not thread-safe.
+ * Recipes saved with {@link #toArray()} can be evaluated by any instance.
+ */
+public class RelightRecipes {
+	public static final int NO_INDEX = -1;
+	public static final int FULL_BRIGHTNESS = 0xF000F0;
+	public static final int FACE_SAMPLE_COUNT = 9;
+
+	// sample order within face recipes
+	public static final int CENTER = 0;
+	public static final int BOTTOM = 1;
+	public static final int TOP = 2;
+	public static final int LEFT = 3;
+	public static final int RIGHT = 4;
+	public static final int BOTTOM_LEFT = 5;
+	public static final int BOTTOM_RIGHT = 6;
+	public static final int TOP_LEFT = 7;
+	public static final int TOP_RIGHT = 8;
+
+	/** Model light then brightness of one cache index, or full brightness if the index is {@link #NO_INDEX}. */
+	private static final int FLAT = 0;
+	/** Model light, face samples with {@link #NO_INDEX} for opaque samples, then four weights. */
+	private static final int FACE = 1;
+
+	private final IntArrayList recipes = new IntArrayList();
+	private final AoFaceData faceData = new AoFaceData();
+	private final float[] weights = new float[4];
+
+	public int addFlat(int modelLight, int cacheIndex) {
+		final int key = recipes.size();
+		recipes.add(FLAT);
+		recipes.add(modelLight);
+		recipes.add(cacheIndex);
+		return key;
+	}
+
+	/**
+	 * @param samples cache indices in the order given by the constants of this class
+	 * @param w weights of the four corners, as used by {@link AoFaceCalc#weightedCombinedLight(float[])}
+	 */
+	public int addFace(int modelLight, int[] samples, float[] w) {
+		final int key = recipes.size();
+		recipes.add(FACE);
+		recipes.add(modelLight);
+		recipes.addElements(recipes.size(), samples, 0, FACE_SAMPLE_COUNT);
+		recipes.add(Float.floatToRawIntBits(w[0]));
+		recipes.add(Float.floatToRawIntBits(w[1]));
+		recipes.add(Float.floatToRawIntBits(w[2]));
+		recipes.add(Float.floatToRawIntBits(w[3]));
+		return key;
+	}
+
+	public int size() {
+		return recipes.size();
+	}
+
+	public void clear() {
+		recipes.clear();
+	}
+
+	public int[] toArray() {
+		return recipes.toIntArray();
+	}
+
+	/**
+	 * @param r recipes from {@link #toArray()}
+	 * @return packed lightmap with block light in the low bits and sky light at bit 16
+	 */
+	public int light(int[] r, int key, IntUnaryOperator brightness) {
+		final int modelLight = r[key + 1];
+
+		if (r[key] == FLAT) {
+			final int index = r[key + 2];
+			return ColorHelper.maxBrightness(modelLight, index == NO_INDEX ? FULL_BRIGHTNESS : brightness.applyAsInt(index));
+		}
+
+		final int s = key + 2;
+		final AoFaceData fd = faceData;
+		fd.center = brightness.applyAsInt(r[s + CENTER]);
+		fd.bottom = sample(r[s + BOTTOM], brightness);
+		fd.top = sample(r[s + TOP], brightness);
+		fd.left = sample(r[s + LEFT], brightness);
+		fd.right = sample(r[s + RIGHT], brightness);
+		fd.bottomLeft = sample(r[s + BOTTOM_LEFT], brightness);
+		fd.bottomRight = sample(r[s + BOTTOM_RIGHT], brightness);
+		fd.topLeft = sample(r[s + TOP_LEFT], brightness);
+		fd.topRight = sample(r[s + TOP_RIGHT], brightness);
+		fd.calc.compute(fd);
+
+		final int w = s + FACE_SAMPLE_COUNT;
+		final float[] weights = this.weights;
+		weights[0] = Float.intBitsToFloat(r[w]);
+		weights[1] = Float.intBitsToFloat(r[w + 1]);
+		weights[2] = Float.intBitsToFloat(r[w + 2]);
+		weights[3] = Float.intBitsToFloat(r[w + 3]);
+
+		return ColorHelper.maxBrightness(modelLight, fd.calc.weightedCombinedLight(weights));
+	}
+
+	private static int sample(int index, IntUnaryOperator brightness) {
+		return index == NO_INDEX ? AoFaceData.OPAQUE : brightness.applyAsInt(index);
+	}
+
+	/**
+	 * Replaces block and sky light of each vertex, keeping AO and anything else in the light element.
+	 *
+	 * @param r recipes from {@link #toArray()}
+	 * @param keys one recipe key per vertex
+	 * @param vertexData vertex data in the material vertex format
+	 * @param stride vertex stride in integers
+	 * @param lightOffset offset of the light element within the vertex
+	 */
+	public void patch(int[] r, int[] keys, int[] vertexData, int stride, int lightOffset, IntUnaryOperator brightness) {
+		final int vertexCount = keys.length;
+
+		for (int v = 0; v < vertexCount; ++v) {
+			final int packedLight = light(r, keys[v], brightness);
+			final int i = v * stride + lightOffset;
+			vertexData[i] = (vertexData[i] & 0xFFFF0000) | (packedLight & 0xFF) | (((packedLight >> 16) & 0xFF) << 8);
+		}
+	}
+}
@@ -108,6 +108,17 @@ public final class RenderState extends AbstractRenderState {
 	public void enableWithOrigin(int x, int y, int z) {
 		enable();
 		shader.setModelOrigin(x, y, z);
+		shader.setCompactVertex(false, 0);
+	}
+
+	/**
+	 * For terrain buffers in {@link grondag.canvas.buffer.format.CanvasVertexFormats#COMPACT_MATERIAL},
+	 * which carry shader flags in a uniform instead of vertex data.
+	 */
+	public void enableCompactWithOrigin(int x, int y, int z, int shaderFlags) {
+		enable();
+		shader.setModelOrigin(x, y, z);
+		shader.setCompactVertex(true, shaderFlags);
 	}
 
 	private static final BinaryMaterialState CULL_STATE = new BinaryMaterialState(RenderSystem::enableCull, RenderSystem::disableCull);
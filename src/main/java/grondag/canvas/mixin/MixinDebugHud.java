@@ -28,8 +28,11 @@ import net.minecraft.client.gui.hud.DebugHud;
 import grondag.canvas.Configurator;
 import grondag.canvas.buffer.GlBufferAllocator;
 import grondag.canvas.buffer.TransferBufferAllocator;
+import grondag.canvas.buffer.VboArenaAllocator;
 import grondag.canvas.buffer.encoding.VertexCollectorImpl;
 import grondag.canvas.light.LightmapHd;
+import grondag.canvas.render.CanvasWorldRenderer;
+import grondag.canvas.terrain.cache.RegionMeshCache;
 
 @Mixin(DebugHud.class)
 public class MixinDebugHud {
@@ -43,6 +46,17 @@ public class MixinDebugHud {
 
 		list.add(TransferBufferAllocator.debugString());
 		list.add(GlBufferAllocator.debugString());
+		list.add(VboArenaAllocator.debugString());
 		list.add(VertexCollectorImpl.debugReport());
+
+		if (RegionMeshCache.isEnabled()) {
+			list.add(RegionMeshCache.debugString());
+		}
+
+		final CanvasWorldRenderer worldRenderer = CanvasWorldRenderer.instance();
+
+		if (Configurator.multiDrawTerrain && Configurator.batchedChunkRender && worldRenderer != null) {
+			list.add(worldRenderer.multiDrawDebugString());
+		}
 	}
 }
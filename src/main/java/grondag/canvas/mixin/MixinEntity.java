@@ -0,0 +1,41 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+package grondag.canvas.mixin;
+
+import org.spongepowered.asm.mixin.Mixin;
+
+import net.minecraft.entity.Entity;
+
+import grondag.canvas.mixinterface.EntityExt;
+import grondag.canvas.render.EntityVisibility;
+
+@Mixin(Entity.class)
+public class MixinEntity implements EntityExt {
+	// only created for entities that are tested for rendering
+	private EntityVisibility canvas_visibility;
+
+	@Override
+	public EntityVisibility canvas_visibility() {
+		EntityVisibility result = canvas_visibility;
+
+		if (result == null) {
+			result = new EntityVisibility();
+			canvas_visibility = result;
+		}
+
+		return result;
+	}
+}
@@ -63,6 +63,8 @@ public class MixinWorldRenderer implements WorldRendererExt {
 	private static boolean shouldWarnOnRenderLayer = true;
 	private static boolean shouldWarnGetAdjacentChunk = true;
 	private static boolean shouldWarnOnUpdateChunks = true;
+	/** True while vanilla schedules renders in response to a light update. Render thread only. */
+	private static boolean isLightUpdate = false;
 	@Shadow
 	private MinecraftClient client;
 	@Shadow
@@ -136,7 +138,22 @@ public class MixinWorldRenderer implements WorldRendererExt {
 
 	@Redirect(method = "scheduleChunkRender", at = @At(value = "INVOKE", target = "Lnet/minecraft/client/render/BuiltChunkStorage;scheduleRebuild(IIIZ)V"), require = 1)
 	private void onScheduleChunkRender(BuiltChunkStorage storage, int x, int y, int z, boolean urgent) {
-		((CanvasWorldRenderer) (Object) this).scheduleRegionRender(x, y, z, urgent);
+		if (isLightUpdate) {
+			((CanvasWorldRenderer) (Object) this).scheduleRegionRelight(x, y, z);
+		} else {
+			((CanvasWorldRenderer) (Object) this).scheduleRegionRender(x, y, z, urgent);
+		}
+	}
+
+	// light updates schedule renders through this overload
+	@Inject(at = @At("HEAD"), method = "scheduleBlockRenders(III)V")
+	private void beforeScheduleLightRenders(int x, int y, int z, CallbackInfo ci) {
+		isLightUpdate = true;
+	}
+
+	@Inject(at = @At("RETURN"), method = "scheduleBlockRenders(III)V")
+	private void afterScheduleLightRenders(int x, int y, int z, CallbackInfo ci) {
+		isLightUpdate = false;
 	}
 
 	@Redirect(method = "reload", at = @At(value = "FIELD", target = "Lnet/minecraft/client/options/GameOptions;viewDistance:I", ordinal = 1))
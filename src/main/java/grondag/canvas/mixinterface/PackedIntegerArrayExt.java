@@ -16,8 +16,8 @@
 
 package grondag.canvas.mixinterface;
 
-import it.unimi.dsi.fastutil.ints.IntArrayList;
-
 public interface PackedIntegerArrayExt {
-	void canvas_fastForEach(IntArrayList list);
+	long[] canvas_storage();
+
+	int canvas_elementBits();
 }
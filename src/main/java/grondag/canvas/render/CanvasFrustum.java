@@ -16,6 +16,8 @@
 
 package grondag.canvas.render;
 
+import it.unimi.dsi.fastutil.HashCommon;
+
 import net.minecraft.client.render.Frustum;
 import net.minecraft.util.math.Box;
 import net.minecraft.util.math.MathHelper;
@@ -39,6 +41,35 @@ import grondag.canvas.mixinterface.Matrix4fExt;
 @Environment(EnvType.CLIENT)
 public abstract class CanvasFrustum extends Frustum {
 	protected static final float MIN_GAP = 0.0001f;
+
+	// plane flags for tests limited to planes a containing group straddles
+	public static final int PLANE_LEFT = 1;
+	public static final int PLANE_RIGHT = 2;
+	public static final int PLANE_NEAR = 4;
+	public static final int PLANE_TOP = 8;
+	public static final int PLANE_BOTTOM = 16;
+	public static final int ALL_PLANES = 31;
+	/** Group result when every contained box is outside. */
+	public static final int OUTSIDE = -1;
+
+	/**
+	 * Group boxes pass or fail a plane only when clear of it by this much, so that
+	 * float rounding in tests of contained boxes can't give a different answer.
+	 */
+	private static final float REGION_GROUP_MARGIN = 0.125f;
+
+	// Cells cache plane masks for boxes tested one at a time, like particles and entities.
+	// Boxes with min corner in a cell and no wider than the slack share the cell's mask.
+	private static final int CELL_SHIFT = 4;
+	private static final int CELL_SIZE = 1 << CELL_SHIFT;
+	private static final double CELL_SLACK = 16;
+	private static final int CELL_CACHE_SIZE = 256;
+	private static final int CELL_CACHE_MASK = CELL_CACHE_SIZE - 1;
+	private final long[] cellKeys = new long[CELL_CACHE_SIZE];
+	private final int[] cellMasks = new int[CELL_CACHE_SIZE];
+	private final int[] cellVersions = new int[CELL_CACHE_SIZE];
+	private int cellVersion = 1;
+
 	protected final Matrix4fExt mvpMatrix = (Matrix4fExt) (Object) new Matrix4f();
 	protected final Matrix4fExt lastProjectionMatrix = (Matrix4fExt) (Object) new Matrix4f();
 	protected final Matrix4fExt lastModelMatrix = (Matrix4fExt) (Object) new Matrix4f();
@@ -78,6 +109,12 @@ public abstract class CanvasFrustum extends Frustum {
 	}
 
 	public final boolean isVisible(double x0, double y0, double z0, double x1, double y1, double z1) {
+		final int planeMask = cellPlaneMask(x0, y0, z0, x1, y1, z1);
+		return planeMask != OUTSIDE && isVisible(x0, y0, z0, x1, y1, z1, planeMask);
+	}
+
+	/** Same as {@link #isVisible(double, double, double, double, double, double)} but only tests the given planes. */
+	public final boolean isVisible(double x0, double y0, double z0, double x1, double y1, double z1, int planeMask) {
 		final float hdx = (float) (0.5 * (x1 - x0));
 		final float hdy = (float) (0.5 * (y1 - y0));
 		final float hdz = (float) (0.5 * (z1 - z0));
@@ -90,26 +127,164 @@ public abstract class CanvasFrustum extends Frustum {
 		final float cy = (float) y0 + hdy - lastViewYf;
 		final float cz = (float) z0 + hdz - lastViewZf;
 
-		if (cx * leftX + cy * leftY + cz * leftZ + leftW - (hdx * leftXe + hdy * leftYe + hdz * leftZe) > 0) {
+		if ((planeMask & PLANE_LEFT) != 0 && cx * leftX + cy * leftY + cz * leftZ + leftW - (hdx * leftXe + hdy * leftYe + hdz * leftZe) > 0) {
+			return false;
+		}
+
+		if ((planeMask & PLANE_RIGHT) != 0 && cx * rightX + cy * rightY + cz * rightZ + rightW - (hdx * rightXe + hdy * rightYe + hdz * rightZe) > 0) {
+			return false;
+		}
+
+		if ((planeMask & PLANE_NEAR) != 0 && cx * nearX + cy * nearY + cz * nearZ + nearW - (hdx * nearXe + hdy * nearYe + hdz * nearZe) > 0) {
 			return false;
 		}
 
-		if (cx * rightX + cy * rightY + cz * rightZ + rightW - (hdx * rightXe + hdy * rightYe + hdz * rightZe) > 0) {
+		if ((planeMask & PLANE_TOP) != 0 && cx * topX + cy * topY + cz * topZ + topW - (hdx * topXe + hdy * topYe + hdz * topZe) > 0) {
 			return false;
 		}
 
-		if (cx * nearX + cy * nearY + cz * nearZ + nearW - (hdx * nearXe + hdy * nearYe + hdz * nearZe) > 0) {
+		return (planeMask & PLANE_BOTTOM) == 0 || !(cx * bottomX + cy * bottomY + cz * bottomZ + bottomW - (hdx * bottomXe + hdy * bottomYe + hdz * bottomZe) > 0);
+	}
+
+	/**
+	 * Tests a 16x16x16 region by its camera-relative center, checking only the given planes.
+	 * Plane masks come from {@link #classifyRegionGroup(float, float, float, float, float, float, int)}.
+	 */
+	public final boolean isRegionVisible(float cx, float cy, float cz, int planeMask) {
+		if ((planeMask & PLANE_LEFT) != 0 && cx * leftX + cy * leftY + cz * leftZ + leftRegionExtent > MIN_GAP) {
 			return false;
 		}
 
-		if (cx * topX + cy * topY + cz * topZ + topW - (hdx * topXe + hdy * topYe + hdz * topZe) > 0) {
+		if ((planeMask & PLANE_RIGHT) != 0 && cx * rightX + cy * rightY + cz * rightZ + rightRegionExtent > MIN_GAP) {
 			return false;
 		}
 
-		return !(cx * bottomX + cy * bottomY + cz * bottomZ + bottomW - (hdx * bottomXe + hdy * bottomYe + hdz * bottomZe) > 0);
+		if ((planeMask & PLANE_NEAR) != 0 && cx * nearX + cy * nearY + cz * nearZ + nearRegionExtent > MIN_GAP) {
+			return false;
+		}
+
+		if ((planeMask & PLANE_TOP) != 0 && cx * topX + cy * topY + cz * topZ + topRegionExtent > MIN_GAP) {
+			return false;
+		}
+
+		return (planeMask & PLANE_BOTTOM) == 0 || !(cx * bottomX + cy * bottomY + cz * bottomZ + bottomRegionExtent > MIN_GAP);
+	}
+
+	/**
+	 * Classifies a box holding a group of regions, given by camera-relative center and half extents
+	 * computed the same way as region centers.  Returns {@link #OUTSIDE} or flags of the planes in
+	 * the mask that regions of the group must still be tested against.
+	 */
+	public final int classifyRegionGroup(float cx, float cy, float cz, float hdx, float hdy, float hdz, int planeMask) {
+		return classify(cx, cy, cz, hdx, hdy, hdz, MIN_GAP, REGION_GROUP_MARGIN, planeMask);
+	}
+
+	private int classify(float cx, float cy, float cz, float hdx, float hdy, float hdz, float threshold, float margin, int planeMask) {
+		final float outside = threshold + margin;
+		final float inside = threshold - margin;
+
+		if ((planeMask & PLANE_LEFT) != 0) {
+			final float d = cx * leftX + cy * leftY + cz * leftZ + leftW;
+			final float r = hdx * leftXe + hdy * leftYe + hdz * leftZe;
+
+			if (d - r > outside) {
+				return OUTSIDE;
+			} else if (d + r < inside) {
+				planeMask &= ~PLANE_LEFT;
+			}
+		}
+
+		if ((planeMask & PLANE_RIGHT) != 0) {
+			final float d = cx * rightX + cy * rightY + cz * rightZ + rightW;
+			final float r = hdx * rightXe + hdy * rightYe + hdz * rightZe;
+
+			if (d - r > outside) {
+				return OUTSIDE;
+			} else if (d + r < inside) {
+				planeMask &= ~PLANE_RIGHT;
+			}
+		}
+
+		if ((planeMask & PLANE_NEAR) != 0) {
+			final float d = cx * nearX + cy * nearY + cz * nearZ + nearW;
+			final float r = hdx * nearXe + hdy * nearYe + hdz * nearZe;
+
+			if (d - r > outside) {
+				return OUTSIDE;
+			} else if (d + r < inside) {
+				planeMask &= ~PLANE_NEAR;
+			}
+		}
+
+		if ((planeMask & PLANE_TOP) != 0) {
+			final float d = cx * topX + cy * topY + cz * topZ + topW;
+			final float r = hdx * topXe + hdy * topYe + hdz * topZe;
+
+			if (d - r > outside) {
+				return OUTSIDE;
+			} else if (d + r < inside) {
+				planeMask &= ~PLANE_TOP;
+			}
+		}
+
+		if ((planeMask & PLANE_BOTTOM) != 0) {
+			final float d = cx * bottomX + cy * bottomY + cz * bottomZ + bottomW;
+			final float r = hdx * bottomXe + hdy * bottomYe + hdz * bottomZe;
+
+			if (d - r > outside) {
+				return OUTSIDE;
+			} else if (d + r < inside) {
+				planeMask &= ~PLANE_BOTTOM;
+			}
+		}
+
+		return planeMask;
+	}
+
+	/** Plane mask of the cell holding the box, or all planes if the box doesn't fit in one. */
+	private int cellPlaneMask(double x0, double y0, double z0, double x1, double y1, double z1) {
+		final int cellX = MathHelper.floor(x0) >> CELL_SHIFT;
+		final int cellY = MathHelper.floor(y0) >> CELL_SHIFT;
+		final int cellZ = MathHelper.floor(z0) >> CELL_SHIFT;
+		final double gx0 = cellX << CELL_SHIFT;
+		final double gy0 = cellY << CELL_SHIFT;
+		final double gz0 = cellZ << CELL_SHIFT;
+		final double gx1 = gx0 + CELL_SIZE + CELL_SLACK;
+		final double gy1 = gy0 + CELL_SIZE + CELL_SLACK;
+		final double gz1 = gz0 + CELL_SIZE + CELL_SLACK;
+
+		if (x1 > gx1 || y1 > gy1 || z1 > gz1) {
+			return ALL_PLANES;
+		}
+
+		final long key = ((long) cellX & 0x3FFFFFL) | (((long) cellY & 0xFFFFFL) << 22) | (((long) cellZ & 0x3FFFFFL) << 42);
+		final int index = (int) HashCommon.mix(key) & CELL_CACHE_MASK;
+
+		if (cellVersions[index] == cellVersion && cellKeys[index] == key) {
+			return cellMasks[index];
+		}
+
+		// same arithmetic as box tests, with margin for the rounding error of world coordinates as floats
+		final float hd = (float) (0.5 * (gx1 - gx0));
+		final float cx = (float) gx0 + hd - lastViewXf;
+		final float cy = (float) gy0 + hd - lastViewYf;
+		final float cz = (float) gz0 + hd - lastViewZf;
+		final float margin = REGION_GROUP_MARGIN + 8 * Math.ulp(Math.abs((float) gx0) + Math.abs((float) gy0) + Math.abs((float) gz0) + hd * 6);
+		final int result = classify(cx, cy, cz, hd, hd, hd, 0, margin, ALL_PLANES);
+
+		cellKeys[index] = key;
+		cellMasks[index] = result;
+		cellVersions[index] = cellVersion;
+		return result;
+	}
+
+	/** Call when planes or view position change. */
+	protected final void clearCellCache() {
+		++cellVersion;
 	}
 
 	protected final void extractPlanes() {
+		clearCellCache();
 		final Matrix4fExt matrix = mvpMatrix;
 		final float a00 = matrix.a00();
 		final float a01 = matrix.a01();
@@ -89,6 +89,7 @@ import grondag.canvas.apiimpl.MaterialConditionImpl;
 import grondag.canvas.apiimpl.rendercontext.BlockRenderContext;
 import grondag.canvas.apiimpl.rendercontext.EntityBlockRenderContext;
 import grondag.canvas.buffer.BindStateManager;
+import grondag.canvas.buffer.TransferBufferAllocator;
 import grondag.canvas.buffer.VboBuffer;
 import grondag.canvas.buffer.encoding.CanvasImmediate;
 import grondag.canvas.compat.FirstPersonModelHolder;
@@ -99,10 +100,12 @@ import grondag.canvas.material.property.MaterialTarget;
 import grondag.canvas.material.state.RenderContextState;
 import grondag.canvas.material.state.RenderState;
 import grondag.canvas.mixinterface.BufferBuilderStorageExt;
+import grondag.canvas.mixinterface.EntityExt;
 import grondag.canvas.mixinterface.MatrixStackExt;
 import grondag.canvas.mixinterface.WorldRendererExt;
 import grondag.canvas.pipeline.CanvasFrameBufferHacks;
 import grondag.canvas.shader.MaterialShaderManager;
+import grondag.canvas.terrain.occlusion.BlockEntityVisibility;
 import grondag.canvas.terrain.occlusion.PotentiallyVisibleRegionSorter;
 import grondag.canvas.terrain.occlusion.TerrainIterator;
 import grondag.canvas.terrain.occlusion.TerrainOccluder;
@@ -151,6 +154,8 @@ public class CanvasWorldRenderer extends WorldRenderer {
 	private int lastRegionDataVersion = -1;
 	private int lastViewVersion = -1;
 	private int visibleRegionCount = 0;
+	/** Incremented when new terrain visibility results are accepted. Entity visibility is cached until then. */
+	private int terrainVisibilityVersion = 1;
 	final TerrainLayerRenderer TRANSLUCENT = new TerrainLayerRenderer("translucemt", this::sortTranslucentTerrain);
 
 	private final RenderContextState contextState = new RenderContextState();
@@ -176,7 +181,6 @@ public class CanvasWorldRenderer extends WorldRenderer {
 	// PERF: lod culling: don't render grass, cobwebs, flowers, etc. at longer ranges
 	// PERF: render leaves as solid at distance - omit interior faces
 	// PERF: get VAO working again
-	// PERF: consider trying backface culling again but at draw time w/ glMultiDrawArrays
 
 	public static int playerLightmap() {
 		return instance == null ? 0 : instance.playerLightmap;
@@ -199,6 +203,10 @@ public class CanvasWorldRenderer extends WorldRenderer {
 		}
 	}
 
+	public String multiDrawDebugString() {
+		return "Terrain multi-draw: " + SOLID.debugString() + ", " + TRANSLUCENT.debugString();
+	}
+
 	public static CanvasWorldRenderer instance() {
 		return instance;
 	}
@@ -236,6 +244,7 @@ public class CanvasWorldRenderer extends WorldRenderer {
 		DitherTexture.instance().initializeIfNeeded();
 		world = clientWorld;
 		visibleRegionCount = 0;
+		++terrainVisibilityVersion;
 		terrainIterator.reset();
 		renderRegionStorage.clear();
 		Arrays.fill(visibleRegions, null);
@@ -301,6 +310,7 @@ public class CanvasWorldRenderer extends WorldRenderer {
 				final BuiltRenderRegion[] visibleRegions = this.visibleRegions;
 				final int size = terrainIterator.visibleRegionCount;
 				visibleRegionCount = size;
+				++terrainVisibilityVersion;
 				System.arraycopy(terrainIterator.visibleRegions, 0, visibleRegions, 0, size);
 				assert size == 0 || visibleRegions[0] != null;
 				scheduleOrBuild(terrainIterator.updateRegions);
@@ -328,6 +338,7 @@ public class CanvasWorldRenderer extends WorldRenderer {
 				final int size = terrainIterator.visibleRegionCount;
 				lastViewVersion = terrainFrustum.viewVersion();
 				visibleRegionCount = size;
+				++terrainVisibilityVersion;
 				System.arraycopy(terrainIterator.visibleRegions, 0, visibleRegions, 0, size);
 				scheduleOrBuild(terrainIterator.updateRegions);
 				terrainIterator.reset();
@@ -581,12 +592,19 @@ public class CanvasWorldRenderer extends WorldRenderer {
 		for (int regionIndex = 0; regionIndex < visibleRegionCount; ++regionIndex) {
 			assert visibleRegions[regionIndex] != null;
 
-			final List<BlockEntity> list = visibleRegions[regionIndex].getBuildData().getBlockEntities();
+			final BuiltRenderRegion region = visibleRegions[regionIndex];
+			final List<BlockEntity> list = region.getBuildData().getBlockEntities();
+			// results from another build don't apply
+			final BlockEntityVisibility blockEntityVisibility = region.blockEntityVisibility();
+			final boolean cullBlockEntities = blockEntityVisibility != null && blockEntityVisibility.appliesTo(list);
+			final int limit = list.size();
 
-			final Iterator<BlockEntity> itBER = list.iterator();
+			for (int i = 0; i < limit; ++i) {
+				if (cullBlockEntities && !blockEntityVisibility.isVisible(i)) {
+					continue;
+				}
 
-			while (itBER.hasNext()) {
-				final BlockEntity blockEntity = itBER.next();
+				final BlockEntity blockEntity = list.get(i);
 				final BlockPos blockPos = blockEntity.getPos();
 				VertexConsumerProvider outputConsumer = immediate;
 				contextState.setCurrentBlockEntity(blockEntity);
@@ -1039,6 +1057,7 @@ public class CanvasWorldRenderer extends WorldRenderer {
 
 	private void updateRegions(long endNanos) {
 		regionBuilder.upload();
+		TransferBufferAllocator.trimIfIdle();
 
 		final Set<BuiltRenderRegion> regionsToRebuild = this.regionsToRebuild;
 
@@ -1099,7 +1118,6 @@ public class CanvasWorldRenderer extends WorldRenderer {
 		((WorldRenderer) wr).updateNoCullingBlockEntities(removedBlockEntities, addedBlockEntities);
 	}
 
-	// PERF: stash frustum version and terrain version in entity - only retest when changed
 	public <T extends Entity> boolean isEntityVisible(T entity) {
 		final Box box = entity.getVisibilityBoundingBox();
 
@@ -1122,6 +1140,17 @@ public class CanvasWorldRenderer extends WorldRenderer {
 			z1 = box.maxZ;
 		}
 
+		final EntityVisibility cache = ((EntityExt) entity).canvas_visibility();
+		final int viewVersion = terrainFrustum.viewVersion();
+
+		if (cache.matches(x0, y0, z0, x1, y1, z1, viewVersion, terrainVisibilityVersion)) {
+			return cache.result();
+		}
+
+		return cache.set(x0, y0, z0, x1, y1, z1, viewVersion, terrainVisibilityVersion, isBoxVisible(x0, y0, z0, x1, y1, z1));
+	}
+
+	private boolean isBoxVisible(double x0, double y0, double z0, double x1, double y1, double z1) {
 		if (!terrainFrustum.isVisible(x0 - 0.5, y0 - 0.5, z0 - 0.5, x1 + 0.5, y1 + 0.5, z1 + 0.5)) {
 			return false;
 		}
@@ -1133,7 +1162,7 @@ public class CanvasWorldRenderer extends WorldRenderer {
 		final int ry1 = MathHelper.floor(y1) & 0xFFFFFFF0;
 		final int rz1 = MathHelper.floor(z1) & 0xFFFFFFF0;
 
-		int flags = rx0 == rz1 ? 0 : 1;
+		int flags = rx0 == rx1 ? 0 : 1;
 		if (ry0 != ry1) flags |= 2;
 		if (rz0 != rz1) flags |= 4;
 
@@ -1179,6 +1208,12 @@ public class CanvasWorldRenderer extends WorldRenderer {
 		forceVisibilityUpdate();
 	}
 
+	/** For light changes - the rebuild can skip meshing if nothing else changes. */
+	public void scheduleRegionRelight(int x, int y, int z) {
+		renderRegionStorage.scheduleRelight(x << 4, y << 4, z << 4);
+		forceVisibilityUpdate();
+	}
+
 	@Override
 	public void render(MatrixStack matrices, float tickDelta, long frameStartNanos, boolean renderBlockOutline, Camera camera, GameRenderer gameRenderer, LightmapTextureManager lightmapTextureManager, Matrix4f matrix4f) {
 		wr.canvas_mc().getProfiler().swap("dynamic_lighting");
@@ -1207,6 +1242,7 @@ public class CanvasWorldRenderer extends WorldRenderer {
 		renderRegionStorage.clear();
 		distanceSorter.clear();
 		visibleRegionCount = 0;
+		++terrainVisibilityVersion;
 		terrainFrustum.reload();
 
 		//ClassInspector.inspect();
@@ -0,0 +1,52 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+package grondag.canvas.render;
+
+/**
+ * Last render visibility result of an entity and what it depended on: the tested box,
+ * the frustum view version and the version of terrain visibility results. Render thread only.
+ */
+public final class EntityVisibility {
+	private double x0, y0, z0, x1, y1, z1;
+	private int viewVersion;
+	// zero is never a valid version, so a new instance never matches
+	private int terrainVersion = 0;
+	private boolean result;
+
+	public boolean matches(double x0, double y0, double z0, double x1, double y1, double z1, int viewVersion, int terrainVersion) {
+		return this.terrainVersion == terrainVersion && this.viewVersion == viewVersion
+				&& this.x0 == x0 && this.y0 == y0 && this.z0 == z0
+				&& this.x1 == x1 && this.y1 == y1 && this.z1 == z1;
+	}
+
+	/** Result saved by the last call to {@link #set(double, double, double, double, double, double, int, int, boolean)}. */
+	public boolean result() {
+		return result;
+	}
+
+	public boolean set(double x0, double y0, double z0, double x1, double y1, double z1, int viewVersion, int terrainVersion, boolean result) {
+		this.x0 = x0;
+		this.y0 = y0;
+		this.z0 = z0;
+		this.x1 = x1;
+		this.y1 = y1;
+		this.z1 = z1;
+		this.viewVersion = viewVersion;
+		this.terrainVersion = terrainVersion;
+		this.result = result;
+		return result;
+	}
+}
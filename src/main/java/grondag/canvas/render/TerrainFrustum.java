@@ -61,6 +61,7 @@ public class TerrainFrustum extends CanvasFrustum {
 	private double fov;
 
 	void reload() {
+		clearCellCache();
 		lastViewX = Float.MAX_VALUE;
 		lastViewY = Float.MAX_VALUE;
 		lastViewZ = Float.MAX_VALUE;
@@ -90,7 +91,21 @@ public class TerrainFrustum extends CanvasFrustum {
 		return viewVersion;
 	}
 
+	/** Camera position when {@link #positionVersion()} last changed. Region centers are relative to this. */
+	public double lastPositionX() {
+		return lastPositionX;
+	}
+
+	public double lastPositionY() {
+		return lastPositionY;
+	}
+
+	public double lastPositionZ() {
+		return lastPositionZ;
+	}
+
 	public void copy(TerrainFrustum src) {
+		clearCellCache();
 		viewVersion = src.viewVersion;
 		positionVersion = src.positionVersion;
 
@@ -285,26 +300,11 @@ public class TerrainFrustum extends CanvasFrustum {
 	}
 
 	public boolean isRegionVisible(BuiltRenderRegion region) {
-		final float cx = region.cameraRelativeCenterX;
-		final float cy = region.cameraRelativeCenterY;
-		final float cz = region.cameraRelativeCenterZ;
-
-		if (cx * leftX + cy * leftY + cz * leftZ + leftRegionExtent > MIN_GAP) {
-			return false;
-		}
-
-		if (cx * rightX + cy * rightY + cz * rightZ + rightRegionExtent > MIN_GAP) {
-			return false;
-		}
-
-		if (cx * nearX + cy * nearY + cz * nearZ + nearRegionExtent > MIN_GAP) {
-			return false;
-		}
-
-		if (cx * topX + cy * topY + cz * topZ + topRegionExtent > MIN_GAP) {
-			return false;
-		}
+		return isRegionVisible(region, ALL_PLANES);
+	}
 
-		return !(cx * bottomX + cy * bottomY + cz * bottomZ + bottomRegionExtent > MIN_GAP);
+	/** Tests only the planes in the mask, as inherited from the column that holds the region. */
+	public boolean isRegionVisible(BuiltRenderRegion region, int planeMask) {
+		return isRegionVisible(region.cameraRelativeCenterX, region.cameraRelativeCenterY, region.cameraRelativeCenterZ, planeMask);
 	}
 }
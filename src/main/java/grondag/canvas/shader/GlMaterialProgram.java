@@ -30,6 +30,8 @@ public class GlMaterialProgram extends GlProgram {
 	public final Uniform3iImpl programInfo;
 	public final Uniform1iImpl modelOriginType;
 	public final Uniform1iImpl fogMode;
+	// x is 1 for terrain buffers in the compact vertex format, y holds the shader flags it leaves out
+	public final Uniform2iImpl compactVertex;
 
 	GlMaterialProgram(Shader vertexShader, Shader fragmentShader, CanvasVertexFormat format, ProgramType programType) {
 		super(vertexShader, fragmentShader, format, programType);
@@ -39,6 +41,7 @@ public class GlMaterialProgram extends GlProgram {
 		programInfo = (Uniform3iImpl) uniform3i("_cvu_program", UniformRefreshFrequency.ON_LOAD, u -> { });
 		modelOriginType = (Uniform1iImpl) uniform1i("_cvu_model_origin_type", UniformRefreshFrequency.ON_LOAD, u -> u.set(MaterialMatrixState.getModelOrigin().ordinal()));
 		fogMode = (Uniform1iImpl) uniform1i("_cvu_fog_mode", UniformRefreshFrequency.ON_LOAD, u -> u.set(0));
+		compactVertex = (Uniform2iImpl) uniform2i("_cvu_compact_vertex", UniformRefreshFrequency.ON_LOAD, u -> u.set(0, 0));
 	}
 
 	public void setModelOrigin(int x, int y, int z) {
@@ -46,6 +49,11 @@ public class GlMaterialProgram extends GlProgram {
 		modelOrigin.upload();
 	}
 
+	public void setCompactVertex(boolean compact, int shaderFlags) {
+		compactVertex.set(compact ? 1 : 0, compact ? shaderFlags : 0);
+		compactVertex.upload();
+	}
+
 	private final float[] materialData = new float[4];
 
 	private static final int _CV_SPRITE_INFO_TEXTURE_SIZE = 0;
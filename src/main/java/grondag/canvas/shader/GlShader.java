@@ -271,6 +271,10 @@ public class GlShader implements Shader {
 				result = StringUtils.replace(result, "#define _CV_FOG_CONFIG _CV_FOG_CONFIG_VANILLA", "#define _CV_FOG_CONFIG _CV_FOG_CONFIG_SUBTLE");
 			}
 
+			if (Configurator.greedyMeshing) {
+				result = StringUtils.replace(result, "//#define GREEDY_MESHING", "#define GREEDY_MESHING");
+			}
+
 			if (Configurator.enableBloom) {
 				result = StringUtils.replace(result, "#define TARGET_EMISSIVE -1", "#define TARGET_EMISSIVE 1");
 			}
@@ -65,12 +65,18 @@ public final class MaterialShaderImpl {
 
 		program.fogMode.set(MaterialFog.shaderParam());
 		program.fogMode.upload();
+
+		program.setCompactVertex(false, 0);
 	}
 
 	public void setModelOrigin(int x, int y, int z) {
 		getOrCreate().setModelOrigin(x, y, z);
 	}
 
+	public void setCompactVertex(boolean compact, int shaderFlags) {
+		getOrCreate().setCompactVertex(compact, shaderFlags);
+	}
+
 	public void activate(RenderState renderState) {
 		getOrCreate().activate();
 		updateCommonUniforms(renderState);
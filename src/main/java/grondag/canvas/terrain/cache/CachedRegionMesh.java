@@ -0,0 +1,109 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.terrain.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * Result of a region build in a form that can be stored and restored without
+ * rebuilding: occlusion data plus vertex data for each populated material.
+ * Material references are material indices, which are only stable for the
+ * life of the game session.
+ */
+public final class CachedRegionMesh {
+	private static final int VERSION = 2;
+
+	public final int[] occlusionData;
+	private final int[] materials;
+	private final int[][] vertexData;
+
+	public CachedRegionMesh(int[] occlusionData, int[] materials, int[][] vertexData) {
+		assert materials.length == vertexData.length;
+		this.occlusionData = occlusionData;
+		this.materials = materials;
+		this.vertexData = vertexData;
+	}
+
+	public int materialCount() {
+		return materials.length;
+	}
+
+	public int material(int index) {
+		return materials[index];
+	}
+
+	public int[] vertexData(int index) {
+		return vertexData[index];
+	}
+
+	public byte[] toBytes() {
+		int intSize = 3 + occlusionData.length + materials.length * 2;
+
+		for (final int[] data : vertexData) {
+			intSize += data.length;
+		}
+
+		final byte[] result = new byte[intSize * 4];
+		final IntBuffer ints = ByteBuffer.wrap(result).asIntBuffer();
+		ints.put(VERSION);
+		ints.put(occlusionData.length);
+		ints.put(occlusionData);
+		ints.put(materials.length);
+
+		for (int i = 0; i < materials.length; ++i) {
+			ints.put(materials[i]);
+			ints.put(vertexData[i].length);
+			ints.put(vertexData[i]);
+		}
+
+		return result;
+	}
+
+	/** Returns null if the payload is from a different version or malformed. */
+	public static CachedRegionMesh fromBytes(byte[] bytes) {
+		if ((bytes.length & 3) != 0) {
+			return null;
+		}
+
+		final IntBuffer ints = ByteBuffer.wrap(bytes).asIntBuffer();
+
+		try {
+			if (ints.get() != VERSION) {
+				return null;
+			}
+
+			final int[] occlusionData = new int[ints.get()];
+			ints.get(occlusionData);
+
+			final int count = ints.get();
+			final int[] materials = new int[count];
+			final int[][] vertexData = new int[count][];
+
+			for (int i = 0; i < count; ++i) {
+				materials[i] = ints.get();
+				vertexData[i] = new int[ints.get()];
+				ints.get(vertexData[i]);
+			}
+
+			return ints.hasRemaining() ? null : new CachedRegionMesh(occlusionData, materials, vertexData);
+		} catch (final RuntimeException e) {
+			// negative or oversized length from a corrupt payload
+			return null;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.terrain.cache;
+
+/**
+ * Two independent 64-bit hash lanes over a stream of ints. The first lane is
+ * used as a lookup key and the second to detect key collisions.
+ * Not cryptographic - only meant to make accidental collisions very unlikely.
+ */
+public final class ContentHash {
+	private long key;
+	private long check;
+	private boolean isValid;
+
+	public ContentHash reset(long seed) {
+		key = seed ^ 0x9E3779B97F4A7C15L;
+		check = ~seed;
+		isValid = true;
+		return this;
+	}
+
+	public ContentHash add(int value) {
+		key = Long.rotateLeft((key ^ value) * 0x9E3779B97F4A7C15L, 31);
+		check = (check + value) * 0xC2B2AE3D27D4EB4FL;
+		check ^= check >>> 29;
+		return this;
+	}
+
+	public ContentHash add(long value) {
+		return add((int) value).add((int) (value >>> 32));
+	}
+
+	public long key() {
+		return finish(key);
+	}
+
+	public long check() {
+		return finish(check);
+	}
+
+	/** Marks the content as uncacheable, for example because it depends on data that can't be hashed. */
+	public void invalidate() {
+		isValid = false;
+	}
+
+	public boolean isValid() {
+		return isValid;
+	}
+
+	private static long finish(long h) {
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,299 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.terrain.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+
+import grondag.canvas.CanvasMod;
+
+/**
+ * Size-capped store of opaque byte payloads in a single memory-mapped file.
+ * Entries are keyed by a 64-bit content hash with a second hash to reject
+ * collisions.  When space runs out the least-recently used entries are evicted
+ * until a contiguous extent is free.
+ *
+ * <p>All entries are dropped when the fingerprint changes, so callers should fold
+ * anything that affects payload meaning but is not part of the key - resources,
+ * config - into the fingerprint.
+ *
+ * <p>The file is truncated when opened and unmapped when closed, so that it can be
+ * reopened or deleted right away. Closed stores hold nothing and accept nothing. Thread-safe.
+ */
+public class MeshCacheStore implements Closeable {
+	/** Extents are allocated in multiples of this to limit fragmentation. */
+	public static final int BLOCK_SIZE = 256;
+
+	private static class Entry {
+		private final long check;
+		private final int offset;
+		private final int length;
+
+		private Entry(long check, int offset, int length) {
+			this.check = check;
+			this.offset = offset;
+			this.length = length;
+		}
+
+		private int extent() {
+			return roundUp(length);
+		}
+	}
+
+	/** Releases a mapping without waiting for the buffer to be collected. Null if the runtime doesn't allow it. */
+	private static final Consumer<ByteBuffer> UNMAPPER = unmapper();
+
+	private final FileChannel channel;
+	/** Null once closed. Must never be read after unmapping. */
+	private ByteBuffer buffer;
+	private final int capacity;
+	/** Access-ordered so iteration starts with the least-recently used entry. */
+	private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(1024, 0.75f, true);
+	/** Free extents, offset to length. Adjacent extents are always merged. */
+	private final TreeMap<Integer, Integer> free = new TreeMap<>();
+	private long fingerprint;
+	private int usedBytes;
+	private int hitCount;
+	private int missCount;
+	private int evictionCount;
+
+	public MeshCacheStore(Path file, int capacityBytes) throws IOException {
+		capacity = capacityBytes / BLOCK_SIZE * BLOCK_SIZE;
+		channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+		free.put(0, capacity);
+	}
+
+	private static Consumer<ByteBuffer> unmapper() {
+		try {
+			// Java 9 and later
+			final Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			final Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			final Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			final Object unsafe = theUnsafe.get(null);
+
+			return b -> {
+				try {
+					invokeCleaner.invoke(unsafe, b);
+				} catch (final Exception e) {
+					throw new RuntimeException(e);
+				}
+			};
+		} catch (final Exception e) {
+			// Java 8
+			try {
+				final Method cleaner = Class.forName("sun.nio.ch.DirectBuffer").getMethod("cleaner");
+				final Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+
+				return b -> {
+					try {
+						// no cleaner for empty mappings
+						final Object c = cleaner.invoke(b);
+
+						if (c != null) {
+							clean.invoke(c);
+						}
+					} catch (final Exception e1) {
+						throw new RuntimeException(e1);
+					}
+				};
+			} catch (final Exception e1) {
+				CanvasMod.LOG.warn("Unable to unmap region mesh cache files. They will be released when collected.", e1);
+				return null;
+			}
+		}
+	}
+
+	private static int roundUp(int length) {
+		return (length + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+	}
+
+	/** Drops all entries if the fingerprint differs from the current one. */
+	public synchronized void fingerprint(long fingerprint) {
+		if (fingerprint != this.fingerprint) {
+			clear();
+			this.fingerprint = fingerprint;
+		}
+	}
+
+	public synchronized long fingerprint() {
+		return fingerprint;
+	}
+
+	/** Returns a copy of the stored payload, or null if not present. */
+	public synchronized byte[] get(long key, long check) {
+		final Entry entry = entries.get(key);
+
+		if (entry == null || entry.check != check) {
+			++missCount;
+			return null;
+		}
+
+		++hitCount;
+		final byte[] result = new byte[entry.length];
+		final ByteBuffer source = buffer.duplicate();
+		source.position(entry.offset);
+		source.get(result);
+		return result;
+	}
+
+	/**
+	 * Stores the payload, replacing any entry with the same key and evicting others as needed.
+	 *
+	 * @return false if the payload is larger than the store
+	 */
+	public synchronized boolean put(long key, long check, byte[] data) {
+		final int extent = roundUp(data.length);
+
+		if (extent > capacity || buffer == null) {
+			return false;
+		}
+
+		final Entry prior = entries.remove(key);
+
+		if (prior != null) {
+			release(prior);
+		}
+
+		int offset = allocate(extent);
+
+		while (offset == -1) {
+			final Iterator<Entry> it = entries.values().iterator();
+			final Entry eldest = it.next();
+			it.remove();
+			release(eldest);
+			++evictionCount;
+			offset = allocate(extent);
+		}
+
+		final ByteBuffer target = buffer.duplicate();
+		target.position(offset);
+		target.put(data);
+		entries.put(key, new Entry(check, offset, data.length));
+		usedBytes += extent;
+		return true;
+	}
+
+	public synchronized void remove(long key) {
+		final Entry entry = entries.remove(key);
+
+		if (entry != null) {
+			release(entry);
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		free.clear();
+		free.put(0, capacity);
+		usedBytes = 0;
+	}
+
+	/** First fit. Returns -1 if no free extent is large enough. */
+	private int allocate(int extent) {
+		for (final Map.Entry<Integer, Integer> e : free.entrySet()) {
+			final int length = e.getValue();
+
+			if (length >= extent) {
+				final int offset = e.getKey();
+				free.remove(offset);
+
+				if (length > extent) {
+					free.put(offset + extent, length - extent);
+				}
+
+				return offset;
+			}
+		}
+
+		return -1;
+	}
+
+	private void release(Entry entry) {
+		int offset = entry.offset;
+		int length = entry.extent();
+		usedBytes -= length;
+
+		final Map.Entry<Integer, Integer> before = free.floorEntry(offset);
+
+		if (before != null && before.getKey() + before.getValue() == offset) {
+			offset = before.getKey();
+			length += before.getValue();
+		}
+
+		final Integer after = free.remove(offset + length);
+
+		if (after != null) {
+			length += after;
+		}
+
+		free.put(offset, length);
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized int usedBytes() {
+		return usedBytes;
+	}
+
+	public int capacity() {
+		return capacity;
+	}
+
+	public synchronized boolean contains(long key) {
+		return entries.containsKey(key);
+	}
+
+	public synchronized String debugString() {
+		return String.format("Mesh cache %d entries, %dMB / %dMB, hit:%d miss:%d evict:%d", entries.size(), usedBytes >> 20, capacity >> 20, hitCount, missCount, evictionCount);
+	}
+
+	/** Unmaps the file and closes it. Does nothing if already closed. */
+	@Override
+	public synchronized void close() throws IOException {
+		final ByteBuffer buffer = this.buffer;
+
+		if (buffer == null) {
+			return;
+		}
+
+		this.buffer = null;
+		entries.clear();
+		free.clear();
+		usedBytes = 0;
+
+		if (UNMAPPER != null) {
+			UNMAPPER.accept(buffer);
+		}
+
+		channel.close();
+	}
+}
@@ -0,0 +1,205 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.terrain.cache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.render.model.BakedModel;
+
+import net.fabricmc.loader.api.FabricLoader;
+
+import grondag.canvas.CanvasMod;
+import grondag.canvas.Configurator;
+import grondag.canvas.buffer.encoding.VertexCollectorImpl;
+import grondag.canvas.buffer.encoding.VertexCollectorList;
+import grondag.canvas.material.state.RenderMaterialImpl;
+import grondag.canvas.terrain.region.FastRenderRegion;
+
+/**
+ * Optional cache of finished region meshes so that regions whose captured content
+ * has not changed skip meshing after relog, dimension change or render distance change.
+ *
+ * <p>Vertex data refers to materials and sprites by session-specific index, so the
+ * backing file is truncated at startup and is never reused between sessions. Anything
+ * else that changes mesh output without changing region content - resources and
+ * lighting config - is folded into the store fingerprint.
+ */
+public class RegionMeshCache {
+	private static volatile MeshCacheStore store = null;
+	private static int storeMegabytes;
+	private static BakedModel lastMissingModel = null;
+	private static int resourceGeneration = 0;
+
+	static {
+		// shutdown hooks run before files are deleted on exit, and Windows won't delete a mapped file
+		Runtime.getRuntime().addShutdownHook(new Thread(RegionMeshCache::close, "Canvas Mesh Cache Shutdown"));
+	}
+
+	public static boolean isEnabled() {
+		return store != null;
+	}
+
+	/** Call after block models are baked. Render thread only. */
+	public static void reload() {
+		if (!Configurator.enableMeshCache) {
+			close();
+			return;
+		}
+
+		if (store == null || storeMegabytes != Configurator.meshCacheMegabytes) {
+			close();
+			open();
+		}
+
+		final MeshCacheStore store = RegionMeshCache.store;
+
+		if (store != null) {
+			store.fingerprint(fingerprint());
+		}
+	}
+
+	private static void open() {
+		try {
+			final Path dir = FabricLoader.getInstance().getGameDir().resolve(".cache").resolve("canvas");
+			Files.createDirectories(dir);
+			final Path file = dir.resolve("region_meshes.bin");
+			file.toFile().deleteOnExit();
+			storeMegabytes = Configurator.meshCacheMegabytes;
+			store = new MeshCacheStore(file, storeMegabytes * 0x100000);
+		} catch (final IOException e) {
+			CanvasMod.LOG.warn("Unable to open region mesh cache. Cache will be disabled.", e);
+			store = null;
+		}
+	}
+
+	/** Unmaps and closes the store so the file can be reopened or deleted. */
+	private static void close() {
+		final MeshCacheStore store = RegionMeshCache.store;
+
+		if (store != null) {
+			RegionMeshCache.store = null;
+
+			try {
+				store.close();
+			} catch (final IOException e) {
+				CanvasMod.LOG.warn("Error closing region mesh cache.", e);
+			}
+		}
+	}
+
+	private static long fingerprint() {
+		final MinecraftClient mc = MinecraftClient.getInstance();
+
+		// baked models are replaced on every resource reload
+		final BakedModel missingModel = mc.getBakedModelManager().getMissingModel();
+
+		if (missingModel != lastMissingModel) {
+			lastMissingModel = missingModel;
+			++resourceGeneration;
+		}
+
+		final ContentHash hash = new ContentHash().reset(resourceGeneration);
+		hash.add(Configurator.aoShadingMode.ordinal());
+		hash.add(Configurator.diffuseShadingMode.ordinal());
+		hash.add(Configurator.lightSmoothing ? 1 : 0);
+		hash.add(Configurator.semiFlatLighting ? 1 : 0);
+		hash.add(Configurator.hdLightmaps() ? 1 : 0);
+		hash.add(Configurator.batchedChunkRender ? 1 : 0);
+		hash.add(Configurator.preventDepthFighting ? 1 : 0);
+		hash.add(Configurator.clampExteriorVertices ? 1 : 0);
+		hash.add(Configurator.fixLuminousBlockShading ? 1 : 0);
+		hash.add(Configurator.blendFluidColors ? 1 : 0);
+		hash.add(Configurator.greedyMeshing ? 1 : 0);
+		hash.add(MinecraftClient.isAmbientOcclusionEnabled() ? 1 : 0);
+		hash.add(mc.options.biomeBlendRadius);
+		return hash.key();
+	}
+
+	/**
+	 * Computes the content hash for a prepared region and returns the cached mesh, if any.
+	 * Hash is left invalid if the cache is disabled or the region can't be cached.
+	 */
+	public static CachedRegionMesh get(FastRenderRegion region, boolean isNear, int lod, ContentHash hash) {
+		final MeshCacheStore store = RegionMeshCache.store;
+
+		if (store == null) {
+			hash.invalidate();
+			return null;
+		}
+
+		hash.reset(store.fingerprint()).add(isNear ? 1 : 0).add(lod);
+		region.hashContent(hash);
+
+		if (!hash.isValid()) {
+			return null;
+		}
+
+		final byte[] bytes = store.get(hash.key(), hash.check());
+		return bytes == null ? null : CachedRegionMesh.fromBytes(bytes);
+	}
+
+	/** Stores the built mesh under a hash from {@link #get(FastRenderRegion, boolean, ContentHash)}. */
+	public static void put(ContentHash hash, int[] occlusionData, VertexCollectorList collectors) {
+		final MeshCacheStore store = RegionMeshCache.store;
+
+		if (store == null || !hash.isValid()) {
+			return;
+		}
+
+		final int limit = collectors.size();
+		int count = 0;
+
+		for (int i = 0; i < limit; ++i) {
+			if (!collectors.get(i).isEmpty()) {
+				++count;
+			}
+		}
+
+		final int[] materials = new int[count];
+		final int[][] vertexData = new int[count][];
+		count = 0;
+
+		for (int i = 0; i < limit; ++i) {
+			final VertexCollectorImpl collector = collectors.get(i);
+
+			if (!collector.isEmpty()) {
+				materials[count] = collector.materialState().index;
+				vertexData[count++] = collector.saveState(null);
+			}
+		}
+
+		store.put(hash.key(), hash.check(), new CachedRegionMesh(occlusionData, materials, vertexData).toBytes());
+	}
+
+	/** Restores vertex data from a cached mesh into empty collectors. */
+	public static void load(CachedRegionMesh mesh, VertexCollectorList collectors) {
+		final int limit = mesh.materialCount();
+
+		for (int i = 0; i < limit; ++i) {
+			final RenderMaterialImpl material = RenderMaterialImpl.fromIndex(mesh.material(i));
+			collectors.get(material).loadState(material, mesh.vertexData(i));
+		}
+	}
+
+	public static String debugString() {
+		final MeshCacheStore store = RegionMeshCache.store;
+		return store == null ? "Mesh cache disabled" : store.debugString();
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+package grondag.canvas.terrain.occlusion;
+
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+
+import org.jetbrains.annotations.Nullable;
+
+import net.minecraft.util.math.BlockPos;
+
+import grondag.canvas.terrain.occlusion.geometry.PackedBox;
+
+/**
+ * Which block entities of a region passed a test against the occlusion raster. Immutable,
+ * so results found on the terrain iteration thread can be read by the render thread.
+ *
+ * <p>Results apply to one block entity list, by identity, and one raster version.
+ * Block entity boxes are packed region-relative like occluder boxes.
+ */
+public final class BlockEntityVisibility {
+	private final List<?> source;
+	private final int[] boxes;
+	private final int rasterVersion;
+	/** Bit set for each block entity that is hidden. */
+	private final long[] hiddenBits;
+
+	private BlockEntityVisibility(List<?> source, int[] boxes, int rasterVersion, long[] hiddenBits) {
+		this.source = source;
+		this.boxes = boxes;
+		this.rasterVersion = rasterVersion;
+		this.hiddenBits = hiddenBits;
+	}
+
+	/**
+	 * Prior results if they are for the same block entity list and raster version, otherwise
+	 * new results. Boxes of prior results are reused when only the raster has changed.
+	 *
+	 * @param positions world position of each block entity in the list
+	 * @param boxTest true if a packed box is not hidden by the raster
+	 */
+	public static <E> BlockEntityVisibility update(@Nullable BlockEntityVisibility prior, List<E> source, int rasterVersion, Function<E, BlockPos> positions, IntPredicate boxTest) {
+		if (prior != null && prior.isCurrent(source, rasterVersion)) {
+			return prior;
+		}
+
+		final int[] boxes = prior != null && prior.appliesTo(source) ? prior.boxes : boxes(source, positions);
+		final int count = boxes.length;
+		final long[] hiddenBits = new long[(count + 63) >> 6];
+
+		for (int i = 0; i < count; ++i) {
+			if (!boxTest.test(boxes[i])) {
+				hiddenBits[i >> 6] |= 1L << (i & 63);
+			}
+		}
+
+		return new BlockEntityVisibility(source, boxes, rasterVersion, hiddenBits);
+	}
+
+	private static <E> int[] boxes(List<E> source, Function<E, BlockPos> positions) {
+		final int count = source.size();
+		final int[] result = new int[count];
+
+		for (int i = 0; i < count; ++i) {
+			result[i] = blockBox(positions.apply(source.get(i)));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Region-relative box of the block at the given world position.  The box test adds a block
+	 * of padding on every side, which covers renderers that extend a little past their block.
+	 */
+	public static int blockBox(BlockPos pos) {
+		final int x = pos.getX() & 0xF;
+		final int y = pos.getY() & 0xF;
+		final int z = pos.getZ() & 0xF;
+		return PackedBox.pack(x, y, z, x + 1, y + 1, z + 1, PackedBox.RANGE_EXTREME);
+	}
+
+	/** True if results are for this block entity list, regardless of raster version. */
+	public boolean appliesTo(List<?> source) {
+		return this.source == source;
+	}
+
+	/** True if results are for this block entity list and raster version and need not be tested again. */
+	public boolean isCurrent(List<?> source, int rasterVersion) {
+		return this.source == source && this.rasterVersion == rasterVersion;
+	}
+
+	/** Index is position in the block entity list. Only meaningful if {@link #appliesTo(List)}. */
+	public boolean isVisible(int index) {
+		return (hiddenBits[index >> 6] & (1L << (index & 63))) == 0;
+	}
+}
@@ -77,6 +77,19 @@ public class Constants {
 	static final int CLIP_RANGE = PRECISE_WIDTH + GUARD_SIZE * 2;
 	static final int CLIP_MASK = ~(MathHelper.smallestEncompassingPowerOfTwo(CLIP_RANGE) - 1);
 	static final int TILE_COUNT = TILE_WIDTH * TILE_HEIGHT;
+
+	// coverage pyramid - each level groups 8x8 cells of the level below into one 64-bit word
+	static final int MID_WIDTH = TILE_WIDTH >> TILE_AXIS_SHIFT;
+	static final int MID_HEIGHT = TILE_HEIGHT >> TILE_AXIS_SHIFT;
+	static final int MID_COUNT = MID_WIDTH * MID_HEIGHT;
+	static final int TOP_WIDTH = MID_WIDTH >> TILE_AXIS_SHIFT;
+	static final int TOP_HEIGHT = MID_HEIGHT >> TILE_AXIS_SHIFT;
+	static final int TOP_COUNT = TOP_WIDTH * TOP_HEIGHT;
+
+	// tile depth - view distance (clip w) in 1/32 block units, saturating at 2048 blocks
+	static final int DEPTH_BITS = 16;
+	static final int MAX_DEPTH = (1 << DEPTH_BITS) - 1;
+	static final float DEPTH_UNITS_PER_BLOCK = 32f;
 	static final long[] EMPTY_BITS = new long[TILE_COUNT];
 	static final int CAMERA_PRECISION_BITS = 12;
 	static final int CAMERA_PRECISION_UNITY = 1 << CAMERA_PRECISION_BITS;
@@ -309,7 +322,10 @@ public class Constants {
 	static final int IDX_SAVE_TILE_ORIGIN_X = IDX_SAVE_TILE_INDEX + 1;
 	static final int IDX_SAVE_TILE_ORIGIN_Y = IDX_SAVE_TILE_ORIGIN_X + 1;
 
-	static final int DATA_LENGTH = IDX_SAVE_TILE_ORIGIN_Y + 1;
+	// encoded depth of current quad - farthest point when drawing, nearest when testing
+	static final int IDX_QUAD_DEPTH = IDX_SAVE_TILE_ORIGIN_Y + 1;
+
+	static final int DATA_LENGTH = IDX_QUAD_DEPTH + 1;
 
 	// For abandoned traversal scheme
 	//	static final int MAX_TILE_X = TILE_WIDTH - 1;
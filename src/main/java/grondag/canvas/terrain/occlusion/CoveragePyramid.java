@@ -0,0 +1,215 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.terrain.occlusion;
+
+import static grondag.canvas.terrain.occlusion.Constants.MID_COUNT;
+import static grondag.canvas.terrain.occlusion.Constants.MID_WIDTH;
+import static grondag.canvas.terrain.occlusion.Constants.TILE_AXIS_SHIFT;
+import static grondag.canvas.terrain.occlusion.Constants.TILE_PIXEL_INDEX_MASK;
+import static grondag.canvas.terrain.occlusion.Constants.TOP_COUNT;
+import static grondag.canvas.terrain.occlusion.Constants.TOP_WIDTH;
+
+/**
+ * Summary levels above the 8x8 pixel tiles of {@link Rasterizer}. Each mid word
+ * has one bit per tile of a 64x64 pixel block and each top word has one bit per
+ * mid block of a 512x512 pixel block.  Full bits mean every pixel below is covered,
+ * partial bits mean at least one is.
+ *
+ * <p>Bit order within a word matches tile order within a 64-tile block of the raster,
+ * so the mid word and bit of a tile are the high and low bits of its tile index.
+ * Coverage only grows until {@link #clear()}, so levels never need to be recomputed.
+ */
+public final class CoveragePyramid {
+	private static final long[] EMPTY_MID = new long[MID_COUNT];
+	private static final long[] EMPTY_TOP = new long[TOP_COUNT];
+
+	private final long[] midFull = new long[MID_COUNT];
+	private final long[] midPartial = new long[MID_COUNT];
+	private final long[] topFull = new long[TOP_COUNT];
+	private final long[] topPartial = new long[TOP_COUNT];
+
+	public void clear() {
+		System.arraycopy(EMPTY_MID, 0, midFull, 0, MID_COUNT);
+		System.arraycopy(EMPTY_MID, 0, midPartial, 0, MID_COUNT);
+		System.arraycopy(EMPTY_TOP, 0, topFull, 0, TOP_COUNT);
+		System.arraycopy(EMPTY_TOP, 0, topPartial, 0, TOP_COUNT);
+	}
+
+	public void copyFrom(CoveragePyramid source) {
+		System.arraycopy(source.midFull, 0, midFull, 0, MID_COUNT);
+		System.arraycopy(source.midPartial, 0, midPartial, 0, MID_COUNT);
+		System.arraycopy(source.topFull, 0, topFull, 0, TOP_COUNT);
+		System.arraycopy(source.topPartial, 0, topPartial, 0, TOP_COUNT);
+	}
+
+	/**
+	 * Call after the coverage word of a tile changes.
+	 *
+	 * @param tileIndex index from {@link Indexer#tileIndex(int, int)}
+	 * @param word new coverage of the tile
+	 */
+	public void update(int tileIndex, long word) {
+		if (word == 0) {
+			return;
+		}
+
+		final int mid = tileIndex >>> 6;
+		final long midBit = 1L << (tileIndex & 63);
+		final int top = topIndex(mid);
+		final long topBit = 1L << topBitIndex(mid);
+
+		midPartial[mid] |= midBit;
+		topPartial[top] |= topBit;
+
+		if (word == -1L) {
+			final long full = midFull[mid] | midBit;
+			midFull[mid] = full;
+
+			if (full == -1L) {
+				topFull[top] |= topBit;
+			}
+		}
+	}
+
+	/**
+	 * Same as {@link #update(int, long)} but leaves the top level alone. Top words span the
+	 * full raster height, so callers updating separate 64-pixel rows from different threads
+	 * use this and call {@link #refreshTop()} once all of them are done.
+	 */
+	public void updateMid(int tileIndex, long word) {
+		if (word == 0) {
+			return;
+		}
+
+		final int mid = tileIndex >>> 6;
+		final long midBit = 1L << (tileIndex & 63);
+		midPartial[mid] |= midBit;
+
+		if (word == -1L) {
+			midFull[mid] |= midBit;
+		}
+	}
+
+	/** Brings the top level in line with mid words changed by {@link #updateMid(int, long)}. */
+	public void refreshTop() {
+		for (int mid = 0; mid < MID_COUNT; ++mid) {
+			if (midPartial[mid] != 0) {
+				final int top = topIndex(mid);
+				final long topBit = 1L << topBitIndex(mid);
+				topPartial[top] |= topBit;
+
+				if (midFull[mid] == -1L) {
+					topFull[top] |= topBit;
+				}
+			}
+		}
+	}
+
+	/**
+	 * True if every pixel of every tile in the inclusive range is covered.
+	 * Tile coordinates must be within the raster.
+	 */
+	public boolean isTileRectFull(int tileX0, int tileY0, int tileX1, int tileY1) {
+		return testTileRect(tileX0, tileY0, tileX1, tileY1, topFull, midFull, true);
+	}
+
+	/**
+	 * True if no pixel of any tile in the inclusive range is covered.
+	 * Tile coordinates must be within the raster.
+	 */
+	public boolean isTileRectEmpty(int tileX0, int tileY0, int tileX1, int tileY1) {
+		return testTileRect(tileX0, tileY0, tileX1, tileY1, topPartial, midPartial, false);
+	}
+
+	/**
+	 * When isFull, true if all bits in range are set. Otherwise true if none are.
+	 * Top blocks that pass as a whole skip their mid words.
+	 */
+	private static boolean testTileRect(int tileX0, int tileY0, int tileX1, int tileY1, long[] topBits, long[] midBits, boolean isFull) {
+		final int midX0 = tileX0 >> TILE_AXIS_SHIFT;
+		final int midY0 = tileY0 >> TILE_AXIS_SHIFT;
+		final int midX1 = tileX1 >> TILE_AXIS_SHIFT;
+		final int midY1 = tileY1 >> TILE_AXIS_SHIFT;
+
+		final int topX0 = midX0 >> TILE_AXIS_SHIFT;
+		final int topY0 = midY0 >> TILE_AXIS_SHIFT;
+		final int topX1 = midX1 >> TILE_AXIS_SHIFT;
+		final int topY1 = midY1 >> TILE_AXIS_SHIFT;
+
+		for (int topY = topY0; topY <= topY1; ++topY) {
+			for (int topX = topX0; topX <= topX1; ++topX) {
+				// mid blocks overlapped within this top block
+				final int mx0 = topX == topX0 ? midX0 & TILE_PIXEL_INDEX_MASK : 0;
+				final int my0 = topY == topY0 ? midY0 & TILE_PIXEL_INDEX_MASK : 0;
+				final int mx1 = topX == topX1 ? midX1 & TILE_PIXEL_INDEX_MASK : TILE_PIXEL_INDEX_MASK;
+				final int my1 = topY == topY1 ? midY1 & TILE_PIXEL_INDEX_MASK : TILE_PIXEL_INDEX_MASK;
+
+				final long topMask = rectMask(mx0, my0, mx1, my1);
+				final long top = topBits[topY * TOP_WIDTH + topX] & topMask;
+
+				if (top == (isFull ? topMask : 0)) {
+					continue;
+				}
+
+				final int baseX = topX << TILE_AXIS_SHIFT;
+				final int baseY = topY << TILE_AXIS_SHIFT;
+
+				for (int y = my0; y <= my1; ++y) {
+					final int midY = baseY + y;
+
+					for (int x = mx0; x <= mx1; ++x) {
+						final int midX = baseX + x;
+
+						final long midMask = rectMask(
+							midX == midX0 ? tileX0 & TILE_PIXEL_INDEX_MASK : 0,
+							midY == midY0 ? tileY0 & TILE_PIXEL_INDEX_MASK : 0,
+							midX == midX1 ? tileX1 & TILE_PIXEL_INDEX_MASK : TILE_PIXEL_INDEX_MASK,
+							midY == midY1 ? tileY1 & TILE_PIXEL_INDEX_MASK : TILE_PIXEL_INDEX_MASK);
+
+						final long mid = midBits[midY * MID_WIDTH + midX] & midMask;
+
+						if (mid != (isFull ? midMask : 0)) {
+							return false;
+						}
+					}
+				}
+			}
+		}
+
+		return true;
+	}
+
+	/** Bits of an 8x8 word for the inclusive cell range, bit order y * 8 + x. All inputs 0-7. */
+	static long rectMask(int x0, int y0, int x1, int y1) {
+		final long row = (0xFFL >>> (7 - x1 + x0)) << x0;
+		final int rows = y1 - y0 + 1;
+		final long rowMask = rows == 8 ? -1L : ((1L << (rows << 3)) - 1) << (y0 << 3);
+		return (row * 0x0101010101010101L) & rowMask;
+	}
+
+	private static int topIndex(int mid) {
+		final int midX = mid % MID_WIDTH;
+		final int midY = mid / MID_WIDTH;
+		return (midY >> TILE_AXIS_SHIFT) * TOP_WIDTH + (midX >> TILE_AXIS_SHIFT);
+	}
+
+	private static int topBitIndex(int mid) {
+		final int midX = mid % MID_WIDTH;
+		final int midY = mid / MID_WIDTH;
+		return ((midY & TILE_PIXEL_INDEX_MASK) << TILE_AXIS_SHIFT) | (midX & TILE_PIXEL_INDEX_MASK);
+	}
+}
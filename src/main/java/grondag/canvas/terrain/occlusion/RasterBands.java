@@ -0,0 +1,292 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.terrain.occlusion;
+
+import static grondag.canvas.terrain.occlusion.Constants.IDX_EVENTS;
+import static grondag.canvas.terrain.occlusion.Constants.IDX_MAX_TILE_ORIGIN_X;
+import static grondag.canvas.terrain.occlusion.Constants.IDX_MAX_TILE_ORIGIN_Y;
+import static grondag.canvas.terrain.occlusion.Constants.IDX_MIN_TILE_ORIGIN_X;
+import static grondag.canvas.terrain.occlusion.Constants.IDX_QUAD_DEPTH;
+import static grondag.canvas.terrain.occlusion.Constants.IDX_TILE_ORIGIN_Y;
+import static grondag.canvas.terrain.occlusion.Constants.MID_HEIGHT;
+import static grondag.canvas.terrain.occlusion.Constants.TILE_AXIS_SHIFT;
+import static grondag.canvas.terrain.occlusion.Constants.TILE_PIXEL_DIAMETER;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+import grondag.canvas.CanvasMod;
+
+/**
+ * Defers occluder drawing so that quads can be rasterized in horizontal bands on
+ * several threads.  Each quad is saved after {@link Rasterizer#prepareBounds(int, int, int, int)}
+ * - tile bounds, depth and the left/right events of the rows it spans - and binned to
+ * every band it touches.
+ *
+ * <p>A band is one row of 64x64 pixel blocks, so every tile word, tile depth and mid-level
+ * pyramid and depth word it writes belongs to it alone.  Within a band quads are drawn in
+ * submission order, and tile updates only depend on the tile and the quad, so the result is
+ * bit-identical to drawing each quad as it arrives.  The pyramid top level spans all bands
+ * and is brought up to date after every band is done.
+ *
+ * <p>Not thread-safe. Owned by a single {@link Rasterizer}, which must draw pending quads
+ * before anything reads the raster.
+ */
+final class RasterBands {
+	static final int BAND_COUNT = MID_HEIGHT;
+	private static final int BAND_PIXEL_SHIFT = TILE_AXIS_SHIFT * 2;
+	private static final int BAND_PIXEL_HEIGHT = 1 << BAND_PIXEL_SHIFT;
+
+	/** Below this many tiles pending, waking helper threads costs more than it saves. */
+	private static final int PARALLEL_MIN_TILES = 2048;
+
+	// saved quad layout, followed by two events per pixel row from min to max tile origin y + 7
+	private static final int Q_MIN_X = 0;
+	private static final int Q_MAX_X = 1;
+	private static final int Q_MIN_Y = 2;
+	private static final int Q_MAX_Y = 3;
+	private static final int Q_DEPTH = 4;
+	private static final int Q_EVENTS = 5;
+
+	private final IntArrayList[] bins = new IntArrayList[BAND_COUNT];
+	private int[] quads = new int[0x4000];
+	private int quadsLength = 0;
+	private int tileCount = 0;
+
+	RasterBands() {
+		for (int i = 0; i < BAND_COUNT; ++i) {
+			bins[i] = new IntArrayList();
+		}
+	}
+
+	boolean isEmpty() {
+		return quadsLength == 0;
+	}
+
+	void clear() {
+		if (quadsLength != 0) {
+			quadsLength = 0;
+			tileCount = 0;
+
+			for (final IntArrayList bin : bins) {
+				bin.clear();
+			}
+		}
+	}
+
+	/** Saves the quad last prepared in the rasterizer data array. */
+	void add(int[] data) {
+		final int minX = data[IDX_MIN_TILE_ORIGIN_X];
+		final int maxX = data[IDX_MAX_TILE_ORIGIN_X];
+		final int minY = data[IDX_TILE_ORIGIN_Y];
+		final int maxY = data[IDX_MAX_TILE_ORIGIN_Y];
+		final int eventLength = (maxY + TILE_PIXEL_DIAMETER - minY) << 1;
+		final int base = quadsLength;
+		final int end = base + Q_EVENTS + eventLength;
+
+		if (end > quads.length) {
+			quads = Arrays.copyOf(quads, Math.max(end, quads.length * 2));
+		}
+
+		final int[] quads = this.quads;
+		quads[base + Q_MIN_X] = minX;
+		quads[base + Q_MAX_X] = maxX;
+		quads[base + Q_MIN_Y] = minY;
+		quads[base + Q_MAX_Y] = maxY;
+		quads[base + Q_DEPTH] = data[IDX_QUAD_DEPTH];
+		System.arraycopy(data, IDX_EVENTS + (minY << 1), quads, base + Q_EVENTS, eventLength);
+		quadsLength = end;
+
+		final int band1 = maxY >> BAND_PIXEL_SHIFT;
+
+		for (int band = minY >> BAND_PIXEL_SHIFT; band <= band1; ++band) {
+			bins[band].add(base);
+		}
+
+		tileCount += (((maxX - minX) >> TILE_AXIS_SHIFT) + 1) * (((maxY - minY) >> TILE_AXIS_SHIFT) + 1);
+	}
+
+	/** Draws all saved quads into the raster and clears them. */
+	void draw(Rasterizer raster) {
+		final BandWorkers workers = tileCount >= PARALLEL_MIN_TILES ? BandWorkers.INSTANCE : null;
+
+		if (workers == null || workers.helperCount == 0) {
+			for (int band = 0; band < BAND_COUNT; ++band) {
+				drawBand(raster, band);
+			}
+		} else {
+			workers.draw(this, raster);
+		}
+
+		raster.pyramid.refreshTop();
+		clear();
+	}
+
+	/** Same per-tile logic as {@link Rasterizer#drawQuadInner()}, limited to the rows of one band. */
+	void drawBand(Rasterizer raster, int band) {
+		final IntArrayList bin = bins[band];
+		final int limit = bin.size();
+
+		if (limit == 0) {
+			return;
+		}
+
+		final int[] quads = this.quads;
+		final long[] tiles = raster.tiles;
+		final TileDepth depth = raster.depth;
+		final CoveragePyramid pyramid = raster.pyramid;
+		final int bandY0 = band << BAND_PIXEL_SHIFT;
+		final int bandY1 = bandY0 + BAND_PIXEL_HEIGHT - TILE_PIXEL_DIAMETER;
+
+		for (int i = 0; i < limit; ++i) {
+			final int base = bin.getInt(i);
+			final int minX = quads[base + Q_MIN_X];
+			final int maxX = quads[base + Q_MAX_X];
+			final int minY = quads[base + Q_MIN_Y];
+			final int quadDepth = quads[base + Q_DEPTH];
+			final int y1 = Math.min(bandY1, quads[base + Q_MAX_Y]);
+			// events of pixel row y are at eventBase + y * 2
+			final int eventBase = base + Q_EVENTS - (minY << 1);
+
+			for (int y = Math.max(bandY0, minY); y <= y1; y += TILE_PIXEL_DIAMETER) {
+				final int tileY = y >> TILE_AXIS_SHIFT;
+
+				for (int x = minX; x <= maxX; x += TILE_PIXEL_DIAMETER) {
+					final int tileIndex = Indexer.tileIndex(x >> TILE_AXIS_SHIFT, tileY);
+					final long word = tiles[tileIndex];
+
+					if (word != -1L || quadDepth < depth.depth(tileIndex)) {
+						final long coverage = Rasterizer.computeTileCoverage(quads, eventBase + (y << 1), x);
+						depth.update(tileIndex, word, coverage, quadDepth);
+
+						if ((coverage & ~word) != 0) {
+							final long result = word | coverage;
+							tiles[tileIndex] = result;
+							pyramid.updateMid(tileIndex, result);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Helper threads shared by all rasterizers. The thread that calls {@link #draw(RasterBands, Rasterizer)}
+	 * draws bands too, so there is one helper fewer than the number of threads that can work at once.
+	 */
+	private static final class BandWorkers {
+		private static final BandWorkers INSTANCE = new BandWorkers();
+
+		private final int helperCount = Math.max(0, Math.min(BAND_COUNT, Runtime.getRuntime().availableProcessors()) - 1);
+		private final Object lock = new Object();
+		/** Generation in the high bits, next unclaimed band in the low bits. */
+		private final AtomicLong claims = new AtomicLong();
+		private final AtomicInteger remaining = new AtomicInteger();
+
+		// guarded by lock
+		private int generation = 0;
+		private RasterBands bands;
+		private Rasterizer raster;
+
+		private BandWorkers() {
+			for (int i = 0; i < helperCount; ++i) {
+				final Thread thread = new Thread(this::runHelper, "Canvas Occlusion Band - " + i);
+				thread.setDaemon(true);
+				thread.start();
+			}
+		}
+
+		private synchronized void draw(RasterBands bands, Rasterizer raster) {
+			final int generation;
+
+			synchronized (lock) {
+				generation = ++this.generation;
+				this.bands = bands;
+				this.raster = raster;
+				remaining.set(BAND_COUNT);
+				claims.set((long) generation << 32);
+				lock.notifyAll();
+			}
+
+			drawBands(bands, raster, generation);
+
+			// helpers still drawing have claimed bands, which never takes long
+			while (remaining.get() != 0) {
+				Thread.yield();
+			}
+
+			synchronized (lock) {
+				this.bands = null;
+				this.raster = null;
+			}
+		}
+
+		/** Claims bands of the given generation until none are left. */
+		private void drawBands(RasterBands bands, Rasterizer raster, int generation) {
+			while (true) {
+				final long claim = claims.get();
+
+				if ((int) (claim >>> 32) != generation || (int) claim >= BAND_COUNT) {
+					return;
+				}
+
+				if (claims.compareAndSet(claim, claim + 1)) {
+					try {
+						bands.drawBand(raster, (int) claim);
+					} finally {
+						remaining.decrementAndGet();
+					}
+				}
+			}
+		}
+
+		private void runHelper() {
+			int seen = 0;
+
+			while (true) {
+				try {
+					final RasterBands bands;
+					final Rasterizer raster;
+					final int generation;
+
+					synchronized (lock) {
+						while (this.generation == seen) {
+							lock.wait();
+						}
+
+						generation = this.generation;
+						bands = this.bands;
+						raster = this.raster;
+					}
+
+					seen = generation;
+
+					if (bands != null) {
+						drawBands(bands, raster, generation);
+					}
+				} catch (final InterruptedException e) {
+					// NOOP
+				} catch (final Exception e) {
+					CanvasMod.LOG.error("Unhandled error during occlusion raster drawing. Impact unknown.", e);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,313 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+
+package grondag.canvas.terrain.occlusion;
+
+import static grondag.canvas.terrain.occlusion.Constants.EMPTY_BITS;
+import static grondag.canvas.terrain.occlusion.Constants.HALF_PIXEL_HEIGHT;
+import static grondag.canvas.terrain.occlusion.Constants.HALF_PIXEL_WIDTH;
+import static grondag.canvas.terrain.occlusion.Constants.MAX_DEPTH;
+import static grondag.canvas.terrain.occlusion.Constants.PIXEL_HEIGHT;
+import static grondag.canvas.terrain.occlusion.Constants.PIXEL_WIDTH;
+import static grondag.canvas.terrain.occlusion.Constants.TILE_AXIS_SHIFT;
+import static grondag.canvas.terrain.occlusion.Constants.TILE_COUNT;
+import static grondag.canvas.terrain.occlusion.Constants.TILE_HEIGHT;
+import static grondag.canvas.terrain.occlusion.Constants.TILE_PIXEL_DIAMETER;
+import static grondag.canvas.terrain.occlusion.Constants.TILE_PIXEL_INDEX_MASK;
+import static grondag.canvas.terrain.occlusion.Constants.TILE_WIDTH;
+
+import grondag.canvas.varia.Matrix4L;
+
+/**
+ * Carries a finished raster over to a rotated view from the same eye point, so box
+ * tests after a mouse turn start against last frame's occluders instead of an empty
+ * raster.  Occluders are still drawn as usual afterwards - drawing into tiles that are
+ * already full and nearer is cheap - and fill in the newly exposed screen edges.
+ *
+ * <p>Only fully covered tiles are carried over. A new tile is kept when every old pixel
+ * under its footprint - the tile dilated by a pixel, mapped to the old view and dilated
+ * by another pixel - is covered. Its depth is the greatest old depth in that footprint,
+ * scaled by the largest change in view distance along the footprint rays.  Both views
+ * must share the eye point: a translated eye can open gaps between occluders that
+ * overlapped exactly, which no coverage raster can account for.
+ */
+public final class RasterReprojector {
+	/** Clip-space depth of the points used to find rays. Any depth in front of the near plane works. */
+	private static final double RAY_DEPTH = 0.5;
+	private static final double PIXEL_DILATION = 1;
+
+	private final long[] tiles = new long[TILE_COUNT];
+	private final CoveragePyramid pyramid = new CoveragePyramid();
+	private final TileDepth depth = new TileDepth();
+	private final double[] from = new double[16];
+	private final double[] to = new double[16];
+	private final double[] map = new double[16];
+
+	/**
+	 * Replaces the content of the raster with the reprojection of its current content.
+	 * Matrices are the camera-relative view projections of the old and new views.
+	 *
+	 * @return number of tiles kept
+	 */
+	int reproject(Rasterizer raster, Matrix4L fromMvp, Matrix4L toMvp) {
+		raster.flush();
+		toDoubles(fromMvp, from);
+		toDoubles(toMvp, to);
+
+		if (!computeMap(from, to, map)) {
+			raster.clear();
+			return 0;
+		}
+
+		final int result = reproject(raster.tiles, raster.depth, map, tiles, pyramid, depth);
+		System.arraycopy(tiles, 0, raster.tiles, 0, TILE_COUNT);
+		raster.pyramid.copyFrom(pyramid);
+		raster.depth.copyFrom(depth);
+		return result;
+	}
+
+	/**
+	 * Computes the matrix taking clip coordinates of the new view to clip coordinates of the old view.
+	 * Matrices are row major.
+	 *
+	 * @return false if the new view matrix cannot be inverted
+	 */
+	public static boolean computeMap(double[] fromMvp, double[] toMvp, double[] out) {
+		final double[] inverse = new double[16];
+
+		if (!invert(toMvp, inverse)) {
+			return false;
+		}
+
+		for (int row = 0; row < 4; ++row) {
+			for (int col = 0; col < 4; ++col) {
+				double sum = 0;
+
+				for (int i = 0; i < 4; ++i) {
+					sum += fromMvp[row * 4 + i] * inverse[i * 4 + col];
+				}
+
+				out[row * 4 + col] = sum;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Writes the reprojection of the source raster to the destination, which is cleared first.
+	 *
+	 * @param map from {@link #computeMap(double[], double[], double[])}
+	 * @return number of tiles kept
+	 */
+	public static int reproject(long[] srcTiles, TileDepth srcDepth, double[] map, long[] dstTiles, CoveragePyramid dstPyramid, TileDepth dstDepth) {
+		System.arraycopy(EMPTY_BITS, 0, dstTiles, 0, TILE_COUNT);
+		dstPyramid.clear();
+		dstDepth.clear();
+
+		final Footprint f = new Footprint();
+		int result = 0;
+
+		for (int tileY = 0; tileY < TILE_HEIGHT; ++tileY) {
+			final double y0 = toNdc((tileY << TILE_AXIS_SHIFT) - PIXEL_DILATION, HALF_PIXEL_HEIGHT);
+			final double y1 = toNdc((tileY << TILE_AXIS_SHIFT) + TILE_PIXEL_DIAMETER + PIXEL_DILATION, HALF_PIXEL_HEIGHT);
+
+			for (int tileX = 0; tileX < TILE_WIDTH; ++tileX) {
+				final double x0 = toNdc((tileX << TILE_AXIS_SHIFT) - PIXEL_DILATION, HALF_PIXEL_WIDTH);
+				final double x1 = toNdc((tileX << TILE_AXIS_SHIFT) + TILE_PIXEL_DIAMETER + PIXEL_DILATION, HALF_PIXEL_WIDTH);
+				f.reset();
+
+				if (f.add(map, x0, y0) && f.add(map, x1, y0) && f.add(map, x0, y1) && f.add(map, x1, y1)) {
+					final int oldX0 = (int) Math.floor(f.minX - PIXEL_DILATION);
+					final int oldY0 = (int) Math.floor(f.minY - PIXEL_DILATION);
+					final int oldX1 = (int) Math.floor(f.maxX + PIXEL_DILATION);
+					final int oldY1 = (int) Math.floor(f.maxY + PIXEL_DILATION);
+
+					// newly exposed if any of the footprint was off screen
+					if (oldX0 < 0 || oldY0 < 0 || oldX1 >= PIXEL_WIDTH || oldY1 >= PIXEL_HEIGHT) {
+						continue;
+					}
+
+					final int tx0 = oldX0 >> TILE_AXIS_SHIFT;
+					final int ty0 = oldY0 >> TILE_AXIS_SHIFT;
+					final int tx1 = oldX1 >> TILE_AXIS_SHIFT;
+					final int ty1 = oldY1 >> TILE_AXIS_SHIFT;
+
+					if (isPixelRectFull(srcTiles, oldX0, oldY0, oldX1, oldY1)) {
+						final int oldDepth = srcDepth.maxDepth(tx0, ty0, tx1, ty1);
+						final int newDepth = (int) Math.min(MAX_DEPTH, Math.ceil(oldDepth * f.maxDepthRatio) + 1);
+						final int tileIndex = Indexer.tileIndex(tileX, tileY);
+						dstDepth.update(tileIndex, 0, -1L, newDepth);
+						dstTiles[tileIndex] = -1L;
+						dstPyramid.update(tileIndex, -1L);
+						++result;
+					}
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/** True if every pixel in the inclusive range is covered. */
+	private static boolean isPixelRectFull(long[] tiles, int x0, int y0, int x1, int y1) {
+		final int tx0 = x0 >> TILE_AXIS_SHIFT;
+		final int ty0 = y0 >> TILE_AXIS_SHIFT;
+		final int tx1 = x1 >> TILE_AXIS_SHIFT;
+		final int ty1 = y1 >> TILE_AXIS_SHIFT;
+
+		for (int ty = ty0; ty <= ty1; ++ty) {
+			for (int tx = tx0; tx <= tx1; ++tx) {
+				final long mask = CoveragePyramid.rectMask(
+						tx == tx0 ? x0 & TILE_PIXEL_INDEX_MASK : 0,
+						ty == ty0 ? y0 & TILE_PIXEL_INDEX_MASK : 0,
+						tx == tx1 ? x1 & TILE_PIXEL_INDEX_MASK : TILE_PIXEL_INDEX_MASK,
+						ty == ty1 ? y1 & TILE_PIXEL_INDEX_MASK : TILE_PIXEL_INDEX_MASK);
+
+				if ((tiles[Indexer.tileIndex(tx, ty)] & mask) != mask) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private static double toNdc(double pixel, int halfSize) {
+		return pixel / halfSize - 1;
+	}
+
+	/** Old-view pixel bounds of the corner rays of a new tile. */
+	private static class Footprint {
+		double minX;
+		double minY;
+		double maxX;
+		double maxY;
+		/** Largest ratio of new to old view distance seen for the same point. */
+		double maxDepthRatio;
+
+		void reset() {
+			minX = Double.MAX_VALUE;
+			minY = Double.MAX_VALUE;
+			maxX = -Double.MAX_VALUE;
+			maxY = -Double.MAX_VALUE;
+			maxDepthRatio = 0;
+		}
+
+		/** False if the ray is not in front of the old view. */
+		boolean add(double[] map, double x, double y) {
+			final double w = map[12] * x + map[13] * y + map[14] * RAY_DEPTH + map[15];
+
+			if (w <= 0) {
+				return false;
+			}
+
+			final double iw = 1 / w;
+			final double px = ((map[0] * x + map[1] * y + map[2] * RAY_DEPTH + map[3]) * iw + 1) * HALF_PIXEL_WIDTH;
+			final double py = ((map[4] * x + map[5] * y + map[6] * RAY_DEPTH + map[7]) * iw + 1) * HALF_PIXEL_HEIGHT;
+
+			minX = Math.min(minX, px);
+			minY = Math.min(minY, py);
+			maxX = Math.max(maxX, px);
+			maxY = Math.max(maxY, py);
+
+			// the point has new clip w of one, so the ratio of view distances is 1 / w
+			maxDepthRatio = Math.max(maxDepthRatio, iw);
+			return true;
+		}
+	}
+
+	private static void toDoubles(Matrix4L m, double[] out) {
+		final double s = Matrix4L.FLOAT_CONVERSION;
+		out[0] = m.a00() * s;
+		out[1] = m.a01() * s;
+		out[2] = m.a02() * s;
+		out[3] = m.a03() * s;
+		out[4] = m.a10() * s;
+		out[5] = m.a11() * s;
+		out[6] = m.a12() * s;
+		out[7] = m.a13() * s;
+		out[8] = m.a20() * s;
+		out[9] = m.a21() * s;
+		out[10] = m.a22() * s;
+		out[11] = m.a23() * s;
+		out[12] = m.a30() * s;
+		out[13] = m.a31() * s;
+		out[14] = m.a32() * s;
+		out[15] = m.a33() * s;
+	}
+
+	/** Gauss-Jordan with partial pivoting. Row major. */
+	private static boolean invert(double[] m, double[] out) {
+		final double[] a = m.clone();
+
+		for (int i = 0; i < 16; ++i) {
+			out[i] = (i % 5) == 0 ? 1 : 0;
+		}
+
+		for (int col = 0; col < 4; ++col) {
+			int pivot = col;
+
+			for (int row = col + 1; row < 4; ++row) {
+				if (Math.abs(a[row * 4 + col]) > Math.abs(a[pivot * 4 + col])) {
+					pivot = row;
+				}
+			}
+
+			final double p = a[pivot * 4 + col];
+
+			if (Math.abs(p) < 1e-12) {
+				return false;
+			}
+
+			if (pivot != col) {
+				swapRows(a, pivot, col);
+				swapRows(out, pivot, col);
+			}
+
+			final double ip = 1 / p;
+
+			for (int i = 0; i < 4; ++i) {
+				a[col * 4 + i] *= ip;
+				out[col * 4 + i] *= ip;
+			}
+
+			for (int row = 0; row < 4; ++row) {
+				if (row != col) {
+					final double f = a[row * 4 + col];
+
+					if (f != 0) {
+						for (int i = 0; i < 4; ++i) {
+							a[row * 4 + i] -= f * a[col * 4 + i];
+							out[row * 4 + i] -= f * out[col * 4 + i];
+						}
+					}
+				}
+			}
+		}
+
+		return true;
+	}
+
+	private static void swapRows(double[] m, int a, int b) {
+		for (int i = 0; i < 4; ++i) {
+			final double t = m[a * 4 + i];
+			m[a * 4 + i] = m[b * 4 + i];
+			m[b * 4 + i] = t;
+		}
+	}
+}
@@ -22,6 +22,7 @@ import static grondag.canvas.terrain.occlusion.Constants.DATA_LENGTH;
 import static grondag.canvas.terrain.occlusion.Constants.EDGE_BOTTOM;
 import static grondag.canvas.terrain.occlusion.Constants.EDGE_POINT;
 import static grondag.canvas.terrain.occlusion.Constants.EDGE_TOP;
+import static grondag.canvas.terrain.occlusion.Constants.EMPTY_BITS;
 import static grondag.canvas.terrain.occlusion.Constants.EVENTS_LENGTH;
 import static grondag.canvas.terrain.occlusion.Constants.EVENT_0123_FFFF;
 import static grondag.canvas.terrain.occlusion.Constants.EVENT_0123_FFFL;
@@ -139,6 +140,7 @@ import static grondag.canvas.terrain.occlusion.Constants.IDX_POS0;
 import static grondag.canvas.terrain.occlusion.Constants.IDX_POS1;
 import static grondag.canvas.terrain.occlusion.Constants.IDX_POS2;
 import static grondag.canvas.terrain.occlusion.Constants.IDX_POS3;
+import static grondag.canvas.terrain.occlusion.Constants.IDX_QUAD_DEPTH;
 import static grondag.canvas.terrain.occlusion.Constants.IDX_SAVE_TILE_INDEX;
 import static grondag.canvas.terrain.occlusion.Constants.IDX_SAVE_TILE_ORIGIN_X;
 import static grondag.canvas.terrain.occlusion.Constants.IDX_SAVE_TILE_ORIGIN_Y;
@@ -146,6 +148,7 @@ import static grondag.canvas.terrain.occlusion.Constants.IDX_TILE_INDEX;
 import static grondag.canvas.terrain.occlusion.Constants.IDX_TILE_ORIGIN_X;
 import static grondag.canvas.terrain.occlusion.Constants.IDX_TILE_ORIGIN_Y;
 import static grondag.canvas.terrain.occlusion.Constants.IDX_VERTEX_DATA;
+import static grondag.canvas.terrain.occlusion.Constants.MAX_DEPTH;
 import static grondag.canvas.terrain.occlusion.Constants.MAX_PIXEL_Y;
 import static grondag.canvas.terrain.occlusion.Constants.PIXEL_HEIGHT;
 import static grondag.canvas.terrain.occlusion.Constants.PIXEL_WIDTH;
@@ -186,6 +189,12 @@ class Rasterizer {
 	final Matrix4L mvpMatrix = new Matrix4L();
 	final int[] data = new int[DATA_LENGTH];
 	final long[] tiles = new long[TILE_COUNT];
+	/** Summary of tile coverage. Must be updated whenever a tile word changes. */
+	final CoveragePyramid pyramid = new CoveragePyramid();
+	/** Farthest occluder depth of each tile. Must be updated before a tile word changes. */
+	final TileDepth depth = new TileDepth();
+	/** Occluders waiting to be drawn in bands. Anything that reads the raster must {@link #flush()} first. */
+	private final RasterBands bands = new RasterBands();
 	private final EventFiller[] EVENT_FILLERS = new EventFiller[0x1000];
 	long nextRasterOutputTime;
 
@@ -629,9 +638,27 @@ class Rasterizer {
 	}
 
 	final void copyFrom(Rasterizer source) {
+		source.flush();
+		bands.clear();
 		mvpMatrix.copyFrom(source.mvpMatrix);
 		System.arraycopy(source.data, 0, data, 0, DATA_LENGTH);
 		System.arraycopy(source.tiles, 0, tiles, 0, TILE_COUNT);
+		pyramid.copyFrom(source.pyramid);
+		depth.copyFrom(source.depth);
+	}
+
+	final void clear() {
+		System.arraycopy(EMPTY_BITS, 0, tiles, 0, TILE_COUNT);
+		pyramid.clear();
+		depth.clear();
+		bands.clear();
+	}
+
+	/** Draws any occluders deferred by banded drawing. */
+	final void flush() {
+		if (!bands.isEmpty()) {
+			bands.draw(this);
+		}
 	}
 
 	final void drawQuad(int v0, int v1, int v2, int v3) {
@@ -646,20 +673,32 @@ class Rasterizer {
 			return;
 		}
 
-		drawQuad();
+		data[IDX_QUAD_DEPTH] = TileDepth.farDepth(Math.max(Math.max(vertexW(v0), vertexW(v1)), Math.max(vertexW(v2), vertexW(v3))));
+
+		if (Configurator.parallelOcclusionRaster) {
+			bands.add(data);
+		} else {
+			flush();
+			drawQuad();
+		}
 	}
 
 	boolean testQuad(int v0, int v1, int v2, int v3) {
+		flush();
 		final int boundsResult = prepareBounds(v0, v1, v2, v3);
 
 		if (boundsResult == BOUNDS_OUTSIDE_OR_TOO_SMALL) {
 			return false;
 		}
 
+		final int quadDepth = TileDepth.nearDepth(Math.min(Math.min(vertexW(v0), vertexW(v1)), Math.min(vertexW(v2), vertexW(v3))));
+		data[IDX_QUAD_DEPTH] = quadDepth;
+
 		if ((data[IDX_MIN_PIX_X] == data[IDX_MAX_PIX_X] && data[IDX_MIN_PIX_Y] == data[IDX_MAX_PIX_Y])) {
 			final int px = data[IDX_MIN_PIX_X];
 			final int py = data[IDX_MIN_PIX_Y];
-			return px >= 0 && py >= 0 && px < PIXEL_WIDTH && py < PIXEL_HEIGHT && testPixel(px, py);
+			return px >= 0 && py >= 0 && px < PIXEL_WIDTH && py < PIXEL_HEIGHT
+					&& (testPixel(px, py) || !depth.isBehind(Indexer.lowIndexFromPixelXY(px, py), quadDepth));
 		} else {
 			return testQuad();
 		}
@@ -670,6 +709,17 @@ class Rasterizer {
 		final int minTileOriginX = data[IDX_MIN_TILE_ORIGIN_X];
 		final int maxTileOriginX = data[IDX_MAX_TILE_ORIGIN_X];
 		final int maxTileOriginY = data[IDX_MAX_TILE_ORIGIN_Y];
+
+		final int tileX0 = minTileOriginX >> TILE_AXIS_SHIFT;
+		final int tileY0 = data[IDX_TILE_ORIGIN_Y] >> TILE_AXIS_SHIFT;
+		final int tileX1 = maxTileOriginX >> TILE_AXIS_SHIFT;
+		final int tileY1 = maxTileOriginY >> TILE_AXIS_SHIFT;
+
+		// every tile the walk would visit is fully covered by nearer occluders
+		if (pyramid.isTileRectFull(tileX0, tileY0, tileX1, tileY1) && depth.isTileRectBehind(tileX0, tileY0, tileX1, tileY1, data[IDX_QUAD_DEPTH])) {
+			return false;
+		}
+
 		boolean goRight = true;
 
 		while (true) {
@@ -704,14 +754,19 @@ class Rasterizer {
 	}
 
 	boolean testQuadInner() {
-		final long word = tiles[data[IDX_TILE_INDEX]];
+		final int tileIndex = data[IDX_TILE_INDEX];
+		final long word = tiles[tileIndex];
+		final boolean isBehind = depth.isBehind(tileIndex, data[IDX_QUAD_DEPTH]);
 
-		// nothing to test if fully occluded
-		if (word == -1L) {
+		// nothing to test if fully occluded by nearer occluders
+		if (word == -1L && isBehind) {
 			return false;
 		}
 
-		return (~word & computeTileCoverage()) != 0;
+		final long coverage = computeTileCoverage();
+
+		// visible if any pixel is uncovered or any occluder might be behind the quad
+		return coverage != 0 && ((~word & coverage) != 0 || !isBehind);
 	}
 
 	void drawQuad() {
@@ -756,16 +811,27 @@ class Rasterizer {
 		assert data[IDX_TILE_ORIGIN_X] >= 0;
 
 		final int tileIndex = data[IDX_TILE_INDEX];
-
-		long word = tiles[tileIndex];
-
-		// nothing to do if fully occluded
-		if (word != -1L) {
-			word |= computeTileCoverage();
-			tiles[tileIndex] = word;
+		final int quadDepth = data[IDX_QUAD_DEPTH];
+		final long word = tiles[tileIndex];
+
+		// nothing to do if fully occluded by nearer occluders
+		// RasterBands.drawBand does the same per tile and must stay in step with this
+		if (word != -1L || quadDepth < depth.depth(tileIndex)) {
+			final long coverage = computeTileCoverage();
+			depth.update(tileIndex, word, coverage, quadDepth);
+
+			if ((coverage & ~word) != 0) {
+				final long result = word | coverage;
+				tiles[tileIndex] = result;
+				pyramid.update(tileIndex, result);
+			}
 		}
 	}
 
+	private float vertexW(int baseIndex) {
+		return Float.intBitsToFloat(data[baseIndex + PV_W + IDX_VERTEX_DATA]);
+	}
+
 	void printMask8x8(long mask) {
 		final String s = Strings.padStart(Long.toBinaryString(mask), 64, '0');
 		System.out.println(StringUtils.reverse(s.substring(0, 8)).replace("0", "- ").replace("1", "X "));
@@ -2294,17 +2360,21 @@ class Rasterizer {
 	}
 
 	long computeTileCoverage() {
-		final int[] data = this.data;
-
-		int y = data[IDX_TILE_ORIGIN_Y] << 1;
-		final int tx = data[IDX_TILE_ORIGIN_X];
+		return computeTileCoverage(data, IDX_EVENTS + (data[IDX_TILE_ORIGIN_Y] << 1), data[IDX_TILE_ORIGIN_X]);
+	}
 
-		final int baseX = data[IDX_TILE_ORIGIN_X] + 7;
+	/**
+	 * Coverage of the tile at x origin tx from the left/right event pairs of its eight
+	 * pixel rows, starting at eventIndex.  Static so banded drawing can use events saved per quad.
+	 */
+	static long computeTileCoverage(int[] events, int eventIndex, int tx) {
+		int y = eventIndex;
+		final int baseX = tx + 7;
 
 		long mask = 0;
 
-		int leftX = data[y + IDX_EVENTS] - tx;
-		int rightX = baseX - data[++y + IDX_EVENTS];
+		int leftX = events[y] - tx;
+		int rightX = baseX - events[++y];
 
 		if (leftX < 8 && rightX < 8) {
 			long m = leftX <= 0 ? 0xFF : ((0xFF << leftX) & 0xFF);
@@ -2316,8 +2386,8 @@ class Rasterizer {
 			mask = m;
 		}
 
-		leftX = data[++y + IDX_EVENTS] - tx;
-		rightX = baseX - data[++y + IDX_EVENTS];
+		leftX = events[++y] - tx;
+		rightX = baseX - events[++y];
 
 		if (leftX < 8 && rightX < 8) {
 			long m = leftX <= 0 ? 0xFF : ((0xFF << leftX) & 0xFF);
@@ -2329,8 +2399,8 @@ class Rasterizer {
 			mask |= m << 8;
 		}
 
-		leftX = data[++y + IDX_EVENTS] - tx;
-		rightX = baseX - data[++y + IDX_EVENTS];
+		leftX = events[++y] - tx;
+		rightX = baseX - events[++y];
 
 		if (leftX < 8 && rightX < 8) {
 			long m = leftX <= 0 ? 0xFF : ((0xFF << leftX) & 0xFF);
@@ -2342,8 +2412,8 @@ class Rasterizer {
 			mask |= m << 16;
 		}
 
-		leftX = data[++y + IDX_EVENTS] - tx;
-		rightX = baseX - data[++y + IDX_EVENTS];
+		leftX = events[++y] - tx;
+		rightX = baseX - events[++y];
 
 		if (leftX < 8 && rightX < 8) {
 			long m = leftX <= 0 ? 0xFF : ((0xFF << leftX) & 0xFF);
@@ -2355,8 +2425,8 @@ class Rasterizer {
 			mask |= m << 24;
 		}
 
-		leftX = data[++y + IDX_EVENTS] - tx;
-		rightX = baseX - data[++y + IDX_EVENTS];
+		leftX = events[++y] - tx;
+		rightX = baseX - events[++y];
 
 		if (leftX < 8 && rightX < 8) {
 			long m = leftX <= 0 ? 0xFF : ((0xFF << leftX) & 0xFF);
@@ -2368,8 +2438,8 @@ class Rasterizer {
 			mask |= m << 32;
 		}
 
-		leftX = data[++y + IDX_EVENTS] - tx;
-		rightX = baseX - data[++y + IDX_EVENTS];
+		leftX = events[++y] - tx;
+		rightX = baseX - events[++y];
 
 		if (leftX < 8 && rightX < 8) {
 			long m = leftX <= 0 ? 0xFF : ((0xFF << leftX) & 0xFF);
@@ -2381,8 +2451,8 @@ class Rasterizer {
 			mask |= m << 40;
 		}
 
-		leftX = data[++y + IDX_EVENTS] - tx;
-		rightX = baseX - data[++y + IDX_EVENTS];
+		leftX = events[++y] - tx;
+		rightX = baseX - events[++y];
 
 		if (leftX < 8 && rightX < 8) {
 			long m = leftX <= 0 ? 0xFF : ((0xFF << leftX) & 0xFF);
@@ -2394,8 +2464,8 @@ class Rasterizer {
 			mask |= m << 48;
 		}
 
-		leftX = data[++y + IDX_EVENTS] - tx;
-		rightX = baseX - data[++y + IDX_EVENTS];
+		leftX = events[++y] - tx;
+		rightX = baseX - events[++y];
 
 		if (leftX < 8 && rightX < 8) {
 			long m = leftX <= 0 ? 0xFF : ((0xFF << leftX) & 0xFF);
@@ -2419,6 +2489,7 @@ class Rasterizer {
 	 * @return
 	 */
 	boolean isPointVisible(int x, int y, int z) {
+		flush();
 		final Matrix4L mvpMatrix = this.mvpMatrix;
 
 		final long w = mvpMatrix.transformVec4W(x, y, z);
@@ -2438,8 +2509,15 @@ class Rasterizer {
 		return (tiles[Indexer.lowIndexFromPixelXY(x, y)] & (1L << (Indexer.pixelIndex(x, y)))) == 0;
 	}
 
+	/** Depth is unknown here so the pixel is treated as the farthest possible occluder. */
 	void drawPixel(int x, int y) {
-		tiles[Indexer.lowIndexFromPixelXY(x, y)] |= (1L << (Indexer.pixelIndex(x, y)));
+		flush();
+		final int tileIndex = Indexer.lowIndexFromPixelXY(x, y);
+		final long bit = 1L << (Indexer.pixelIndex(x, y));
+		depth.update(tileIndex, tiles[tileIndex], bit, MAX_DEPTH);
+		final long word = tiles[tileIndex] | bit;
+		tiles[tileIndex] = word;
+		pyramid.update(tileIndex, word);
 	}
 
 	@FunctionalInterface
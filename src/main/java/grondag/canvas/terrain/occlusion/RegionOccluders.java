@@ -0,0 +1,288 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.terrain.occlusion;
+
+import java.util.Arrays;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+import grondag.canvas.apiimpl.util.FaceConstants;
+import grondag.canvas.terrain.occlusion.geometry.BoxChains;
+import grondag.canvas.terrain.occlusion.geometry.OcclusionRegion;
+import grondag.canvas.terrain.region.BuiltRenderRegion;
+
+/**
+ * Occluder boxes of one region merged with boxes that continue them in adjacent regions.
+ *
+ * <p>Regions are grouped along each axis in aligned runs of {@link #MAX_CHAIN_REGIONS},
+ * so every member of a chain finds the same run no matter which of them is drawn first.
+ * Chains are found lazily, per box, the first time a box is drawn and are kept until the
+ * occlusion data of this region or of any neighbor that was consulted changes.
+ *
+ * <p>Also records which boxes have already been drawn as part of a chain in the current
+ * occluder version so that members can skip them.  Terrain iteration thread only.
+ */
+public final class RegionOccluders {
+	public static final int MAX_CHAIN_REGIONS = 4;
+	private static final int RUN_MASK = ~(MAX_CHAIN_REGIONS - 1);
+
+	/** Marks boxes that have been checked and don't continue into any neighbor. */
+	private static final Chain NO_CHAIN = new Chain(0, 0, 0, 0, 0, 0, new BuiltRenderRegion[0], new int[0][], new int[0]);
+
+	private int[] data = OcclusionRegion.EMPTY_CULL_DATA;
+	private Chain[] chains = new Chain[0];
+	private int[] drawnVersions = new int[0];
+	private final ObjectArrayList<BuiltRenderRegion> sources = new ObjectArrayList<>();
+	private final ObjectArrayList<int[]> sourceData = new ObjectArrayList<>();
+
+	// members of the chain being found
+	private final ObjectArrayList<BuiltRenderRegion> memberRegions = new ObjectArrayList<>();
+	private final ObjectArrayList<int[]> memberData = new ObjectArrayList<>();
+	private final int[] memberBoxes = new int[MAX_CHAIN_REGIONS];
+
+	/**
+	 * Call before using results for a region's occlusion data.  Drops everything
+	 * if that data or data of any neighbor consulted since has changed.
+	 */
+	void prepare(int[] data) {
+		if (data != this.data) {
+			reset(data);
+			return;
+		}
+
+		final int limit = sources.size();
+
+		for (int i = 0; i < limit; ++i) {
+			if (sources.get(i).getBuildData().getOcclusionData() != sourceData.get(i)) {
+				reset(data);
+				return;
+			}
+		}
+	}
+
+	private void reset(int[] data) {
+		this.data = data;
+		sources.clear();
+		sourceData.clear();
+
+		if (chains.length < data.length) {
+			chains = new Chain[data.length];
+			drawnVersions = new int[data.length];
+		} else {
+			Arrays.fill(chains, null);
+			Arrays.fill(drawnVersions, 0);
+		}
+	}
+
+	/** True if the box was drawn as part of a chain in the given occluder version. */
+	boolean wasDrawn(int boxIndex, int occluderVersion) {
+		return drawnVersions[boxIndex] == occluderVersion;
+	}
+
+	void markDrawn(int[] data, int boxIndex, int occluderVersion) {
+		if (data != this.data) {
+			reset(data);
+		}
+
+		drawnVersions[boxIndex] = occluderVersion;
+	}
+
+	/**
+	 * The chain that includes the box at the given index of the region's data, or null if the
+	 * box doesn't continue into any neighbor. Only valid after {@link #prepare(int[])}.
+	 */
+	Chain chain(BuiltRenderRegion region, int boxIndex) {
+		Chain result = chains[boxIndex];
+
+		if (result == null) {
+			result = findChain(region, boxIndex);
+			chains[boxIndex] = result;
+		}
+
+		return result == NO_CHAIN ? null : result;
+	}
+
+	private Chain findChain(BuiltRenderRegion region, int boxIndex) {
+		final int box = data[boxIndex];
+
+		for (int axis = 0; axis < BoxChains.AXIS_COUNT; ++axis) {
+			final int coord = chunkCoord(region, axis);
+			final int runStart = coord & RUN_MASK;
+			final int runEnd = runStart + MAX_CHAIN_REGIONS - 1;
+
+			memberRegions.clear();
+			memberData.clear();
+
+			// walk back to the first member, then forward to the last
+			BuiltRenderRegion first = region;
+			int[] firstData = data;
+			int firstIndex = boxIndex;
+			int firstBox = box;
+			int firstCoord = coord;
+
+			while (firstCoord > runStart) {
+				final BuiltRenderRegion n = first.getNeighbor(lowFace(axis));
+
+				if (n == null) {
+					break;
+				}
+
+				final int[] nData = source(n);
+				final int j = BoxChains.findPrevious(firstBox, axis, nData);
+
+				if (j < 0) {
+					break;
+				}
+
+				first = n;
+				firstData = nData;
+				firstIndex = j;
+				firstBox = nData[j];
+				--firstCoord;
+			}
+
+			BuiltRenderRegion last = first;
+			int lastBox = firstBox;
+			int lastCoord = firstCoord;
+			addMember(first, firstData, firstIndex);
+
+			while (lastCoord < runEnd) {
+				final BuiltRenderRegion n = last.getNeighbor(highFace(axis));
+
+				if (n == null) {
+					break;
+				}
+
+				final int[] nData;
+				final int j;
+
+				if (n == region) {
+					// prefer the box itself over others with the same extent on this face
+					nData = data;
+					j = BoxChains.continues(lastBox, box, axis) ? boxIndex : BoxChains.findNext(lastBox, axis, data);
+				} else {
+					nData = source(n);
+					j = BoxChains.findNext(lastBox, axis, nData);
+				}
+
+				if (j < 0) {
+					break;
+				}
+
+				last = n;
+				lastBox = nData[j];
+				++lastCoord;
+				addMember(n, nData, j);
+			}
+
+			if (lastCoord > firstCoord) {
+				return buildChain(axis, (firstCoord - coord) * 16 + BoxChains.min(firstBox, axis), (lastCoord - coord) * 16 + BoxChains.max(lastBox, axis), box);
+			}
+		}
+
+		return NO_CHAIN;
+	}
+
+	private void addMember(BuiltRenderRegion region, int[] data, int boxIndex) {
+		memberBoxes[memberRegions.size()] = boxIndex;
+		memberRegions.add(region);
+		memberData.add(data);
+	}
+
+	private Chain buildChain(int axis, int axisMin, int axisMax, int box) {
+		final int n = memberRegions.size();
+		final BuiltRenderRegion[] regions = memberRegions.toArray(new BuiltRenderRegion[n]);
+		final int[][] data = memberData.toArray(new int[n][]);
+		final int[] boxes = Arrays.copyOf(memberBoxes, n);
+
+		switch (axis) {
+			case BoxChains.AXIS_X:
+				return new Chain(axisMin, BoxChains.min(box, BoxChains.AXIS_Y), BoxChains.min(box, BoxChains.AXIS_Z),
+						axisMax, BoxChains.max(box, BoxChains.AXIS_Y), BoxChains.max(box, BoxChains.AXIS_Z), regions, data, boxes);
+			case BoxChains.AXIS_Y:
+				return new Chain(BoxChains.min(box, BoxChains.AXIS_X), axisMin, BoxChains.min(box, BoxChains.AXIS_Z),
+						BoxChains.max(box, BoxChains.AXIS_X), axisMax, BoxChains.max(box, BoxChains.AXIS_Z), regions, data, boxes);
+			default:
+				return new Chain(BoxChains.min(box, BoxChains.AXIS_X), BoxChains.min(box, BoxChains.AXIS_Y), axisMin,
+						BoxChains.max(box, BoxChains.AXIS_X), BoxChains.max(box, BoxChains.AXIS_Y), axisMax, regions, data, boxes);
+		}
+	}
+
+	/** Current occlusion data of a neighbor, remembered so that changes to it drop cached chains. */
+	private int[] source(BuiltRenderRegion region) {
+		final int[] result = region.getBuildData().getOcclusionData();
+		sources.add(region);
+		sourceData.add(result);
+		return result;
+	}
+
+	private static int chunkCoord(BuiltRenderRegion region, int axis) {
+		switch (axis) {
+			case BoxChains.AXIS_X:
+				return region.getOrigin().getX() >> 4;
+			case BoxChains.AXIS_Y:
+				return region.getOrigin().getY() >> 4;
+			default:
+				return region.getOrigin().getZ() >> 4;
+		}
+	}
+
+	private static int lowFace(int axis) {
+		switch (axis) {
+			case BoxChains.AXIS_X:
+				return FaceConstants.WEST_INDEX;
+			case BoxChains.AXIS_Y:
+				return FaceConstants.DOWN_INDEX;
+			default:
+				return FaceConstants.NORTH_INDEX;
+		}
+	}
+
+	private static int highFace(int axis) {
+		switch (axis) {
+			case BoxChains.AXIS_X:
+				return FaceConstants.EAST_INDEX;
+			case BoxChains.AXIS_Y:
+				return FaceConstants.UP_INDEX;
+			default:
+				return FaceConstants.SOUTH_INDEX;
+		}
+	}
+
+	/** One box drawn in place of continuing boxes in two or more regions. */
+	static final class Chain {
+		/** Bounds relative to the origin of the region that found the chain. May extend past 0-16. */
+		final int x0, y0, z0, x1, y1, z1;
+		final BuiltRenderRegion[] regions;
+		/** Occlusion data of each member region when the chain was found. */
+		final int[][] data;
+		/** Index of the member box in each member region's data. */
+		final int[] boxIndices;
+
+		private Chain(int x0, int y0, int z0, int x1, int y1, int z1, BuiltRenderRegion[] regions, int[][] data, int[] boxIndices) {
+			this.x0 = x0;
+			this.y0 = y0;
+			this.z0 = z0;
+			this.x1 = x1;
+			this.y1 = y1;
+			this.z1 = z1;
+			this.regions = regions;
+			this.data = data;
+			this.boxIndices = boxIndices;
+		}
+	}
+}
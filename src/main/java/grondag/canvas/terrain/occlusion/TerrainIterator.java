@@ -94,6 +94,8 @@ public class TerrainIterator implements Consumer<TerrainRenderContext> {
 		state.set(RUNNING);
 
 		final boolean chunkCullingEnabled = this.chunkCullingEnabled;
+		// face connectivity assumes the camera can't pass through blocks
+		final boolean faceCulling = chunkCullingEnabled && Configurator.faceConnectivityCulling;
 		final int renderDistance = this.renderDistance;
 		final RenderRegionStorage regionStorage = renderRegionStorage;
 		final BuiltRenderRegion[] visibleRegions = this.visibleRegions;
@@ -167,14 +169,14 @@ public class TerrainIterator implements Consumer<TerrainRenderContext> {
 					// reuse prior test results
 					if (builtRegion.occluderVersion() != occluderVersion) {
 						if (!chunkCullingEnabled || builtRegion.isNear() || terrainOccluder.isEmptyRegionVisible(builtRegion.getOrigin())) {
-							builtRegion.enqueueUnvistedNeighbors();
+							builtRegion.enqueueUnvistedNeighbors(faceCulling);
 							builtRegion.setOccluderResult(true, occluderVersion);
 						} else {
 							builtRegion.setOccluderResult(false, occluderVersion);
 						}
 					}
 				} else {
-					builtRegion.enqueueUnvistedNeighbors();
+					builtRegion.enqueueUnvistedNeighbors(faceCulling);
 					builtRegion.setOccluderResult(false, occluderVersion);
 				}
 
@@ -182,37 +184,37 @@ public class TerrainIterator implements Consumer<TerrainRenderContext> {
 			}
 
 			if (!chunkCullingEnabled || builtRegion.isNear()) {
-				builtRegion.enqueueUnvistedNeighbors();
+				builtRegion.enqueueUnvistedNeighbors(faceCulling);
 				visibleRegions[visibleRegionCount++] = builtRegion;
 
 				if (redrawOccluder || builtRegion.occluderVersion() != occluderVersion) {
 					terrainOccluder.prepareRegion(builtRegion.getOrigin(), builtRegion.occlusionRange, builtRegion.squaredChunkDistance());
-					terrainOccluder.occlude(visData);
+					terrainOccluder.occlude(builtRegion, visData);
 				}
 
 				builtRegion.setOccluderResult(true, occluderVersion);
 			} else if (builtRegion.occluderVersion() == occluderVersion) {
 				// reuse prior test results
 				if (builtRegion.occluderResult()) {
-					builtRegion.enqueueUnvistedNeighbors();
+					builtRegion.enqueueUnvistedNeighbors(faceCulling);
 					visibleRegions[visibleRegionCount++] = builtRegion;
 
 					// will already have been drawn if occluder view version hasn't changed
 					if (redrawOccluder) {
 						terrainOccluder.prepareRegion(builtRegion.getOrigin(), builtRegion.occlusionRange, builtRegion.squaredChunkDistance());
-						terrainOccluder.occlude(visData);
+						terrainOccluder.occlude(builtRegion, visData);
 					}
 				}
 			} else {
 				terrainOccluder.prepareRegion(builtRegion.getOrigin(), builtRegion.occlusionRange, builtRegion.squaredChunkDistance());
 
 				if (terrainOccluder.isBoxVisible(visData[OcclusionRegion.CULL_DATA_REGION_BOUNDS])) {
-					builtRegion.enqueueUnvistedNeighbors();
+					builtRegion.enqueueUnvistedNeighbors(faceCulling);
 					visibleRegions[visibleRegionCount++] = builtRegion;
 					builtRegion.setOccluderResult(true, occluderVersion);
 
 					// these must always be drawn - will be additive if view hasn't changed
-					terrainOccluder.occlude(visData);
+					terrainOccluder.occlude(builtRegion, visData);
 				} else {
 					builtRegion.setOccluderResult(false, occluderVersion);
 				}
@@ -223,6 +225,7 @@ public class TerrainIterator implements Consumer<TerrainRenderContext> {
 			state.set(IDLE);
 			this.visibleRegionCount = 0;
 		} else {
+			updateBlockEntityVisibility(visibleRegions, visibleRegionCount, chunkCullingEnabled && Configurator.cullBlockEntities);
 			assert state.get() == RUNNING;
 			state.set(COMPLETE);
 			this.visibleRegionCount = visibleRegionCount;
@@ -232,4 +235,21 @@ public class TerrainIterator implements Consumer<TerrainRenderContext> {
 			}
 		}
 	}
+
+	/**
+	 * Tests block entities of visible regions against the finished raster, after every
+	 * occluder that could hide them has been drawn.  Near regions are never culled, same as
+	 * the regions themselves.
+	 */
+	private void updateBlockEntityVisibility(BuiltRenderRegion[] visibleRegions, int visibleRegionCount, boolean enabled) {
+		for (int i = 0; i < visibleRegionCount; ++i) {
+			final BuiltRenderRegion region = visibleRegions[i];
+
+			if (enabled && !region.isNear()) {
+				region.updateBlockEntityVisibility(terrainOccluder);
+			} else {
+				region.clearBlockEntityVisibility();
+			}
+		}
+	}
 }
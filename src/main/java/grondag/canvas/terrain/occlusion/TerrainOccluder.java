@@ -20,12 +20,10 @@ import static grondag.canvas.terrain.occlusion.Constants.CAMERA_PRECISION_BITS;
 import static grondag.canvas.terrain.occlusion.Constants.CAMERA_PRECISION_UNITY;
 import static grondag.canvas.terrain.occlusion.Constants.DOWN;
 import static grondag.canvas.terrain.occlusion.Constants.EAST;
-import static grondag.canvas.terrain.occlusion.Constants.EMPTY_BITS;
 import static grondag.canvas.terrain.occlusion.Constants.NORTH;
 import static grondag.canvas.terrain.occlusion.Constants.PIXEL_HEIGHT;
 import static grondag.canvas.terrain.occlusion.Constants.PIXEL_WIDTH;
 import static grondag.canvas.terrain.occlusion.Constants.SOUTH;
-import static grondag.canvas.terrain.occlusion.Constants.TILE_COUNT;
 import static grondag.canvas.terrain.occlusion.Constants.UP;
 import static grondag.canvas.terrain.occlusion.Constants.V000;
 import static grondag.canvas.terrain.occlusion.Constants.V001;
@@ -46,17 +44,28 @@ import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Vec3d;
 
 import grondag.canvas.CanvasMod;
+import grondag.canvas.Configurator;
 import grondag.canvas.mixinterface.Matrix4fExt;
 import grondag.canvas.render.TerrainFrustum;
+import grondag.canvas.terrain.occlusion.geometry.OcclusionRegion;
 import grondag.canvas.terrain.occlusion.geometry.PackedBox;
 import grondag.canvas.terrain.region.BuiltRenderRegion;
 import grondag.canvas.varia.Matrix4L;
 
 public class TerrainOccluder {
+	/** Square of the largest ratio of farthest to nearest camera distance at which chains are merged. */
+	private static final float MAX_CHAIN_DEPTH_RATIO_SQ = 1.25f * 1.25f;
+	private static final float INVERSE_CAMERA_PRECISION = 1f / CAMERA_PRECISION_UNITY;
+
 	private final Matrix4L baseMvpMatrix = new Matrix4L();
+	private final Matrix4L lastBaseMvpMatrix = new Matrix4L();
+	private final Matrix4L projectionMatrix = new Matrix4L();
+	private final RasterReprojector reprojector = new RasterReprojector();
 
 	private final Rasterizer raster = new Rasterizer();
 	private int occluderVersion = 1;
+	/** Changes whenever raster content changes, including occluders added within the same occluder version. */
+	private int rasterVersion = 1;
 	private final BoxTest[] boxTests = new BoxTest[128];
 	private final BoxDraw[] boxDraws = new BoxDraw[128];
 	private long viewX;
@@ -73,10 +82,19 @@ public class TerrainOccluder {
 	private boolean needsRedraw = false;
 	private int maxSquaredChunkDistance;
 
-	public final TerrainFrustum frustum = new TerrainFrustum();
+	public final TerrainFrustum frustum;
 
 	private final BlockPos.Mutable originForTracing = new BlockPos.Mutable();
 
+	public TerrainOccluder() {
+		this(new TerrainFrustum());
+	}
+
+	/** Frustum may be null if views are only set up with {@link #prepareScene(Vec3d, int, Matrix4fExt, Matrix4fExt)}. */
+	TerrainOccluder(TerrainFrustum frustum) {
+		this.frustum = frustum;
+	}
+
 	@Override
 	public String toString() {
 		return String.format("OccluderVersion:%d  viewX:%d  viewY:%d  viewZ:%d  offsetX:%d  offsetY:%d  offsetZ:%d viewVersion:%d  regionVersion:%d  forceRedraw:%b  needsRedraw:%b  matrix:%s",
@@ -639,6 +657,8 @@ public class TerrainOccluder {
 
 	public void copyFrom(TerrainOccluder source) {
 		baseMvpMatrix.copyFrom(source.baseMvpMatrix);
+		lastBaseMvpMatrix.copyFrom(source.lastBaseMvpMatrix);
+		projectionMatrix.copyFrom(source.projectionMatrix);
 		raster.copyFrom(source.raster);
 		viewX = source.viewX;
 		viewY = source.viewY;
@@ -653,6 +673,7 @@ public class TerrainOccluder {
 		viewVersion = source.viewVersion;
 		regionVersion = source.regionVersion;
 		occluderVersion = source.occluderVersion;
+		rasterVersion = source.rasterVersion;
 		maxSquaredChunkDistance = source.maxSquaredChunkDistance;
 
 		forceRedraw = source.forceRedraw;
@@ -667,6 +688,11 @@ public class TerrainOccluder {
 		return occluderVersion;
 	}
 
+	/** For results that depend on everything drawn so far, like block entity tests. */
+	public int rasterVersion() {
+		return rasterVersion;
+	}
+
 	/**
 	 * Force update to new version.
 	 */
@@ -709,6 +735,7 @@ public class TerrainOccluder {
 		}
 
 		if (force) {
+			raster.flush();
 			final NativeImage nativeImage = new NativeImage(PIXEL_WIDTH, PIXEL_HEIGHT, false);
 
 			for (int x = 0; x < PIXEL_WIDTH; x++) {
@@ -738,25 +765,45 @@ public class TerrainOccluder {
 	 * When false, regions should be drawn only if their occluder version is not current.
 	 */
 	public boolean prepareScene(Vec3d cameraPos) {
-		final int viewVersion = frustum.viewVersion();
+		return prepareScene(cameraPos, frustum.viewVersion(), frustum.projectionMatrix(), frustum.modelMatrix());
+	}
+
+	/** Same as {@link #prepareScene(Vec3d)} with view given directly instead of from the terrain frustum. */
+	boolean prepareScene(Vec3d cameraPos, int viewVersion, Matrix4fExt projectionMatrix, Matrix4fExt modelMatrix) {
+		boolean canReproject = false;
 
 		if (this.viewVersion != viewVersion) {
 			final Matrix4L baseMvpMatrix = this.baseMvpMatrix;
 			final Matrix4L tempMatrix = raster.mvpMatrix;
-			final Matrix4fExt projectionMatrix = frustum.projectionMatrix();
-			final Matrix4fExt modelMatrix = frustum.modelMatrix();
 
+			lastBaseMvpMatrix.copyFrom(baseMvpMatrix);
 			baseMvpMatrix.loadIdentity();
 
 			tempMatrix.copyFrom(projectionMatrix);
 			baseMvpMatrix.multiply(tempMatrix);
+			final boolean sameProjection = this.projectionMatrix.matches(tempMatrix);
+			this.projectionMatrix.copyFrom(tempMatrix);
 
 			tempMatrix.copyFrom(modelMatrix);
 			baseMvpMatrix.multiply(tempMatrix);
 
-			viewX = Math.round(cameraPos.getX() * CAMERA_PRECISION_UNITY);
-			viewY = Math.round(cameraPos.getY() * CAMERA_PRECISION_UNITY);
-			viewZ = Math.round(cameraPos.getZ() * CAMERA_PRECISION_UNITY);
+			final long x = Math.round(cameraPos.getX() * CAMERA_PRECISION_UNITY);
+			final long y = Math.round(cameraPos.getY() * CAMERA_PRECISION_UNITY);
+			final long z = Math.round(cameraPos.getZ() * CAMERA_PRECISION_UNITY);
+			final long dx = x - viewX;
+			final long dy = y - viewY;
+			final long dz = z - viewZ;
+
+			// Within a block the raster stays anchored at the eye it was drawn from, same as
+			// when the view version doesn't change, so a turn is a pure rotation about that eye.
+			canReproject = Configurator.reuseOcclusionRaster && sameProjection && this.viewVersion != -1
+					&& dx * dx + dy * dy + dz * dz < (long) CAMERA_PRECISION_UNITY * CAMERA_PRECISION_UNITY;
+
+			if (!canReproject) {
+				viewX = x;
+				viewY = y;
+				viewZ = z;
+			}
 		}
 
 		if (forceRedraw || this.viewVersion != viewVersion) {
@@ -769,11 +816,22 @@ public class TerrainOccluder {
 			}
 
 			this.viewVersion = viewVersion;
-			System.arraycopy(EMPTY_BITS, 0, raster.tiles, 0, TILE_COUNT);
+
+			if (canReproject && !forceRedraw) {
+				final int tileCount = reprojector.reproject(raster, lastBaseMvpMatrix, baseMvpMatrix);
+
+				if (TerrainIterator.TRACE_OCCLUSION_OUTCOMES) {
+					CanvasMod.LOG.info("Terrain occluder reprojected " + tileCount + " tiles");
+				}
+			} else {
+				raster.clear();
+			}
+
 			forceRedraw = false;
 			needsRedraw = true;
 			maxSquaredChunkDistance = 0;
 			++occluderVersion;
+			++rasterVersion;
 		} else {
 			needsRedraw = false;
 		}
@@ -841,7 +899,11 @@ public class TerrainOccluder {
 		final int x1 = PackedBox.x1(packedBox);
 		final int y1 = PackedBox.y1(packedBox);
 		final int z1 = PackedBox.z1(packedBox);
+		occludeBox(x0, y0, z0, x1, y1, z1);
+	}
 
+	/** Same as {@link #occludeInner(int)} for bounds that may lie outside the region. */
+	private void occludeBox(int x0, int y0, int z0, int x1, int y1, int z1) {
 		final int offsetX = this.offsetX;
 		final int offsetY = this.offsetY;
 		final int offsetZ = this.offsetZ;
@@ -870,14 +932,24 @@ public class TerrainOccluder {
 		boxDraws[outcome].apply(x0, y0, z0, x1, y1, z1);
 	}
 
-	public void occlude(int[] visData) {
+	/**
+	 * Draws the occluders of a region prepared with {@link #prepareRegion(BlockPos, int, int)}.
+	 * When enabled, boxes that continue into adjacent regions are drawn once as a single
+	 * box for the whole chain and skipped by the other members.
+	 */
+	public void occlude(BuiltRenderRegion region, int[] visData) {
 		final int occlusionRange = this.occlusionRange;
 		final int limit = visData.length;
 
-		if (limit > 1) {
+		if (limit > OcclusionRegion.CULL_DATA_FIRST_BOX) {
 			boolean updateDist = false;
+			final RegionOccluders occluders = Configurator.mergeOccluders ? region.occluders() : null;
 
-			for (int i = 1; i < limit; i++) {
+			if (occluders != null) {
+				occluders.prepare(visData);
+			}
+
+			for (int i = OcclusionRegion.CULL_DATA_FIRST_BOX; i < limit; i++) {
 				final int box = visData[i];
 
 				if (occlusionRange > PackedBox.range(box)) {
@@ -885,10 +957,27 @@ public class TerrainOccluder {
 				}
 
 				updateDist = true;
-				occludeInner(box);
+
+				if (occluders == null) {
+					occludeInner(box);
+				} else if (!occluders.wasDrawn(i, occluderVersion)) {
+					final RegionOccluders.Chain chain = occluders.chain(region, i);
+
+					if (chain != null && isCompact(chain)) {
+						occludeBox(chain.x0, chain.y0, chain.z0, chain.x1, chain.y1, chain.z1);
+						markDrawn(chain);
+					}
+
+					// chain may not include this exact box if another has the same extent at the face
+					if (!occluders.wasDrawn(i, occluderVersion)) {
+						occludeInner(box);
+					}
+				}
 			}
 
 			if (updateDist) {
+				++rasterVersion;
+
 				if (TerrainIterator.TRACE_OCCLUSION_OUTCOMES && regionSquaredChunkDist < maxSquaredChunkDistance) {
 					CanvasMod.LOG.warn("Terrain Occluder went backwards in chunkdistance @" + originForTracing.toShortString());
 				}
@@ -904,6 +993,42 @@ public class TerrainOccluder {
 		}
 	}
 
+	/**
+	 * True if the farthest point of a chain is not much farther from the camera than the nearest.
+	 * Tiles covered by the chain get the depth of its farthest point, so long chains seen end-on
+	 * would make tile depth too conservative to be useful.
+	 */
+	private boolean isCompact(RegionOccluders.Chain chain) {
+		// camera position relative to region origin
+		final float cx = -offsetX * INVERSE_CAMERA_PRECISION;
+		final float cy = -offsetY * INVERSE_CAMERA_PRECISION;
+		final float cz = -offsetZ * INVERSE_CAMERA_PRECISION;
+
+		final float nx = nearAxisDistance(cx, chain.x0, chain.x1);
+		final float ny = nearAxisDistance(cy, chain.y0, chain.y1);
+		final float nz = nearAxisDistance(cz, chain.z0, chain.z1);
+		final float fx = Math.max(Math.abs(cx - chain.x0), Math.abs(cx - chain.x1));
+		final float fy = Math.max(Math.abs(cy - chain.y0), Math.abs(cy - chain.y1));
+		final float fz = Math.max(Math.abs(cz - chain.z0), Math.abs(cz - chain.z1));
+
+		return fx * fx + fy * fy + fz * fz <= MAX_CHAIN_DEPTH_RATIO_SQ * (nx * nx + ny * ny + nz * nz);
+	}
+
+	private static float nearAxisDistance(float c, int min, int max) {
+		return c < min ? min - c : c > max ? c - max : 0;
+	}
+
+	private void markDrawn(RegionOccluders.Chain chain) {
+		final int occluderVersion = this.occluderVersion;
+		final BuiltRenderRegion[] regions = chain.regions;
+
+		for (int i = 0; i < regions.length; ++i) {
+			final BuiltRenderRegion member = regions[i];
+			member.occluders().markDrawn(chain.data[i], chain.boxIndices[i], occluderVersion);
+			member.markMergedOccluderDrawn(occluderVersion);
+		}
+	}
+
 	/**
 	 * Returns value with face flags set when all such
 	 * faces in the region are at least 64 blocks away camera.
@@ -0,0 +1,150 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+
+package grondag.canvas.terrain.occlusion;
+
+import static grondag.canvas.terrain.occlusion.Constants.DEPTH_UNITS_PER_BLOCK;
+import static grondag.canvas.terrain.occlusion.Constants.MAX_DEPTH;
+import static grondag.canvas.terrain.occlusion.Constants.MID_COUNT;
+import static grondag.canvas.terrain.occlusion.Constants.MID_WIDTH;
+import static grondag.canvas.terrain.occlusion.Constants.TILE_AXIS_SHIFT;
+import static grondag.canvas.terrain.occlusion.Constants.TILE_COUNT;
+
+/**
+ * Conservative farthest depth of the occluders covering each tile of {@link Rasterizer}.
+ * For every covered pixel of a tile, the nearest occluder drawn there is no farther than
+ * the tile depth, so anything whose nearest point is beyond the tile depth and whose
+ * pixels are all covered is hidden no matter what order occluders were drawn in.
+ *
+ * <p>Depth is view distance (clip w), which is linear across a quad, so the extremes of a
+ * quad are always at its vertices. Occluders encode with {@link #farDepth(float)} and
+ * tests with {@link #nearDepth(float)} so rounding can only make results less aggressive.
+ *
+ * <p>A second level keeps an upper bound of tile depth for each 64x64 pixel block,
+ * indexed like {@link CoveragePyramid}. It only grows until {@link #clear()}.
+ */
+public final class TileDepth {
+	private static final char[] EMPTY_TILES = new char[TILE_COUNT];
+	private static final char[] EMPTY_MID = new char[MID_COUNT];
+
+	private final char[] tileDepth = new char[TILE_COUNT];
+	private final char[] midDepth = new char[MID_COUNT];
+
+	public void clear() {
+		System.arraycopy(EMPTY_TILES, 0, tileDepth, 0, TILE_COUNT);
+		System.arraycopy(EMPTY_MID, 0, midDepth, 0, MID_COUNT);
+	}
+
+	public void copyFrom(TileDepth source) {
+		System.arraycopy(source.tileDepth, 0, tileDepth, 0, TILE_COUNT);
+		System.arraycopy(source.midDepth, 0, midDepth, 0, MID_COUNT);
+	}
+
+	/** Encoded depth rounded away from the camera, for occluders. */
+	public static int farDepth(float w) {
+		if (w <= 0) {
+			return 0;
+		}
+
+		return (int) Math.min(MAX_DEPTH, Math.ceil(w * DEPTH_UNITS_PER_BLOCK));
+	}
+
+	/** Encoded depth rounded toward the camera, for tests. */
+	public static int nearDepth(float w) {
+		if (w <= 0) {
+			return 0;
+		}
+
+		return (int) Math.min(MAX_DEPTH, Math.floor(w * DEPTH_UNITS_PER_BLOCK));
+	}
+
+	public int depth(int tileIndex) {
+		return tileDepth[tileIndex];
+	}
+
+	/**
+	 * Call before the coverage word of a tile is updated for an occluder.
+	 *
+	 * @param tileIndex index from {@link Indexer#tileIndex(int, int)}
+	 * @param word coverage of the tile before the occluder is drawn
+	 * @param coverage pixels of the tile covered by the occluder
+	 * @param depth far depth of the occluder
+	 */
+	public void update(int tileIndex, long word, long coverage, int depth) {
+		if (coverage == 0) {
+			return;
+		}
+
+		final int current = tileDepth[tileIndex];
+		final boolean addsPixels = (coverage & ~word) != 0;
+		final int result;
+
+		if ((word & ~coverage) == 0) {
+			// occluder covers every pixel already covered, so it bounds them all
+			result = addsPixels ? depth : Math.min(current, depth);
+		} else {
+			result = addsPixels ? Math.max(current, depth) : current;
+		}
+
+		if (result != current) {
+			tileDepth[tileIndex] = (char) result;
+			final int mid = tileIndex >>> 6;
+
+			if (result > midDepth[mid]) {
+				midDepth[mid] = (char) result;
+			}
+		}
+	}
+
+	/** True if the given near depth is beyond every occluder of the tile. Only meaningful for covered pixels. */
+	public boolean isBehind(int tileIndex, int depth) {
+		return depth > tileDepth[tileIndex];
+	}
+
+	/** Greatest tile depth in the inclusive range. Tile coordinates must be within the raster. */
+	public int maxDepth(int tileX0, int tileY0, int tileX1, int tileY1) {
+		int result = 0;
+
+		for (int tileY = tileY0; tileY <= tileY1; ++tileY) {
+			for (int tileX = tileX0; tileX <= tileX1; ++tileX) {
+				result = Math.max(result, tileDepth[Indexer.tileIndex(tileX, tileY)]);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Same as {@link #isBehind(int, int)} for every tile in the inclusive range, using block bounds only.
+	 * Tile coordinates must be within the raster.
+	 */
+	public boolean isTileRectBehind(int tileX0, int tileY0, int tileX1, int tileY1, int depth) {
+		final int midX0 = tileX0 >> TILE_AXIS_SHIFT;
+		final int midX1 = tileX1 >> TILE_AXIS_SHIFT;
+		final int midY1 = tileY1 >> TILE_AXIS_SHIFT;
+
+		for (int midY = tileY0 >> TILE_AXIS_SHIFT; midY <= midY1; ++midY) {
+			for (int midX = midX0; midX <= midX1; ++midX) {
+				if (depth <= midDepth[midY * MID_WIDTH + midX]) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+}
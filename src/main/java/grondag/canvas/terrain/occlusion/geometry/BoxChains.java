@@ -0,0 +1,99 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.terrain.occlusion.geometry;
+
+/**
+ * Finds occluder boxes that continue each other across a region face: same extent on
+ * the two other axes, one ending at the face and the other starting there.  A run of such
+ * boxes in adjacent regions can be drawn as one box.
+ *
+ * <p>Axes are listed in the order they are preferred when a box continues along more than one.
+ */
+public abstract class BoxChains {
+	public static final int AXIS_X = 0;
+	public static final int AXIS_Z = 1;
+	public static final int AXIS_Y = 2;
+	public static final int AXIS_COUNT = 3;
+
+	private static final int REGION_MAX = 16;
+
+	private BoxChains() {
+	}
+
+	public static int min(int box, int axis) {
+		switch (axis) {
+			case AXIS_X:
+				return PackedBox.x0(box);
+			case AXIS_Y:
+				return PackedBox.y0(box);
+			default:
+				return PackedBox.z0(box);
+		}
+	}
+
+	public static int max(int box, int axis) {
+		switch (axis) {
+			case AXIS_X:
+				return PackedBox.x1(box);
+			case AXIS_Y:
+				return PackedBox.y1(box);
+			default:
+				return PackedBox.z1(box);
+		}
+	}
+
+	/** True if upper, in the next region along the axis, continues lower. Range is ignored. */
+	public static boolean continues(int lower, int upper, int axis) {
+		if (max(lower, axis) != REGION_MAX || min(upper, axis) != 0) {
+			return false;
+		}
+
+		for (int other = 0; other < AXIS_COUNT; ++other) {
+			if (other != axis && (min(lower, other) != min(upper, other) || max(lower, other) != max(upper, other))) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Index in the cull data of the next region along the axis of a box that continues the given box, or -1.
+	 *
+	 * @param cullData data from {@link OcclusionRegion#build(boolean)}
+	 */
+	public static int findNext(int box, int axis, int[] cullData) {
+		for (int i = OcclusionRegion.CULL_DATA_FIRST_BOX; i < cullData.length; ++i) {
+			if (continues(box, cullData[i], axis)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/** Same as {@link #findNext(int, int, int[])} for the previous region along the axis. */
+	public static int findPrevious(int box, int axis, int[] cullData) {
+		for (int i = OcclusionRegion.CULL_DATA_FIRST_BOX; i < cullData.length; ++i) {
+			if (continues(cullData[i], box, axis)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+}
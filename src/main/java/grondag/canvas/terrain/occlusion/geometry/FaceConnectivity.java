@@ -0,0 +1,83 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.terrain.occlusion.geometry;
+
+/**
+ * Which pairs of region faces are joined by open space, packed as one bit per
+ * unordered pair of face indices.  Face flags are {@code 1 << faceIndex}.
+ */
+public abstract class FaceConnectivity {
+	public static final int FACE_COUNT = 6;
+	public static final int ALL_FACE_FLAGS = (1 << FACE_COUNT) - 1;
+	public static final int NONE = 0;
+	public static final int ALL = (1 << (FACE_COUNT * (FACE_COUNT - 1) / 2)) - 1;
+
+	private static final int[] PAIR_BITS = new int[FACE_COUNT * FACE_COUNT];
+
+	static {
+		int bit = 0;
+
+		for (int a = 0; a < FACE_COUNT; ++a) {
+			for (int b = a + 1; b < FACE_COUNT; ++b) {
+				PAIR_BITS[a * FACE_COUNT + b] = 1 << bit;
+				PAIR_BITS[b * FACE_COUNT + a] = 1 << bit;
+				++bit;
+			}
+		}
+	}
+
+	private FaceConnectivity() {
+	}
+
+	/** Connectivity where every pair of the given faces is joined, as for faces touched by one open volume. */
+	public static int connectFaces(int faceFlags) {
+		int result = NONE;
+
+		for (int a = 0; a < FACE_COUNT; ++a) {
+			if ((faceFlags & (1 << a)) != 0) {
+				for (int b = a + 1; b < FACE_COUNT; ++b) {
+					if ((faceFlags & (1 << b)) != 0) {
+						result |= PAIR_BITS[a * FACE_COUNT + b];
+					}
+				}
+			}
+		}
+
+		return result;
+	}
+
+	public static boolean isConnected(int connectivity, int faceA, int faceB) {
+		return (connectivity & PAIR_BITS[faceA * FACE_COUNT + faceB]) != 0;
+	}
+
+	/** Flags of faces joined to any of the given entry faces. */
+	public static int exitFaces(int connectivity, int entryFaceFlags) {
+		int result = 0;
+
+		for (int a = 0; a < FACE_COUNT; ++a) {
+			if ((entryFaceFlags & (1 << a)) != 0) {
+				for (int b = 0; b < FACE_COUNT; ++b) {
+					if ((connectivity & PAIR_BITS[a * FACE_COUNT + b]) != 0) {
+						result |= 1 << b;
+					}
+				}
+			}
+		}
+
+		return result;
+	}
+}
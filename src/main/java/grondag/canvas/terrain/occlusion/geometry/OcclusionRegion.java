@@ -34,16 +34,26 @@ import it.unimi.dsi.fastutil.ints.IntArrayList;
 import net.minecraft.block.BlockRenderType;
 import net.minecraft.block.BlockState;
 
+import grondag.canvas.apiimpl.util.FaceConstants;
+
 public abstract class OcclusionRegion {
 	public static final int CULL_DATA_REGION_BOUNDS = 0;
-	public static final int CULL_DATA_FIRST_BOX = 1;
-	public static final int[] EMPTY_CULL_DATA = {PackedBox.EMPTY_BOX};
+	/** {@link FaceConnectivity} of the open space in the region. */
+	public static final int CULL_DATA_FACE_CONNECTIVITY = 1;
+	public static final int CULL_DATA_FIRST_BOX = 2;
+	public static final int[] EMPTY_CULL_DATA = {PackedBox.EMPTY_BOX, FaceConnectivity.ALL};
 	// PERF: do we need space for exterior positions in all cases?
 	static final int RENDERABLE_OFFSET = TOTAL_CACHE_WORDS;
 	static final int EXTERIOR_VISIBLE_OFFSET = RENDERABLE_OFFSET + TOTAL_CACHE_WORDS;
 	static final int WORD_COUNT = EXTERIOR_VISIBLE_OFFSET + TOTAL_CACHE_WORDS;
 	static final long[] EMPTY_BITS = new long[WORD_COUNT];
 	static final long[] EXTERIOR_MASK = new long[INTERIOR_CACHE_WORDS];
+	private static final int WEST_FLAG = 1 << FaceConstants.WEST_INDEX;
+	private static final int EAST_FLAG = 1 << FaceConstants.EAST_INDEX;
+	private static final int DOWN_FLAG = 1 << FaceConstants.DOWN_INDEX;
+	private static final int UP_FLAG = 1 << FaceConstants.UP_INDEX;
+	private static final int NORTH_FLAG = 1 << FaceConstants.NORTH_INDEX;
+	private static final int SOUTH_FLAG = 1 << FaceConstants.SOUTH_INDEX;
 
 	static {
 		//		final int[] open = {0, 0, 0, 16, 16, 16, 0};
@@ -72,6 +82,7 @@ public abstract class OcclusionRegion {
 	private final IntArrayFIFOQueue queue = new IntArrayFIFOQueue();
 	private final long[] bits = new long[WORD_COUNT];
 	private int openCount;
+	private int faceConnectivity;
 	private int minRenderableX;
 	private int minRenderableY;
 	private int minRenderableZ;
@@ -86,6 +97,7 @@ public abstract class OcclusionRegion {
 		captureCorners();
 
 		openCount = INTERIOR_CACHE_SIZE;
+		faceConnectivity = FaceConnectivity.NONE;
 		captureInterior();
 	}
 
@@ -464,7 +476,8 @@ public abstract class OcclusionRegion {
 
 		final int boxCount = boxes.size();
 
-		final int[] result = new int[boxCount + 1];
+		final int[] result = new int[boxCount + CULL_DATA_FIRST_BOX];
+		result[CULL_DATA_FACE_CONNECTIVITY] = faceConnectivity;
 
 		int n = OcclusionRegion.CULL_DATA_FIRST_BOX;
 
@@ -499,8 +512,9 @@ public abstract class OcclusionRegion {
 			// PERF: should still compute render box instead of assuming it is full
 			adjustSurfaceVisbility();
 
-			final int[] result = new int[2];
+			final int[] result = new int[3];
 			result[CULL_DATA_REGION_BOUNDS] = PackedBox.FULL_BOX;
+			result[CULL_DATA_FACE_CONNECTIVITY] = FaceConnectivity.NONE;
 			result[CULL_DATA_FIRST_BOX] = PackedBox.FULL_BOX;
 			return result;
 		} else {
@@ -508,23 +522,29 @@ public abstract class OcclusionRegion {
 		}
 	}
 
+	/** Visits all open positions joined to the given one and records which faces they touch. */
 	private void fill(int xyz4) {
-		final int faceBits = 0;
 		setVisited(xyz4);
-		visit(xyz4, faceBits);
+		int faceFlags = visit(xyz4);
 
 		while (!queue.isEmpty()) {
 			final int nextXyz4 = queue.dequeueInt();
-			visit(nextXyz4, faceBits);
+			faceFlags |= visit(nextXyz4);
 		}
+
+		faceConnectivity |= FaceConnectivity.connectFaces(faceFlags);
 	}
 
-	private void visit(int xyz4, int faceBits) {
+	/** Returns flags of the region faces the position touches. */
+	private int visit(int xyz4) {
+		int faceFlags = 0;
 		final int x = xyz4 & 0xF;
 
 		if (x == 0) {
+			faceFlags |= WEST_FLAG;
 			enqueIfUnvisited(xyz4 + 1);
 		} else if (x == 15) {
+			faceFlags |= EAST_FLAG;
 			enqueIfUnvisited(xyz4 - 1);
 		} else {
 			enqueIfUnvisited(xyz4 - 1);
@@ -534,8 +554,10 @@ public abstract class OcclusionRegion {
 		final int y = xyz4 & 0xF0;
 
 		if (y == 0) {
+			faceFlags |= DOWN_FLAG;
 			enqueIfUnvisited(xyz4 + 0x10);
 		} else if (y == 0xF0) {
+			faceFlags |= UP_FLAG;
 			enqueIfUnvisited(xyz4 - 0x10);
 		} else {
 			enqueIfUnvisited(xyz4 - 0x10);
@@ -545,13 +567,17 @@ public abstract class OcclusionRegion {
 		final int z = xyz4 & 0xF00;
 
 		if (z == 0) {
+			faceFlags |= NORTH_FLAG;
 			enqueIfUnvisited(xyz4 + 0x100);
 		} else if (z == 0xF00) {
+			faceFlags |= SOUTH_FLAG;
 			enqueIfUnvisited(xyz4 - 0x100);
 		} else {
 			enqueIfUnvisited(xyz4 - 0x100);
 			enqueIfUnvisited(xyz4 + 0x100);
 		}
+
+		return faceFlags;
 	}
 
 	private void enqueIfUnvisited(int xyz4) {
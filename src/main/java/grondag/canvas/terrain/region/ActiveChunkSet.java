@@ -0,0 +1,99 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.terrain.region;
+
+/**
+ * Slots of {@link RenderRegionStorage} that hold an open {@link RenderRegionChunk}, so that
+ * per-pass updates visit loaded chunks only instead of every slot.
+ *
+ * <p>Chunks are opened on any thread that creates a region and closed on the render thread.
+ * The terrain iteration thread works from a copy that is refreshed only when membership
+ * has changed since the last copy.
+ */
+final class ActiveChunkSet {
+	private final int[] slots;
+	/** Position of each slot in {@link #slots} plus one, or zero if not active. */
+	private final int[] positions;
+	private int size = 0;
+	private boolean isDirty = false;
+
+	private int[] snapshot;
+	private int snapshotSize = 0;
+
+	ActiveChunkSet(int slotCount) {
+		slots = new int[slotCount];
+		positions = new int[slotCount];
+		snapshot = new int[slotCount];
+	}
+
+	synchronized void add(int slot) {
+		if (positions[slot] == 0) {
+			slots[size] = slot;
+			positions[slot] = ++size;
+			isDirty = true;
+		}
+	}
+
+	synchronized void remove(int slot) {
+		final int pos = positions[slot];
+
+		if (pos != 0) {
+			// move last into the vacated position
+			final int last = slots[--size];
+			slots[pos - 1] = last;
+			positions[last] = pos;
+			positions[slot] = 0;
+			isDirty = true;
+		}
+	}
+
+	synchronized boolean contains(int slot) {
+		return positions[slot] != 0;
+	}
+
+	synchronized int size() {
+		return size;
+	}
+
+	/** True if membership changed since the last call to {@link #refresh()}. */
+	synchronized boolean isDirty() {
+		return isDirty;
+	}
+
+	/**
+	 * Brings the copy read by {@link #snapshotSlot(int)} up to date if membership has changed.
+	 * Only one thread should call this and read the copy.
+	 *
+	 * @return number of slots in the copy
+	 */
+	int refresh() {
+		synchronized (this) {
+			if (isDirty) {
+				System.arraycopy(slots, 0, snapshot, 0, size);
+				snapshotSize = size;
+				isDirty = false;
+			}
+		}
+
+		return snapshotSize;
+	}
+
+	/** Slot at the given position of the copy made by the last {@link #refresh()}. */
+	int snapshotSlot(int index) {
+		return snapshot[index];
+	}
+}
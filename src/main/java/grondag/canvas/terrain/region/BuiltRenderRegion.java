@@ -22,23 +22,20 @@ import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.function.IntSupplier;
 
 import com.mojang.blaze3d.systems.RenderSystem;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import it.unimi.dsi.fastutil.objects.ObjectIterator;
 import it.unimi.dsi.fastutil.objects.ObjectOpenHashSet;
+import org.jetbrains.annotations.Nullable;
 
-import net.minecraft.block.Block;
-import net.minecraft.block.BlockRenderType;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.entity.BlockEntity;
-import net.minecraft.client.MinecraftClient;
-import net.minecraft.client.render.block.BlockRenderManager;
 import net.minecraft.client.render.block.entity.BlockEntityRenderDispatcher;
 import net.minecraft.client.render.block.entity.BlockEntityRenderer;
 import net.minecraft.client.render.model.BakedModel;
 import net.minecraft.client.util.math.MatrixStack;
-import net.minecraft.fluid.FluidState;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Direction;
 import net.minecraft.util.math.Vec3d;
@@ -57,15 +54,26 @@ import grondag.canvas.buffer.encoding.VertexCollectorList;
 import grondag.canvas.material.state.RenderLayerHelper;
 import grondag.canvas.material.state.RenderMaterialImpl;
 import grondag.canvas.perf.ChunkRebuildCounters;
+import grondag.canvas.render.CanvasFrustum;
 import grondag.canvas.render.CanvasWorldRenderer;
 import grondag.canvas.render.TerrainFrustum;
+import grondag.canvas.terrain.cache.CachedRegionMesh;
+import grondag.canvas.terrain.cache.RegionMeshCache;
+import grondag.canvas.terrain.occlusion.BlockEntityVisibility;
 import grondag.canvas.terrain.occlusion.PotentiallyVisibleRegionSorter;
+import grondag.canvas.terrain.occlusion.RegionOccluders;
 import grondag.canvas.terrain.occlusion.TerrainIterator;
+import grondag.canvas.terrain.occlusion.TerrainOccluder;
+import grondag.canvas.terrain.occlusion.geometry.FaceConnectivity;
 import grondag.canvas.terrain.occlusion.geometry.OcclusionRegion;
 import grondag.canvas.terrain.occlusion.geometry.PackedBox;
 import grondag.canvas.terrain.render.DrawableChunk;
+import grondag.canvas.terrain.render.UploadScheduler;
 import grondag.canvas.terrain.render.UploadableChunk;
+import grondag.canvas.terrain.util.BlockStateTable;
+import grondag.canvas.terrain.util.RegionLod;
 import grondag.canvas.terrain.util.RenderRegionAddressHelper;
+import grondag.canvas.terrain.util.TerrainExecutorTask;
 import grondag.canvas.terrain.util.TerrainModelSpace;
 import grondag.canvas.varia.BlockPosHelper;
 import grondag.frex.api.fluid.FluidQuadSupplier;
@@ -98,21 +106,37 @@ public class BuiltRenderRegion {
 
 	private int squaredChunkDistance;
 	private boolean isNear;
+	/** {@link RegionLod} flags for the current camera distance. Render thread only. */
+	private int lod = RegionLod.NONE;
 	private boolean needsRebuild;
 	private boolean needsImportantRebuild;
+	/** True if the pending rebuild was requested only because light changed. */
+	private boolean needsLightOnlyRebuild;
 	private volatile RegionBuildState buildState = new RegionBuildState();
+	/** Saved by the last build that could record light for every vertex, for light-only rebuilds. */
+	private volatile RegionRelight relightData;
 	private DrawableChunk translucentDrawable = DrawableChunk.EMPTY_DRAWABLE;
 	private DrawableChunk solidDrawable = DrawableChunk.EMPTY_DRAWABLE;
 	private int frustumVersion = -1;
 	private int positionVersion = -1;
 	private boolean frustumResult;
 	private int lastSeenVisibility;
+	// faces through which this region was reached, valid when entry version matches potentially visible set version
+	private int entryVersion;
+	private int entryFaceFlags;
 	private boolean isClosed = false;
 	private boolean isInsideRenderDistance;
 	private final Consumer<TerrainRenderContext> buildTask = this::rebuildOnWorkerThread;
+	private final IntSupplier buildPriority = this::squaredChunkDistance;
 	private int buildCount = -1;
 	// build count that was in effect last time drawn to occluder
 	private int occlusionBuildCount;
+	// same as above for occluders drawn as part of a chain found by a neighbor
+	private int mergedOccluderVersion;
+	private int mergedOcclusionBuildCount;
+	private final RegionOccluders occluders = new RegionOccluders();
+	// written by terrain iteration, read by render thread
+	private volatile BlockEntityVisibility blockEntityVisibility = null;
 
 	public BuiltRenderRegion(RenderRegionChunk chunk, long packedPos) {
 		cwr = chunk.storage.cwr;
@@ -165,25 +189,73 @@ public class BuiltRenderRegion {
 		return occluderVersion;
 	}
 
-	private static <E extends BlockEntity> void addBlockEntity(List<BlockEntity> chunkEntities, Set<BlockEntity> globalEntities, E blockEntity) {
+	/** Occluder chains of this region. Terrain iteration thread only. */
+	public RegionOccluders occluders() {
+		return occluders;
+	}
+
+	/**
+	 * Results of testing block entities of this region against the occlusion raster, or null
+	 * if not tested.  Only applies to the block entity list it was tested with.
+	 */
+	@Nullable
+	public BlockEntityVisibility blockEntityVisibility() {
+		return blockEntityVisibility;
+	}
+
+	/**
+	 * Tests block entities against the finished occlusion raster unless results for the
+	 * current build and raster already exist. Terrain iteration thread only.
+	 */
+	public void updateBlockEntityVisibility(TerrainOccluder occluder) {
+		final List<BlockEntity> blockEntities = buildData.get().getBlockEntities();
+
+		if (blockEntities.isEmpty()) {
+			blockEntityVisibility = null;
+			return;
+		}
+
+		occluder.prepareRegion(origin, occlusionRange, squaredChunkDistance);
+		blockEntityVisibility = BlockEntityVisibility.update(blockEntityVisibility, blockEntities, occluder.rasterVersion(), BlockEntity::getPos, occluder::isBoxVisible);
+	}
+
+	public void clearBlockEntityVisibility() {
+		blockEntityVisibility = null;
+	}
+
+	/**
+	 * Call when a box of this region has been drawn as part of a chain, possibly before this
+	 * region was visited, so that a rebuild of this region forces the raster to be redrawn.
+	 */
+	public void markMergedOccluderDrawn(int occluderVersion) {
+		mergedOccluderVersion = occluderVersion;
+		mergedOcclusionBuildCount = buildCount;
+	}
+
+	private static <E extends BlockEntity> void addBlockEntity(List<BlockEntity> chunkEntities, Set<BlockEntity> globalEntities, E blockEntity, boolean reducedDetail) {
 		final BlockEntityRenderer<E> blockEntityRenderer = BlockEntityRenderDispatcher.INSTANCE.get(blockEntity);
 
 		if (blockEntityRenderer != null) {
-			chunkEntities.add(blockEntity);
+			final boolean isGlobal = blockEntityRenderer.rendersOutsideBoundingBox(blockEntity);
+
+			// at reduced detail keep only block entities visible from afar, like beacon beams
+			if (!reducedDetail || isGlobal) {
+				chunkEntities.add(blockEntity);
+			}
 
-			if (blockEntityRenderer.rendersOutsideBoundingBox(blockEntity)) {
+			if (isGlobal) {
 				globalEntities.add(blockEntity);
 			}
 		}
 	}
 
 	/**
-	 * Result is computed in {@link #updateCameraDistanceAndVisibilityInfo(RenderRegionPruner)}.
+	 * Result is computed in {@link #updateCameraDistanceAndVisibilityInfo()}.
 	 *
-	 * <p>NB: tried a crude hierarchical scheme of checking chunk columns first
-	 * but didn't pay off.  Would probably  need to propagate per-plane results
-	 * over a more efficient region but that might not even help. Is already
-	 * quite fast and typically only one or a few regions per chunk must be tested.
+	 * <p>Tests are hierarchical. When the view changes, region storage classifies 4x4 groups of
+	 * columns against the frustum, and each column is classified against only the planes its group
+	 * straddles. Regions are tested against only the planes their column straddles, and a group or
+	 * column fully outside any plane culls all its regions without testing them.
 	 */
 	public boolean isInFrustum() {
 		return frustumResult;
@@ -224,6 +296,16 @@ public class BuiltRenderRegion {
 		squaredChunkDistance = horizontalSquaredDistance + cy * cy;
 		isNear = squaredChunkDistance <= 3;
 		occlusionRange = PackedBox.rangeFromSquareChunkDist(squaredChunkDistance);
+
+		final int newLod = RegionLod.select(lod, squaredChunkDistance, Configurator.lodDetailDistance, Configurator.lodLeavesDistance);
+
+		if (newLod != lod) {
+			lod = newLod;
+
+			if (buildData.get() != RegionData.UNBUILT) {
+				markForBuild(false);
+			}
+		}
 	}
 
 	private void computeFrustumChecks() {
@@ -237,19 +319,19 @@ public class BuiltRenderRegion {
 
 			// these are needed by the frustum - only need to recompute when position moves
 			// not needed at all if outside of render distance
+			// relative to the frustum position so that column and group tests use the same reference
 			if (isInsideRenderDistance) {
-				final Vec3d cameraPos = cwr.cameraPos();
-				final float dx = (float) (origin.getX() + 8 - cameraPos.x);
-				final float dy = (float) (origin.getY() + 8 - cameraPos.y);
-				final float dz = (float) (origin.getZ() + 8 - cameraPos.z);
+				final float dx = (float) (origin.getX() + 8 - frustum.lastPositionX());
+				final float dy = (float) (origin.getY() + 8 - frustum.lastPositionY());
+				final float dz = (float) (origin.getZ() + 8 - frustum.lastPositionZ());
 				cameraRelativeCenterX = dx;
 				cameraRelativeCenterY = dy;
 				cameraRelativeCenterZ = dz;
 			}
 		}
 
-		//  PERF: implement hierarchical tests with propagation of per-plane inside test results
-		frustumResult = isInsideRenderDistance && frustum.isRegionVisible(this);
+		final int planeMask = renderRegionChunk.frustumPlaneMask;
+		frustumResult = isInsideRenderDistance && planeMask != CanvasFrustum.OUTSIDE && frustum.isRegionVisible(this, planeMask);
 	}
 
 	/**
@@ -262,8 +344,20 @@ public class BuiltRenderRegion {
 	 * <p>The raster must be redrawn if either is true:<ul>
 	 *   <li>A new chunk has a chunk distance less than the current max drawn (we somehow went backwards towards the camera)
 	 *   <li>An existing chunk has been reloaded - the buildCounter doesn't match the buildCounter when it was marked existing</ul>
+	 *
+	 * <p>Chains merged across regions can draw boxes of a region that was never visited, so those
+	 * are checked separately for reloads.
 	 */
 	private void invalidateOccluderIfNeeded() {
+		if (mergedOccluderVersion == pruner.occluderVersion() && buildCount != mergedOcclusionBuildCount) {
+			if (TerrainIterator.TRACE_OCCLUSION_OUTCOMES) {
+				CanvasMod.LOG.info("Invalidate - merged redraw: " + origin.toShortString() + "  occluder version:" + mergedOccluderVersion);
+			}
+
+			pruner.invalidateOccluder();
+			return;
+		}
+
 		if (frustumResult && buildData.get().canOcclude()) {
 			if (occluderVersion == pruner.occluderVersion()) {
 				// Existing - has been drawn in occlusion raster
@@ -312,6 +406,8 @@ public class BuiltRenderRegion {
 
 			cancel();
 			buildData.set(RegionData.UNBUILT);
+			relightData = null;
+			blockEntityVisibility = null;
 			needsRebuild = true;
 			frustumVersion = -1;
 			positionVersion = -1;
@@ -337,11 +433,24 @@ public class BuiltRenderRegion {
 		final boolean neededRebuild = needsRebuild;
 		needsRebuild = true;
 		needsImportantRebuild = isImportant | (neededRebuild && needsImportantRebuild);
+		needsLightOnlyRebuild = false;
+	}
+
+	/**
+	 * Same as {@link #markForBuild(boolean)} for light changes. If nothing else
+	 * changes before the build runs, only vertex light is recomputed.
+	 */
+	public void markForRelight() {
+		if (!needsRebuild) {
+			needsRebuild = true;
+			needsLightOnlyRebuild = true;
+		}
 	}
 
 	public void markBuilt() {
 		needsRebuild = false;
 		needsImportantRebuild = false;
+		needsLightOnlyRebuild = false;
 	}
 
 	public boolean needsRebuild() {
@@ -354,10 +463,12 @@ public class BuiltRenderRegion {
 
 	public void scheduleRebuild() {
 		final ProtoRenderRegion region = ProtoRenderRegion.claim(cwr.getWorld(), origin);
+		buildState.lod = lod;
+		buildState.isLightOnly = needsLightOnlyRebuild;
 
 		// null region is signal to reschedule
 		if (buildState.protoRegion.getAndSet(region) == ProtoRenderRegion.IDLE) {
-			renderRegionBuilder.executor.execute(buildTask, squaredChunkDistance);
+			buildState.task = renderRegionBuilder.executor.execute(buildTask, buildPriority);
 		}
 	}
 
@@ -370,7 +481,7 @@ public class BuiltRenderRegion {
 			if (buildState.protoRegion.compareAndSet(ProtoRenderRegion.IDLE, ProtoRenderRegion.RESORT_ONLY)) {
 				// null means need to reschedule, otherwise was already scheduled for either
 				// resort or rebuild, or is invalid, not ready to be built.
-				renderRegionBuilder.executor.execute(buildTask, squaredChunkDistance);
+				buildState.task = renderRegionBuilder.executor.execute(buildTask, buildPriority);
 			}
 
 			return true;
@@ -378,6 +489,12 @@ public class BuiltRenderRegion {
 	}
 
 	protected void cancel() {
+		final TerrainExecutorTask task = buildState.task;
+
+		if (task != null) {
+			task.cancel();
+		}
+
 		buildState.protoRegion.set(ProtoRenderRegion.INVALID);
 		buildState = new RegionBuildState();
 	}
@@ -391,6 +508,7 @@ public class BuiltRenderRegion {
 		}
 
 		if (region == ProtoRenderRegion.EMPTY) {
+			relightData = null;
 			final RegionData chunkData = new RegionData();
 			chunkData.complete(OcclusionRegion.EMPTY_CULL_DATA);
 
@@ -451,18 +569,7 @@ public class BuiltRenderRegion {
 					final UploadableChunk upload = collectors.toUploadableChunk(true);
 
 					if (upload != UploadableChunk.EMPTY_UPLOADABLE) {
-						renderRegionBuilder.scheduleUpload(() -> {
-							if (ChunkRebuildCounters.ENABLED) {
-								ChunkRebuildCounters.startUpload();
-							}
-
-							translucentDrawable.close();
-							translucentDrawable = upload.produceDrawable();
-
-							if (ChunkRebuildCounters.ENABLED) {
-								ChunkRebuildCounters.completeUpload();
-							}
-						});
+						renderRegionBuilder.scheduleUpload(new RegionUpload(null, upload));
 					}
 				}
 
@@ -470,7 +577,11 @@ public class BuiltRenderRegion {
 			}
 		} else {
 			context.prepareRegion(region);
-			final RegionData chunkData = buildRegionData(context, isNear());
+			context.lod = runningState.lod;
+			final RegionRelight relight = runningState.isLightOnly && Configurator.enableRelight ? relightData : null;
+			final boolean isRelit = relight != null && relight.apply(context);
+			final CachedRegionMesh cachedMesh = isRelit ? null : RegionMeshCache.get(context.region, isNear(), context.lod, context.meshHash);
+			final RegionData chunkData = buildRegionData(context, isNear(), cachedMesh);
 
 			final VertexCollectorList collectors = context.collectors;
 
@@ -480,26 +591,22 @@ public class BuiltRenderRegion {
 				return;
 			}
 
-			buildTerrain(context, chunkData);
+			if (isRelit) {
+				sortTranslucent(chunkData, collectors);
+			} else if (cachedMesh == null) {
+				buildTerrain(context, chunkData);
+				RegionMeshCache.put(context.meshHash, chunkData.occlusionData, collectors);
+			} else {
+				RegionMeshCache.load(cachedMesh, collectors);
+				sortTranslucent(chunkData, collectors);
+			}
 
 			if (runningState.protoRegion.get() != ProtoRenderRegion.INVALID) {
 				final UploadableChunk solidUpload = collectors.toUploadableChunk(false);
 				final UploadableChunk translucentUpload = collectors.toUploadableChunk(true);
 
 				if (solidUpload != UploadableChunk.EMPTY_UPLOADABLE || translucentUpload != UploadableChunk.EMPTY_UPLOADABLE) {
-					renderRegionBuilder.scheduleUpload(() -> {
-						if (ChunkRebuildCounters.ENABLED) {
-							ChunkRebuildCounters.startUpload();
-						}
-
-						releaseDrawables();
-						solidDrawable = solidUpload.produceDrawable();
-						translucentDrawable = translucentUpload.produceDrawable();
-
-						if (ChunkRebuildCounters.ENABLED) {
-							ChunkRebuildCounters.completeUpload();
-						}
-					});
+					renderRegionBuilder.scheduleUpload(new RegionUpload(solidUpload, translucentUpload));
 				}
 			}
 
@@ -508,9 +615,80 @@ public class BuiltRenderRegion {
 		}
 	}
 
-	private RegionData buildRegionData(TerrainRenderContext context, boolean isNear) {
+	/**
+	 * Upload produced by a worker build. Solid upload is null for translucency resort,
+	 * which replaces only the translucent drawable.
+	 */
+	private class RegionUpload implements UploadScheduler.PendingUpload {
+		/** Added to priority of regions not in view so they upload after those that are. */
+		private static final int NOT_VISIBLE_PENALTY = 0x10000;
+
+		private final UploadableChunk solidUpload;
+		private final UploadableChunk translucentUpload;
+
+		private RegionUpload(UploadableChunk solidUpload, UploadableChunk translucentUpload) {
+			this.solidUpload = solidUpload;
+			this.translucentUpload = translucentUpload;
+		}
+
+		@Override
+		public Object owner() {
+			return BuiltRenderRegion.this;
+		}
+
+		@Override
+		public boolean isFull() {
+			return solidUpload != null;
+		}
+
+		@Override
+		public int priority() {
+			return isInFrustum() ? squaredChunkDistance : squaredChunkDistance + NOT_VISIBLE_PENALTY;
+		}
+
+		@Override
+		public int byteCount() {
+			return solidUpload == null ? translucentUpload.byteCount() : solidUpload.byteCount() + translucentUpload.byteCount();
+		}
+
+		@Override
+		public void upload() {
+			if (isClosed) {
+				discard();
+				return;
+			}
+
+			if (ChunkRebuildCounters.ENABLED) {
+				ChunkRebuildCounters.startUpload();
+			}
+
+			if (solidUpload == null) {
+				translucentDrawable.close();
+			} else {
+				releaseDrawables();
+				solidDrawable = solidUpload.produceDrawable();
+			}
+
+			translucentDrawable = translucentUpload.produceDrawable();
+
+			if (ChunkRebuildCounters.ENABLED) {
+				ChunkRebuildCounters.completeUpload();
+			}
+		}
+
+		@Override
+		public void discard() {
+			if (solidUpload != null) {
+				solidUpload.close();
+			}
+
+			translucentUpload.close();
+		}
+	}
+
+	private RegionData buildRegionData(TerrainRenderContext context, boolean isNear, CachedRegionMesh cachedMesh) {
 		final RegionData regionData = new RegionData();
-		regionData.complete(context.region.occlusion.build(isNear));
+		regionData.complete(cachedMesh == null ? context.region.occlusion.build(isNear) : cachedMesh.occlusionData);
 		handleBlockEntities(regionData, context);
 
 		// don't rebuild occlusion if occlusion did not change
@@ -558,32 +736,41 @@ public class BuiltRenderRegion {
 		final FastRenderRegion region = context.region;
 		final Vec3d cameraPos = cwr.cameraPos();
 		final MatrixStack matrixStack = new MatrixStack();
-		final BlockRenderManager blockRenderManager = MinecraftClient.getInstance().getBlockRenderManager();
+		final BlockStateTable stateTable = region.stateTable();
 		final OcclusionRegion occlusionRegion = region.occlusion;
+		final boolean reducedDetail = (context.lod & RegionLod.NO_DETAIL) != 0;
+
+		if (Configurator.greedyMeshing) {
+			context.greedyEncoder.prepare(xModelOffset, yModelOffset, zModelOffset, collectors);
+		}
+
+		// smoothed light is derived from neighbors in ways recipes don't capture
+		context.beginLightRecording(Configurator.enableRelight && !Configurator.lightSmoothing && !context.greedyEncoder.isActive());
 
 		for (int i = 0; i < RenderRegionAddressHelper.INTERIOR_CACHE_SIZE; i++) {
 			if (occlusionRegion.shouldRender(i)) {
 				final BlockState blockState = region.getLocalBlockState(i);
-				final FluidState fluidState = blockState.getFluidState();
-				final int x = i & 0xF;
-				final int y = (i >> 4) & 0xF;
-				final int z = (i >> 8) & 0xF;
-				searchPos.set(xOrigin + x, yOrigin + y, zOrigin + z);
-
-				final boolean hasFluid = !fluidState.isEmpty();
-				final boolean hasBlock = blockState.getRenderType() != BlockRenderType.INVISIBLE;
+				final int stateFlags = stateTable.flags(blockState);
+				final boolean hasFluid = (stateFlags & BlockStateTable.HAS_FLUID) != 0;
+				final boolean hasBlock = (stateFlags & BlockStateTable.HAS_BLOCK_MODEL) != 0
+					&& !(reducedDetail && (stateFlags & BlockStateTable.SMALL_DETAIL) != 0);
 
 				if (hasFluid || hasBlock) {
+					final int x = i & 0xF;
+					final int y = (i >> 4) & 0xF;
+					final int z = (i >> 8) & 0xF;
+					searchPos.set(xOrigin + x, yOrigin + y, zOrigin + z);
+
 					// PERF: allocation, speed
 					matrixStack.push();
 					matrixStack.translate(x + xModelOffset, y + yModelOffset, z + zModelOffset);
 
 					if (hasFluid) {
-						context.renderFluid(blockState, searchPos, false, FluidQuadSupplier.get(fluidState.getFluid()), matrixStack);
+						context.renderFluid(blockState, searchPos, false, FluidQuadSupplier.get(blockState.getFluidState().getFluid()), matrixStack);
 					}
 
 					if (hasBlock) {
-						if (blockState.getBlock().getOffsetType() != Block.OffsetType.NONE) {
+						if ((stateFlags & BlockStateTable.HAS_OFFSET) != 0) {
 							final Vec3d vec3d = blockState.getModelOffset(region, searchPos);
 
 							if (vec3d != Vec3d.ZERO) {
@@ -591,8 +778,8 @@ public class BuiltRenderRegion {
 							}
 						}
 
-						final BakedModel model = blockRenderManager.getModel(blockState);
-						context.renderBlock(blockState, searchPos, model.useAmbientOcclusion(), (FabricBakedModel) model, matrixStack);
+						final BakedModel model = stateTable.model(blockState);
+						context.renderBlock(blockState, searchPos, (stateFlags & BlockStateTable.MODEL_AO) != 0, (FabricBakedModel) model, matrixStack);
 					}
 
 					matrixStack.pop();
@@ -600,6 +787,14 @@ public class BuiltRenderRegion {
 			}
 		}
 
+		if (context.greedyEncoder.isActive()) {
+			context.greedyEncoder.flush();
+		}
+
+		// before translucent sort so vertex order matches recorded keys
+		relightData = RegionRelight.capture(context);
+		context.beginLightRecording(false);
+
 		regionData.endBuffering((float) (cameraPos.x - xOrigin + xModelOffset), (float) (cameraPos.y - yOrigin + yModelOffset), (float) (cameraPos.z - zOrigin + zModelOffset), collectors);
 
 		if (ChunkRebuildCounters.ENABLED) {
@@ -607,14 +802,37 @@ public class BuiltRenderRegion {
 		}
 	}
 
+	/**
+	 * Sorts translucent quads for the current camera position when vertex data
+	 * comes from the mesh cache instead of {@link #buildTerrain}.
+	 */
+	private void sortTranslucent(RegionData regionData, VertexCollectorList collectors) {
+		final Vec3d cameraPos = cwr.cameraPos();
+
+		if (Configurator.batchedChunkRender) {
+			regionData.endBuffering(
+				(float) (cameraPos.x - TerrainModelSpace.renderCubeOrigin(origin.getX())),
+				(float) (cameraPos.y - TerrainModelSpace.renderCubeOrigin(origin.getY())),
+				(float) (cameraPos.z - TerrainModelSpace.renderCubeOrigin(origin.getZ())),
+				collectors);
+		} else {
+			regionData.endBuffering(
+				(float) (cameraPos.x - origin.getX()),
+				(float) (cameraPos.y - origin.getY()),
+				(float) (cameraPos.z - origin.getZ()),
+				collectors);
+		}
+	}
+
 	private void handleBlockEntities(RegionData regionData, TerrainRenderContext context) {
 		final ObjectOpenHashSet<BlockEntity> nonCullBlockEntities = context.nonCullBlockEntities;
 		final ObjectArrayList<BlockEntity> regionDataBlockEntities = regionData.blockEntities;
+		final boolean reducedDetail = (context.lod & RegionLod.NO_DETAIL) != 0;
 
 		// PERF: benchmark vs list, empty indicator, or some other structure
 		for (final BlockEntity blockEntity : context.region.blockEntities) {
 			if (blockEntity != null) {
-				addBlockEntity(regionDataBlockEntities, nonCullBlockEntities, blockEntity);
+				addBlockEntity(regionDataBlockEntities, nonCullBlockEntities, blockEntity, reducedDetail);
 			}
 		}
 
@@ -676,9 +894,16 @@ public class BuiltRenderRegion {
 		}
 
 		final TerrainRenderContext context = renderRegionBuilder.mainThreadContext.prepareRegion(region);
-		final RegionData regionData = buildRegionData(context, isNear());
+		context.lod = lod;
+		final RegionRelight relight = needsLightOnlyRebuild && Configurator.enableRelight ? relightData : null;
+		final boolean isRelit = relight != null && relight.apply(context);
+		final RegionData regionData = buildRegionData(context, isNear(), null);
 
-		buildTerrain(context, regionData);
+		if (isRelit) {
+			sortTranslucent(regionData, context.collectors);
+		} else {
+			buildTerrain(context, regionData);
+		}
 
 		if (ChunkRebuildCounters.ENABLED) {
 			ChunkRebuildCounters.startUpload();
@@ -754,21 +979,57 @@ public class BuiltRenderRegion {
 		return isNear;
 	}
 
-	public void enqueueUnvistedNeighbors() {
-		getNeighbor(FaceConstants.EAST_INDEX).addToPvsIfValid();
-		getNeighbor(FaceConstants.WEST_INDEX).addToPvsIfValid();
-		getNeighbor(FaceConstants.NORTH_INDEX).addToPvsIfValid();
-		getNeighbor(FaceConstants.SOUTH_INDEX).addToPvsIfValid();
+	/**
+	 * Adds neighbors to the potentially visible set.  With face culling, only neighbors
+	 * behind faces joined by open space to a face this region was entered through are
+	 * added.  Regions near the camera or not entered through any face add every neighbor.
+	 */
+	public void enqueueUnvistedNeighbors(boolean faceCulling) {
+		final int exitFlags = faceCulling ? exitFaceFlags() : FaceConnectivity.ALL_FACE_FLAGS;
+
+		enqueueNeighbor(FaceConstants.EAST_INDEX, exitFlags);
+		enqueueNeighbor(FaceConstants.WEST_INDEX, exitFlags);
+		enqueueNeighbor(FaceConstants.NORTH_INDEX, exitFlags);
+		enqueueNeighbor(FaceConstants.SOUTH_INDEX, exitFlags);
 
 		if (!isTop) {
-			getNeighbor(FaceConstants.UP_INDEX).addToPvsIfValid();
+			enqueueNeighbor(FaceConstants.UP_INDEX, exitFlags);
 		}
 
 		if (!isBottom) {
-			getNeighbor(FaceConstants.DOWN_INDEX).addToPvsIfValid();
+			enqueueNeighbor(FaceConstants.DOWN_INDEX, exitFlags);
+		}
+	}
+
+	private int exitFaceFlags() {
+		if (isNear || entryVersion != pruner.potentiallyVisibleRegions.version()) {
+			return FaceConnectivity.ALL_FACE_FLAGS;
+		}
+
+		final int connectivity = buildData.get().getOcclusionData()[OcclusionRegion.CULL_DATA_FACE_CONNECTIVITY];
+		return FaceConnectivity.exitFaces(connectivity, entryFaceFlags);
+	}
+
+	private void enqueueNeighbor(int faceIndex, int exitFlags) {
+		if ((exitFlags & (1 << faceIndex)) != 0) {
+			final BuiltRenderRegion neighbor = getNeighbor(faceIndex);
+			neighbor.addEntryFace(BlockPosHelper.oppositeFaceIndex(faceIndex));
+			neighbor.addToPvsIfValid();
 		}
 	}
 
+	/** Records a face through which this region was reached in the current potentially visible set. */
+	private void addEntryFace(int faceIndex) {
+		final int version = pruner.potentiallyVisibleRegions.version();
+
+		if (entryVersion != version) {
+			entryVersion = version;
+			entryFaceFlags = 0;
+		}
+
+		entryFaceFlags |= 1 << faceIndex;
+	}
+
 	public void addToPvsIfValid() {
 		// Previously checked for r.squaredChunkDistance > squaredChunkDistance
 		// but some progression patterns seem to require it or chunks are missed.
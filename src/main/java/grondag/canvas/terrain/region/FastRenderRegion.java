@@ -35,14 +35,18 @@ import net.minecraft.fluid.FluidState;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.util.math.Direction;
 import net.minecraft.world.LightType;
+import net.minecraft.world.chunk.WorldChunk;
 import net.minecraft.world.chunk.light.LightingProvider;
 import net.minecraft.world.level.ColorResolver;
 
 import net.fabricmc.fabric.api.rendering.data.v1.RenderAttachedBlockView;
 
 import grondag.canvas.apiimpl.rendercontext.TerrainRenderContext;
+import grondag.canvas.terrain.cache.ContentHash;
 import grondag.canvas.terrain.occlusion.geometry.OcclusionRegion;
+import grondag.canvas.terrain.util.BlockStateTable;
 import grondag.canvas.terrain.util.ChunkColorCache;
+import grondag.canvas.terrain.util.ChunkLightCopier;
 import grondag.canvas.terrain.util.ChunkPaletteCopier.PaletteCopy;
 
 public class FastRenderRegion extends AbstractRenderRegion implements RenderAttachedBlockView {
@@ -50,6 +54,7 @@ public class FastRenderRegion extends AbstractRenderRegion implements RenderAtta
 	private static final int[] EMPTY_LIGHT_CACHE = new int[TOTAL_CACHE_SIZE];
 	private static final Object[] EMPTY_RENDER_DATA = new Object[INTERIOR_CACHE_SIZE];
 	private static final BlockEntity[] EMPTY_BLOCK_ENTITIES = new BlockEntity[INTERIOR_CACHE_SIZE];
+	private static final int FULL_BRIGHTNESS = 0xF000F0;
 
 	static {
 		Arrays.fill(EMPTY_AO_CACHE, Integer.MAX_VALUE);
@@ -61,6 +66,10 @@ public class FastRenderRegion extends AbstractRenderRegion implements RenderAtta
 	protected final BlockPos.Mutable searchPos = new BlockPos.Mutable();
 	protected final Object[] renderData = new Object[INTERIOR_CACHE_SIZE];
 	private final BlockState[] states = new BlockState[TOTAL_CACHE_SIZE];
+	/** Light snapshot from proto region - sky in high nibble, block in low nibble. */
+	private final byte[] light = new byte[TOTAL_CACHE_SIZE];
+	private BlockStateTable stateTable = BlockStateTable.current();
+	private boolean hasRenderData;
 	public final OcclusionRegion occlusion = new OcclusionRegion() {
 		@Override
 		protected BlockState blockStateAtIndex(int index) {
@@ -69,7 +78,7 @@ public class FastRenderRegion extends AbstractRenderRegion implements RenderAtta
 
 		@Override
 		protected boolean closedAtRelativePos(BlockState blockState, int x, int y, int z) {
-			return blockState.isOpaqueFullCube(world, searchPos.set(originX + x, originY + y, originZ + z));
+			return stateTable.isOpaqueFullCube(blockState, world, searchPos.set(originX + x, originY + y, originZ + z));
 		}
 	};
 	// PERF: pack for reduced memory, better LOC
@@ -88,6 +97,7 @@ public class FastRenderRegion extends AbstractRenderRegion implements RenderAtta
 		System.arraycopy(EMPTY_LIGHT_CACHE, 0, lightCache, 0, TOTAL_CACHE_SIZE);
 
 		world = protoRegion.world;
+		stateTable = BlockStateTable.current();
 
 		originX = protoRegion.originX;
 		originY = protoRegion.originY;
@@ -98,18 +108,11 @@ public class FastRenderRegion extends AbstractRenderRegion implements RenderAtta
 		chunkBaseZ = protoRegion.chunkBaseZ;
 
 		final PaletteCopy pc = protoRegion.takePaletteCopy();
-
-		for (int x = 0; x < 16; x++) {
-			for (int y = 0; y < 16; y++) {
-				for (int z = 0; z < 16; z++) {
-					states[interiorIndex(x, y, z)] = pc.apply(x | (y << 8) | (z << 4));
-				}
-			}
-		}
-
+		pc.copyTo(states);
 		pc.release();
 
 		System.arraycopy(protoRegion.states, 0, states, INTERIOR_CACHE_SIZE, EXTERIOR_CACHE_SIZE);
+		System.arraycopy(protoRegion.light, 0, light, 0, TOTAL_CACHE_SIZE);
 
 		copyBeData(protoRegion);
 
@@ -129,8 +132,9 @@ public class FastRenderRegion extends AbstractRenderRegion implements RenderAtta
 		}
 
 		final ShortArrayList renderDataPos = protoRegion.renderDataPos;
+		hasRenderData = !renderDataPos.isEmpty();
 
-		if (!renderDataPos.isEmpty()) {
+		if (hasRenderData) {
 			final ObjectArrayList<Object> renderData = protoRegion.renderData;
 			final int limit = renderDataPos.size();
 
@@ -140,6 +144,58 @@ public class FastRenderRegion extends AbstractRenderRegion implements RenderAtta
 		}
 	}
 
+	/**
+	 * Adds everything captured for this region that can change mesh output to the hash:
+	 * origin, block states, light and biomes of the surrounding chunks.  Invalidates the
+	 * hash if block entity render data is present because it can't be hashed.
+	 */
+	public void hashContent(ContentHash hash) {
+		hashGeometry(hash);
+
+		if (!hash.isValid()) {
+			return;
+		}
+
+		final byte[] light = this.light;
+
+		for (int i = 0; i < TOTAL_CACHE_SIZE; i += 4) {
+			hash.add((light[i] & 0xFF) | ((light[i + 1] & 0xFF) << 8) | ((light[i + 2] & 0xFF) << 16) | (light[i + 3] << 24));
+		}
+	}
+
+	/**
+	 * Same as {@link #hashContent(ContentHash)} without light.  Regions with equal geometry
+	 * hashes produce the same quads in the same order and can differ only in vertex light.
+	 */
+	public void hashGeometry(ContentHash hash) {
+		if (hasRenderData) {
+			hash.invalidate();
+			return;
+		}
+
+		hash.add(originX).add(originY).add(originZ);
+
+		final BlockState[] states = this.states;
+
+		for (int i = 0; i < TOTAL_CACHE_SIZE; ++i) {
+			hash.add(stateTable.index(states[i]));
+		}
+
+		for (int x = 0; x < 3; ++x) {
+			for (int z = 0; z < 3; ++z) {
+				final WorldChunk chunk = chunks[x | (z << 2)];
+
+				if (chunk == null || chunk.getBiomeArray() == null) {
+					hash.add(-1);
+				} else {
+					for (final int biome : chunk.getBiomeArray().toIntArray()) {
+						hash.add(biome);
+					}
+				}
+			}
+		}
+	}
+
 	@Override
 	public BlockState getBlockState(BlockPos pos) {
 		final int i = blockIndex(pos.getX(), pos.getY(), pos.getZ());
@@ -181,7 +237,13 @@ public class FastRenderRegion extends AbstractRenderRegion implements RenderAtta
 
 	@Override
 	public int getLightLevel(LightType type, BlockPos pos) {
-		return world.getLightLevel(type, pos);
+		final int i = blockIndex(pos.getX(), pos.getY(), pos.getZ());
+
+		if (i == -1) {
+			return world.getLightLevel(type, pos);
+		}
+
+		return type == LightType.SKY ? ChunkLightCopier.skyLight(light[i]) : ChunkLightCopier.blockLight(light[i]);
 	}
 
 	@Override
@@ -189,6 +251,19 @@ public class FastRenderRegion extends AbstractRenderRegion implements RenderAtta
 		return isInMainChunk(pos) ? renderData[interiorIndex(pos)] : null;
 	}
 
+	public BlockStateTable stateTable() {
+		return stateTable;
+	}
+
+	public boolean isOpaqueFullCube(BlockState state, BlockPos pos) {
+		return stateTable.isOpaqueFullCube(state, this, pos);
+	}
+
+	/** Region cache index of a position in the region or its one-block shell. */
+	public int cacheIndex(BlockPos pos) {
+		return blockIndex(pos.getX(), pos.getY(), pos.getZ());
+	}
+
 	public int cachedBrightness(BlockPos pos) {
 		return cachedBrightness(blockIndex(pos.getX(), pos.getY(), pos.getZ()));
 	}
@@ -202,7 +277,7 @@ public class FastRenderRegion extends AbstractRenderRegion implements RenderAtta
 			final int x = (packedXyz5 & 31) - 1 + originX;
 			final int y = ((packedXyz5 >> 5) & 31) - 1 + originY;
 			final int z = (packedXyz5 >> 10) - 1 + originZ;
-			result = WorldRenderer.getLightmapCoordinates(world, state, searchPos.set(x, y, z));
+			result = snapshotBrightness(cacheIndex, state, searchPos.set(x, y, z));
 			lightCache[cacheIndex] = result;
 		}
 
@@ -217,7 +292,27 @@ public class FastRenderRegion extends AbstractRenderRegion implements RenderAtta
 	}
 
 	public int directBrightness(BlockPos pos) {
-		return WorldRenderer.getLightmapCoordinates(world, getBlockState(pos), pos);
+		final int i = blockIndex(pos.getX(), pos.getY(), pos.getZ());
+
+		if (i == -1) {
+			return WorldRenderer.getLightmapCoordinates(world, getBlockState(pos), pos);
+		}
+
+		return snapshotBrightness(i, states[i], pos);
+	}
+
+	/**
+	 * Same result as {@link WorldRenderer#getLightmapCoordinates(net.minecraft.world.BlockRenderView, BlockState, BlockPos)}
+	 * but reads light from the snapshot taken when the region was claimed.
+	 */
+	private int snapshotBrightness(int cacheIndex, BlockState state, BlockPos pos) {
+		if (state.hasEmissiveLighting(this, pos)) {
+			return FULL_BRIGHTNESS;
+		}
+
+		final byte packed = light[cacheIndex];
+		final int block = Math.max(ChunkLightCopier.blockLight(packed), state.getLuminance());
+		return (ChunkLightCopier.skyLight(packed) << 20) | (block << 4);
 	}
 
 	// TODO: do anything with this?
@@ -19,6 +19,7 @@ package grondag.canvas.terrain.region;
 import static grondag.canvas.terrain.util.RenderRegionAddressHelper.AIR;
 import static grondag.canvas.terrain.util.RenderRegionAddressHelper.EXTERIOR_CACHE_SIZE;
 import static grondag.canvas.terrain.util.RenderRegionAddressHelper.INTERIOR_CACHE_SIZE;
+import static grondag.canvas.terrain.util.RenderRegionAddressHelper.TOTAL_CACHE_SIZE;
 import static grondag.canvas.terrain.util.RenderRegionAddressHelper.interiorIndex;
 import static grondag.canvas.terrain.util.RenderRegionAddressHelper.localCornerIndex;
 import static grondag.canvas.terrain.util.RenderRegionAddressHelper.localXEdgeIndex;
@@ -44,6 +45,7 @@ import net.minecraft.world.chunk.WorldChunk;
 import net.fabricmc.fabric.api.rendering.data.v1.RenderAttachmentBlockEntity;
 
 import grondag.canvas.perf.ChunkRebuildCounters;
+import grondag.canvas.terrain.util.ChunkLightCopier;
 import grondag.canvas.terrain.util.ChunkPaletteCopier;
 import grondag.canvas.terrain.util.ChunkPaletteCopier.PaletteCopy;
 
@@ -67,6 +69,9 @@ public class ProtoRenderRegion extends AbstractRenderRegion {
 	private static final ArrayBlockingQueue<ProtoRenderRegion> POOL = new ArrayBlockingQueue<>(256);
 	public final ObjectArrayList<BlockEntity> blockEntities = new ObjectArrayList<>();
 	final BlockState[] states = new BlockState[EXTERIOR_CACHE_SIZE];
+	/** Sky light in high nibble, block light in low nibble, by region cache index. Captured with states so workers never read live light. */
+	final byte[] light = new byte[TOTAL_CACHE_SIZE];
+	private final ChunkLightCopier lightCopier = new ChunkLightCopier();
 	final ShortArrayList renderDataPos = new ShortArrayList();
 	final ObjectArrayList<Object> renderData = new ObjectArrayList<>();
 	final ShortArrayList blockEntityPos = new ShortArrayList();
@@ -132,6 +137,7 @@ public class ProtoRenderRegion extends AbstractRenderRegion {
 			captureCorners();
 			captureEdges();
 			captureFaces();
+			lightCopier.copy(world, chunkBaseX, chunkBaseY, chunkBaseZ, light);
 
 			result = this;
 		}
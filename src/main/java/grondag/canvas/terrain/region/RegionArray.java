@@ -0,0 +1,121 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.terrain.region;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Fixed-size array of regions that can be read without locking.
+ *
+ * <p>Contents are an immutable snapshot published through a volatile field. Writes copy
+ * the snapshot, so a reader sees either the old or the new contents, never a partly
+ * initialized region. Writes synchronize on the owner given to the constructor, so the
+ * owner can keep its own state consistent with opening and closing by holding the same lock.
+ */
+final class RegionArray<T> {
+	private final Object owner;
+	private final int length;
+	private volatile Object[] values = null;
+
+	RegionArray(Object owner, int length) {
+		this.owner = owner;
+		this.length = length;
+	}
+
+	/** Null if closed or not yet set. */
+	@SuppressWarnings("unchecked")
+	T get(int index) {
+		final Object[] values = this.values;
+		return values == null ? null : (T) values[index];
+	}
+
+	boolean isOpen() {
+		return values != null;
+	}
+
+	/**
+	 * Region at the index, or a new one if there is none. Opens the array if closed.
+	 * Callers should try {@link #get(int)} first, because this always takes the lock.
+	 *
+	 * @param onOpen called with the lock held before a closed array is opened
+	 * @param factory called with the lock held to create a missing region
+	 */
+	@SuppressWarnings("unchecked")
+	T create(int index, Runnable onOpen, Supplier<T> factory) {
+		synchronized (owner) {
+			Object[] values = this.values;
+
+			if (values == null) {
+				onOpen.run();
+				values = new Object[length];
+			} else if (values[index] != null) {
+				// may have been created while waiting for the lock
+				return (T) values[index];
+			} else {
+				values = Arrays.copyOf(values, length);
+			}
+
+			final T value = factory.get();
+			values[index] = value;
+			this.values = values;
+			return value;
+		}
+	}
+
+	/** Visits regions set in one snapshot of the contents. Does nothing if closed. */
+	@SuppressWarnings("unchecked")
+	void forEach(Consumer<? super T> action) {
+		final Object[] values = this.values;
+
+		if (values != null) {
+			for (final Object v : values) {
+				if (v != null) {
+					action.accept((T) v);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Readers see the array as closed once this returns.
+	 *
+	 * @param action called with the lock held for each region that was set, to release it
+	 * @return false if already closed
+	 */
+	@SuppressWarnings("unchecked")
+	boolean close(Consumer<? super T> action) {
+		synchronized (owner) {
+			final Object[] values = this.values;
+
+			if (values == null) {
+				return false;
+			}
+
+			this.values = null;
+
+			for (final Object v : values) {
+				if (v != null) {
+					action.accept((T) v);
+				}
+			}
+
+			return true;
+		}
+	}
+}
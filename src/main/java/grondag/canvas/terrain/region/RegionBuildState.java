@@ -18,6 +18,8 @@ package grondag.canvas.terrain.region;
 
 import java.util.concurrent.atomic.AtomicReference;
 
+import grondag.canvas.terrain.util.TerrainExecutorTask;
+
 class RegionBuildState {
 	/**
 	 * Set by main thread during schedule. Retrieved and set to null by worker
@@ -26,4 +28,16 @@ class RegionBuildState {
 	 * <p>Special values also signal the need for translucency sort and chunk reset.
 	 */
 	final AtomicReference<ProtoRenderRegion> protoRegion = new AtomicReference<>(ProtoRenderRegion.IDLE);
+
+	/**
+	 * Most recent executor submission. Cancelled when the region is closed so
+	 * the task is discarded from the queue instead of occupying a worker.
+	 */
+	volatile TerrainExecutorTask task;
+
+	/** {@link grondag.canvas.terrain.util.RegionLod} flags in effect when the build was scheduled. */
+	volatile int lod;
+
+	/** True if the build was scheduled only because light changed. */
+	volatile boolean isLightOnly;
 }
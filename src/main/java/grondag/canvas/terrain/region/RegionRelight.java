@@ -0,0 +1,135 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.terrain.region;
+
+import grondag.canvas.apiimpl.rendercontext.TerrainRenderContext;
+import grondag.canvas.buffer.encoding.VertexCollectorImpl;
+import grondag.canvas.buffer.encoding.VertexCollectorList;
+import grondag.canvas.material.state.RenderMaterialImpl;
+import grondag.canvas.terrain.cache.ContentHash;
+
+/**
+ * Unsorted vertex data of a built region with the light recipe of every vertex.
+ * When only light has changed, the region can be rebuilt by evaluating the
+ * recipes against a new light snapshot instead of meshing again.
+ *
+ * <p>Immutable once captured. Applies only if the geometry hash and LOD of
+ * the new snapshot match those at capture.
+ */
+class RegionRelight {
+	private final int lod;
+	private final long geometryKey;
+	private final long geometryCheck;
+	private final int[] recipes;
+	private final int[] materials;
+	private final int[][] vertexData;
+	private final int[][] keys;
+
+	private RegionRelight(int lod, ContentHash hash, int[] recipes, int[] materials, int[][] vertexData, int[][] keys) {
+		this.lod = lod;
+		geometryKey = hash.key();
+		geometryCheck = hash.check();
+		this.recipes = recipes;
+		this.materials = materials;
+		this.vertexData = vertexData;
+		this.keys = keys;
+	}
+
+	/**
+	 * Call after terrain is buffered and before translucent quads are sorted.
+	 *
+	 * @return null if light was not recorded for every quad or geometry can't be hashed
+	 */
+	static RegionRelight capture(TerrainRenderContext context) {
+		if (!context.isRecordingLight()) {
+			return null;
+		}
+
+		final ContentHash hash = context.geometryHash.reset(0);
+		context.region.hashGeometry(hash);
+
+		if (!hash.isValid()) {
+			return null;
+		}
+
+		final VertexCollectorList collectors = context.collectors;
+		final int limit = collectors.size();
+		int count = 0;
+
+		for (int i = 0; i < limit; ++i) {
+			if (!collectors.get(i).isEmpty()) {
+				++count;
+			}
+		}
+
+		final int[] materials = new int[count];
+		final int[][] vertexData = new int[count][];
+		final int[][] keys = new int[count][];
+		count = 0;
+
+		for (int i = 0; i < limit; ++i) {
+			final VertexCollectorImpl collector = collectors.get(i);
+
+			if (!collector.isEmpty()) {
+				final int[] collectorKeys = context.recordedLightKeys(collector);
+
+				// vertices added some other way than quad encoding
+				if (collectorKeys == null || collectorKeys.length != collector.vertexCount()) {
+					return null;
+				}
+
+				materials[count] = collector.materialState().index;
+				vertexData[count] = collector.saveState(null);
+				keys[count++] = collectorKeys;
+			}
+		}
+
+		return new RegionRelight(context.lod, hash, context.relightRecipes.toArray(), materials, vertexData, keys);
+	}
+
+	/**
+	 * Loads vertex data with light from the prepared region of the context into
+	 * empty collectors. Translucent quads still need to be sorted.
+	 *
+	 * @return false, leaving collectors empty, if the prepared region doesn't match
+	 */
+	boolean apply(TerrainRenderContext context) {
+		if (context.lod != lod) {
+			return false;
+		}
+
+		final ContentHash hash = context.geometryHash.reset(0);
+		context.region.hashGeometry(hash);
+
+		if (!hash.isValid() || hash.key() != geometryKey || hash.check() != geometryCheck) {
+			return false;
+		}
+
+		final VertexCollectorList collectors = context.collectors;
+		final FastRenderRegion region = context.region;
+		final int limit = materials.length;
+
+		for (int i = 0; i < limit; ++i) {
+			final RenderMaterialImpl material = RenderMaterialImpl.fromIndex(materials[i]);
+			final VertexCollectorImpl collector = collectors.get(material);
+			collector.loadState(material, vertexData[i]);
+			collector.relight(context.relightRecipes, recipes, keys[i], region::cachedBrightness);
+		}
+
+		return true;
+	}
+}
@@ -16,50 +16,44 @@
 
 package grondag.canvas.terrain.region;
 
-import java.util.Queue;
-
-import com.google.common.collect.Queues;
 import com.mojang.blaze3d.systems.RenderSystem;
 
+import net.minecraft.util.Util;
+
+import grondag.canvas.Configurator;
 import grondag.canvas.apiimpl.rendercontext.TerrainRenderContext;
+import grondag.canvas.terrain.render.UploadScheduler;
 import grondag.canvas.terrain.util.TerrainExecutor;
 
 public class RenderRegionBuilder {
 	public final TerrainExecutor executor = new TerrainExecutor();
-	private final Queue<Runnable> uploadQueue = Queues.newConcurrentLinkedQueue();
+	private final UploadScheduler uploadScheduler = new UploadScheduler(Util::getMeasuringTimeNano);
 	// for use by render thread rebuilds
 	TerrainRenderContext mainThreadContext = new TerrainRenderContext();
 
 	public String getDebugString() {
-		return String.format("not available");
+		return String.format("uploads pending:%d  last:%d (%d KB)  superseded:%d", uploadScheduler.pendingCount(),
+				uploadScheduler.lastUploadCount(), uploadScheduler.lastUploadBytes() / 1024, uploadScheduler.lastDiscardCount());
 	}
 
 	public boolean upload() {
 		assert RenderSystem.isOnRenderThread();
 
-		Runnable task = uploadQueue.poll();
-
-		final boolean didRun = task != null;
-
-		while (task != null) {
-			task.run();
-			task = uploadQueue.poll();
-		}
-
-		return didRun;
+		return uploadScheduler.drain(Configurator.terrainUploadBudgetMillis * 1000000L, Configurator.terrainUploadBudgetMegabytes * 0x100000L);
 	}
 
 	public void reset() {
 		executor.clear();
+		uploadScheduler.clear();
 		mainThreadContext.close();
 		mainThreadContext = new TerrainRenderContext();
 	}
 
-	public void scheduleUpload(Runnable task) {
-		uploadQueue.offer(task);
+	public void scheduleUpload(UploadScheduler.PendingUpload upload) {
+		uploadScheduler.offer(upload);
 	}
 
 	public boolean isEmpty() {
-		return executor.isEmpty() && uploadQueue.isEmpty();
+		return executor.isEmpty() && uploadScheduler.isEmpty();
 	}
 }
@@ -16,49 +16,79 @@
 
 package grondag.canvas.terrain.region;
 
-import java.util.concurrent.atomic.AtomicInteger;
-
 import net.minecraft.client.world.ClientWorld;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.chunk.ChunkStatus;
 
+import grondag.canvas.render.CanvasFrustum;
+
 public class RenderRegionChunk {
 	final RenderRegionStorage storage;
+	/** Index in storage, fixed for the life of this instance. */
+	private final int slot;
 
+	// only written before regions are published by open
 	private int chunkX;
 	private int chunkZ;
-	private BuiltRenderRegion[] regions = null;
+	/** Read without locking. Creation and close synchronize on this instance. */
+	private final RegionArray<BuiltRenderRegion> regions = new RegionArray<>(this, 16);
 	private boolean areCornersLoadedCache = false;
 	int chunkDistVersion = -1;
 	int horizontalSquaredDistance;
+	private int frustumVersion = -1;
+	/** Frustum planes regions in this column must still be tested against. */
+	int frustumPlaneMask;
 
-	public RenderRegionChunk(RenderRegionStorage storage) {
+	public RenderRegionChunk(RenderRegionStorage storage, int slot) {
 		this.storage = storage;
+		this.slot = slot;
 	}
 
 	private void open(int chunkX, int chunkZ) {
 		this.chunkX = chunkX;
 		this.chunkZ = chunkZ;
-		regions = new BuiltRenderRegion[16];
 		areCornersLoadedCache = false;
 		chunkDistVersion = -1;
+		frustumVersion = -1;
+		storage.activeChunks.add(slot);
 	}
 
-	public synchronized void close() {
-		if (regions != null) {
-			final AtomicInteger regionCount = storage.regionCount;
-
-			for (final BuiltRenderRegion region : regions) {
-				if (region != null) {
-					region.close();
-					regionCount.decrementAndGet();
-				}
-			}
+	boolean isOpen() {
+		return regions.isOpen();
+	}
+
+	int chunkX() {
+		return chunkX;
+	}
 
-			regions = null;
+	int chunkZ() {
+		return chunkZ;
+	}
+
+	/**
+	 * Classifies the full-height box of the given inclusive range of columns against the planes in the mask.
+	 * Camera position is the same one region centers are relative to.
+	 */
+	static int classifyColumns(CanvasFrustum frustum, double cameraX, double cameraY, double cameraZ, int minChunkX, int minChunkZ, int maxChunkX, int maxChunkZ, int planeMask) {
+		final int hdx = (maxChunkX - minChunkX + 1) << 3;
+		final int hdz = (maxChunkZ - minChunkZ + 1) << 3;
+		final float cx = (float) ((minChunkX << 4) + hdx - cameraX);
+		final float cy = (float) (128 - cameraY);
+		final float cz = (float) ((minChunkZ << 4) + hdz - cameraZ);
+		return frustum.classifyRegionGroup(cx, cy, cz, hdx, 128, hdz, planeMask);
+	}
+
+	public synchronized void close() {
+		if (regions.close(this::closeRegion)) {
+			storage.activeChunks.remove(slot);
 		}
 	}
 
+	private void closeRegion(BuiltRenderRegion region) {
+		region.close();
+		storage.regionCount.decrementAndGet();
+	}
+
 	public boolean areCornersLoaded() {
 		return areCornersLoadedCache || areCornerChunksLoaded();
 	}
@@ -84,55 +114,40 @@ public class RenderRegionChunk {
 			horizontalSquaredDistance = cx * cx + cz * cz;
 		}
 
-		final BuiltRenderRegion[] regions = this.regions;
+		if (regions.isOpen()) {
+			final int fv = storage.regionPruner.frustum.viewVersion();
 
-		if (regions != null) {
-			for (int i = 0; i < 16; ++i) {
-				final BuiltRenderRegion r = regions[i];
-
-				if (r != null) {
-					r.updateCameraDistanceAndVisibilityInfo();
-				}
+			if (fv != frustumVersion) {
+				frustumVersion = fv;
+				frustumPlaneMask = storage.columnPlaneMask(chunkX, chunkZ);
 			}
 
+			regions.forEach(BuiltRenderRegion::updateCameraDistanceAndVisibilityInfo);
+
 			if (horizontalSquaredDistance > storage.cwr.maxSquaredChunkRetentionDistance()) {
 				storage.scheduleClose(this);
 			}
 		}
 	}
 
-	synchronized BuiltRenderRegion getOrCreateRegion(int x, int y, int z) {
+	BuiltRenderRegion getOrCreateRegion(int x, int y, int z) {
 		if ((y & 0xFFFFFF00) != 0) {
 			return null;
 		}
 
-		BuiltRenderRegion[] regions = this.regions;
-
-		if (regions == null) {
-			open(x >> 4, z >> 4);
-			regions = this.regions;
-		}
-
-		final int i = y >> 4;
-
-		BuiltRenderRegion r = regions[i];
+		final BuiltRenderRegion r = regions.get(y >> 4);
+		return r == null ? createRegion(x, y, z) : r;
+	}
 
-		if (r == null) {
-			final long k = BlockPos.asLong(x & 0xFFFFFFF0, y & 0xFFFFFFF0, z & 0xFFFFFFF0);
-			r = new BuiltRenderRegion(this, k);
-			regions[i] = r;
+	private BuiltRenderRegion createRegion(int x, int y, int z) {
+		return regions.create(y >> 4, () -> open(x >> 4, z >> 4), () -> {
+			final BuiltRenderRegion r = new BuiltRenderRegion(this, BlockPos.asLong(x & 0xFFFFFFF0, y & 0xFFFFFFF0, z & 0xFFFFFFF0));
 			storage.regionCount.incrementAndGet();
-		}
-
-		return r;
+			return r;
+		});
 	}
 
-	synchronized BuiltRenderRegion getRegionIfExists(int x, int y, int z) {
-		if ((y & 0xFFFFFF00) != 0) {
-			return null;
-		}
-
-		final BuiltRenderRegion[] regions = this.regions;
-		return regions == null ? null : regions[y >> 4];
+	BuiltRenderRegion getRegionIfExists(int x, int y, int z) {
+		return (y & 0xFFFFFF00) == 0 ? regions.get(y >> 4) : null;
 	}
 }
@@ -16,12 +16,15 @@
 
 package grondag.canvas.terrain.region;
 
+import java.util.Arrays;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import net.minecraft.util.math.BlockPos;
 
+import grondag.canvas.render.CanvasFrustum;
 import grondag.canvas.render.CanvasWorldRenderer;
+import grondag.canvas.render.TerrainFrustum;
 
 public class RenderRegionStorage {
 	final AtomicInteger regionCount = new AtomicInteger();
@@ -34,13 +37,28 @@ public class RenderRegionStorage {
 	static final int CHUNK_COUNT = 128 * 128;
 	private final RenderRegionChunk[] chunks = new RenderRegionChunk[CHUNK_COUNT];
 	private final ArrayBlockingQueue<RenderRegionChunk> closeQueue = new ArrayBlockingQueue<>(RenderRegionStorage.CHUNK_COUNT);
+	final ActiveChunkSet activeChunks = new ActiveChunkSet(CHUNK_COUNT);
+
+	// Columns are grouped 4x4 for frustum tests. Planes a group is fully inside of are
+	// not tested again for its columns, or for the regions in those columns.
+	private static final int GROUP_SHIFT = 2;
+	private static final int GROUP_Z_SHIFT = 7 - GROUP_SHIFT;
+	private static final int GROUP_AXIS_COUNT = 1 << GROUP_Z_SHIFT;
+	static final int GROUP_COUNT = GROUP_AXIS_COUNT * GROUP_AXIS_COUNT;
+	private final int[] groupPlaneMasks = new int[GROUP_COUNT];
+	// chunk coordinate bounds of the columns that were open when each group was classified
+	private final int[] groupMinChunkX = new int[GROUP_COUNT];
+	private final int[] groupMinChunkZ = new int[GROUP_COUNT];
+	private final int[] groupMaxChunkX = new int[GROUP_COUNT];
+	private final int[] groupMaxChunkZ = new int[GROUP_COUNT];
+	private int groupFrustumVersion = -1;
 
 	public RenderRegionStorage(CanvasWorldRenderer canvasWorldRenderer, RenderRegionPruner pruner) {
 		cwr = canvasWorldRenderer;
 		regionPruner = pruner;
 
 		for (int i = 0; i < CHUNK_COUNT; ++i) {
-			chunks[i] = new RenderRegionChunk(this);
+			chunks[i] = new RenderRegionChunk(this, i);
 		}
 	}
 
@@ -69,6 +87,11 @@ public class RenderRegionStorage {
 		return x | (z << 7);
 	}
 
+	/** Group of the 4x4 block of chunk slots that holds the slot. */
+	private static int groupIndex(int slot) {
+		return ((slot & 127) >> GROUP_SHIFT) | ((slot >> (7 + GROUP_SHIFT)) << GROUP_Z_SHIFT);
+	}
+
 	public void scheduleRebuild(int x, int y, int z, boolean urgent) {
 		if ((y & 0xFFFFFF00) == 0) {
 			final BuiltRenderRegion region = getRegionIfExists(x, y, z);
@@ -79,6 +102,16 @@ public class RenderRegionStorage {
 		}
 	}
 
+	public void scheduleRelight(int x, int y, int z) {
+		if ((y & 0xFFFFFF00) == 0) {
+			final BuiltRenderRegion region = getRegionIfExists(x, y, z);
+
+			if (region != null) {
+				region.markForRelight();
+			}
+		}
+	}
+
 	int chunkDistVersion = 1;
 
 	public void updateCameraDistanceAndVisibilityInfo(long cameraChunkOrigin) {
@@ -97,13 +130,81 @@ public class RenderRegionStorage {
 
 		regionPruner.prepare(clearVisibility);
 
-		for (int i = 0; i < CHUNK_COUNT; ++i) {
-			chunks[i].updateCameraDistanceAndVisibilityInfo();
+		// only loaded chunks - distance and frustum checks within them only run when versions change
+		final ActiveChunkSet activeChunks = this.activeChunks;
+		final int activeCount = activeChunks.refresh();
+		final TerrainFrustum frustum = regionPruner.frustum;
+
+		if (frustum.viewVersion() != groupFrustumVersion) {
+			groupFrustumVersion = frustum.viewVersion();
+			classifyGroups(frustum, activeCount);
+		}
+
+		for (int i = 0; i < activeCount; ++i) {
+			chunks[activeChunks.snapshotSlot(i)].updateCameraDistanceAndVisibilityInfo();
 		}
 
 		if (regionPruner.didInvalidateOccluder()) {
 			regionPruner.occluder.invalidate();
 		}
+
+		// region distances are now current so queued builds can be re-sorted
+		if (clearVisibility) {
+			cwr.regionBuilder().executor.reprioritize();
+		}
+	}
+
+	private void classifyGroups(TerrainFrustum frustum, int activeCount) {
+		Arrays.fill(groupMinChunkX, Integer.MAX_VALUE);
+		Arrays.fill(groupMinChunkZ, Integer.MAX_VALUE);
+		Arrays.fill(groupMaxChunkX, Integer.MIN_VALUE);
+		Arrays.fill(groupMaxChunkZ, Integer.MIN_VALUE);
+
+		for (int i = 0; i < activeCount; ++i) {
+			final int slot = activeChunks.snapshotSlot(i);
+			final RenderRegionChunk chunk = chunks[slot];
+
+			if (chunk.isOpen()) {
+				final int g = groupIndex(slot);
+				final int cx = chunk.chunkX();
+				final int cz = chunk.chunkZ();
+				groupMinChunkX[g] = Math.min(groupMinChunkX[g], cx);
+				groupMinChunkZ[g] = Math.min(groupMinChunkZ[g], cz);
+				groupMaxChunkX[g] = Math.max(groupMaxChunkX[g], cx);
+				groupMaxChunkZ[g] = Math.max(groupMaxChunkZ[g], cz);
+			}
+		}
+
+		for (int g = 0; g < GROUP_COUNT; ++g) {
+			final int minX = groupMinChunkX[g];
+
+			if (minX == Integer.MAX_VALUE) {
+				groupPlaneMasks[g] = CanvasFrustum.ALL_PLANES;
+			} else {
+				groupPlaneMasks[g] = RenderRegionChunk.classifyColumns(frustum, frustum.lastPositionX(), frustum.lastPositionY(), frustum.lastPositionZ(), minX, groupMinChunkZ[g], groupMaxChunkX[g], groupMaxChunkZ[g], CanvasFrustum.ALL_PLANES);
+			}
+		}
+	}
+
+	/**
+	 * Planes regions in the given column must still be tested against, or {@link CanvasFrustum#OUTSIDE}.
+	 * All planes if the column wasn't open when its group was last classified.
+	 */
+	int columnPlaneMask(int chunkX, int chunkZ) {
+		final int g = groupIndex(chunkIndex(chunkX << 4, chunkZ << 4));
+
+		if (chunkX < groupMinChunkX[g] || chunkX > groupMaxChunkX[g] || chunkZ < groupMinChunkZ[g] || chunkZ > groupMaxChunkZ[g]) {
+			return CanvasFrustum.ALL_PLANES;
+		}
+
+		final int groupMask = groupPlaneMasks[g];
+
+		if (groupMask == CanvasFrustum.OUTSIDE || groupMask == 0) {
+			return groupMask;
+		}
+
+		final TerrainFrustum frustum = regionPruner.frustum;
+		return RenderRegionChunk.classifyColumns(frustum, frustum.lastPositionX(), frustum.lastPositionY(), frustum.lastPositionZ(), chunkX, chunkZ, chunkX, chunkZ, groupMask);
 	}
 
 	public int regionCount() {
@@ -21,11 +21,15 @@ import java.util.function.Predicate;
 
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 
+import grondag.canvas.Configurator;
 import grondag.canvas.buffer.VboBuffer;
 import grondag.canvas.buffer.encoding.VertexCollectorImpl;
 import grondag.canvas.buffer.encoding.VertexCollectorList;
+import grondag.canvas.buffer.format.CanvasVertexFormats;
 import grondag.canvas.material.property.MaterialTarget;
 import grondag.canvas.material.state.RenderMaterialImpl;
+import grondag.canvas.shader.MaterialShaderManager;
+import grondag.canvas.shader.ProgramType;
 
 public class DrawableChunk {
 	public static DrawableChunk EMPTY_DRAWABLE = new DrawableChunk.Dummy();
@@ -101,6 +105,40 @@ public class DrawableChunk {
 	private static final Predicate<RenderMaterialImpl> TRANSLUCENT = m -> m.target == MaterialTarget.TRANSLUCENT && m.primaryTargetTransparency;
 	private static final Predicate<RenderMaterialImpl> SOLID = m -> !TRANSLUCENT.test(m);
 
+	/**
+	 * True if back faces are culled and the default vertex shader leaves positions alone,
+	 * so that face buckets can be skipped without changing the result.
+	 *
+	 * <p>The collector's material is only the first one it saw. Vertex-controlled collectors
+	 * leave the shader out of their key and hold quads of any vertex shader, so they never
+	 * qualify.
+	 */
+	private static boolean hasFixedFaces(RenderMaterialImpl mat) {
+		return mat.cull && mat.programType != ProgramType.MATERIAL_VERTEX_LOGIC && mat.vertexShaderIndex == MaterialShaderManager.DEFAULT_VERTEX_INDEX;
+	}
+
+	/**
+	 * Writes the collector's quads with the given shader flags as one delegate.
+	 *
+	 * @return vertex position after the written quads
+	 */
+	private static int packDelegate(VertexCollectorImpl collector, IntBuffer intBuffer, int position, int vertexCount, boolean compact, boolean bucketed, int shaderFlags, ObjectArrayList<DrawableDelegate> delegates) {
+		final RenderMaterialImpl mat = collector.materialState();
+		final DrawableDelegate delegate = DrawableDelegate.claim(mat, position, vertexCount, shaderFlags == VertexCollectorImpl.ANY_SHADER_FLAGS ? mat.shaderFlags : shaderFlags);
+
+		if (bucketed) {
+			collector.toBucketedBuffer(intBuffer, compact, shaderFlags, delegate.faceVertexCounts(), delegate.facePlanes());
+			delegate.setHasFaceBuckets();
+		} else if (compact) {
+			collector.toCompactBuffer(intBuffer, 0, collector.integerSize(), shaderFlags);
+		} else {
+			collector.toBuffer(intBuffer);
+		}
+
+		delegates.add(delegate);
+		return position + vertexCount;
+	}
+
 	public static DrawableChunk pack(VertexCollectorList collectorList, VboBuffer vboBuffer, boolean translucent) {
 		final IntBuffer intBuffer = vboBuffer.intBuffer();
 		intBuffer.position(0);
@@ -108,15 +146,38 @@ public class DrawableChunk {
 		final int limit = drawList.size();
 		int position = 0;
 		final ObjectArrayList<DrawableDelegate> delegates = DelegateLists.getReadyDelegateList();
+		final boolean compact = vboBuffer.format == CanvasVertexFormats.COMPACT_MATERIAL;
 
 		for (int i = 0; i < limit; ++i) {
 			final VertexCollectorImpl collector = drawList.get(i);
-
-			if (collector.materialState().sorted == translucent) {
-				final int vertexCount = collector.vertexCount();
-				collector.toBuffer(intBuffer);
-				delegates.add(DrawableDelegate.claim(collector.materialState(), position, vertexCount));
-				position += vertexCount;
+			final RenderMaterialImpl mat = collector.materialState();
+
+			if (mat.sorted == translucent) {
+				final boolean bucketed = !translucent && Configurator.terrainFaceBuckets && hasFixedFaces(mat);
+
+				if (!compact) {
+					position = packDelegate(collector, intBuffer, position, collector.vertexCount(), false, bucketed, VertexCollectorImpl.ANY_SHADER_FLAGS, delegates);
+				} else if (translucent) {
+					// compact vertices don't carry shader flags - split into runs that share them so sort order is kept
+					final int end = collector.integerSize();
+
+					for (int start = 0; start < end; ) {
+						final int runEnd = collector.shaderFlagRunEnd(start);
+						final DrawableDelegate delegate = DrawableDelegate.claim(mat, position, (runEnd - start) / CanvasVertexFormats.MATERIAL_VERTEX_STRIDE, collector.shaderFlags(start));
+						collector.toCompactBuffer(intBuffer, start, runEnd, delegate.shaderFlags());
+						delegates.add(delegate);
+						position += delegate.vertexCount();
+						start = runEnd;
+					}
+				} else {
+					// compact vertices don't carry shader flags - cutout and solid quads, for example, share
+					// a collector but need separate draws
+					final int setCount = collector.findShaderFlagSets();
+
+					for (int f = 0; f < setCount; ++f) {
+						position = packDelegate(collector, intBuffer, position, collector.shaderFlagVertexCount(f), true, bucketed, collector.shaderFlagSet(f), delegates);
+					}
+				}
 			}
 		}
 
@@ -22,6 +22,7 @@ import com.mojang.blaze3d.platform.GlStateManager;
 import com.mojang.blaze3d.systems.RenderSystem;
 import org.lwjgl.opengl.GL11;
 
+import grondag.canvas.buffer.encoding.FaceBuckets;
 import grondag.canvas.material.state.RenderMaterialImpl;
 
 public class DrawableDelegate {
@@ -29,13 +30,24 @@ public class DrawableDelegate {
 	private RenderMaterialImpl materialState;
 	private int vertexOffset;
 	private int vertexCount;
+	private int shaderFlags;
 	private boolean isReleased = false;
+	private boolean hasFaceBuckets = false;
+	private final int[] faceVertexCounts = new int[FaceBuckets.BUCKET_COUNT];
+	private final float[] facePlanes = new float[FaceBuckets.UNASSIGNED];
+
+	// render thread only
+	private static final int[] rangeFirsts = new int[4];
+	private static final int[] rangeCounts = new int[4];
 
 	private DrawableDelegate() {
 		super();
 	}
 
-	public static DrawableDelegate claim(RenderMaterialImpl renderState, int vertexOffset, int vertexCount) {
+	/**
+	 * @param shaderFlags flags shared by every vertex, for formats that don't carry them per vertex
+	 */
+	public static DrawableDelegate claim(RenderMaterialImpl renderState, int vertexOffset, int vertexCount, int shaderFlags) {
 		DrawableDelegate result = store.poll();
 
 		if (result == null) {
@@ -45,10 +57,28 @@ public class DrawableDelegate {
 		result.materialState = renderState;
 		result.vertexOffset = vertexOffset;
 		result.vertexCount = vertexCount;
+		result.shaderFlags = shaderFlags;
 		result.isReleased = false;
+		result.hasFaceBuckets = false;
 		return result;
 	}
 
+	/**
+	 * Marks vertices as grouped by face, in bucket order. Counts and planes must be filled
+	 * by the caller via {@link #faceVertexCounts()} and {@link #facePlanes()}.
+	 */
+	public void setHasFaceBuckets() {
+		hasFaceBuckets = true;
+	}
+
+	public int[] faceVertexCounts() {
+		return faceVertexCounts;
+	}
+
+	public float[] facePlanes() {
+		return facePlanes;
+	}
+
 	/**
 	 * The pipeline (and vertex format) associated with this delegate.
 	 */
@@ -56,14 +86,45 @@ public class DrawableDelegate {
 		return materialState;
 	}
 
+	/**
+	 * Shader flags of every vertex drawn by this delegate. Compact terrain buffers
+	 * don't carry flags per vertex and send these as a uniform instead.
+	 */
+	public int shaderFlags() {
+		return shaderFlags;
+	}
+
 	/**
 	 * Assumes pipeline has already been activated and buffer has already been bound
-	 * via {@link #bind()}.
+	 * via {@link #bind()}. Skips faces that can't be seen from the camera.
+	 *
+	 * @param baseVertex first vertex of the owning buffer's content in the bound GL buffer
+	 * @param cameraX camera position relative to the vertex origin
 	 */
-	public void draw() {
+	public void draw(int baseVertex, float cameraX, float cameraY, float cameraZ) {
 		assert !isReleased;
 
-		GlStateManager.drawArrays(GL11.GL_QUADS, vertexOffset, vertexCount);
+		final int rangeCount = visibleRanges(baseVertex, cameraX, cameraY, cameraZ, rangeFirsts, rangeCounts);
+
+		for (int i = 0; i < rangeCount; ++i) {
+			GlStateManager.drawArrays(GL11.GL_QUADS, rangeFirsts[i], rangeCounts[i]);
+		}
+	}
+
+	/**
+	 * Finds vertex ranges that may be visible from the camera. Output arrays need room for four ranges.
+	 *
+	 * @return number of ranges
+	 */
+	public int visibleRanges(int baseVertex, float cameraX, float cameraY, float cameraZ, int[] firsts, int[] counts) {
+		if (hasFaceBuckets) {
+			final int mask = FaceBuckets.visibleMask(facePlanes, cameraX, cameraY, cameraZ);
+			return FaceBuckets.selectRanges(baseVertex + vertexOffset, faceVertexCounts, mask, firsts, counts);
+		} else {
+			firsts[0] = baseVertex + vertexOffset;
+			counts[0] = vertexCount;
+			return 1;
+		}
 	}
 
 	public void release() {
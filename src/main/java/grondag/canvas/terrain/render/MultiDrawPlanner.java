@@ -0,0 +1,227 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.terrain.render;
+
+import java.util.Arrays;
+import java.util.function.Supplier;
+
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+
+/**
+ * Gathers terrain draws from many regions into one vertex range list per draw state, so that
+ * each list can be sent with a single {@code glMultiDrawArrays} call.
+ *
+ * <p>Draws are grouped by render cube origin, then by buffer binding, then by state and shader flags.
+ * Regions in the same render cube share a model origin, so no per-region offset is needed.
+ * Ranges that continue the previous range in the same list are merged.
+ *
+ * <p>When order is not preserved, groups are emitted in the order they were first seen, which
+ * changes draw order but not the result for depth-tested solid terrain. When order is preserved,
+ * as for translucency, only consecutive draws with the same keys are merged.
+ *
+ * <p>Instances are reused across frames. Not thread-safe.
+ *
+ * @param <B> buffer binding, compared by identity
+ * @param <S> draw state, compared by identity
+ */
+public class MultiDrawPlanner<B, S> {
+	public interface Target<B, S> {
+		/** Called before the first bind for each render cube. */
+		void setOrigin(long packedOrigin);
+
+		/** Called before the first draw from each buffer binding. */
+		void bind(B binding);
+
+		/** Draws drawCount vertex ranges with the given state. Arrays may be longer than drawCount. */
+		void draw(S state, int shaderFlags, int[] firsts, int[] counts, int drawCount);
+	}
+
+	private static class Batch<S> {
+		private S state;
+		private int shaderFlags;
+		private int[] firsts = new int[16];
+		private int[] counts = new int[16];
+		private int size;
+
+		private void add(int first, int count) {
+			final int last = size - 1;
+
+			if (last >= 0 && firsts[last] + counts[last] == first) {
+				counts[last] += count;
+				return;
+			}
+
+			if (size == firsts.length) {
+				firsts = Arrays.copyOf(firsts, size * 2);
+				counts = Arrays.copyOf(counts, size * 2);
+			}
+
+			firsts[size] = first;
+			counts[size++] = count;
+		}
+	}
+
+	private static class BindingGroup<B, S> {
+		private B binding;
+		private final Pool<Batch<S>> batches = new Pool<>(Batch::new);
+	}
+
+	private static class OriginGroup<B, S> {
+		private long origin;
+		private final Pool<BindingGroup<B, S>> bindings = new Pool<>(BindingGroup::new);
+	}
+
+	/** List that keeps released elements for reuse. */
+	private static class Pool<T> {
+		private final ObjectArrayList<T> items = new ObjectArrayList<>();
+		private final Supplier<T> factory;
+		private int size;
+
+		private Pool(Supplier<T> factory) {
+			this.factory = factory;
+		}
+
+		private T claim() {
+			if (size == items.size()) {
+				items.add(factory.get());
+			}
+
+			return items.get(size++);
+		}
+	}
+
+	private final boolean preserveOrder;
+	private final Pool<OriginGroup<B, S>> origins = new Pool<>(OriginGroup::new);
+	private int pendingDrawCount;
+	private int drawCount;
+	private int callCount;
+
+	/**
+	 * @param preserveOrder true to merge only consecutive draws, for translucent layers
+	 */
+	public MultiDrawPlanner(boolean preserveOrder) {
+		this.preserveOrder = preserveOrder;
+	}
+
+	/** Adds one draw of count vertices starting at first in the given buffer binding. */
+	public void add(long packedOrigin, B binding, S state, int shaderFlags, int first, int count) {
+		++pendingDrawCount;
+
+		final OriginGroup<B, S> originGroup = findOrigin(packedOrigin);
+		final BindingGroup<B, S> bindingGroup = findBinding(originGroup, binding);
+		findBatch(bindingGroup, state, shaderFlags).add(first, count);
+	}
+
+	private OriginGroup<B, S> findOrigin(long packedOrigin) {
+		final Pool<OriginGroup<B, S>> pool = origins;
+		final int start = preserveOrder ? Math.max(0, pool.size - 1) : 0;
+
+		// most recent first - consecutive draws usually come from the same region
+		for (int i = pool.size - 1; i >= start; --i) {
+			final OriginGroup<B, S> g = pool.items.get(i);
+
+			if (g.origin == packedOrigin) {
+				return g;
+			}
+		}
+
+		final OriginGroup<B, S> result = pool.claim();
+		result.origin = packedOrigin;
+		result.bindings.size = 0;
+		return result;
+	}
+
+	private BindingGroup<B, S> findBinding(OriginGroup<B, S> originGroup, B binding) {
+		final Pool<BindingGroup<B, S>> pool = originGroup.bindings;
+		final int start = preserveOrder ? Math.max(0, pool.size - 1) : 0;
+
+		for (int i = pool.size - 1; i >= start; --i) {
+			final BindingGroup<B, S> g = pool.items.get(i);
+
+			if (g.binding == binding) {
+				return g;
+			}
+		}
+
+		final BindingGroup<B, S> result = pool.claim();
+		result.binding = binding;
+		result.batches.size = 0;
+		return result;
+	}
+
+	private Batch<S> findBatch(BindingGroup<B, S> bindingGroup, S state, int shaderFlags) {
+		final Pool<Batch<S>> pool = bindingGroup.batches;
+		final int start = preserveOrder ? Math.max(0, pool.size - 1) : 0;
+
+		for (int i = pool.size - 1; i >= start; --i) {
+			final Batch<S> b = pool.items.get(i);
+
+			if (b.state == state && b.shaderFlags == shaderFlags) {
+				return b;
+			}
+		}
+
+		final Batch<S> result = pool.claim();
+		result.state = state;
+		result.shaderFlags = shaderFlags;
+		result.size = 0;
+		return result;
+	}
+
+	/** Sends all gathered draws to the target and clears the plan. */
+	public void flush(Target<B, S> target) {
+		int calls = 0;
+		final Pool<OriginGroup<B, S>> origins = this.origins;
+
+		for (int i = 0; i < origins.size; ++i) {
+			final OriginGroup<B, S> originGroup = origins.items.get(i);
+			target.setOrigin(originGroup.origin);
+			final Pool<BindingGroup<B, S>> bindings = originGroup.bindings;
+
+			for (int j = 0; j < bindings.size; ++j) {
+				final BindingGroup<B, S> bindingGroup = bindings.items.get(j);
+				target.bind(bindingGroup.binding);
+				final Pool<Batch<S>> batches = bindingGroup.batches;
+
+				for (int k = 0; k < batches.size; ++k) {
+					final Batch<S> batch = batches.items.get(k);
+					target.draw(batch.state, batch.shaderFlags, batch.firsts, batch.counts, batch.size);
+					++calls;
+					// don't retain references past the frame
+					batch.state = null;
+				}
+
+				bindingGroup.binding = null;
+			}
+		}
+
+		drawCount = pendingDrawCount;
+		callCount = calls;
+		pendingDrawCount = 0;
+		origins.size = 0;
+	}
+
+	/** Draws gathered for the last flush. */
+	public int drawCount() {
+		return drawCount;
+	}
+
+	/** Multi-draw calls issued by the last flush. */
+	public int callCount() {
+		return callCount;
+	}
+}
@@ -16,32 +16,49 @@
 
 package grondag.canvas.terrain.render;
 
+import java.nio.IntBuffer;
+
 import com.google.common.util.concurrent.Runnables;
+import com.mojang.blaze3d.platform.GlStateManager;
 import com.mojang.blaze3d.systems.RenderSystem;
 import it.unimi.dsi.fastutil.objects.ObjectArrayList;
 import org.jetbrains.annotations.Nullable;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL14;
 
 import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.util.GlAllocationUtils;
 import net.minecraft.client.util.math.MatrixStack;
 import net.minecraft.util.math.BlockPos;
 
 import grondag.canvas.Configurator;
+import grondag.canvas.buffer.VboBuffer;
+import grondag.canvas.buffer.VertexBinding;
+import grondag.canvas.buffer.format.CanvasVertexFormats;
 import grondag.canvas.light.LightmapHdTexture;
 import grondag.canvas.material.state.RenderMaterialImpl;
+import grondag.canvas.material.state.RenderState;
 import grondag.canvas.shader.ProgramType;
 import grondag.canvas.terrain.region.BuiltRenderRegion;
 import grondag.canvas.terrain.util.TerrainModelSpace;
 import grondag.canvas.texture.DitherTexture;
 
 public class TerrainLayerRenderer {
+	private final String layerName;
 	private final String profileString;
 	private final Runnable sortTask;
 	private final boolean isTranslucent;
+	private final MultiDrawPlanner<VertexBinding, RenderState> planner;
+	private final MultiDrawTarget multiDrawTarget = new MultiDrawTarget();
+	private final int[] rangeFirsts = new int[4];
+	private final int[] rangeCounts = new int[4];
 
 	public TerrainLayerRenderer(String layerName, @Nullable Runnable translucentSortTask) {
+		this.layerName = layerName;
 		profileString = "render_" + layerName;
 		isTranslucent = translucentSortTask != null;
 		sortTask = isTranslucent ? translucentSortTask : Runnables.doNothing();
+		planner = new MultiDrawPlanner<>(isTranslucent);
 	}
 
 	public void render(final BuiltRenderRegion[] visibleRegions, final int visibleRegionCount, MatrixStack matrixStack, double x, double y, double z) {
@@ -60,6 +77,72 @@ public class TerrainLayerRenderer {
 			DitherTexture.instance().enable();
 		}
 
+		// regions need their own matrix unless batched into render cubes
+		if (Configurator.multiDrawTerrain && Configurator.batchedChunkRender) {
+			renderMultiDraw(visibleRegions, startIndex, endIndex, step, matrixStack, x, y, z);
+		} else {
+			renderEach(visibleRegions, startIndex, endIndex, step, matrixStack, x, y, z);
+		}
+
+		mc.getProfiler().pop();
+	}
+
+	/**
+	 * Gathers draws from all regions and sends each state as one multi-draw call per render cube and buffer.
+	 */
+	private void renderMultiDraw(final BuiltRenderRegion[] visibleRegions, int startIndex, int endIndex, int step, MatrixStack matrixStack, double x, double y, double z) {
+		final MultiDrawPlanner<VertexBinding, RenderState> planner = this.planner;
+
+		for (int regionIndex = startIndex; regionIndex != endIndex; regionIndex += step) {
+			final BuiltRenderRegion builtRegion = visibleRegions[regionIndex];
+
+			if (builtRegion == null) {
+				continue;
+			}
+
+			final DrawableChunk drawable = isTranslucent ? builtRegion.translucentDrawable() : builtRegion.solidDrawable();
+
+			if (!drawable.isClosed()) {
+				final ObjectArrayList<DrawableDelegate> delegates = drawable.delegates();
+
+				if (delegates != null) {
+					final BlockPos modelOrigin = builtRegion.getOrigin();
+					final long origin = TerrainModelSpace.getPackedOrigin(modelOrigin);
+					final VboBuffer vboBuffer = drawable.vboBuffer;
+					final VertexBinding binding = vboBuffer.binding();
+					final boolean compact = vboBuffer.format == CanvasVertexFormats.COMPACT_MATERIAL;
+					final int baseVertex = vboBuffer.baseVertex();
+					// camera relative to render cube origin, for face culling
+					final float cx = (float) (x - TerrainModelSpace.renderCubeOrigin(modelOrigin.getX()));
+					final float cy = (float) (y - TerrainModelSpace.renderCubeOrigin(modelOrigin.getY()));
+					final float cz = (float) (z - TerrainModelSpace.renderCubeOrigin(modelOrigin.getZ()));
+					final int limit = delegates.size();
+
+					for (int i = 0; i < limit; ++i) {
+						final DrawableDelegate d = delegates.get(i);
+						final RenderMaterialImpl mat = d.materialState();
+
+						if (mat.programType == ProgramType.MATERIAL_VERTEX_LOGIC || !mat.condition.affectBlocks || mat.condition.compute()) {
+							// shader flags only go to the shader in the compact format, don't split batches otherwise
+							final int shaderFlags = compact ? d.shaderFlags() : 0;
+							final int rangeCount = d.visibleRanges(baseVertex, cx, cy, cz, rangeFirsts, rangeCounts);
+
+							for (int r = 0; r < rangeCount; ++r) {
+								planner.add(origin, binding, mat.renderState, shaderFlags, rangeFirsts[r], rangeCounts[r]);
+							}
+						}
+					}
+				}
+			}
+		}
+
+		final MultiDrawTarget target = multiDrawTarget;
+		target.prepare(matrixStack, x, y, z);
+		planner.flush(target);
+		target.finish();
+	}
+
+	private void renderEach(final BuiltRenderRegion[] visibleRegions, int startIndex, int endIndex, int step, MatrixStack matrixStack, double x, double y, double z) {
 		long lastRelativeOrigin = -1;
 
 		//		final DrawHandler h = DrawHandlers.get(EncodingContext.TERRAIN, shaderContext.pass);
@@ -67,6 +150,8 @@ public class TerrainLayerRenderer {
 		//		h.setup();
 
 		int ox = 0, oy = 0, oz = 0;
+		// regions sharing an arena buffer share vertex state and only need to bind once
+		VertexBinding lastBinding = null;
 
 		for (int regionIndex = startIndex; regionIndex != endIndex; regionIndex += step) {
 			final BuiltRenderRegion builtRegion = visibleRegions[regionIndex];
@@ -116,7 +201,20 @@ public class TerrainLayerRenderer {
 						RenderSystem.multMatrix(matrixStack.peek().getModel());
 					}
 
-					drawable.vboBuffer.bind();
+					final VboBuffer vboBuffer = drawable.vboBuffer;
+					final VertexBinding binding = vboBuffer.binding();
+
+					if (binding != lastBinding) {
+						binding.bind();
+						lastBinding = binding;
+					}
+
+					final boolean compact = vboBuffer.format == CanvasVertexFormats.COMPACT_MATERIAL;
+					final int baseVertex = vboBuffer.baseVertex();
+					// camera relative to vertex origin, for face culling
+					final float cx = (float) (x - ox);
+					final float cy = (float) (y - oy);
+					final float cz = (float) (z - oz);
 
 					final int limit = delegates.size();
 
@@ -125,8 +223,13 @@ public class TerrainLayerRenderer {
 						final RenderMaterialImpl mat = d.materialState();
 
 						if (mat.programType == ProgramType.MATERIAL_VERTEX_LOGIC || !mat.condition.affectBlocks || mat.condition.compute()) {
-							d.materialState().renderState.enableWithOrigin(ox, oy, oz);
-							d.draw();
+							if (compact) {
+								mat.renderState.enableCompactWithOrigin(ox, oy, oz, d.shaderFlags());
+							} else {
+								mat.renderState.enableWithOrigin(ox, oy, oz);
+							}
+
+							d.draw(baseVertex, cx, cy, cz);
 						}
 					}
 
@@ -142,7 +245,91 @@ public class TerrainLayerRenderer {
 			RenderSystem.popMatrix();
 			matrixStack.pop();
 		}
+	}
 
-		mc.getProfiler().pop();
+	/** Draws and calls in the last multi-draw frame. */
+	public String debugString() {
+		return String.format("%s %d draws in %d calls", layerName, planner.drawCount(), planner.callCount());
+	}
+
+	/** Sends a multi-draw plan to GL, with one matrix per render cube. */
+	private static class MultiDrawTarget implements MultiDrawPlanner.Target<VertexBinding, RenderState> {
+		private MatrixStack matrixStack;
+		private double x, y, z;
+		private int ox, oy, oz;
+		private boolean isPushed;
+		private boolean compact;
+		private IntBuffer firsts = GlAllocationUtils.allocateByteBuffer(1024 * 4).asIntBuffer();
+		private IntBuffer counts = GlAllocationUtils.allocateByteBuffer(1024 * 4).asIntBuffer();
+
+		private void prepare(MatrixStack matrixStack, double x, double y, double z) {
+			this.matrixStack = matrixStack;
+			this.x = x;
+			this.y = y;
+			this.z = z;
+		}
+
+		@Override
+		public void setOrigin(long packedOrigin) {
+			popIfPushed();
+
+			ox = TerrainModelSpace.getPackedKeyOriginX(packedOrigin);
+			oy = TerrainModelSpace.getPackedKeyOriginY(packedOrigin);
+			oz = TerrainModelSpace.getPackedKeyOriginZ(packedOrigin);
+
+			matrixStack.push();
+			matrixStack.translate(ox - x, oy - y, oz - z);
+			RenderSystem.pushMatrix();
+			RenderSystem.loadIdentity();
+			RenderSystem.multMatrix(matrixStack.peek().getModel());
+			isPushed = true;
+		}
+
+		@Override
+		public void bind(VertexBinding binding) {
+			binding.bind();
+			compact = binding.format() == CanvasVertexFormats.COMPACT_MATERIAL;
+		}
+
+		@Override
+		public void draw(RenderState state, int shaderFlags, int[] firsts, int[] counts, int drawCount) {
+			if (compact) {
+				state.enableCompactWithOrigin(ox, oy, oz, shaderFlags);
+			} else {
+				state.enableWithOrigin(ox, oy, oz);
+			}
+
+			if (drawCount == 1) {
+				GlStateManager.drawArrays(GL11.GL_QUADS, firsts[0], counts[0]);
+				return;
+			}
+
+			if (this.firsts.capacity() < drawCount) {
+				final int capacity = Integer.highestOneBit(drawCount) << 1;
+				this.firsts = GlAllocationUtils.allocateByteBuffer(capacity * 4).asIntBuffer();
+				this.counts = GlAllocationUtils.allocateByteBuffer(capacity * 4).asIntBuffer();
+			}
+
+			final IntBuffer firstBuffer = this.firsts;
+			final IntBuffer countBuffer = this.counts;
+			firstBuffer.clear();
+			countBuffer.clear();
+			firstBuffer.put(firsts, 0, drawCount).flip();
+			countBuffer.put(counts, 0, drawCount).flip();
+			GL14.glMultiDrawArrays(GL11.GL_QUADS, firstBuffer, countBuffer);
+		}
+
+		private void finish() {
+			popIfPushed();
+			matrixStack = null;
+		}
+
+		private void popIfPushed() {
+			if (isPushed) {
+				RenderSystem.popMatrix();
+				matrixStack.pop();
+				isPushed = false;
+			}
+		}
 	}
 }
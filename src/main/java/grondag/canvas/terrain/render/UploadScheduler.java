@@ -0,0 +1,205 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.terrain.render;
+
+import java.util.Comparator;
+import java.util.Queue;
+import java.util.function.LongSupplier;
+
+import com.google.common.collect.Queues;
+import it.unimi.dsi.fastutil.objects.ObjectArrayList;
+import it.unimi.dsi.fastutil.objects.Reference2ObjectOpenHashMap;
+
+/**
+ * Collects finished region uploads from worker threads and sends them to the GPU
+ * on the render thread, nearest and visible first, until the per-frame time or
+ * byte budget is spent.  Anything left over waits for the next frame.
+ *
+ * <p>Uploads are keyed by owner (the region). A full upload replaces any upload
+ * still pending for the same owner. A partial upload (translucency resort)
+ * replaces only a pending partial upload.  Replaced uploads are discarded
+ * without ever touching the GPU.
+ *
+ * <p>Not thread-safe except for {@link #offer(PendingUpload)}.
+ */
+public class UploadScheduler {
+	public interface PendingUpload {
+		/** Identity of the region being uploaded. */
+		Object owner();
+
+		/** True if this upload replaces all drawables of the owner. False for partial updates like a resort. */
+		boolean isFull();
+
+		/** Lower values upload first. Re-read every frame. */
+		int priority();
+
+		int byteCount();
+
+		/** Sends data to the GPU. Render thread only. */
+		void upload();
+
+		/** Releases resources without uploading. Render thread only. */
+		void discard();
+	}
+
+	private static class Entry {
+		private final PendingUpload upload;
+		private final long sequence;
+		private int priority;
+
+		private Entry(PendingUpload upload, long sequence) {
+			this.upload = upload;
+			this.sequence = sequence;
+		}
+	}
+
+	private static final Comparator<Entry> ORDER = (a, b) -> {
+		final int result = Integer.compare(a.priority, b.priority);
+		return result == 0 ? Long.compare(a.sequence, b.sequence) : result;
+	};
+
+	private final Queue<PendingUpload> incoming = Queues.newConcurrentLinkedQueue();
+	private final Reference2ObjectOpenHashMap<Object, Entry> pendingFull = new Reference2ObjectOpenHashMap<>();
+	private final Reference2ObjectOpenHashMap<Object, Entry> pendingPartial = new Reference2ObjectOpenHashMap<>();
+	private final ObjectArrayList<Entry> sortList = new ObjectArrayList<>();
+	private final LongSupplier nanoClock;
+	private long sequence = 0;
+	private int lastUploadCount;
+	private int lastUploadBytes;
+	private int lastDiscardCount;
+
+	public UploadScheduler(LongSupplier nanoClock) {
+		this.nanoClock = nanoClock;
+	}
+
+	/** Thread-safe. */
+	public void offer(PendingUpload upload) {
+		incoming.offer(upload);
+	}
+
+	/**
+	 * Uploads pending work in priority order. At least one upload always runs if any
+	 * are pending so that progress is made even when a single upload exceeds the budget.
+	 *
+	 * @return true if anything was uploaded
+	 */
+	public boolean drain(long budgetNanos, long budgetBytes) {
+		final long start = nanoClock.getAsLong();
+		lastUploadCount = 0;
+		lastUploadBytes = 0;
+		lastDiscardCount = 0;
+
+		acceptIncoming();
+
+		if (pendingFull.isEmpty() && pendingPartial.isEmpty()) {
+			return false;
+		}
+
+		final ObjectArrayList<Entry> sortList = this.sortList;
+		addForSort(pendingFull);
+		addForSort(pendingPartial);
+		sortList.sort(ORDER);
+
+		final int limit = sortList.size();
+		long bytes = 0;
+
+		for (int i = 0; i < limit; ++i) {
+			final Entry entry = sortList.get(i);
+			final PendingUpload upload = entry.upload;
+			(upload.isFull() ? pendingFull : pendingPartial).remove(upload.owner());
+			upload.upload();
+			bytes += upload.byteCount();
+			++lastUploadCount;
+
+			if (bytes >= budgetBytes || nanoClock.getAsLong() - start >= budgetNanos) {
+				break;
+			}
+		}
+
+		lastUploadBytes = (int) Math.min(Integer.MAX_VALUE, bytes);
+		sortList.clear();
+		return true;
+	}
+
+	private void addForSort(Reference2ObjectOpenHashMap<Object, Entry> map) {
+		for (final Entry e : map.values()) {
+			e.priority = e.upload.priority();
+			sortList.add(e);
+		}
+	}
+
+	private void acceptIncoming() {
+		PendingUpload upload = incoming.poll();
+
+		while (upload != null) {
+			final Object owner = upload.owner();
+			final Entry entry = new Entry(upload, sequence++);
+
+			if (upload.isFull()) {
+				discard(pendingFull.put(owner, entry));
+				discard(pendingPartial.remove(owner));
+			} else {
+				discard(pendingPartial.put(owner, entry));
+			}
+
+			upload = incoming.poll();
+		}
+	}
+
+	private void discard(Entry entry) {
+		if (entry != null) {
+			entry.upload.discard();
+			++lastDiscardCount;
+		}
+	}
+
+	/** Discards everything, including uploads not yet accepted. Render thread only. */
+	public void clear() {
+		acceptIncoming();
+
+		for (final Entry e : pendingFull.values()) {
+			e.upload.discard();
+		}
+
+		for (final Entry e : pendingPartial.values()) {
+			e.upload.discard();
+		}
+
+		pendingFull.clear();
+		pendingPartial.clear();
+	}
+
+	public boolean isEmpty() {
+		return incoming.isEmpty() && pendingFull.isEmpty() && pendingPartial.isEmpty();
+	}
+
+	public int pendingCount() {
+		return pendingFull.size() + pendingPartial.size();
+	}
+
+	public int lastUploadCount() {
+		return lastUploadCount;
+	}
+
+	public int lastUploadBytes() {
+		return lastUploadBytes;
+	}
+
+	public int lastDiscardCount() {
+		return lastDiscardCount;
+	}
+}
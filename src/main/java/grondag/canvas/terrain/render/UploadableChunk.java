@@ -16,9 +16,10 @@
 
 package grondag.canvas.terrain.render;
 
+import grondag.canvas.Configurator;
 import grondag.canvas.buffer.VboBuffer;
 import grondag.canvas.buffer.encoding.VertexCollectorList;
-import grondag.canvas.buffer.format.CanvasVertexFormats;
+import grondag.canvas.buffer.format.CanvasVertexFormat;
 
 public class UploadableChunk {
 	public static final UploadableChunk EMPTY_UPLOADABLE = new UploadableChunk() {
@@ -29,15 +30,29 @@ public class UploadableChunk {
 	};
 	protected final VboBuffer vboBuffer;
 	protected final DrawableChunk drawable;
+	protected final int byteCount;
 
-	public UploadableChunk(VertexCollectorList collectorList, boolean sorted, int bytes) {
-		vboBuffer = new VboBuffer(bytes, CanvasVertexFormats.POSITION_COLOR_TEXTURE_MATERIAL_LIGHT_NORMAL);
+	public UploadableChunk(VertexCollectorList collectorList, CanvasVertexFormat format, boolean sorted, int bytes) {
+		vboBuffer = new VboBuffer(bytes, format, Configurator.terrainBufferArenas);
 		drawable = DrawableChunk.pack(collectorList, vboBuffer, sorted);
+		byteCount = bytes;
 	}
 
 	private UploadableChunk() {
 		vboBuffer = null;
 		drawable = DrawableChunk.EMPTY_DRAWABLE;
+		byteCount = 0;
+	}
+
+	public int byteCount() {
+		return byteCount;
+	}
+
+	/**
+	 * Releases buffers without uploading. For uploads that have been superseded.
+	 */
+	public void close() {
+		drawable.close();
 	}
 
 	/**
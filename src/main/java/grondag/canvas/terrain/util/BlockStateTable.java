@@ -0,0 +1,149 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.terrain.util;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockRenderType;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.LeavesBlock;
+import net.minecraft.client.MinecraftClient;
+import net.minecraft.client.render.RenderLayer;
+import net.minecraft.client.render.RenderLayers;
+import net.minecraft.client.render.block.BlockRenderManager;
+import net.minecraft.client.render.model.BakedModel;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.BlockView;
+import net.minecraft.world.EmptyBlockView;
+
+import grondag.canvas.mixinterface.BlockStateExt;
+
+/**
+ * Flat per-state lookups for the terrain build loop so that common block state
+ * queries are array reads instead of virtual calls and map lookups.
+ *
+ * <p>Rebuilt on the render thread after resource reload. Regions being built
+ * while a rebuild happens keep using the prior instance until they finish.
+ */
+public class BlockStateTable {
+	/** State has a non-empty fluid state. */
+	public static final int HAS_FLUID = 1;
+	/** Block render type is not INVISIBLE. */
+	public static final int HAS_BLOCK_MODEL = 2;
+	/** Block offset type is not NONE. */
+	public static final int HAS_OFFSET = 4;
+	/** State is an opaque full cube. Valid only if {@link #DYNAMIC_SHAPE} is not set. */
+	public static final int OPAQUE_FULL_CUBE = 8;
+	/** Block has dynamic bounds and shape-based tests must go to the state. */
+	public static final int DYNAMIC_SHAPE = 16;
+	/** Baked model wants ambient occlusion. */
+	public static final int MODEL_AO = 32;
+	/** Small cutout model without collision, omitted from reduced-detail meshes. */
+	public static final int SMALL_DETAIL = 64;
+	/** Block is leaves. */
+	public static final int LEAVES = 128;
+
+	private static volatile BlockStateTable current = new BlockStateTable(new int[0], new BakedModel[0]);
+
+	private final int[] flags;
+	private final BakedModel[] models;
+
+	private BlockStateTable(int[] flags, BakedModel[] models) {
+		this.flags = flags;
+		this.models = models;
+	}
+
+	public static BlockStateTable current() {
+		return current;
+	}
+
+	/** Call after block models are baked. Render thread only. */
+	public static void reload() {
+		final BlockRenderManager blockRenderManager = MinecraftClient.getInstance().getBlockRenderManager();
+		int size = 0;
+
+		for (final BlockState state : Block.STATE_IDS) {
+			size = Math.max(size, Block.STATE_IDS.getRawId(state) + 1);
+		}
+
+		final int[] flags = new int[size];
+		final BakedModel[] models = new BakedModel[size];
+
+		for (final BlockState state : Block.STATE_IDS) {
+			final int index = Block.STATE_IDS.getRawId(state);
+			int f = 0;
+
+			if (!state.getFluidState().isEmpty()) {
+				f |= HAS_FLUID;
+			}
+
+			if (state.getBlock() instanceof LeavesBlock) {
+				f |= LEAVES;
+			}
+
+			if (state.getBlock().getOffsetType() != Block.OffsetType.NONE) {
+				f |= HAS_OFFSET;
+			}
+
+			if (state.getBlock().hasDynamicBounds()) {
+				f |= DYNAMIC_SHAPE;
+			} else if (state.isOpaqueFullCube(EmptyBlockView.INSTANCE, BlockPos.ORIGIN)) {
+				f |= OPAQUE_FULL_CUBE;
+			}
+
+			if (state.getRenderType() != BlockRenderType.INVISIBLE) {
+				f |= HAS_BLOCK_MODEL;
+				final BakedModel model = blockRenderManager.getModel(state);
+				models[index] = model;
+
+				if (model.useAmbientOcclusion()) {
+					f |= MODEL_AO;
+				}
+
+				final RenderLayer layer = RenderLayers.getBlockLayer(state);
+
+				if ((layer == RenderLayer.getCutout() || layer == RenderLayer.getCutoutMipped()) && (f & DYNAMIC_SHAPE) == 0
+						&& state.getCollisionShape(EmptyBlockView.INSTANCE, BlockPos.ORIGIN).isEmpty()) {
+					f |= SMALL_DETAIL;
+				}
+			}
+
+			flags[index] = f;
+			((BlockStateExt) state).canvas_tableIndex(index);
+		}
+
+		current = new BlockStateTable(flags, models);
+	}
+
+	public int flags(BlockState state) {
+		return flags[((BlockStateExt) state).canvas_tableIndex()];
+	}
+
+	/** Raw state id. Stable for the life of the game session. */
+	public int index(BlockState state) {
+		return ((BlockStateExt) state).canvas_tableIndex();
+	}
+
+	/** Only valid for states with {@link #HAS_BLOCK_MODEL}. */
+	public BakedModel model(BlockState state) {
+		return models[((BlockStateExt) state).canvas_tableIndex()];
+	}
+
+	public boolean isOpaqueFullCube(BlockState state, BlockView world, BlockPos pos) {
+		final int f = flags(state);
+		return (f & DYNAMIC_SHAPE) == 0 ? (f & OPAQUE_FULL_CUBE) != 0 : state.isOpaqueFullCube(world, pos);
+	}
+}
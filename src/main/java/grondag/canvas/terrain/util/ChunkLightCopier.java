@@ -0,0 +1,140 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.terrain.util;
+
+import static grondag.canvas.terrain.util.RenderRegionAddressHelper.fastRelativeCacheIndex;
+
+import java.util.Arrays;
+
+import net.minecraft.util.math.ChunkSectionPos;
+import net.minecraft.world.LightType;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.ChunkNibbleArray;
+import net.minecraft.world.chunk.light.ChunkLightingView;
+
+/**
+ * Captures sky and block light for a render region and the one-block shell around
+ * it from the light nibble arrays of the section and its 26 neighbors.  Output is one
+ * byte per region cache index with sky light in the high nibble and block light in
+ * the low nibble, so workers can read light without touching the lighting provider.
+ *
+ * <p>Must run on the thread that owns the lighting provider - the same thread that
+ * captures block states.  Instances hold references only during {@link #copy} and
+ * are meant to be owned by a pooled region.
+ */
+public class ChunkLightCopier {
+	private static final int FILL_NONE = -1;
+
+	private final byte[][] skyBytes = new byte[27][];
+	private final byte[][] blockBytes = new byte[27][];
+	private final int[] skyFill = new int[27];
+	/** True when sky values come from bottom layer of a section above - vanilla behavior for sections without data. */
+	private final boolean[] skyFromAbove = new boolean[27];
+
+	public void copy(World world, int chunkBaseX, int chunkBaseY, int chunkBaseZ, byte[] target) {
+		final ChunkLightingView skyView = world.getLightingProvider().get(LightType.SKY);
+		final ChunkLightingView blockView = world.getLightingProvider().get(LightType.BLOCK);
+		final boolean hasSky = world.getDimension().hasSkyLight();
+
+		for (int sz = 0; sz < 3; ++sz) {
+			for (int sy = 0; sy < 3; ++sy) {
+				for (int sx = 0; sx < 3; ++sx) {
+					final int s = sx + sy * 3 + sz * 9;
+					final int cx = chunkBaseX + sx;
+					final int cy = chunkBaseY + sy;
+					final int cz = chunkBaseZ + sz;
+
+					final ChunkNibbleArray blockArray = blockView.getLightSection(ChunkSectionPos.from(cx, cy, cz));
+					blockBytes[s] = blockArray == null || blockArray.isUninitialized() ? null : blockArray.asByteArray();
+
+					if (hasSky) {
+						captureSky(skyView, s, cx, cy, cz);
+					} else {
+						skyBytes[s] = null;
+						skyFill[s] = 0;
+					}
+				}
+			}
+		}
+
+		for (int z = -1; z <= 16; ++z) {
+			final int sz = (z + 16) >> 4;
+			final int lz = (z & 0xF) << 4;
+
+			for (int y = -1; y <= 16; ++y) {
+				final int sy = (y + 16) >> 4;
+				final int ly = (y & 0xF) << 8;
+
+				for (int x = -1; x <= 16; ++x) {
+					final int s = ((x + 16) >> 4) + sy * 3 + sz * 9;
+					final int nibbleIndex = ly | lz | (x & 0xF);
+
+					final byte[] blockSource = blockBytes[s];
+					final int block = blockSource == null ? 0 : nibble(blockSource, nibbleIndex);
+
+					final int sky;
+					final byte[] skySource = skyBytes[s];
+
+					if (skySource == null) {
+						sky = skyFill[s];
+					} else {
+						sky = nibble(skySource, skyFromAbove[s] ? nibbleIndex & 0xFF : nibbleIndex);
+					}
+
+					target[fastRelativeCacheIndex(x, y, z)] = (byte) ((sky << 4) | block);
+				}
+			}
+		}
+
+		Arrays.fill(skyBytes, null);
+		Arrays.fill(blockBytes, null);
+	}
+
+	private void captureSky(ChunkLightingView skyView, int s, int cx, int cy, int cz) {
+		ChunkNibbleArray array = skyView.getLightSection(ChunkSectionPos.from(cx, cy, cz));
+		skyFromAbove[s] = false;
+
+		// sections without data take their value from the nearest section above that has it, or full sky if none
+		while (array == null && ++cy <= 16) {
+			array = skyView.getLightSection(ChunkSectionPos.from(cx, cy, cz));
+			skyFromAbove[s] = true;
+		}
+
+		if (array == null) {
+			skyBytes[s] = null;
+			skyFill[s] = 15;
+		} else if (array.isUninitialized()) {
+			skyBytes[s] = null;
+			skyFill[s] = 0;
+		} else {
+			skyBytes[s] = array.asByteArray();
+			skyFill[s] = FILL_NONE;
+		}
+	}
+
+	private static int nibble(byte[] bytes, int index) {
+		return (bytes[index >> 1] >> ((index & 1) << 2)) & 0xF;
+	}
+
+	public static int skyLight(byte packedLight) {
+		return (packedLight >> 4) & 0xF;
+	}
+
+	public static int blockLight(byte packedLight) {
+		return packedLight & 0xF;
+	}
+}
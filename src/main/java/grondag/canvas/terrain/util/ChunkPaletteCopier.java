@@ -16,21 +16,28 @@
 
 package grondag.canvas.terrain.util;
 
-import it.unimi.dsi.fastutil.ints.IntArrayList;
-import org.apache.commons.lang3.ObjectUtils;
+import java.util.Arrays;
 
+import net.minecraft.block.Block;
 import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
 import net.minecraft.util.collection.PackedIntegerArray;
 import net.minecraft.world.chunk.ChunkSection;
+import net.minecraft.world.chunk.IdListPalette;
 import net.minecraft.world.chunk.Palette;
 import net.minecraft.world.chunk.WorldChunk;
 
+import grondag.canvas.mixinterface.PackedIntegerArrayExt;
 import grondag.canvas.mixinterface.PalettedContainerExt;
 
+/**
+ * Captures section block states on the main thread with as little work as possible:
+ * the packed storage words are cloned and local palettes are copied to an array.
+ * Unpacking happens later on the worker thread in {@link PaletteCopy#copyTo(BlockState[])}.
+ */
 public class ChunkPaletteCopier {
 	private static final BlockState AIR = Blocks.AIR.getDefaultState();
-	public static final PaletteCopy AIR_COPY = i -> AIR;
+	public static final PaletteCopy AIR_COPY = new UniformCopy(AIR);
 
 	public static PaletteCopy captureCopy(WorldChunk chunk, int sectionIndex) {
 		if (chunk == null || sectionIndex < 0) {
@@ -51,7 +58,7 @@ public class ChunkPaletteCopier {
 
 		if (sec.isEmpty()) {
 			final BlockState filler = sec.getBlockState(0, 0, 0);
-			return filler == AIR ? AIR_COPY : i -> filler;
+			return filler == AIR ? AIR_COPY : new UniformCopy(filler);
 		}
 
 		return ((PalettedContainerExt) sec.getContainer()).canvas_paletteCopy();
@@ -62,41 +69,126 @@ public class ChunkPaletteCopier {
 	 */
 	public static PaletteCopy captureCopy(Palette<BlockState> palette, PackedIntegerArray data, BlockState emptyVal) {
 		if (palette == null || data == null) {
-			return emptyVal == null ? AIR_COPY : i -> emptyVal;
+			return emptyVal == null ? AIR_COPY : new UniformCopy(emptyVal);
+		}
+
+		if (emptyVal == null) {
+			emptyVal = AIR;
+		}
+
+		final long[] words = ((PackedIntegerArrayExt) data).canvas_storage();
+
+		if (isAllZero(words)) {
+			// every position references palette entry zero
+			final BlockState state = palette.getByIndex(0);
+			return new UniformCopy(state == null ? emptyVal : state);
+		}
+
+		final int elementBits = ((PackedIntegerArrayExt) data).canvas_elementBits();
+		return new PackedCopy(words.clone(), elementBits, copyPalette(palette, elementBits, emptyVal), emptyVal);
+	}
+
+	private static boolean isAllZero(long[] words) {
+		for (final long w : words) {
+			if (w != 0) {
+				return false;
+			}
 		}
 
-		return new PaletteCopyImpl(palette, data, emptyVal);
+		return true;
+	}
+
+	/**
+	 * Global palettes are immutable and resolved through {@link Block#STATE_IDS} at decode, so return null.
+	 * Local palettes have at most 256 entries and can change after capture, so copy them.
+	 */
+	private static BlockState[] copyPalette(Palette<BlockState> palette, int elementBits, BlockState emptyVal) {
+		if (palette instanceof IdListPalette) {
+			return null;
+		}
+
+		final int size = 1 << elementBits;
+		final BlockState[] result = new BlockState[size];
+
+		for (int i = 0; i < size; ++i) {
+			final BlockState state = palette.getByIndex(i);
+			result[i] = state == null ? emptyVal : state;
+		}
+
+		return result;
 	}
 
-	@FunctionalInterface
 	public interface PaletteCopy {
-		BlockState apply(int index);
+		/**
+		 * Writes all 4096 section states to target using region interior index order.
+		 */
+		void copyTo(BlockState[] target);
 
 		default void release() {
 		}
 	}
 
-	private static class PaletteCopyImpl implements PaletteCopy {
-		public final BlockState emptyVal;
-		private final IntArrayList data;
-		private final Palette<BlockState> palette;
+	private static class UniformCopy implements PaletteCopy {
+		private final BlockState state;
 
-		private PaletteCopyImpl(Palette<BlockState> palette, PackedIntegerArray data, BlockState emptyVal) {
-			assert data != null;
-			assert palette != null;
-			this.palette = palette;
-			this.data = PackedIntegerStorageHelper.claim(data);
-			this.emptyVal = emptyVal;
+		private UniformCopy(BlockState state) {
+			this.state = state;
 		}
 
 		@Override
-		public BlockState apply(int index) {
-			return ObjectUtils.defaultIfNull(palette.getByIndex(data.getInt(index)), emptyVal);
+		public void copyTo(BlockState[] target) {
+			Arrays.fill(target, 0, RenderRegionAddressHelper.INTERIOR_CACHE_SIZE, state);
+		}
+	}
+
+	private static class PackedCopy implements PaletteCopy {
+		private final long[] words;
+		private final int elementBits;
+		private final BlockState[] palette;
+		private final BlockState emptyVal;
+
+		private PackedCopy(long[] words, int elementBits, BlockState[] palette, BlockState emptyVal) {
+			this.words = words;
+			this.elementBits = elementBits;
+			this.palette = palette;
+			this.emptyVal = emptyVal;
 		}
 
 		@Override
-		public void release() {
-			PackedIntegerStorageHelper.release(data);
+		public void copyTo(BlockState[] target) {
+			final long[] words = this.words;
+			final BlockState[] palette = this.palette;
+			final int elementBits = this.elementBits;
+			final int elementsPerWord = 64 / elementBits;
+			final long mask = (1L << elementBits) - 1L;
+			final int wordLimit = words.length;
+			int i = 0;
+
+			for (int wordIndex = 0; wordIndex < wordLimit; ++wordIndex) {
+				long word = words[wordIndex];
+				final int limit = Math.min(elementsPerWord, 4096 - i);
+
+				for (int j = 0; j < limit; ++j) {
+					final int paletteIndex = (int) (word & mask);
+					word >>>= elementBits;
+
+					BlockState state;
+
+					if (palette == null) {
+						state = Block.STATE_IDS.get(paletteIndex);
+
+						if (state == null) {
+							state = emptyVal;
+						}
+					} else {
+						state = palette[paletteIndex];
+					}
+
+					// section order is y, z, x - interior order is z, y, x
+					target[(i & 0xF) | ((i >> 4) & 0xF0) | ((i << 4) & 0xF00)] = state;
+					++i;
+				}
+			}
 		}
 	}
 }
@@ -0,0 +1,215 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.terrain.util;
+
+import java.util.Arrays;
+
+/**
+ * Merges adjacent coplanar faces with identical appearance into larger rectangles.
+ *
+ * <p>Faces are added as cells on one of the 17 planes along each face direction of
+ * a 16x16x16 region. Cells hold an appearance key and only cells with equal keys are
+ * merged. Keys are opaque to the mesher - callers intern whatever makes two faces
+ * interchangeable (material, sprite, color, light) into a positive int.  Cells that
+ * are {@link #isolate isolated} are emitted as single faces, so that faces drawn over
+ * by a second quad keep the exact geometry of that quad.
+ *
+ * <p>Axes for each face, using the face ordinals of {@code net.minecraft.util.math.Direction}:
+ * DOWN and UP are planes of constant y with u = x and v = z. NORTH and SOUTH are planes
+ * of constant z with u = x and v = y. WEST and EAST are planes of constant x with u = z and v = y.
+ */
+public class GreedyMesher {
+	public static final int FACE_COUNT = 6;
+	public static final int PLANE_COUNT = 17;
+	private static final int PLANE_SIZE = 256;
+
+	@FunctionalInterface
+	public interface RectConsumer {
+		void accept(int face, int plane, int u0, int v0, int width, int height, int key);
+	}
+
+	private final int[] cells = new int[FACE_COUNT * PLANE_COUNT * PLANE_SIZE];
+	/** True for each face plane with at least one cell, so empty planes are skipped. */
+	private final boolean[] usedPlanes = new boolean[FACE_COUNT * PLANE_COUNT];
+	private final boolean[] isolated = new boolean[FACE_COUNT * PLANE_COUNT * PLANE_SIZE];
+	private final int[] work = new int[PLANE_SIZE];
+	private int cellCount = 0;
+	private boolean hasIsolated = false;
+
+	/** Index of the plane that holds the face of the block at the given position. */
+	public static int plane(int face, int x, int y, int z) {
+		switch (face) {
+			case 0: return y;
+			case 1: return y + 1;
+			case 2: return z;
+			case 3: return z + 1;
+			case 4: return x;
+			default: return x + 1;
+		}
+	}
+
+	public static int u(int face, int x, int y, int z) {
+		return face < 4 ? x : z;
+	}
+
+	public static int v(int face, int x, int y, int z) {
+		return face < 2 ? z : y;
+	}
+
+	/**
+	 * @return false if the cell is already occupied, in which case the face must be emitted directly
+	 */
+	public boolean add(int face, int plane, int u, int v, int key) {
+		assert key > 0;
+		final int planeIndex = face * PLANE_COUNT + plane;
+		final int index = planeIndex * PLANE_SIZE + (v << 4) + u;
+
+		if (cells[index] != 0) {
+			return false;
+		}
+
+		cells[index] = key;
+		usedPlanes[planeIndex] = true;
+		++cellCount;
+		return true;
+	}
+
+	/**
+	 * Takes back a face added to the cell so the caller can emit it directly.
+	 *
+	 * @return key of the removed face, or 0 if the cell was empty
+	 */
+	public int remove(int face, int plane, int u, int v) {
+		final int index = (face * PLANE_COUNT + plane) * PLANE_SIZE + (v << 4) + u;
+		final int key = cells[index];
+
+		if (key != 0) {
+			cells[index] = 0;
+			--cellCount;
+		}
+
+		return key;
+	}
+
+	/** Prevents the cell from merging with neighbors. Has no effect unless a face is also added to the cell. */
+	public void isolate(int face, int plane, int u, int v) {
+		isolated[(face * PLANE_COUNT + plane) * PLANE_SIZE + (v << 4) + u] = true;
+		hasIsolated = true;
+	}
+
+	public int cellCount() {
+		return cellCount;
+	}
+
+	/** Emits merged rectangles for all added cells and clears the mesher. */
+	public void mesh(RectConsumer consumer) {
+		if (cellCount == 0) {
+			clear();
+			return;
+		}
+
+		final int[] work = this.work;
+
+		for (int planeIndex = 0; planeIndex < FACE_COUNT * PLANE_COUNT; ++planeIndex) {
+			if (!usedPlanes[planeIndex]) {
+				continue;
+			}
+
+			final int face = planeIndex / PLANE_COUNT;
+			final int plane = planeIndex - face * PLANE_COUNT;
+			final int start = planeIndex * PLANE_SIZE;
+			System.arraycopy(cells, start, work, 0, PLANE_SIZE);
+
+			if (hasIsolated) {
+				emitIsolated(work, start, face, plane, consumer);
+			}
+
+			meshPlane(work, face, plane, consumer);
+		}
+
+		clear();
+	}
+
+	private void emitIsolated(int[] work, int start, int face, int plane, RectConsumer consumer) {
+		for (int i = 0; i < PLANE_SIZE; ++i) {
+			if (isolated[start + i] && work[i] != 0) {
+				consumer.accept(face, plane, i & 0xF, i >> 4, 1, 1, work[i]);
+				work[i] = 0;
+			}
+		}
+	}
+
+	private static void meshPlane(int[] work, int face, int plane, RectConsumer consumer) {
+		for (int v = 0; v < 16; ++v) {
+			final int row = v << 4;
+
+			for (int u = 0; u < 16; ) {
+				final int key = work[row + u];
+
+				if (key == 0) {
+					++u;
+					continue;
+				}
+
+				int width = 1;
+
+				while (u + width < 16 && work[row + u + width] == key) {
+					++width;
+				}
+
+				int height = 1;
+
+				while (v + height < 16 && isRowMatch(work, ((v + height) << 4) + u, width, key)) {
+					++height;
+				}
+
+				for (int h = 0; h < height; ++h) {
+					final int start = ((v + h) << 4) + u;
+					Arrays.fill(work, start, start + width, 0);
+				}
+
+				consumer.accept(face, plane, u, v, width, height, key);
+				u += width;
+			}
+		}
+	}
+
+	private static boolean isRowMatch(int[] work, int start, int width, int key) {
+		for (int i = 0; i < width; ++i) {
+			if (work[start + i] != key) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	public void clear() {
+		if (cellCount != 0) {
+			Arrays.fill(cells, 0);
+			cellCount = 0;
+		}
+
+		// planes can be marked used with no cells left after faces are removed
+		Arrays.fill(usedPlanes, false);
+
+		if (hasIsolated) {
+			Arrays.fill(isolated, false);
+			hasIsolated = false;
+		}
+	}
+}
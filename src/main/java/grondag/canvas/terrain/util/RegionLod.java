@@ -0,0 +1,58 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.terrain.util;
+
+/**
+ * Selects reduced-detail terrain meshes for distant regions.  Result is a set of
+ * flags, each enabled when the region is at or beyond its configured chunk distance.
+ *
+ * <p>A flag that is already on stays on until the region comes
+ * {@link #HYSTERESIS_CHUNKS} closer than the distance that enabled it, so regions
+ * near a boundary don't rebuild each time the camera crosses it.
+ */
+public final class RegionLod {
+	/** Full detail. */
+	public static final int NONE = 0;
+	/** Omit small non-colliding cutout models (plants, rails, torches) and block entities. */
+	public static final int NO_DETAIL = 1;
+	/** Render leaves as solid and omit faces between adjacent leaves. */
+	public static final int SOLID_LEAVES = 2;
+
+	public static final int HYSTERESIS_CHUNKS = 2;
+
+	private RegionLod() { }
+
+	/**
+	 * @param current flags in effect now
+	 * @param squaredChunkDistance squared distance of region from camera, in chunks
+	 * @param detailChunks distance for {@link #NO_DETAIL}, or zero to disable
+	 * @param leavesChunks distance for {@link #SOLID_LEAVES}, or zero to disable
+	 */
+	public static int select(int current, int squaredChunkDistance, int detailChunks, int leavesChunks) {
+		return flag(current, NO_DETAIL, squaredChunkDistance, detailChunks)
+			| flag(current, SOLID_LEAVES, squaredChunkDistance, leavesChunks);
+	}
+
+	private static int flag(int current, int flag, int squaredChunkDistance, int chunks) {
+		if (chunks <= 0) {
+			return NONE;
+		}
+
+		final int limit = (current & flag) == 0 ? chunks : Math.max(1, chunks - HYSTERESIS_CHUNKS);
+		return squaredChunkDistance >= limit * limit ? flag : NONE;
+	}
+}
@@ -16,11 +16,8 @@
 
 package grondag.canvas.terrain.util;
 
-import java.util.Comparator;
-import java.util.concurrent.PriorityBlockingQueue;
 import java.util.function.Consumer;
-
-import com.google.common.collect.ImmutableList;
+import java.util.function.IntSupplier;
 
 import net.minecraft.client.MinecraftClient;
 
@@ -32,34 +29,34 @@ import grondag.fermion.sc.Sc;
  * that run before non-privileged tasks that have not yet started, plus
  * distance-sorted execution.  Privilege is indicated by distance == -1
  * and privileged tasks run in order of submission.
+ *
+ * <p>Each worker has its own queue and steals from the others when idle.
+ * See {@link TerrainTaskQueue}. Tasks can be cancelled via the handle returned
+ * on submission and priorities can be refreshed in bulk via {@link #reprioritize()}.
  */
 public class TerrainExecutor {
-	private final PriorityBlockingQueue<ChunkBuildTask> queue = new PriorityBlockingQueue<>(1024, new Comparator<ChunkBuildTask>() {
-		@Override
-		public int compare(ChunkBuildTask o1, ChunkBuildTask o2) {
-			return Integer.compare(o1.priority, o2.priority);
-		}
-	});
-
 	private final int poolSize = threadCount();
 
-	private final ImmutableList<Worker> workers;
+	private final TerrainTaskQueue queue = new TerrainTaskQueue(poolSize);
 
-	public TerrainExecutor() {
-		final ImmutableList.Builder<Worker> builder = ImmutableList.builder();
+	private final Worker[] workers = new Worker[poolSize];
+
+	private final Object idleLock = new Object();
+
+	/** Modified only while holding idleLock. */
+	private volatile int idleCount = 0;
 
+	public TerrainExecutor() {
 		for (int i = 0; i < poolSize; i++) {
-			final Worker w = new Worker();
-			builder.add(w);
+			final Worker w = new Worker(i);
+			workers[i] = w;
 
 			final Thread thread = new Thread(
-					new Worker(),
+					w,
 					"Canvas Render Thread - " + i);
 			thread.setDaemon(true);
 			thread.start();
 		}
-
-		workers = builder.build();
 	}
 
 	private static int threadCount() {
@@ -72,8 +69,34 @@ public class TerrainExecutor {
 		return threadCount > 1 ? threadCount : 1;
 	}
 
-	public void execute(Consumer<TerrainRenderContext> task, int squaredDistance) {
-		queue.add(new ChunkBuildTask(task, squaredDistance));
+	/**
+	 * For tasks with a fixed priority. Use -1 for privileged execution.
+	 */
+	public TerrainExecutorTask execute(Consumer<TerrainRenderContext> task, int priority) {
+		return execute(task, () -> priority);
+	}
+
+	/**
+	 * Priority is normally squared chunk distance and will be re-read from the
+	 * supplier if {@link #reprioritize()} is called before the task runs.
+	 */
+	public TerrainExecutorTask execute(Consumer<TerrainRenderContext> task, IntSupplier priority) {
+		final TerrainExecutorTask result = queue.submit(task, priority, -1);
+
+		if (idleCount > 0) {
+			synchronized (idleLock) {
+				idleLock.notify();
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Refreshes priorities of all queued tasks and discards cancelled tasks.
+	 */
+	public void reprioritize() {
+		queue.reprioritize();
 	}
 
 	public void clear() {
@@ -89,31 +112,24 @@ public class TerrainExecutor {
 		return queue.isEmpty();
 	}
 
-	private class ChunkBuildTask {
-		final Consumer<TerrainRenderContext> task;
-
-		/**
-		 * Normally squared chunk distance. Use -1 for privileged execution
-		 */
-		final int priority;
-
-		ChunkBuildTask(Consumer<TerrainRenderContext> task, int priority) {
-			this.task = task;
-			this.priority = priority;
-		}
-	}
-
 	private class Worker implements Runnable {
+		private final int index;
 		private TerrainRenderContext context = new TerrainRenderContext();
 
+		private Worker(int index) {
+			this.index = index;
+		}
+
 		@Override
 		public void run() {
 			while (true) {
 				try {
-					final ChunkBuildTask t = queue.take();
+					final TerrainExecutorTask t = queue.poll(index);
 
-					if (t != null) {
-						t.task.accept(context);
+					if (t == null) {
+						awaitWork();
+					} else {
+						t.run(context);
 					}
 				} catch (final InterruptedException e) {
 					// NOOP
@@ -122,5 +138,21 @@ public class TerrainExecutor {
 				}
 			}
 		}
+
+		private void awaitWork() throws InterruptedException {
+			synchronized (idleLock) {
+				++idleCount;
+
+				try {
+					// submitters increment queue size before checking idle count,
+					// so either we see the new task here or they see us waiting
+					while (queue.isEmpty()) {
+						idleLock.wait();
+					}
+				} finally {
+					--idleCount;
+				}
+			}
+		}
 	}
 }
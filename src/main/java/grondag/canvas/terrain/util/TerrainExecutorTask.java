@@ -0,0 +1,75 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.terrain.util;
+
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+import grondag.canvas.apiimpl.rendercontext.TerrainRenderContext;
+
+/**
+ * Handle for a single submission to {@link TerrainExecutor}. Also serves
+ * as the cancellation token for that submission.
+ *
+ * <p>Priority is pulled from the supplier at submission and again whenever
+ * the executor is re-prioritized, so tasks for regions the camera has moved
+ * away from drift to the back of the queue instead of running in the order
+ * they were scheduled.
+ */
+public final class TerrainExecutorTask {
+	private final Consumer<TerrainRenderContext> action;
+	private final IntSupplier prioritySource;
+	private volatile boolean isCancelled = false;
+
+	/** Cached priority - lower runs first. Guarded by the owning queue. */
+	int priority;
+
+	/** Submission order, used to break priority ties. */
+	long sequence;
+
+	TerrainExecutorTask(Consumer<TerrainRenderContext> action, IntSupplier prioritySource) {
+		this.action = action;
+		this.prioritySource = prioritySource;
+		priority = prioritySource.getAsInt();
+	}
+
+	/**
+	 * Prevents the task from running if it has not already started.
+	 * Has no effect on a task that is running or complete.
+	 */
+	public void cancel() {
+		isCancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return isCancelled;
+	}
+
+	void refreshPriority() {
+		priority = prioritySource.getAsInt();
+	}
+
+	public void run(TerrainRenderContext context) {
+		if (!isCancelled) {
+			action.accept(context);
+		}
+	}
+
+	static boolean isBefore(TerrainExecutorTask a, TerrainExecutorTask b) {
+		return a.priority < b.priority || (a.priority == b.priority && a.sequence < b.sequence);
+	}
+}
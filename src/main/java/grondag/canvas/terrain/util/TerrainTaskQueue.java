@@ -0,0 +1,270 @@
+/*
+ *  Copyright 2019, 2020 grondag
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ *  use this file except in compliance with the License.  You may obtain a copy
+ *  of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *  WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ *  License for the specific language governing permissions and limitations under
+ *  the License.
+ */
+
+package grondag.canvas.terrain.util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+
+import grondag.canvas.apiimpl.rendercontext.TerrainRenderContext;
+
+/**
+ * Scheduling core of {@link TerrainExecutor}, kept free of threads so
+ * it can be driven deterministically.
+ *
+ * <p>Each worker owns a priority heap with its own lock. Workers take the
+ * best task from their own heap and only when it is empty try to steal the
+ * best task from another heap. Steal attempts never block - a contended heap
+ * is skipped - so the only lock a worker ever waits on is its own.
+ *
+ * <p>Ordering is exact within a heap and approximate across heaps, which is fine
+ * for terrain: the goal is that near regions generally build before far ones.
+ */
+public class TerrainTaskQueue {
+	private final TaskHeap[] heaps;
+	private final AtomicInteger size = new AtomicInteger();
+	private final AtomicLong sequence = new AtomicLong();
+	private final AtomicInteger nextHeap = new AtomicInteger();
+
+	public TerrainTaskQueue(int workerCount) {
+		heaps = new TaskHeap[workerCount];
+
+		for (int i = 0; i < workerCount; ++i) {
+			heaps[i] = new TaskHeap();
+		}
+	}
+
+	public int workerCount() {
+		return heaps.length;
+	}
+
+	/**
+	 * Adds a task to the heap of the given worker, or distributes round-robin
+	 * if workerIndex is -1.
+	 */
+	public TerrainExecutorTask submit(Consumer<TerrainRenderContext> action, IntSupplier prioritySource, int workerIndex) {
+		final TerrainExecutorTask task = new TerrainExecutorTask(action, prioritySource);
+		task.sequence = sequence.getAndIncrement();
+
+		if (workerIndex == -1) {
+			workerIndex = (nextHeap.getAndIncrement() & 0x7FFFFFFF) % heaps.length;
+		}
+
+		// count first so that size is never less than heap contents
+		size.incrementAndGet();
+		heaps[workerIndex].add(task);
+		return task;
+	}
+
+	/**
+	 * Removes and returns the best task from the worker's own heap, or failing that
+	 * a task stolen from another worker. Cancelled tasks encountered along the way
+	 * are discarded. Returns null if nothing is available.
+	 */
+	public TerrainExecutorTask poll(int workerIndex) {
+		if (size.get() == 0) {
+			return null;
+		}
+
+		TerrainExecutorTask result = heaps[workerIndex].take(true);
+
+		if (result == null) {
+			final int limit = heaps.length;
+
+			for (int i = 1; i < limit; ++i) {
+				result = heaps[(workerIndex + i) % limit].take(false);
+
+				if (result != null) {
+					break;
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Refreshes the priority of every queued task and drops any that have been cancelled.
+	 * Call when the camera moves far enough that prior priorities are stale.
+	 */
+	public void reprioritize() {
+		for (final TaskHeap heap : heaps) {
+			heap.reprioritize();
+		}
+	}
+
+	public void clear() {
+		for (final TaskHeap heap : heaps) {
+			heap.clear();
+		}
+	}
+
+	/**
+	 * Includes cancelled tasks that have not yet been discarded.
+	 */
+	public int size() {
+		return size.get();
+	}
+
+	public boolean isEmpty() {
+		return size.get() == 0;
+	}
+
+	private class TaskHeap {
+		private final ReentrantLock lock = new ReentrantLock();
+		private TerrainExecutorTask[] tasks = new TerrainExecutorTask[64];
+		private int count = 0;
+
+		void add(TerrainExecutorTask task) {
+			lock.lock();
+
+			try {
+				if (count == tasks.length) {
+					tasks = Arrays.copyOf(tasks, count * 2);
+				}
+
+				siftUp(count++, task);
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		TerrainExecutorTask take(boolean isOwner) {
+			if (isOwner) {
+				lock.lock();
+			} else if (!lock.tryLock()) {
+				return null;
+			}
+
+			try {
+				while (count > 0) {
+					final TerrainExecutorTask result = removeFirst();
+					size.decrementAndGet();
+
+					if (!result.isCancelled()) {
+						return result;
+					}
+				}
+
+				return null;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void reprioritize() {
+			lock.lock();
+
+			try {
+				final TerrainExecutorTask[] tasks = this.tasks;
+				final int oldCount = count;
+				int newCount = 0;
+
+				for (int i = 0; i < oldCount; ++i) {
+					final TerrainExecutorTask t = tasks[i];
+
+					if (!t.isCancelled()) {
+						t.refreshPriority();
+						tasks[newCount++] = t;
+					}
+				}
+
+				Arrays.fill(tasks, newCount, oldCount, null);
+				count = newCount;
+				size.addAndGet(newCount - oldCount);
+
+				for (int i = (newCount >> 1) - 1; i >= 0; --i) {
+					siftDown(i, tasks[i]);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		void clear() {
+			lock.lock();
+
+			try {
+				Arrays.fill(tasks, 0, count, null);
+				size.addAndGet(-count);
+				count = 0;
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		private TerrainExecutorTask removeFirst() {
+			final TerrainExecutorTask[] tasks = this.tasks;
+			final TerrainExecutorTask result = tasks[0];
+			final int last = --count;
+			final TerrainExecutorTask moved = tasks[last];
+			tasks[last] = null;
+
+			if (last > 0) {
+				siftDown(0, moved);
+			}
+
+			return result;
+		}
+
+		private void siftUp(int index, TerrainExecutorTask task) {
+			final TerrainExecutorTask[] tasks = this.tasks;
+
+			while (index > 0) {
+				final int parent = (index - 1) >> 1;
+				final TerrainExecutorTask p = tasks[parent];
+
+				if (!TerrainExecutorTask.isBefore(task, p)) {
+					break;
+				}
+
+				tasks[index] = p;
+				index = parent;
+			}
+
+			tasks[index] = task;
+		}
+
+		private void siftDown(int index, TerrainExecutorTask task) {
+			final TerrainExecutorTask[] tasks = this.tasks;
+			final int half = count >> 1;
+
+			while (index < half) {
+				int child = (index << 1) + 1;
+				TerrainExecutorTask c = tasks[child];
+				final int right = child + 1;
+
+				if (right < count && TerrainExecutorTask.isBefore(tasks[right], c)) {
+					child = right;
+					c = tasks[child];
+				}
+
+				if (!TerrainExecutorTask.isBefore(c, task)) {
+					break;
+				}
+
+				tasks[index] = c;
+				index = child;
+			}
+
+			tasks[index] = task;
+		}
+	}
+}
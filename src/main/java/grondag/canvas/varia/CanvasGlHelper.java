@@ -21,11 +21,13 @@ import java.nio.IntBuffer;
 import com.mojang.blaze3d.platform.GLX;
 import com.mojang.blaze3d.platform.GlStateManager;
 import org.apache.logging.log4j.Logger;
+import org.lwjgl.opengl.ARBCopyBuffer;
 import org.lwjgl.opengl.ARBVertexArrayObject;
 import org.lwjgl.opengl.GL;
 import org.lwjgl.opengl.GL20;
 import org.lwjgl.opengl.GL21;
 import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
 import org.lwjgl.opengl.GLCapabilities;
 
 import net.minecraft.client.MinecraftClient;
@@ -37,6 +39,8 @@ public class CanvasGlHelper {
 	static boolean useVboArb;
 	private static boolean vaoEnabled = false;
 	private static boolean useVaoArb = false;
+	private static boolean copyBufferEnabled = false;
+	private static boolean useCopyBufferArb = false;
 	private static int attributeEnabledCount = 0;
 
 	public static void init() {
@@ -48,6 +52,8 @@ public class CanvasGlHelper {
 		useVboArb = !caps.OpenGL15 && caps.GL_ARB_vertex_buffer_object;
 		vaoEnabled = caps.GL_ARB_vertex_array_object || caps.OpenGL30;
 		useVaoArb = !caps.OpenGL30 && caps.GL_ARB_vertex_array_object;
+		copyBufferEnabled = caps.GL_ARB_copy_buffer || caps.OpenGL31;
+		useCopyBufferArb = !caps.OpenGL31 && caps.GL_ARB_copy_buffer;
 
 		if (Configurator.logMachineInfo) {
 			logMachineInfo(caps);
@@ -64,10 +70,11 @@ public class CanvasGlHelper {
 		log.info(String.format(" GPU: %s  %s", GLX._getCapsString(), GLX._getLWJGLVersion()));
 		log.info(String.format(" OpenGL: %s", GLX.getOpenGLVersionString()));
 		log.info(String.format(
-				" VboArb: %s  VaoEnabled: %s  VaoArb: %s",
+				" VboArb: %s  VaoEnabled: %s  VaoArb: %s  CopyBuffer: %s",
 					useVboArb ? "Y" : "N",
 					vaoEnabled ? "Y" : "N",
-					useVaoArb ? "Y" : "N"));
+					useVaoArb ? "Y" : "N",
+					copyBufferEnabled ? "Y" : "N"));
 		log.info(" (This message can be disabled by configuring logMachineInfo = false.)");
 		log.info("========================================================================");
 	}
@@ -156,6 +163,22 @@ public class CanvasGlHelper {
 		}
 	}
 
+	public static boolean isCopyBufferEnabled() {
+		return copyBufferEnabled;
+	}
+
+	/**
+	 * Copies between the buffers bound to {@link GL31#GL_COPY_READ_BUFFER} and {@link GL31#GL_COPY_WRITE_BUFFER}.
+	 * Check {@link #isCopyBufferEnabled()} first.
+	 */
+	public static void glCopyBufferSubData(long readOffset, long writeOffset, long size) {
+		if (useCopyBufferArb) {
+			ARBCopyBuffer.glCopyBufferSubData(GL31.GL_COPY_READ_BUFFER, GL31.GL_COPY_WRITE_BUFFER, readOffset, writeOffset, size);
+		} else {
+			GL31.glCopyBufferSubData(GL31.GL_COPY_READ_BUFFER, GL31.GL_COPY_WRITE_BUFFER, readOffset, writeOffset, size);
+		}
+	}
+
 	public static boolean checkError() {
 		final int error = GlStateManager.getError();
 
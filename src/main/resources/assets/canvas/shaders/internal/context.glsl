@@ -21,6 +21,9 @@
 
 //#define USE_FLAT_VARYING
 
+// define if terrain quads may be merged and repeat their sprite
+//#define GREEDY_MESHING
+
 #define TARGET_BASECOLOR 0
 #define TARGET_EMISSIVE -1
 
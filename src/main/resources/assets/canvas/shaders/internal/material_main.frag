@@ -82,6 +82,29 @@ vec4 light(frx_FragmentData fragData) {
 	return result;
 }
 
+#ifdef GREEDY_MESHING
+#if __VERSION__ < 130
+#define _cv_textureGrad texture2DGrad
+#else
+#define _cv_textureGrad textureGrad
+#endif
+
+vec4 _cv_spriteColor() {
+	if (_cvv_repeatBounds.z == 0.0) {
+		return texture2D(frxs_spriteAltas, _cvv_texcoord, _cv_getFlag(_CV_FLAG_UNMIPPED) * -4.0);
+	}
+
+	// wrap within the sprite, but take gradients from unwrapped coordinates so seams don't select a smaller mip
+	vec2 unwrapped = _cvv_repeatUV * _cvv_repeatBounds.zw;
+	float gradScale = 1.0 - _cv_getFlag(_CV_FLAG_UNMIPPED);
+	return _cv_textureGrad(frxs_spriteAltas, _cvv_repeatBounds.xy + fract(_cvv_repeatUV) * _cvv_repeatBounds.zw, dFdx(unwrapped) * gradScale, dFdy(unwrapped) * gradScale);
+}
+#else
+vec4 _cv_spriteColor() {
+	return texture2D(frxs_spriteAltas, _cvv_texcoord, _cv_getFlag(_CV_FLAG_UNMIPPED) * -4.0);
+}
+#endif
+
 void main() {
 #ifndef PROGRAM_BY_UNIFORM
 	if (_cv_programDiscard()) {
@@ -90,7 +113,7 @@ void main() {
 #endif
 
 	frx_FragmentData fragData = frx_FragmentData (
-		texture2D(frxs_spriteAltas, _cvv_texcoord, _cv_getFlag(_CV_FLAG_UNMIPPED) * -4.0),
+		_cv_spriteColor(),
 		_cvv_color,
 		frx_matEmissive() ? 1.0 : 0.0,
 		!frx_matDisableDiffuse(),
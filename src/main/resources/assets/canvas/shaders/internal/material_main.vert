@@ -23,23 +23,42 @@ void _cv_endVertex(inout frx_VertexData data, in int cv_programId) {
 }
 
 void main() {
-	frx_VertexData data = frx_VertexData(
-	gl_Vertex,
-	in_uv,
-	in_color,
-	(in_normal_flags.xyz - 127.0) / 127.0,
-	in_lightmap.rg * 0.00390625 + 0.03125
-	);
-
-	// Adding +0.5 prevents striping or other strangeness in flag-dependent rendering
-	// due to FP error on some cards/drivers.  Also made varying attribute invariant (rolls eyes at OpenGL)
-	_cvv_flags = uint(in_normal_flags.w + 0.5);
+	frx_VertexData data;
+
+	if (_cvu_compact_vertex.x == 1) {
+		data = frx_VertexData(
+		vec4(_cv_compactPosition(gl_Vertex.xyz), 1.0),
+		in_uv,
+		in_color,
+		_cv_compactNormal(gl_Vertex.w),
+		in_lightmap.rg * 0.00390625 + 0.03125
+		);
+
+		_cvv_flags = uint(_cvu_compact_vertex.y);
+	} else {
+		data = frx_VertexData(
+		gl_Vertex,
+		in_uv,
+		in_color,
+		(in_normal_flags.xyz - 127.0) / 127.0,
+		in_lightmap.rg * 0.00390625 + 0.03125
+		);
+
+		// Adding +0.5 prevents striping or other strangeness in flag-dependent rendering
+		// due to FP error on some cards/drivers.  Also made varying attribute invariant (rolls eyes at OpenGL)
+		_cvv_flags = uint(in_normal_flags.w + 0.5);
+	}
 
 	_cv_setupProgram();
 
 	int cv_programId = _cv_vertexProgramId();
 	_cv_startVertex(data, cv_programId);
 
+#ifdef GREEDY_MESHING
+	_cvv_repeatUV = vec2(0.0, 0.0);
+	_cvv_repeatBounds = vec4(0.0, 0.0, 0.0, 0.0);
+#endif
+
 	if (_cvu_atlas[_CV_SPRITE_INFO_TEXTURE_SIZE] != 0.0) {
 		float spriteIndex = in_material.x;
 		// for sprite atlas textures, convert from normalized (0-1) to interpolated coordinates
@@ -54,6 +73,16 @@ void main() {
 		spriteBounds -= fract(spriteBounds);
 		spriteBounds /= vec4(atlasWidth, atlasHeight, atlasWidth, atlasHeight);
 
+#ifdef GREEDY_MESHING
+		// merged quads carry u and v repeat counts, less one, in the two nibbles of lightmap alpha
+		float repeat = floor(in_lightmap.a + 0.5);
+
+		if (repeat > 0.0) {
+			_cvv_repeatUV = data.spriteUV * vec2(floor(repeat / 16.0) + 1.0, mod(repeat, 16.0) + 1.0);
+			_cvv_repeatBounds = spriteBounds;
+		}
+#endif
+
 		data.spriteUV = spriteBounds.xy + data.spriteUV * spriteBounds.zw;
 	}
 
@@ -18,3 +18,9 @@ varying vec2 _cvv_texcoord;
 varying vec2 _cvv_lightcoord;
 varying vec3 _cvv_normal;
 varying vec3 _cvv_worldcoord;
+
+#ifdef GREEDY_MESHING
+// sprite coordinates scaled by repeat count and atlas bounds of the repeated sprite - bounds are zero if not repeated
+varying vec2 _cvv_repeatUV;
+flat varying vec4 _cvv_repeatBounds;
+#endif
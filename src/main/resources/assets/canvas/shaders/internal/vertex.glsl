@@ -18,6 +18,31 @@ attribute vec4 in_normal_flags;
 
 uniform float[4] _cvu_atlas;
 
+// x is 1 for terrain buffers in the compact vertex format, y holds the shader flags it leaves out
+uniform ivec2 _cvu_compact_vertex;
+
+// must match CompactVertexEncoder
+#define _CV_COMPACT_POSITION_SCALE 0.0078125
+#define _CV_COMPACT_POSITION_OFFSET 128.0
+
+vec3 _cv_compactPosition(vec3 p) {
+	return p * _CV_COMPACT_POSITION_SCALE + _CV_COMPACT_POSITION_OFFSET;
+}
+
+// octahedral normal in two unsigned bytes, read as one signed short
+vec3 _cv_compactNormal(float octNormal) {
+	float oct = octNormal < 0.0 ? octNormal + 65536.0 : octNormal;
+	float v = floor(oct / 256.0);
+	vec2 e = (vec2(oct - v * 256.0, v) - 127.0) / 127.0;
+	vec3 n = vec3(e, 1.0 - abs(e.x) - abs(e.y));
+
+	if (n.z < 0.0) {
+		n.xy = (1.0 - abs(n.yx)) * vec2(e.x >= 0.0 ? 1.0 : -1.0, e.y >= 0.0 ? 1.0 : -1.0);
+	}
+
+	return normalize(n);
+}
+
 vec2 _cv_textureCoord(vec2 coordIn, int matrixIndex) {
 	vec4 temp = gl_TextureMatrix[matrixIndex] * coordIn.xyxy;
 	return temp.xy;
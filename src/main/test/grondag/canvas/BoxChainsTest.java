@@ -0,0 +1,42 @@
+package grondag.canvas;
+
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.terrain.occlusion.geometry.BoxChains;
+import grondag.canvas.terrain.occlusion.geometry.FaceConnectivity;
+import grondag.canvas.terrain.occlusion.geometry.PackedBox;
+
+class BoxChainsTest {
+	@Test
+	void test() {
+		final int wall = PackedBox.pack(0, 0, 4, 16, 10, 6, PackedBox.RANGE_EXTREME);
+		final int nextWall = PackedBox.pack(0, 0, 4, 9, 10, 6, PackedBox.RANGE_NEAR);
+
+		// range doesn't matter, extent on the other axes does
+		assert BoxChains.continues(wall, nextWall, BoxChains.AXIS_X);
+		assert !BoxChains.continues(nextWall, wall, BoxChains.AXIS_X);
+		assert !BoxChains.continues(wall, PackedBox.pack(0, 0, 4, 16, 11, 6, PackedBox.RANGE_EXTREME), BoxChains.AXIS_X);
+		assert !BoxChains.continues(wall, PackedBox.pack(0, 0, 3, 16, 10, 6, PackedBox.RANGE_EXTREME), BoxChains.AXIS_X);
+
+		// doesn't reach the faces on the other axes
+		assert !BoxChains.continues(wall, wall, BoxChains.AXIS_Y);
+		assert !BoxChains.continues(wall, wall, BoxChains.AXIS_Z);
+
+		assert BoxChains.continues(PackedBox.FULL_BOX, PackedBox.FULL_BOX, BoxChains.AXIS_X);
+		assert BoxChains.continues(PackedBox.FULL_BOX, PackedBox.FULL_BOX, BoxChains.AXIS_Y);
+		assert BoxChains.continues(PackedBox.FULL_BOX, PackedBox.FULL_BOX, BoxChains.AXIS_Z);
+
+		final int floor = PackedBox.pack(0, 0, 0, 16, 2, 16, PackedBox.RANGE_EXTREME);
+		assert BoxChains.continues(floor, floor, BoxChains.AXIS_Z);
+		assert !BoxChains.continues(floor, floor, BoxChains.AXIS_Y);
+
+		final int[] data = {PackedBox.FULL_BOX, FaceConnectivity.ALL, floor, nextWall, wall};
+		assert BoxChains.findNext(wall, BoxChains.AXIS_X, data) == 3;
+		assert BoxChains.findNext(nextWall, BoxChains.AXIS_X, data) == -1;
+		assert BoxChains.findPrevious(nextWall, BoxChains.AXIS_X, data) == 4;
+		assert BoxChains.findPrevious(floor, BoxChains.AXIS_X, data) == 2;
+		// region bounds are not a box
+		assert BoxChains.findPrevious(PackedBox.FULL_BOX, BoxChains.AXIS_Y, data) == -1;
+		assert BoxChains.findNext(wall, BoxChains.AXIS_X, new int[] {PackedBox.EMPTY_BOX, FaceConnectivity.ALL}) == -1;
+	}
+}
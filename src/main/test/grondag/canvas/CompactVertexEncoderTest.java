@@ -0,0 +1,168 @@
+package grondag.canvas;
+
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.buffer.encoding.CompactVertexEncoder;
+import grondag.canvas.buffer.format.CanvasVertexFormats;
+
+class CompactVertexEncoderTest {
+	@Test
+	void position() {
+		final Random rand = new Random(42);
+		final float step = 1f / CompactVertexEncoder.POSITION_SCALE;
+
+		// model coordinates on the 1/16 pixel grid are exact
+		for (int i = -16 * 16; i <= 272 * 16; ++i) {
+			final float coord = i / 16f;
+			assert CompactVertexEncoder.unpackPosition(CompactVertexEncoder.packPosition(coord)) == coord;
+		}
+
+		// anything else within half a step, anywhere in a render cube and its margin
+		for (int i = 0; i < 100000; ++i) {
+			final float coord = -64 + rand.nextFloat() * 384;
+			final float error = Math.abs(CompactVertexEncoder.unpackPosition(CompactVertexEncoder.packPosition(coord)) - coord);
+			assert error <= step * 0.5f + 1e-4f : coord;
+		}
+
+		// out of range clamps to the limits
+		assert CompactVertexEncoder.unpackPosition(CompactVertexEncoder.packPosition(10000)) == CompactVertexEncoder.MAX_POSITION;
+		assert CompactVertexEncoder.unpackPosition(CompactVertexEncoder.packPosition(-10000)) == CompactVertexEncoder.MIN_POSITION;
+		assert CompactVertexEncoder.MIN_POSITION < -64 && CompactVertexEncoder.MAX_POSITION > 320;
+	}
+
+	@Test
+	void normal() {
+		final float[] n = new float[3];
+
+		// face normals are exact
+		final float[][] faces = {{1, 0, 0}, {-1, 0, 0}, {0, 1, 0}, {0, -1, 0}, {0, 0, 1}, {0, 0, -1}};
+
+		for (final float[] f : faces) {
+			CompactVertexEncoder.unpackNormal(CompactVertexEncoder.packNormal(packNormal(f[0], f[1], f[2])), n);
+			assert n[0] == f[0] && n[1] == f[1] && n[2] == f[2];
+		}
+
+		// any other normal within about a degree of the packed material normal
+		final Random rand = new Random(42);
+		final float[] expected = new float[3];
+		double maxError = 0;
+
+		for (int i = 0; i < 100000; ++i) {
+			final double theta = rand.nextDouble() * Math.PI * 2;
+			final double z = rand.nextDouble() * 2 - 1;
+			final double r = Math.sqrt(1 - z * z);
+			final int packed = packNormal((float) (r * Math.cos(theta)), (float) (r * Math.sin(theta)), (float) z);
+
+			expected[0] = ((packed & 0xFF) - 127f) / 127f;
+			expected[1] = (((packed >> 8) & 0xFF) - 127f) / 127f;
+			expected[2] = (((packed >> 16) & 0xFF) - 127f) / 127f;
+			final float len = (float) Math.sqrt(expected[0] * expected[0] + expected[1] * expected[1] + expected[2] * expected[2]);
+
+			CompactVertexEncoder.unpackNormal(CompactVertexEncoder.packNormal(packed), n);
+			final double dot = (n[0] * expected[0] + n[1] * expected[1] + n[2] * expected[2]) / len;
+			maxError = Math.max(maxError, Math.toDegrees(Math.acos(Math.min(1, dot))));
+		}
+
+		assert maxError < 1.0 : maxError;
+	}
+
+	@Test
+	void vertex() {
+		final int[] source = new int[8];
+		source[0] = Float.floatToRawIntBits(1.5f);
+		source[1] = Float.floatToRawIntBits(255.25f);
+		source[2] = Float.floatToRawIntBits(-0.0625f);
+		source[3] = 0x80FF7F01;
+		source[4] = 0xFFFF0000;
+		source[5] = 0x00120345;
+		source[6] = 0xA1F0E0;
+		// shader flags in high byte
+		source[7] = packNormal(0, 1, 0) | (0x5A << 24);
+
+		final int[] target = new int[CompactVertexEncoder.VERTEX_STRIDE + 2];
+		CompactVertexEncoder.encodeVertex(source, 0, target, 1);
+
+		assert target[0] == 0 && target[7] == 0;
+		assert CompactVertexEncoder.unpackPosition(target[1]) == 1.5f;
+		assert CompactVertexEncoder.unpackPosition(target[1] >> 16) == 255.25f;
+		assert CompactVertexEncoder.unpackPosition(target[2]) == -0.0625f;
+
+		final float[] n = CompactVertexEncoder.unpackNormal(target[2] >>> 16, new float[3]);
+		assert n[0] == 0 && n[1] == 1 && n[2] == 0;
+
+		for (int i = 3; i < 7; ++i) {
+			assert target[i] == source[i];
+		}
+	}
+
+	@Test
+	void mixedFlags() {
+		// same bits as flags.glsl
+		final int cutout = 1 << 3;
+		final int unmipped = 1 << 4;
+		// cutout and solid quads in one collector, as with leaves and stone in the same region
+		final int[] quadFlags = {0, 0, cutout, 0, cutout | unmipped, cutout};
+		final int quadStride = CanvasVertexFormats.MATERIAL_QUAD_STRIDE;
+		final int vertexStride = CanvasVertexFormats.MATERIAL_VERTEX_STRIDE;
+		final int limit = quadFlags.length * quadStride;
+		final int[] source = new int[limit];
+
+		for (int q = 0; q < quadFlags.length; ++q) {
+			for (int v = 0; v < 4; ++v) {
+				final int i = q * quadStride + v * vertexStride;
+				source[i] = Float.floatToRawIntBits(v);
+				source[i + 1] = Float.floatToRawIntBits(q);
+				source[i + 2] = Float.floatToRawIntBits(8);
+				// color identifies the quad
+				source[i + CanvasVertexFormats.MATERIAL_COLOR_INDEX] = q;
+				source[i + CanvasVertexFormats.MATERIAL_NORMAL_INDEX] = packNormal(0, 0, 1) | (quadFlags[q] << 24);
+			}
+		}
+
+		final int[] flags = new int[CompactVertexEncoder.SHADER_FLAG_VALUES];
+		final int[] vertexCounts = new int[CompactVertexEncoder.SHADER_FLAG_VALUES];
+		assert CompactVertexEncoder.shaderFlagSets(source, limit, flags, vertexCounts) == 3;
+		assert flags[0] == 0 && flags[1] == cutout && flags[2] == (cutout | unmipped);
+		assert vertexCounts[0] == 12 && vertexCounts[1] == 8 && vertexCounts[2] == 4;
+
+		// each set gets only its own quads, in order, and every quad is written once
+		final int[][] expectedQuads = {{0, 1, 3}, {2, 5}, {4}};
+		final int[] work = new int[CanvasVertexFormats.COMPACT_QUAD_STRIDE];
+		final IntBuffer target = IntBuffer.allocate(CanvasVertexFormats.COMPACT_QUAD_STRIDE * quadFlags.length);
+
+		for (int f = 0; f < 3; ++f) {
+			final int start = target.position();
+			CompactVertexEncoder.encodeQuads(source, 0, limit, flags[f], work, target);
+			assert target.position() - start == vertexCounts[f] * CompactVertexEncoder.VERTEX_STRIDE;
+
+			for (int k = 0; k < expectedQuads[f].length; ++k) {
+				for (int v = 0; v < 4; ++v) {
+					final int i = start + (k * 4 + v) * CompactVertexEncoder.VERTEX_STRIDE;
+					assert target.get(i + 2) == expectedQuads[f][k];
+					assert CompactVertexEncoder.unpackPosition(target.get(i) >> 16) == expectedQuads[f][k];
+				}
+			}
+		}
+
+		assert !target.hasRemaining();
+
+		// sorted quads are split into runs that keep their order
+		final int[] runEnds = {2, 3, 4, 5, 6};
+		int start = 0;
+
+		for (final int runEnd : runEnds) {
+			final int end = CompactVertexEncoder.shaderFlagRunEnd(source, start, limit);
+			assert end == runEnd * quadStride;
+			assert CompactVertexEncoder.shaderFlags(source, start) == quadFlags[runEnd - 1];
+			start = end;
+		}
+	}
+
+	/** Same as NormalHelper.packNormal. */
+	static int packNormal(float x, float y, float z) {
+		return ((int) ((x * 127) + 127) & 255) | (((int) ((y * 127) + 127) & 255) << 8) | (((int) ((z * 127) + 127) & 255) << 16);
+	}
+}
@@ -0,0 +1,29 @@
+package grondag.canvas;
+
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.render.EntityVisibility;
+
+class EntityVisibilityTest {
+	@Test
+	void test() {
+		final EntityVisibility cache = new EntityVisibility();
+
+		// new cache never matches
+		assert !cache.matches(0, 0, 0, 0, 0, 0, 0, 1);
+
+		assert cache.set(1, 2, 3, 4, 5, 6, 7, 8, true);
+		assert cache.matches(1, 2, 3, 4, 5, 6, 7, 8);
+		assert cache.result();
+
+		// any change to the box or either version is a miss
+		assert !cache.matches(1.5, 2, 3, 4, 5, 6, 7, 8);
+		assert !cache.matches(1, 2, 3, 4, 5, 6.5, 7, 8);
+		assert !cache.matches(1, 2, 3, 4, 5, 6, 9, 8);
+		assert !cache.matches(1, 2, 3, 4, 5, 6, 7, 9);
+
+		assert !cache.set(1, 2, 3, 4, 5, 6, 7, 9, false);
+		assert cache.matches(1, 2, 3, 4, 5, 6, 7, 9);
+		assert !cache.result();
+	}
+}
@@ -0,0 +1,221 @@
+package grondag.canvas;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.buffer.encoding.FaceBuckets;
+
+class FaceBucketsTest {
+	static final int STRIDE = 8;
+
+	/** Unit cube faces in vanilla baked quad winding, by face index. */
+	static final float[][][] FACES = {
+		{{0, 0, 1}, {0, 0, 0}, {1, 0, 0}, {1, 0, 1}},
+		{{0, 1, 0}, {0, 1, 1}, {1, 1, 1}, {1, 1, 0}},
+		{{1, 1, 0}, {1, 0, 0}, {0, 0, 0}, {0, 1, 0}},
+		{{0, 1, 1}, {0, 0, 1}, {1, 0, 1}, {1, 1, 1}},
+		{{0, 1, 0}, {0, 0, 0}, {0, 0, 1}, {0, 1, 1}},
+		{{1, 1, 1}, {1, 0, 1}, {1, 0, 0}, {1, 1, 0}},
+	};
+
+	static int[] quad(float[][] vertices, float dx, float dy, float dz, boolean reverse) {
+		final int[] data = new int[STRIDE * 4];
+
+		for (int v = 0; v < 4; ++v) {
+			final float[] p = vertices[reverse ? 3 - v : v];
+			data[v * STRIDE] = Float.floatToRawIntBits(p[0] + dx);
+			data[v * STRIDE + 1] = Float.floatToRawIntBits(p[1] + dy);
+			data[v * STRIDE + 2] = Float.floatToRawIntBits(p[2] + dz);
+		}
+
+		return data;
+	}
+
+	@Test
+	void classify() {
+		for (int face = 0; face < 6; ++face) {
+			assert FaceBuckets.classify(quad(FACES[face], 5, 70, -3, false), 0, STRIDE) == face;
+			// reversed winding faces the other way
+			assert FaceBuckets.classify(quad(FACES[face], 5, 70, -3, true), 0, STRIDE) == (face ^ 1);
+		}
+
+		// tilted
+		final int[] tilted = quad(FACES[1], 0, 0, 0, false);
+		tilted[STRIDE + 1] = Float.floatToRawIntBits(0.5f);
+		assert FaceBuckets.classify(tilted, 0, STRIDE) == FaceBuckets.UNASSIGNED;
+
+		// degenerate
+		assert FaceBuckets.classify(new int[STRIDE * 4], 0, STRIDE) == FaceBuckets.UNASSIGNED;
+
+		// offset into larger array
+		final int[] two = new int[STRIDE * 8];
+		System.arraycopy(quad(FACES[FaceBuckets.EAST], 0, 0, 0, false), 0, two, STRIDE * 4, STRIDE * 4);
+		assert FaceBuckets.classify(two, STRIDE * 4, STRIDE) == FaceBuckets.EAST;
+	}
+
+	@Test
+	void visibility() {
+		// faces of a 16-block region at the origin, outer planes only
+		final float[] planes = new float[6];
+		FaceBuckets.clearPlanes(planes);
+		FaceBuckets.addPlane(planes, FaceBuckets.DOWN, 0);
+		FaceBuckets.addPlane(planes, FaceBuckets.UP, 16);
+		FaceBuckets.addPlane(planes, FaceBuckets.NORTH, 0);
+		FaceBuckets.addPlane(planes, FaceBuckets.SOUTH, 16);
+		FaceBuckets.addPlane(planes, FaceBuckets.WEST, 0);
+		FaceBuckets.addPlane(planes, FaceBuckets.EAST, 16);
+
+		// above, south and east - can't see bottoms, north or west faces
+		assert FaceBuckets.visibleMask(planes, 20, 20, 20) == bits(FaceBuckets.UP, FaceBuckets.SOUTH, FaceBuckets.EAST, FaceBuckets.UNASSIGNED);
+
+		// inside - outward faces are all back faces
+		assert FaceBuckets.visibleMask(planes, 8, 8, 8) == bits(FaceBuckets.UNASSIGNED);
+
+		// level with the top plane - tops kept, within margin
+		assert (FaceBuckets.visibleMask(planes, 8, 16, 8) & bits(FaceBuckets.UP)) != 0;
+
+		// with faces on both sides of the camera, everything may be visible
+		FaceBuckets.addPlane(planes, FaceBuckets.DOWN, 12);
+		FaceBuckets.addPlane(planes, FaceBuckets.UP, 4);
+		FaceBuckets.addPlane(planes, FaceBuckets.NORTH, 12);
+		FaceBuckets.addPlane(planes, FaceBuckets.SOUTH, 4);
+		FaceBuckets.addPlane(planes, FaceBuckets.WEST, 12);
+		FaceBuckets.addPlane(planes, FaceBuckets.EAST, 4);
+		assert FaceBuckets.visibleMask(planes, 8, 8, 8) == FaceBuckets.ALL;
+
+		// empty buckets never visible
+		FaceBuckets.clearPlanes(planes);
+		assert FaceBuckets.visibleMask(planes, 8, 8, 8) == bits(FaceBuckets.UNASSIGNED);
+	}
+
+	@Test
+	void ranges() {
+		final int[] counts = {4, 8, 0, 12, 16, 4, 20};
+		final int[] firsts = new int[4];
+		final int[] lengths = new int[4];
+
+		int n = FaceBuckets.selectRanges(100, counts, FaceBuckets.ALL, firsts, lengths);
+		assert n == 1 && firsts[0] == 100 && lengths[0] == 64;
+
+		// empty bucket between visible buckets doesn't split the range
+		n = FaceBuckets.selectRanges(100, counts, bits(FaceBuckets.UP, FaceBuckets.SOUTH), firsts, lengths);
+		assert n == 1 && firsts[0] == 104 && lengths[0] == 20;
+
+		n = FaceBuckets.selectRanges(0, counts, bits(FaceBuckets.DOWN, FaceBuckets.SOUTH, FaceBuckets.EAST, FaceBuckets.UNASSIGNED), firsts, lengths);
+		assert n == 3;
+		assert firsts[0] == 0 && lengths[0] == 4;
+		assert firsts[1] == 12 && lengths[1] == 12;
+		// east and unassigned are adjacent
+		assert firsts[2] == 40 && lengths[2] == 24;
+
+		// worst case alternating
+		final int[] full = {4, 4, 4, 4, 4, 4, 4};
+		n = FaceBuckets.selectRanges(0, full, bits(0, 2, 4, 6), firsts, lengths);
+		assert n == 4 && firsts[3] == 24;
+
+		assert FaceBuckets.selectRanges(0, counts, 0, firsts, lengths) == 0;
+	}
+
+	/** Every quad GL would draw after backface culling is in a selected range. */
+	@Test
+	void random() {
+		final Random rand = new Random(42);
+		final int quadCount = 2000;
+		final int[][] quads = new int[quadCount][];
+		final int[] faces = new int[quadCount];
+		final int[] counts = new int[FaceBuckets.BUCKET_COUNT];
+		final float[] planes = new float[6];
+		FaceBuckets.clearPlanes(planes);
+
+		for (int q = 0; q < quadCount; ++q) {
+			final int face = rand.nextInt(7);
+			final float dx = rand.nextInt(16);
+			final float dy = rand.nextInt(16);
+			final float dz = rand.nextInt(16);
+
+			if (face == FaceBuckets.UNASSIGNED) {
+				quads[q] = quad(FACES[1], dx, dy, dz, false);
+				quads[q][1] = Float.floatToRawIntBits(dy + 0.25f);
+			} else {
+				quads[q] = quad(FACES[face], dx, dy, dz, false);
+			}
+
+			faces[q] = FaceBuckets.classify(quads[q], 0, STRIDE);
+			assert faces[q] == face;
+			counts[face] += 4;
+
+			if (face != FaceBuckets.UNASSIGNED) {
+				FaceBuckets.addPlane(planes, face, Float.intBitsToFloat(quads[q][FaceBuckets.axis(face)]));
+			}
+		}
+
+		// vertex position of each quad in bucket order
+		final int[] position = new int[quadCount];
+		int next = 0;
+
+		for (int face = 0; face < FaceBuckets.BUCKET_COUNT; ++face) {
+			for (int q = 0; q < quadCount; ++q) {
+				if (faces[q] == face) {
+					position[q] = next;
+					next += 4;
+				}
+			}
+		}
+
+		final int[] firsts = new int[4];
+		final int[] lengths = new int[4];
+		int skipped = 0;
+
+		for (int i = 0; i < 1000; ++i) {
+			final float cx = -32 + rand.nextFloat() * 80;
+			final float cy = -32 + rand.nextFloat() * 80;
+			final float cz = -32 + rand.nextFloat() * 80;
+			final int n = FaceBuckets.selectRanges(0, counts, FaceBuckets.visibleMask(planes, cx, cy, cz), firsts, lengths);
+			int drawn = 0;
+
+			for (int r = 0; r < n; ++r) {
+				drawn += lengths[r];
+			}
+
+			skipped += next - drawn;
+
+			for (int q = 0; q < quadCount; ++q) {
+				if (isFrontFacing(quads[q], faces[q], cx, cy, cz)) {
+					boolean found = false;
+
+					for (int r = 0; r < n; ++r) {
+						if (position[q] >= firsts[r] && position[q] + 4 <= firsts[r] + lengths[r]) {
+							found = true;
+						}
+					}
+
+					assert found;
+				}
+			}
+		}
+
+		// most cameras are outside the region and skip about half the axis-aligned faces
+		assert skipped > next * 1000 / 4 : skipped;
+	}
+
+	static boolean isFrontFacing(int[] quad, int face, float cx, float cy, float cz) {
+		if (face == FaceBuckets.UNASSIGNED) {
+			return true;
+		}
+
+		final float camera = face < FaceBuckets.NORTH ? cy : face < FaceBuckets.WEST ? cz : cx;
+		final float plane = Float.intBitsToFloat(quad[FaceBuckets.axis(face)]);
+		return FaceBuckets.isPositive(face) ? camera > plane : camera < plane;
+	}
+
+	static int bits(int... faces) {
+		int result = 0;
+
+		for (final int face : faces) {
+			result |= 1 << face;
+		}
+
+		return result;
+	}
+}
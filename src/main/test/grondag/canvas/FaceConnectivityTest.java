@@ -0,0 +1,34 @@
+package grondag.canvas;
+
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.terrain.occlusion.geometry.FaceConnectivity;
+
+class FaceConnectivityTest {
+	@Test
+	void test() {
+		assert FaceConnectivity.connectFaces(FaceConnectivity.ALL_FACE_FLAGS) == FaceConnectivity.ALL;
+		// a single face joins nothing
+		assert FaceConnectivity.connectFaces(0b100) == FaceConnectivity.NONE;
+
+		final int tunnel = FaceConnectivity.connectFaces((1 << 2) | (1 << 3));
+		assert FaceConnectivity.isConnected(tunnel, 2, 3);
+		assert FaceConnectivity.isConnected(tunnel, 3, 2);
+		assert !FaceConnectivity.isConnected(tunnel, 2, 4);
+
+		assert FaceConnectivity.exitFaces(tunnel, 1 << 2) == 1 << 3;
+		assert FaceConnectivity.exitFaces(tunnel, 1 << 3) == 1 << 2;
+		assert FaceConnectivity.exitFaces(tunnel, (1 << 2) | (1 << 3)) == ((1 << 2) | (1 << 3));
+		assert FaceConnectivity.exitFaces(tunnel, 1 << 0) == 0;
+
+		// two separate volumes
+		final int both = tunnel | FaceConnectivity.connectFaces((1 << 0) | (1 << 1) | (1 << 5));
+		assert FaceConnectivity.exitFaces(both, 1 << 0) == ((1 << 1) | (1 << 5));
+		assert FaceConnectivity.exitFaces(both, (1 << 0) | (1 << 2)) == ((1 << 1) | (1 << 3) | (1 << 5));
+
+		for (int face = 0; face < FaceConnectivity.FACE_COUNT; ++face) {
+			assert FaceConnectivity.exitFaces(FaceConnectivity.ALL, 1 << face) == (FaceConnectivity.ALL_FACE_FLAGS & ~(1 << face));
+			assert FaceConnectivity.exitFaces(FaceConnectivity.NONE, 1 << face) == 0;
+		}
+	}
+}
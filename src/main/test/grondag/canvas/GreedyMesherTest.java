@@ -0,0 +1,105 @@
+package grondag.canvas;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.terrain.util.GreedyMesher;
+
+class GreedyMesherTest {
+	final IntArrayList rects = new IntArrayList();
+	int area;
+
+	void mesh(GreedyMesher mesher) {
+		rects.clear();
+		area = 0;
+
+		mesher.mesh((face, plane, u0, v0, w, h, key) -> {
+			rects.add(face);
+			rects.add(plane);
+			rects.add(u0);
+			rects.add(v0);
+			rects.add(w);
+			rects.add(h);
+			rects.add(key);
+			area += w * h;
+		});
+	}
+
+	@Test
+	void test() {
+		final GreedyMesher mesher = new GreedyMesher();
+
+		// flat floor of a single appearance collapses to one quad per plane
+		for (int x = 0; x < 16; ++x) {
+			for (int z = 0; z < 16; ++z) {
+				assert mesher.add(1, GreedyMesher.plane(1, x, 3, z), GreedyMesher.u(1, x, 3, z), GreedyMesher.v(1, x, 3, z), 7);
+			}
+		}
+
+		assert mesher.cellCount() == 256;
+		mesh(mesher);
+		assert rects.equals(IntArrayList.wrap(new int[] {1, 4, 0, 0, 16, 16, 7}));
+		assert mesher.cellCount() == 0;
+
+		// occupied cells are rejected
+		assert mesher.add(0, 0, 0, 0, 1);
+		assert !mesher.add(0, 0, 0, 0, 2);
+		mesher.clear();
+
+		// different keys are never merged, and coverage is exact
+		for (int u = 0; u < 16; ++u) {
+			for (int v = 0; v < 16; ++v) {
+				mesher.add(2, 5, u, v, (((u >> 2) ^ v) & 1) + 1);
+			}
+		}
+
+		mesh(mesher);
+		assert area == 256;
+
+		for (int i = 0; i < rects.size(); i += 7) {
+			final int u0 = rects.getInt(i + 2);
+			final int v0 = rects.getInt(i + 3);
+			final int key = rects.getInt(i + 6);
+
+			for (int u = u0; u < u0 + rects.getInt(i + 4); ++u) {
+				for (int v = v0; v < v0 + rects.getInt(i + 5); ++v) {
+					assert ((((u >> 2) ^ v) & 1) + 1) == key;
+				}
+			}
+		}
+
+		// L-shape becomes two rectangles, separate planes and faces stay apart
+		mesher.add(4, 0, 0, 0, 3);
+		mesher.add(4, 0, 1, 0, 3);
+		mesher.add(4, 0, 0, 1, 3);
+		mesher.add(5, 1, 0, 0, 3);
+		mesher.add(4, 16, 0, 0, 3);
+		mesh(mesher);
+		assert rects.equals(IntArrayList.wrap(new int[] {
+			4, 0, 0, 0, 2, 1, 3,
+			4, 0, 0, 1, 1, 1, 3,
+			4, 16, 0, 0, 1, 1, 3,
+			5, 1, 0, 0, 1, 1, 3
+		}));
+
+		// isolated cells are emitted alone and split the run around them
+		for (int u = 0; u < 3; ++u) {
+			mesher.add(0, 2, u, 0, 5);
+		}
+
+		mesher.isolate(0, 2, 1, 0);
+		mesher.isolate(0, 2, 9, 9);
+		mesh(mesher);
+		assert rects.equals(IntArrayList.wrap(new int[] {
+			0, 2, 1, 0, 1, 1, 5,
+			0, 2, 0, 0, 1, 1, 5,
+			0, 2, 2, 0, 1, 1, 5
+		}));
+
+		// isolation does not outlive the mesh
+		mesher.add(0, 2, 0, 0, 5);
+		mesher.add(0, 2, 1, 0, 5);
+		mesh(mesher);
+		assert rects.equals(IntArrayList.wrap(new int[] {0, 2, 0, 0, 2, 1, 5}));
+	}
+}
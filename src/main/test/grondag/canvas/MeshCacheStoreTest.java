@@ -0,0 +1,105 @@
+package grondag.canvas;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.terrain.cache.CachedRegionMesh;
+import grondag.canvas.terrain.cache.ContentHash;
+import grondag.canvas.terrain.cache.MeshCacheStore;
+
+class MeshCacheStoreTest {
+	static byte[] payload(int length, int seed) {
+		final byte[] result = new byte[length];
+
+		for (int i = 0; i < length; ++i) {
+			result[i] = (byte) (i * 31 + seed);
+		}
+
+		return result;
+	}
+
+	@Test
+	void test() throws IOException {
+		// codec round trip
+		final CachedRegionMesh mesh = new CachedRegionMesh(new int[] {1, 2, 3}, new int[] {7, 9}, new int[][] {{10, 11, 12, 13}, {}});
+		final CachedRegionMesh copy = CachedRegionMesh.fromBytes(mesh.toBytes());
+		assert Arrays.equals(copy.occlusionData, mesh.occlusionData);
+		assert copy.materialCount() == 2;
+		assert copy.material(0) == 7 && copy.material(1) == 9;
+		assert Arrays.equals(copy.vertexData(0), mesh.vertexData(0));
+		assert copy.vertexData(1).length == 0;
+
+		// truncated payload is rejected
+		assert CachedRegionMesh.fromBytes(Arrays.copyOf(mesh.toBytes(), 16)) == null;
+
+		// hash is order-sensitive
+		final ContentHash a = new ContentHash().reset(0).add(1).add(2);
+		final ContentHash b = new ContentHash().reset(0).add(2).add(1);
+		assert a.key() != b.key() && a.check() != b.check();
+		assert a.isValid();
+		a.invalidate();
+		assert !a.isValid();
+
+		final Path file = Files.createTempFile("canvas_mesh_cache", ".bin");
+
+		try (MeshCacheStore store = new MeshCacheStore(file, MeshCacheStore.BLOCK_SIZE * 8)) {
+			// round trip, and check value must match
+			assert store.put(1, 100, payload(300, 1));
+			assert Arrays.equals(store.get(1, 100), payload(300, 1));
+			assert store.get(1, 101) == null;
+			assert store.get(2, 100) == null;
+
+			// replacing same key frees the old extent
+			assert store.put(1, 100, payload(10, 2));
+			assert Arrays.equals(store.get(1, 100), payload(10, 2));
+			assert store.usedBytes() == MeshCacheStore.BLOCK_SIZE;
+
+			// too large to ever fit
+			assert !store.put(3, 0, new byte[MeshCacheStore.BLOCK_SIZE * 9]);
+
+			// fill, touch oldest, then overflow - least recently used goes first
+			assert store.put(2, 200, payload(MeshCacheStore.BLOCK_SIZE * 3, 3));
+			assert store.put(3, 300, payload(MeshCacheStore.BLOCK_SIZE * 4, 4));
+			assert store.size() == 3;
+			assert store.get(1, 100) != null;
+			assert store.put(4, 400, payload(MeshCacheStore.BLOCK_SIZE * 2, 5));
+			assert !store.contains(2);
+			assert store.contains(1) && store.contains(3) && store.contains(4);
+			assert Arrays.equals(store.get(3, 300), payload(MeshCacheStore.BLOCK_SIZE * 4, 4));
+
+			// needs contiguous space - evicts until freed extents merge
+			assert store.put(5, 500, payload(MeshCacheStore.BLOCK_SIZE * 8, 6));
+			assert store.size() == 1;
+			assert Arrays.equals(store.get(5, 500), payload(MeshCacheStore.BLOCK_SIZE * 8, 6));
+
+			// fingerprint change invalidates everything, same fingerprint keeps entries
+			store.fingerprint(0);
+			assert store.size() == 1;
+			store.fingerprint(42);
+			assert store.size() == 0;
+			assert store.usedBytes() == 0;
+			assert store.put(6, 600, payload(MeshCacheStore.BLOCK_SIZE * 8, 7));
+
+			// closed store holds nothing and accepts nothing, and closing again does nothing
+			store.close();
+			assert store.size() == 0 && store.get(6, 600) == null;
+			assert !store.put(7, 700, payload(10, 8));
+			store.close();
+
+			// file is unmapped, so it can be reopened and then deleted right away, even on Windows
+			try (MeshCacheStore reopened = new MeshCacheStore(file, MeshCacheStore.BLOCK_SIZE * 4)) {
+				assert reopened.size() == 0;
+				assert reopened.put(7, 700, payload(10, 8));
+				assert Arrays.equals(reopened.get(7, 700), payload(10, 8));
+			}
+
+			Files.delete(file);
+		} finally {
+			Files.deleteIfExists(file);
+		}
+	}
+}
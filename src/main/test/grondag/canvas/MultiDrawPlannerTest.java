@@ -0,0 +1,150 @@
+package grondag.canvas;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.terrain.render.MultiDrawPlanner;
+
+class MultiDrawPlannerTest {
+	/** Fake GL that records calls as strings and every drawn range with its full state. */
+	static class RecordingGl implements MultiDrawPlanner.Target<String, String> {
+		final ArrayList<String> calls = new ArrayList<>();
+		final ArrayList<String> ranges = new ArrayList<>();
+		long origin;
+		String binding;
+
+		@Override
+		public void setOrigin(long packedOrigin) {
+			origin = packedOrigin;
+			calls.add("origin " + packedOrigin);
+		}
+
+		@Override
+		public void bind(String binding) {
+			this.binding = binding;
+			calls.add("bind " + binding);
+		}
+
+		@Override
+		public void draw(String state, int shaderFlags, int[] firsts, int[] counts, int drawCount) {
+			final StringBuilder sb = new StringBuilder("draw " + state + " " + shaderFlags);
+
+			for (int i = 0; i < drawCount; ++i) {
+				sb.append(" ").append(firsts[i]).append("+").append(counts[i]);
+
+				for (int v = firsts[i]; v < firsts[i] + counts[i]; ++v) {
+					ranges.add(key(origin, binding, state, shaderFlags, v));
+				}
+			}
+
+			calls.add(sb.toString());
+		}
+	}
+
+	static String key(long origin, String binding, String state, int flags, int vertex) {
+		return origin + "/" + binding + "/" + state + "/" + flags + "/" + vertex;
+	}
+
+	@Test
+	void test() {
+		final MultiDrawPlanner<String, String> planner = new MultiDrawPlanner<>(false);
+		final RecordingGl gl = new RecordingGl();
+
+		// two regions in cube 1, one in cube 2, interleaved as distance order would
+		planner.add(1, "a", "solid", 0, 0, 4);
+		planner.add(1, "a", "cutout", 0, 4, 8);
+		planner.add(2, "a", "solid", 0, 100, 4);
+		planner.add(1, "a", "solid", 0, 40, 4);
+		planner.add(1, "a", "cutout", 0, 44, 4);
+		// continues the previous range - merged
+		planner.add(1, "a", "cutout", 0, 48, 4);
+		planner.add(1, "b", "solid", 0, 0, 4);
+		// same state, different flags
+		planner.add(1, "a", "solid", 3, 52, 4);
+		planner.flush(gl);
+
+		assert gl.calls.toString().equals("[origin 1, bind a, draw solid 0 0+4 40+4, draw cutout 0 4+8 44+8, draw solid 3 52+4, bind b, draw solid 0 0+4, "
+				+ "origin 2, bind a, draw solid 0 100+4]") : gl.calls;
+		assert planner.drawCount() == 8 && planner.callCount() == 5;
+
+		// nothing retained after flush
+		gl.calls.clear();
+		planner.flush(gl);
+		assert gl.calls.isEmpty() && planner.drawCount() == 0;
+
+		// reused groups start empty
+		planner.add(2, "b", "solid", 0, 8, 4);
+		planner.flush(gl);
+		assert gl.calls.toString().equals("[origin 2, bind b, draw solid 0 8+4]") : gl.calls;
+	}
+
+	@Test
+	void ordered() {
+		final MultiDrawPlanner<String, String> planner = new MultiDrawPlanner<>(true);
+		final RecordingGl gl = new RecordingGl();
+
+		planner.add(1, "a", "translucent", 0, 0, 4);
+		planner.add(1, "a", "translucent", 0, 20, 4);
+		planner.add(1, "a", "water", 0, 4, 4);
+		planner.add(1, "a", "translucent", 0, 40, 4);
+		planner.add(2, "a", "translucent", 0, 60, 4);
+		planner.add(1, "a", "translucent", 0, 80, 4);
+		planner.flush(gl);
+
+		assert gl.calls.toString().equals("[origin 1, bind a, draw translucent 0 0+4 20+4, draw water 0 4+4, draw translucent 0 40+4, "
+				+ "origin 2, bind a, draw translucent 0 60+4, origin 1, bind a, draw translucent 0 80+4]") : gl.calls;
+	}
+
+	@Test
+	void random() {
+		final Random rand = new Random(42);
+		final String[] bindings = {"a", "b", "c"};
+		final String[] states = {"s0", "s1", "s2", "s3", "s4"};
+
+		for (final boolean preserveOrder : new boolean[] {false, true}) {
+			final MultiDrawPlanner<String, String> planner = new MultiDrawPlanner<>(preserveOrder);
+
+			for (int frame = 0; frame < 20; ++frame) {
+				final RecordingGl gl = new RecordingGl();
+				final ArrayList<String> expected = new ArrayList<>();
+				final int regions = 1 + rand.nextInt(500);
+				int next = 0;
+
+				for (int r = 0; r < regions; ++r) {
+					final long origin = rand.nextInt(8);
+					final String binding = bindings[rand.nextInt(bindings.length)];
+					final int delegates = 1 + rand.nextInt(4);
+
+					for (int d = 0; d < delegates; ++d) {
+						final String state = states[rand.nextInt(states.length)];
+						final int flags = rand.nextInt(2);
+						final int count = 4 * (1 + rand.nextInt(10));
+
+						for (int v = next; v < next + count; ++v) {
+							expected.add(key(origin, binding, state, flags, v));
+						}
+
+						planner.add(origin, binding, state, flags, next, count);
+						next += count;
+					}
+				}
+
+				planner.flush(gl);
+
+				// every vertex drawn once, with the state it was added with
+				assert gl.ranges.size() == expected.size();
+
+				if (preserveOrder) {
+					assert gl.ranges.equals(expected);
+				} else {
+					assert new HashSet<>(gl.ranges).equals(new HashSet<>(expected));
+					// at most one call per distinct origin, binding, state and flags
+					assert planner.callCount() <= 8 * bindings.length * states.length * 2;
+				}
+			}
+		}
+	}
+}
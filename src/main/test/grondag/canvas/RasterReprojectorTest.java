@@ -0,0 +1,242 @@
+package grondag.canvas;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.terrain.occlusion.CoveragePyramid;
+import grondag.canvas.terrain.occlusion.RasterReprojector;
+import grondag.canvas.terrain.occlusion.TileDepth;
+
+class RasterReprojectorTest {
+	static final int TILE_WIDTH = 128;
+	static final int TILE_HEIGHT = 64;
+	static final int TILE_COUNT = TILE_WIDTH * TILE_HEIGHT;
+	static final int HALF_PIXEL_WIDTH = TILE_WIDTH * 4;
+	static final int HALF_PIXEL_HEIGHT = TILE_HEIGHT * 4;
+
+	static final double FOV_Y = Math.toRadians(70);
+	static final double ASPECT = 16.0 / 9.0;
+	static final double F = 1 / Math.tan(FOV_Y / 2);
+	static final double NEAR = 0.05;
+	static final double FAR = 1000;
+
+	/** Occluders are patches of a sphere on a two degree yaw/pitch grid, so shared edges leave no gaps. */
+	static final double CELL = Math.toRadians(2);
+
+	/** Same layout as the rasterizer - 8x8 tile blocks are contiguous. */
+	static int tileIndex(int tileX, int tileY) {
+		return ((tileY & ~7) << 7) | ((tileX & ~7) << 3) | ((tileY & 7) << 3) | (tileX & 7);
+	}
+
+	static class Raster {
+		final long[] tiles = new long[TILE_COUNT];
+		final CoveragePyramid pyramid = new CoveragePyramid();
+		final TileDepth depth = new TileDepth();
+		/** Greatest view distance at a covered pixel center - reference only. */
+		final double[] maxW = new double[TILE_COUNT];
+	}
+
+	static class View {
+		final double yaw, pitch;
+		final double[] mvp = new double[16];
+		/** Rows of the world to view rotation. */
+		final double[] rot = new double[9];
+
+		View(double yaw, double pitch) {
+			this.yaw = yaw;
+			this.pitch = pitch;
+			final double cy = Math.cos(yaw), sy = Math.sin(yaw);
+			final double cp = Math.cos(pitch), sp = Math.sin(pitch);
+
+			// pitch about x after yaw about y, view looks down -z
+			final double[] r = {
+				cy, 0, -sy,
+				sp * sy, cp, sp * cy,
+				cp * sy, -sp, cp * cy
+			};
+
+			System.arraycopy(r, 0, rot, 0, 9);
+
+			final double[] proj = {
+				F / ASPECT, 0, 0, 0,
+				0, F, 0, 0,
+				0, 0, (FAR + NEAR) / (NEAR - FAR), 2 * FAR * NEAR / (NEAR - FAR),
+				0, 0, -1, 0
+			};
+
+			final double[] model = {
+				r[0], r[1], r[2], 0,
+				r[3], r[4], r[5], 0,
+				r[6], r[7], r[8], 0,
+				0, 0, 0, 1
+			};
+
+			for (int row = 0; row < 4; ++row) {
+				for (int col = 0; col < 4; ++col) {
+					double sum = 0;
+
+					for (int i = 0; i < 4; ++i) {
+						sum += proj[row * 4 + i] * model[i * 4 + col];
+					}
+
+					mvp[row * 4 + col] = sum;
+				}
+			}
+		}
+	}
+
+	/** Euclidean distance of the occluder in the cell holding the world direction, or zero if none. */
+	double occluderDistance(double x, double y, double z) {
+		final long cellX = (long) Math.floor(Math.atan2(x, -z) / CELL);
+		final long cellY = (long) Math.floor(Math.asin(y) / CELL);
+		final long h = new Random(42 ^ (cellX * 0x9E3779B97F4A7C15L) ^ (cellY * 0xC2B2AE3D27D4EB4FL)).nextLong();
+
+		if ((h & 3) == 0) {
+			return 0;
+		}
+
+		return 5 + ((h >>> 8) & 0xFFFF) / 200.0;
+	}
+
+	/** Reference full redraw, sampling the occluders at each pixel center. */
+	Raster redraw(View view) {
+		final Raster result = new Raster();
+		final double[] r = view.rot;
+
+		for (int tileY = 0; tileY < TILE_HEIGHT; ++tileY) {
+			for (int tileX = 0; tileX < TILE_WIDTH; ++tileX) {
+				long word = 0;
+				double maxR = 0;
+				double maxW = 0;
+
+				for (int i = 0; i < 64; ++i) {
+					final int px = (tileX << 3) + (i & 7);
+					final int py = (tileY << 3) + (i >> 3);
+					// view direction, not normalized, with view distance of one
+					final double vx = ((px + 0.0625) / HALF_PIXEL_WIDTH - 1) * ASPECT / F;
+					final double vy = ((py + 0.0625) / HALF_PIXEL_HEIGHT - 1) / F;
+					final double len = Math.sqrt(vx * vx + vy * vy + 1);
+
+					// world direction is transpose of rotation times view direction
+					final double wx = (r[0] * vx + r[3] * vy - r[6]) / len;
+					final double wy = (r[1] * vx + r[4] * vy - r[7]) / len;
+					final double wz = (r[2] * vx + r[5] * vy - r[8]) / len;
+					final double dist = occluderDistance(wx, wy, wz);
+
+					if (dist > 0) {
+						word |= 1L << i;
+						maxR = Math.max(maxR, dist);
+						maxW = Math.max(maxW, dist / len);
+					}
+				}
+
+				final int index = tileIndex(tileX, tileY);
+				result.tiles[index] = word;
+				result.maxW[index] = maxW;
+				result.pyramid.update(index, word);
+
+				// like drawing quads, depth bounds the whole tile area and not just pixel centers
+				result.depth.update(index, 0, word, TileDepth.farDepth((float) (maxR * maxCos(tileX, tileY))));
+			}
+		}
+
+		return result;
+	}
+
+	/** Largest cosine to the view axis over the area of the tile - at the point nearest the screen center. */
+	static double maxCos(int tileX, int tileY) {
+		final double x = clampNdc(tileX << 3, HALF_PIXEL_WIDTH) * ASPECT / F;
+		final double y = clampNdc(tileY << 3, HALF_PIXEL_HEIGHT) / F;
+		return 1 / Math.sqrt(x * x + y * y + 1);
+	}
+
+	static double clampNdc(int pixel0, int half) {
+		final double n0 = (pixel0 - 1.0) / half - 1;
+		final double n1 = (pixel0 + 9.0) / half - 1;
+		return n0 > 0 ? n0 : n1 < 0 ? n1 : 0;
+	}
+
+	/** Draws the reference over the raster the way occluders are drawn after reprojection. */
+	static void drawOver(Raster target, Raster source) {
+		for (int i = 0; i < TILE_COUNT; ++i) {
+			final long word = target.tiles[i];
+			final long coverage = source.tiles[i];
+			target.depth.update(i, word, coverage, source.depth.depth(i));
+			target.tiles[i] = word | coverage;
+			target.pyramid.update(i, target.tiles[i]);
+		}
+	}
+
+	/** Every full tile must be full in the reference and must not be nearer than any reference occluder. */
+	static void assertConservative(Raster raster, Raster reference) {
+		for (int i = 0; i < TILE_COUNT; ++i) {
+			if (raster.tiles[i] == -1L) {
+				assert reference.tiles[i] == -1L;
+				assert raster.depth.depth(i) >= TileDepth.nearDepth((float) reference.maxW[i]);
+			}
+		}
+	}
+
+	static int fullCount(Raster raster) {
+		int result = 0;
+
+		for (final long word : raster.tiles) {
+			if (word == -1L) {
+				++result;
+			}
+		}
+
+		return result;
+	}
+
+	Raster reproject(Raster source, View from, View to) {
+		final double[] map = new double[16];
+		assert RasterReprojector.computeMap(from.mvp, to.mvp, map);
+		final Raster result = new Raster();
+		RasterReprojector.reproject(source.tiles, source.depth, map, result.tiles, result.pyramid, result.depth);
+		return result;
+	}
+
+	@Test
+	void test() {
+		final Random r = new Random(42);
+
+		// same view keeps full tiles away from edges of coverage and screen
+		final View still = new View(0.3, 0.1);
+		final Raster stillRaster = redraw(still);
+		final Raster same = reproject(stillRaster, still, still);
+		assertConservative(same, stillRaster);
+		assert fullCount(same) > fullCount(stillRaster) / 2;
+
+		// camera path of small turns, sometimes chaining reprojections without a redraw in between
+		View view = still;
+		Raster raster = stillRaster;
+		int kept = 0;
+		int reference = 0;
+
+		for (int step = 0; step < 24; ++step) {
+			final View next = new View(view.yaw + Math.toRadians(r.nextDouble() * 8 - 4), view.pitch + Math.toRadians(r.nextDouble() * 6 - 3));
+			final Raster truth = redraw(next);
+			final Raster moved = reproject(raster, view, next);
+			assertConservative(moved, truth);
+			kept += fullCount(moved);
+			reference += fullCount(truth);
+
+			if (r.nextBoolean()) {
+				drawOver(moved, truth);
+				assertConservative(moved, truth);
+			}
+
+			raster = moved;
+			view = next;
+		}
+
+		// reuse has to be worth something
+		assert kept > reference / 4;
+
+		// large turn leaves nothing behind the old view
+		final View behind = new View(still.yaw + Math.PI, still.pitch);
+		assert fullCount(reproject(stillRaster, still, behind)) == 0;
+	}
+}
@@ -0,0 +1,49 @@
+package grondag.canvas;
+
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.terrain.util.RegionLod;
+
+class RegionLodTest {
+	@Test
+	void test() {
+		// disabled distances never reduce detail
+		assert RegionLod.select(RegionLod.NONE, 10000, 0, 0) == RegionLod.NONE;
+
+		// flags turn on at configured distance
+		assert RegionLod.select(RegionLod.NONE, 15 * 15, 16, 24) == RegionLod.NONE;
+		assert RegionLod.select(RegionLod.NONE, 16 * 16, 16, 24) == RegionLod.NO_DETAIL;
+		assert RegionLod.select(RegionLod.NONE, 24 * 24, 16, 24) == (RegionLod.NO_DETAIL | RegionLod.SOLID_LEAVES);
+
+		// and stay on until the region is closer by the hysteresis margin
+		int lod = RegionLod.select(RegionLod.NONE, 16 * 16, 16, 0);
+		lod = RegionLod.select(lod, 15 * 15, 16, 0);
+		assert lod == RegionLod.NO_DETAIL;
+		lod = RegionLod.select(lod, 14 * 14, 16, 0);
+		assert lod == RegionLod.NO_DETAIL;
+		lod = RegionLod.select(lod, 14 * 14 - 1, 16, 0);
+		assert lod == RegionLod.NONE;
+
+		// oscillating around the boundary changes the result once
+		int changes = 0;
+		lod = RegionLod.NONE;
+
+		for (int i = 0; i < 100; ++i) {
+			final int d = (i & 1) == 0 ? 16 * 16 : 15 * 15;
+			final int next = RegionLod.select(lod, d, 16, 0);
+
+			if (next != lod) {
+				++changes;
+			}
+
+			lod = next;
+		}
+
+		assert changes == 1;
+
+		// flags are independent and deterministic
+		assert RegionLod.select(RegionLod.SOLID_LEAVES, 10 * 10, 8, 11) == (RegionLod.NO_DETAIL | RegionLod.SOLID_LEAVES);
+		assert RegionLod.select(RegionLod.SOLID_LEAVES, 10 * 10, 8, 11) == RegionLod.select(RegionLod.SOLID_LEAVES, 10 * 10, 8, 11);
+		assert RegionLod.select(RegionLod.NO_DETAIL, 10 * 10, 8, 11) == RegionLod.NO_DETAIL;
+	}
+}
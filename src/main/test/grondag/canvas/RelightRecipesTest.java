@@ -0,0 +1,235 @@
+package grondag.canvas;
+
+import static grondag.canvas.terrain.util.RenderRegionAddressHelper.TOTAL_CACHE_SIZE;
+import static grondag.canvas.terrain.util.RenderRegionAddressHelper.interiorIndex;
+
+import java.util.Arrays;
+import java.util.function.IntUnaryOperator;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.apiimpl.mesh.MeshEncodingHelper;
+import grondag.canvas.apiimpl.mesh.MutableQuadViewImpl;
+import grondag.canvas.buffer.encoding.EncoderUtils;
+import grondag.canvas.light.AoCalculator;
+import grondag.canvas.light.RelightRecipes;
+
+class RelightRecipesTest {
+	static int packed(int block, int sky) {
+		return (block << 4) | (sky << 20);
+	}
+
+	@Test
+	void test() {
+		final RelightRecipes recipes = new RelightRecipes();
+		final int[] samples = new int[RelightRecipes.FACE_SAMPLE_COUNT];
+
+		for (int i = 0; i < samples.length; ++i) {
+			samples[i] = 100 + i;
+		}
+
+		final float[] quarter = {0.25f, 0.25f, 0.25f, 0.25f};
+		final float[] corner = {1, 0, 0, 0};
+
+		final int flat = recipes.addFlat(0, 7);
+		final int emissive = recipes.addFlat(0, RelightRecipes.NO_INDEX);
+		final int modelLit = recipes.addFlat(packed(12, 0), 7);
+		final int uniform = recipes.addFace(0, samples, quarter);
+
+		final int[] opaqueSamples = samples.clone();
+		opaqueSamples[RelightRecipes.BOTTOM] = RelightRecipes.NO_INDEX;
+		opaqueSamples[RelightRecipes.BOTTOM_RIGHT] = RelightRecipes.NO_INDEX;
+		final int occluded = recipes.addFace(0, opaqueSamples, corner);
+
+		final int[] r = recipes.toArray();
+		assert r.length == recipes.size();
+
+		// recipes evaluate against whatever light is current
+		for (int i = 0; i < 16; ++i) {
+			final int sky = i;
+			final int block = 15 - i;
+			final IntUnaryOperator brightness = index -> packed(block, sky);
+
+			assert recipes.light(r, flat, brightness) == packed(block, sky);
+			assert recipes.light(r, emissive, brightness) == RelightRecipes.FULL_BRIGHTNESS;
+			assert recipes.light(r, modelLit, brightness) == packed(Math.max(12, block), sky);
+			assert recipes.light(r, uniform, brightness) == packed(block, sky);
+		}
+
+		// opaque samples are replaced by the minimum of the others
+		final IntUnaryOperator varied = i -> i == 100 + RelightRecipes.RIGHT ? packed(4, 8) : packed(12, 8);
+		assert recipes.light(r, occluded, varied) == packed(6, 8);
+
+		// patch replaces block and sky light only
+		final int stride = 8;
+		final int lightOffset = 6;
+		final int[] keys = {flat, uniform, modelLit, emissive};
+		final int[] vertexData = new int[keys.length * stride];
+
+		for (int v = 0; v < keys.length; ++v) {
+			vertexData[v * stride] = v;
+			vertexData[v * stride + lightOffset] = 0x5A000000 | (v << 16) | 0xFFFF;
+		}
+
+		recipes.patch(r, keys, vertexData, stride, lightOffset, i -> packed(3, 9));
+
+		for (int v = 0; v < keys.length; ++v) {
+			assert vertexData[v * stride] == v;
+			final int light = vertexData[v * stride + lightOffset];
+			assert (light >>> 16) == (0x5A00 | v);
+
+		}
+
+		// block light is in the low byte of the element and sky light in the next
+		assert (vertexData[lightOffset] & 0xFFFF) == (3 << 4 | (9 << 4) << 8);
+		assert (vertexData[stride + lightOffset] & 0xFFFF) == (3 << 4 | (9 << 4) << 8);
+		assert (vertexData[stride * 2 + lightOffset] & 0xFFFF) == (12 << 4 | (9 << 4) << 8);
+		assert (vertexData[stride * 3 + lightOffset] & 0xFFFF) == 0xF0F0;
+
+		recipes.clear();
+		assert recipes.size() == 0;
+	}
+
+	static final int STRIDE = 8;
+	static final int LIGHT_OFFSET = 6;
+
+	/** Lights quads over a made-up region and records recipes the same way as TerrainRenderContext. */
+	static class TestLighter extends AoCalculator {
+		final int[] aoLevels = new int[TOTAL_CACHE_SIZE];
+		final boolean[] opaque = new boolean[TOTAL_CACHE_SIZE];
+		final RelightRecipes recipes = new RelightRecipes();
+		final IntArrayList keys = new IntArrayList();
+		final IntUnaryOperator brightness;
+		final boolean isRecording;
+
+		TestLighter(IntUnaryOperator brightness, boolean isRecording) {
+			this.brightness = brightness;
+			this.isRecording = isRecording;
+
+			for (int i = 0; i < TOTAL_CACHE_SIZE; ++i) {
+				aoLevels[i] = (i * 37) & 0xFF;
+				opaque[i] = i % 3 == 0;
+			}
+		}
+
+		@Override
+		protected int ao(int cacheIndex) {
+			return aoLevels[cacheIndex];
+		}
+
+		@Override
+		protected int brightness(int cacheIndex) {
+			return brightness.applyAsInt(cacheIndex);
+		}
+
+		@Override
+		protected boolean isOpaque(int cacheIndex) {
+			return opaque[cacheIndex];
+		}
+
+		@Override
+		protected void onFaceLight(int vertexIndex, int modelLight, int[] samples, float[] w) {
+			if (isRecording) {
+				keys.add(recipes.addFace(modelLight, samples, w));
+			}
+		}
+
+		@Override
+		protected void onFlatLight(int vertexIndex, int modelLight, int cacheIndex) {
+			if (isRecording) {
+				keys.add(recipes.addFlat(modelLight, cacheIndex));
+			}
+		}
+
+		@Override
+		protected void onComplexLight() {
+			assert false : "test quads must all be lit in ways that can be relit";
+		}
+	}
+
+	static class TestQuad extends MutableQuadViewImpl {
+		TestQuad() {
+			begin(new int[MeshEncodingHelper.MAX_QUAD_STRIDE], 0);
+		}
+
+		@Override
+		public TestQuad emit() {
+			return this;
+		}
+	}
+
+	/**
+	 * Lights one quad at the given interior block and appends it in the material vertex format.
+	 *
+	 * @param pos x, y, z of each corner in block space
+	 */
+	static void add(TestLighter lighter, IntArrayList vertexData, int blockIndex, boolean smooth, int modelLight, float... pos) {
+		final TestQuad quad = new TestQuad();
+
+		for (int i = 0; i < 4; ++i) {
+			quad.pos(i, pos[i * 3], pos[i * 3 + 1], pos[i * 3 + 2]);
+			// model light on one corner only, so it has to be kept per vertex
+			quad.lightmap(i, i == 2 ? modelLight : 0);
+		}
+
+		lighter.prepare(blockIndex);
+
+		if (smooth) {
+			lighter.compute(quad);
+		} else {
+			lighter.computeFlat(quad);
+		}
+
+		for (int i = 0; i < 4; ++i) {
+			vertexData.add(Float.floatToRawIntBits(quad.x(i)));
+			vertexData.add(Float.floatToRawIntBits(quad.y(i)));
+			vertexData.add(Float.floatToRawIntBits(quad.z(i)));
+			vertexData.add(0);
+			vertexData.add(0);
+			vertexData.add(0);
+			vertexData.add(EncoderUtils.encodeLight(quad.lightmap(i), quad.ao[i]));
+			vertexData.add(0);
+		}
+	}
+
+	/** Full build of the test region through the lighter and the encoder's light packing. */
+	static int[] build(TestLighter lighter) {
+		final IntArrayList vertexData = new IntArrayList();
+		final int cornerBlock = interiorIndex(15, 15, 15);
+		final int middleBlock = interiorIndex(8, 3, 8);
+
+		// full cube faces, smooth, including one that samples outside the region
+		add(lighter, vertexData, cornerBlock, true, 0, 0, 1, 0, 0, 1, 1, 1, 1, 1, 1, 1, 0);
+		add(lighter, vertexData, middleBlock, true, packed(9, 0), 1, 1, 0, 1, 0, 0, 0, 0, 0, 0, 1, 0);
+
+		// partial face on the block boundary - lower half of a slab side - with interpolated weights, smooth
+		add(lighter, vertexData, middleBlock, true, 0, 1, 0.5f, 0, 1, 0, 0, 0, 0, 0, 0, 0.5f, 0);
+		add(lighter, vertexData, cornerBlock, true, packed(4, 2), 1, 0.5f, 0, 1, 0, 0, 0, 0, 0, 0, 0.5f, 0);
+
+		// flat: semi-flat cube face and a diagonal cross-plant quad lit from the block itself
+		add(lighter, vertexData, middleBlock, false, 0, 0, 1, 0, 0, 1, 1, 1, 1, 1, 1, 1, 0);
+		add(lighter, vertexData, middleBlock, false, packed(12, 0), 0, 0, 0, 0, 1, 0, 1, 1, 1, 1, 0, 1);
+		add(lighter, vertexData, cornerBlock, false, 0, 0, 0, 0, 0, 1, 0, 1, 1, 1, 1, 0, 1);
+
+		return vertexData.toIntArray();
+	}
+
+	@Test
+	void matchesRebuild() {
+		final IntUnaryOperator before = i -> packed((i * 7) & 15, (i * 11 + 3) & 15);
+		final IntUnaryOperator after = i -> packed((i * 5 + 2) & 15, (i * 3) & 15);
+
+		final TestLighter recorder = new TestLighter(before, true);
+		final int[] relit = build(recorder);
+		final int[] keys = recorder.keys.toIntArray();
+		assert keys.length * STRIDE == relit.length;
+
+		final int[] rebuilt = build(new TestLighter(after, false));
+		assert !Arrays.equals(relit, rebuilt) : "light change must be visible in the test region";
+
+		// any instance can evaluate saved recipes
+		new RelightRecipes().patch(recorder.recipes.toArray(), keys, relit, STRIDE, LIGHT_OFFSET, after);
+		assert Arrays.equals(relit, rebuilt);
+	}
+}
@@ -0,0 +1,120 @@
+package grondag.canvas;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.buffer.SliceAllocator;
+import grondag.canvas.buffer.SliceAllocator.Slice;
+
+class SliceAllocatorTest {
+	static final int CAPACITY = 100000;
+
+	@Test
+	void test() {
+		final SliceAllocator arena = new SliceAllocator(1000);
+		final Slice a = arena.allocate(100);
+		final Slice b = arena.allocate(200);
+		final Slice c = arena.allocate(300);
+		assert a.offset() == 0 && b.offset() == 100 && c.offset() == 300;
+		assert arena.used() == 600 && arena.free() == 400;
+
+		// too large for any block
+		assert arena.allocate(401) == null;
+
+		// best fit picks the hole that matches
+		arena.release(b);
+		assert arena.freeBlockCount() == 2;
+		final Slice d = arena.allocate(150);
+		assert d.offset() == 100;
+		arena.release(d);
+
+		// release merges neighbors into one block
+		arena.release(a);
+		assert arena.freeBlockCount() == 2;
+		assert arena.largestFree() == 400;
+		arena.release(c);
+		assert arena.freeBlockCount() == 1;
+		assert arena.largestFree() == 1000 && arena.isEmpty();
+
+		// double release does nothing
+		arena.release(c);
+		assert arena.free() == 1000 && c.isReleased();
+	}
+
+	@Test
+	void random() {
+		final Random rand = new Random(42);
+		final SliceAllocator arena = new SliceAllocator(CAPACITY);
+		final ArrayList<Slice> live = new ArrayList<>();
+		// which slice owns each unit, same as buffer content
+		final Slice[] memory = new Slice[CAPACITY];
+
+		for (int pass = 0; pass < 200; ++pass) {
+			for (int i = 0; i < 200; ++i) {
+				if (live.isEmpty() || rand.nextInt(3) != 0) {
+					final int length = 1 + rand.nextInt(rand.nextInt(10) == 0 ? 5000 : 500);
+					Slice s = arena.allocate(length);
+
+					if (s == null) {
+						assert arena.largestFree() < length;
+
+						if (arena.free() >= length) {
+							// fragmented - compact as the GL arena would, moving content with it
+							arena.compact((from, to, len) -> {
+								assert to <= from;
+								System.arraycopy(memory, from, memory, to, len);
+							});
+
+							// clear stale content the moves left behind in what is now free space
+							Arrays.fill(memory, arena.used(), CAPACITY, null);
+							assert arena.freeBlockCount() <= 1 && arena.largestFree() == arena.free();
+							s = arena.allocate(length);
+							assert s != null;
+						}
+					}
+
+					if (s != null) {
+						for (int j = s.offset(); j < s.offset() + length; ++j) {
+							assert memory[j] == null;
+							memory[j] = s;
+						}
+
+						live.add(s);
+					}
+				} else {
+					final Slice s = live.remove(rand.nextInt(live.size()));
+
+					for (int j = s.offset(); j < s.offset() + s.length(); ++j) {
+						assert memory[j] == s;
+						memory[j] = null;
+					}
+
+					arena.release(s);
+				}
+			}
+
+			// every live slice still owns its content, and counts agree with memory
+			int used = 0;
+
+			for (final Slice s : live) {
+				for (int j = s.offset(); j < s.offset() + s.length(); ++j) {
+					assert memory[j] == s;
+				}
+
+				used += s.length();
+			}
+
+			assert used == arena.used();
+			assert live.size() == arena.sliceCount();
+		}
+
+		for (final Slice s : live) {
+			arena.release(s);
+		}
+
+		assert arena.isEmpty() && arena.freeBlockCount() == 1 && arena.largestFree() == CAPACITY;
+	}
+}
@@ -0,0 +1,91 @@
+package grondag.canvas;
+
+import java.util.function.Consumer;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.apiimpl.rendercontext.TerrainRenderContext;
+import grondag.canvas.terrain.util.TerrainExecutorTask;
+import grondag.canvas.terrain.util.TerrainTaskQueue;
+
+class TerrainTaskQueueTest {
+	final IntArrayList ran = new IntArrayList();
+
+	Consumer<TerrainRenderContext> action(int id) {
+		return c -> ran.add(id);
+	}
+
+	void drain(TerrainTaskQueue queue, int worker) {
+		TerrainExecutorTask t = queue.poll(worker);
+
+		while (t != null) {
+			t.run(null);
+			t = queue.poll(worker);
+		}
+	}
+
+	@Test
+	void test() {
+		ran.clear();
+
+		// single worker runs in priority order, ties in submission order
+		final TerrainTaskQueue single = new TerrainTaskQueue(1);
+		single.submit(action(3), () -> 9, 0);
+		single.submit(action(1), () -> 1, 0);
+		single.submit(action(2), () -> 4, 0);
+		single.submit(action(0), () -> -1, 0);
+		single.submit(action(4), () -> 9, 0);
+		drain(single, 0);
+		assert ran.equals(IntArrayList.wrap(new int[] {0, 1, 2, 3, 4}));
+		assert single.isEmpty();
+
+		// idle worker steals from busy worker
+		ran.clear();
+		final TerrainTaskQueue pair = new TerrainTaskQueue(2);
+		pair.submit(action(5), () -> 5, 0);
+		pair.submit(action(6), () -> 6, 0);
+		drain(pair, 1);
+		assert ran.equals(IntArrayList.wrap(new int[] {5, 6}));
+		assert pair.isEmpty();
+
+		// cancelled tasks are discarded without running
+		ran.clear();
+		pair.submit(action(7), () -> 7, 0);
+		final TerrainExecutorTask cancelled = pair.submit(action(8), () -> 1, 0);
+		cancelled.cancel();
+		assert pair.size() == 2;
+		drain(pair, 0);
+		assert ran.equals(IntArrayList.wrap(new int[] {7}));
+		assert pair.isEmpty();
+
+		// reprioritize re-reads priority and purges cancelled tasks
+		ran.clear();
+		final int[] dist = {1, 2, 3};
+		final TerrainTaskQueue moving = new TerrainTaskQueue(1);
+
+		for (int i = 0; i < 3; ++i) {
+			final int id = i;
+			moving.submit(action(id), () -> dist[id], 0);
+		}
+
+		moving.submit(action(9), () -> 0, 0).cancel();
+		dist[0] = 30;
+		dist[1] = 20;
+		dist[2] = 10;
+		moving.reprioritize();
+		assert moving.size() == 3;
+		drain(moving, 0);
+		assert ran.equals(IntArrayList.wrap(new int[] {2, 1, 0}));
+
+		// clear empties every worker queue
+		for (int i = 0; i < 100; ++i) {
+			pair.submit(action(i), () -> 0, -1);
+		}
+
+		assert pair.size() == 100;
+		pair.clear();
+		assert pair.isEmpty();
+		assert pair.poll(0) == null;
+	}
+}
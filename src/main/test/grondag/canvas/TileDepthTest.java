@@ -0,0 +1,189 @@
+package grondag.canvas;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.terrain.occlusion.TileDepth;
+
+class TileDepthTest {
+	// smaller than the real raster to keep the reference fast - layout is the same
+	static final int PIXEL_WIDTH = 256;
+	static final int PIXEL_HEIGHT = 128;
+
+	final long[] tiles = new long[128 * 64];
+	final TileDepth depth = new TileDepth();
+
+	/** Brute-force reference: nearest occluder distance at each pixel. */
+	final float[] zbuf = new float[PIXEL_WIDTH * PIXEL_HEIGHT];
+
+	/** Same layout as the rasterizer - 8x8 tile blocks are contiguous. */
+	static int tileIndex(int tileX, int tileY) {
+		return ((tileY & ~7) << 7) | ((tileX & ~7) << 3) | ((tileY & 7) << 3) | (tileX & 7);
+	}
+
+	/** Pixel rectangle with view distance that varies linearly across it, like a projected quad. */
+	static class Quad {
+		final int x0, y0, x1, y1;
+		final float d, dx, dy;
+
+		Quad(Random r) {
+			x0 = r.nextInt(PIXEL_WIDTH);
+			y0 = r.nextInt(PIXEL_HEIGHT);
+			x1 = Math.min(PIXEL_WIDTH - 1, x0 + r.nextInt(80));
+			y1 = Math.min(PIXEL_HEIGHT - 1, y0 + r.nextInt(60));
+			d = 1 + r.nextFloat() * 200;
+			dx = r.nextInt(3) == 0 ? 0 : (r.nextFloat() - 0.5f) * 0.2f;
+			dy = r.nextInt(3) == 0 ? 0 : (r.nextFloat() - 0.5f) * 0.2f;
+		}
+
+		float depthAt(int x, int y) {
+			return d + dx * (x - x0) + dy * (y - y0);
+		}
+
+		float minDepth() {
+			return Math.min(Math.min(depthAt(x0, y0), depthAt(x1, y0)), Math.min(depthAt(x0, y1), depthAt(x1, y1)));
+		}
+
+		float maxDepth() {
+			return Math.max(Math.max(depthAt(x0, y0), depthAt(x1, y0)), Math.max(depthAt(x0, y1), depthAt(x1, y1)));
+		}
+
+		long coverage(int tileX, int tileY) {
+			long result = 0;
+
+			for (int y = 0; y < 8; ++y) {
+				for (int x = 0; x < 8; ++x) {
+					final int px = (tileX << 3) + x;
+					final int py = (tileY << 3) + y;
+
+					if (px >= x0 && px <= x1 && py >= y0 && py <= y1) {
+						result |= 1L << ((y << 3) | x);
+					}
+				}
+			}
+
+			return result;
+		}
+	}
+
+	void draw(Quad q) {
+		for (int y = q.y0; y <= q.y1; ++y) {
+			for (int x = q.x0; x <= q.x1; ++x) {
+				final int i = y * PIXEL_WIDTH + x;
+				zbuf[i] = Math.min(zbuf[i], q.depthAt(x, y));
+			}
+		}
+
+		final int farDepth = TileDepth.farDepth(q.maxDepth());
+
+		for (int ty = q.y0 >> 3; ty <= q.y1 >> 3; ++ty) {
+			for (int tx = q.x0 >> 3; tx <= q.x1 >> 3; ++tx) {
+				final int index = tileIndex(tx, ty);
+				final long coverage = q.coverage(tx, ty);
+				depth.update(index, tiles[index], coverage, farDepth);
+				tiles[index] |= coverage;
+			}
+		}
+	}
+
+	boolean isHidden(Quad q) {
+		final int nearDepth = TileDepth.nearDepth(q.minDepth());
+		final boolean rectBehind = depth.isTileRectBehind(q.x0 >> 3, q.y0 >> 3, q.x1 >> 3, q.y1 >> 3, nearDepth);
+
+		for (int ty = q.y0 >> 3; ty <= q.y1 >> 3; ++ty) {
+			for (int tx = q.x0 >> 3; tx <= q.x1 >> 3; ++tx) {
+				final int index = tileIndex(tx, ty);
+				final boolean isBehind = depth.isBehind(index, nearDepth);
+
+				// block bounds are never tighter than tiles
+				assert !rectBehind || isBehind;
+
+				if ((q.coverage(tx, ty) & ~tiles[index]) != 0 || !isBehind) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	boolean isReferenceHidden(Quad q) {
+		for (int y = q.y0; y <= q.y1; ++y) {
+			for (int x = q.x0; x <= q.x1; ++x) {
+				if (zbuf[y * PIXEL_WIDTH + x] >= q.depthAt(x, y)) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	void reset() {
+		Arrays.fill(tiles, 0);
+		Arrays.fill(zbuf, Float.POSITIVE_INFINITY);
+		depth.clear();
+	}
+
+	@Test
+	void test() {
+		final Random r = new Random(42);
+
+		for (int i = 0; i < 1000; ++i) {
+			final float w = r.nextFloat() * 3000;
+			assert TileDepth.nearDepth(w) <= TileDepth.farDepth(w);
+		}
+
+		// occluders in random order, never hidden when any pixel of the reference is visible
+		int hiddenCount = 0;
+
+		for (int pass = 0; pass < 20; ++pass) {
+			reset();
+
+			for (int i = 0; i < 60; ++i) {
+				draw(new Quad(r));
+			}
+
+			for (int i = 0; i < 500; ++i) {
+				final Quad q = new Quad(r);
+
+				if (isHidden(q)) {
+					assert isReferenceHidden(q);
+					++hiddenCount;
+				}
+			}
+		}
+
+		assert hiddenCount > 0;
+
+		// near occluder drawn after a far one over the whole tile tightens the bound
+		reset();
+		final int index = tileIndex(3, 2);
+		depth.update(index, tiles[index], -1L, 100);
+		tiles[index] = -1L;
+		assert !depth.isBehind(index, 60);
+		depth.update(index, tiles[index], -1L, 50);
+		assert depth.depth(index) == 50;
+		assert depth.isBehind(index, 60);
+
+		// partial occluder behind existing coverage adds pixels and loosens it
+		final int other = tileIndex(4, 2);
+		depth.update(other, 0, 0xFFL, 20);
+		tiles[other] = 0xFFL;
+		depth.update(other, tiles[other], 0xFF00L, 90);
+		assert depth.depth(other) == 90;
+
+		// same pixels again, farther, changes nothing
+		depth.update(other, 0xFFFFL, 0xFFL, 200);
+		assert depth.depth(other) == 90;
+
+		// copy and clear
+		final TileDepth copy = new TileDepth();
+		copy.copyFrom(depth);
+		depth.clear();
+		assert depth.depth(index) == 0;
+		assert copy.depth(index) == 50;
+	}
+}
@@ -0,0 +1,364 @@
+package grondag.canvas;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.lwjgl.system.MemoryUtil;
+
+import grondag.canvas.buffer.TransferBufferPool;
+
+class TransferBufferPoolTest {
+	/** Counts allocations and frees, and remembers freed buffers so that reuse after free can be caught. */
+	static class FakeMemory {
+		final AtomicInteger allocated = new AtomicInteger();
+		final AtomicInteger freed = new AtomicInteger();
+		final Set<ByteBuffer> freedBuffers = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+
+		ByteBuffer alloc(int bytes) {
+			allocated.incrementAndGet();
+			return ByteBuffer.allocate(bytes);
+		}
+
+		void free(ByteBuffer buffer) {
+			freed.incrementAndGet();
+			assert freedBuffers.add(buffer) : "freed twice";
+		}
+	}
+
+	@Test
+	void test() {
+		final FakeMemory memory = new FakeMemory();
+		final AtomicLong now = new AtomicLong();
+		final TransferBufferPool pool = new TransferBufferPool(memory::alloc, memory::free, now::get, 1 << 24, 1000, false);
+
+		assert TransferBufferPool.capacityFor(1) == 4096;
+		assert TransferBufferPool.capacityFor(4096) == 4096;
+		assert TransferBufferPool.capacityFor(4097) == 8192;
+		assert TransferBufferPool.capacityFor(1 << 30) == 1 << 30;
+
+		final ByteBuffer a = pool.claim(5000);
+		assert a.capacity() == 8192 && a.position() == 0 && a.limit() == 8192;
+		a.position(100).limit(200);
+		pool.release(a);
+
+		// same size comes back from the thread cache, cleared
+		final ByteBuffer b = pool.claim(6000);
+		assert b == a && b.position() == 0 && b.limit() == 8192;
+		assert memory.allocated.get() == 1;
+
+		// different size is a new buffer
+		final ByteBuffer c = pool.claim(100);
+		assert c != a && c.capacity() == 4096;
+		assert pool.openCount() == 2 && pool.openBytes() == 8192 + 4096;
+
+		pool.release(b);
+		pool.release(c);
+		assert pool.openCount() == 0 && pool.idleBytes() == 8192 + 4096;
+
+		// more than the thread cache holds goes to the shared list
+		final ArrayList<ByteBuffer> list = new ArrayList<>();
+
+		for (int i = 0; i < 8; ++i) {
+			list.add(pool.claim(4096));
+		}
+
+		list.forEach(pool::release);
+		assert pool.pooledBytes() > 0;
+		final int allocations = memory.allocated.get();
+
+		// ByteBuffer.equals compares content, so match by identity
+		final Set<ByteBuffer> released = Collections.newSetFromMap(new IdentityHashMap<>());
+		released.addAll(list);
+
+		for (int i = 0; i < 8; ++i) {
+			assert released.remove(pool.claim(4096));
+		}
+
+		assert memory.allocated.get() == allocations;
+		assert memory.freed.get() == 0;
+	}
+
+	@Test
+	void cap() {
+		final FakeMemory memory = new FakeMemory();
+		final TransferBufferPool pool = new TransferBufferPool(memory::alloc, memory::free, System::nanoTime, 1 << 20, 1000, false);
+		final ArrayList<ByteBuffer> list = new ArrayList<>();
+
+		// bigger than thread caches
+		for (int i = 0; i < 8; ++i) {
+			list.add(pool.claim(1 << 21));
+		}
+
+		list.forEach(pool::release);
+
+		// nothing fits under the cap
+		assert pool.pooledBytes() == 0;
+		assert memory.freed.get() == 8;
+
+		list.clear();
+
+		for (int i = 0; i < 8; ++i) {
+			list.add(pool.claim(1 << 17));
+		}
+
+		list.forEach(pool::release);
+		assert pool.pooledBytes() <= 1 << 20;
+		assert pool.idleBytes() == 8L << 17;
+	}
+
+	@Test
+	void trim() {
+		final FakeMemory memory = new FakeMemory();
+		final AtomicLong now = new AtomicLong();
+		final TransferBufferPool pool = new TransferBufferPool(memory::alloc, memory::free, now::get, 1 << 24, 1000, false);
+		final ArrayList<ByteBuffer> list = new ArrayList<>();
+
+		for (int i = 0; i < 8; ++i) {
+			list.add(pool.claim(4096 << i));
+		}
+
+		list.forEach(pool::release);
+		final long idle = pool.idleBytes();
+		assert idle > 0;
+
+		// not idle until a full period passes without claims
+		assert !pool.trimIfIdle();
+		now.addAndGet(999);
+		assert !pool.trimIfIdle();
+		pool.release(pool.claim(4096));
+		now.addAndGet(999);
+		assert !pool.trimIfIdle();
+		now.addAndGet(1000);
+		assert pool.trimIfIdle();
+		assert pool.idleBytes() == 0 && memory.freed.get() == 8;
+
+		// only once per idle period
+		now.addAndGet(5000);
+		assert !pool.trimIfIdle();
+
+		// open buffers are not affected
+		final ByteBuffer open = pool.claim(4096);
+		pool.trim();
+		assert !memory.freedBuffers.contains(open);
+	}
+
+	@Test
+	void tracking() {
+		final FakeMemory memory = new FakeMemory();
+		final TransferBufferPool pool = new TransferBufferPool(memory::alloc, memory::free, System::nanoTime, 1 << 24, 1000, true);
+
+		final ByteBuffer a = pool.claim(4096);
+		final ByteBuffer b = pool.claim(4096);
+		pool.release(a);
+
+		final ArrayList<ByteBuffer> leaks = new ArrayList<>();
+		pool.forEachOpen((buffer, stack) -> {
+			assert stack.getStackTrace().length > 0;
+			leaks.add(buffer);
+		});
+
+		assert leaks.size() == 1 && leaks.get(0) == b;
+
+		// second release and unknown buffers are ignored
+		pool.release(a);
+		pool.release(ByteBuffer.allocate(4096));
+		assert pool.openCount() == 1;
+		final ByteBuffer c = pool.claim(4096);
+		final ByteBuffer d = pool.claim(4096);
+		assert c != d;
+	}
+
+	/** No buffer is ever handed to two owners, and nothing is freed while open. */
+	@Test
+	void stress() throws InterruptedException {
+		final FakeMemory memory = new FakeMemory();
+		final TransferBufferPool pool = new TransferBufferPool(memory::alloc, memory::free, System::nanoTime, 1 << 22, 0, false);
+		final AtomicBoolean stop = new AtomicBoolean();
+		final AtomicBoolean failed = new AtomicBoolean();
+		final int threadCount = Math.max(4, Runtime.getRuntime().availableProcessors());
+		final Thread[] threads = new Thread[threadCount];
+		// buffers handed between threads, like uploads built on workers and released on the render thread
+		final ConcurrentLinkedQueue<ByteBuffer> handoff = new ConcurrentLinkedQueue<>();
+
+		for (int t = 0; t < threadCount; ++t) {
+			final int id = t + 1;
+
+			threads[t] = new Thread(() -> {
+				final ThreadLocalRandom rand = ThreadLocalRandom.current();
+				final ArrayList<ByteBuffer> held = new ArrayList<>();
+
+				try {
+					while (!stop.get()) {
+						if (id == 1) {
+							// trimmer
+							pool.trim();
+							Thread.yield();
+							continue;
+						}
+
+						if (held.size() < 8 && rand.nextBoolean()) {
+							final ByteBuffer b = pool.claim(1 + rand.nextInt(1 << (12 + rand.nextInt(10))));
+
+							if (memory.freedBuffers.contains(b)) {
+								failed.set(true);
+							}
+
+							// mark ownership, checked again before release
+							b.putInt(0, id);
+							held.add(b);
+						} else if (!held.isEmpty()) {
+							final ByteBuffer b = held.remove(rand.nextInt(held.size()));
+
+							if (b.getInt(0) != id) {
+								failed.set(true);
+							}
+
+							if (rand.nextInt(4) == 0) {
+								b.putInt(0, -1);
+								handoff.offer(b);
+							} else {
+								pool.release(b);
+							}
+						}
+
+						final ByteBuffer h = handoff.poll();
+
+						if (h != null) {
+							if (h.getInt(0) != -1) {
+								failed.set(true);
+							}
+
+							pool.release(h);
+						}
+					}
+
+					held.forEach(pool::release);
+				} catch (final Throwable e) {
+					failed.set(true);
+				}
+			});
+		}
+
+		for (final Thread thread : threads) {
+			thread.start();
+		}
+
+		Thread.sleep(500);
+		stop.set(true);
+
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+
+		handoff.forEach(pool::release);
+		assert !failed.get();
+		assert pool.openCount() == 0 && pool.openBytes() == 0;
+
+		pool.trim();
+		assert pool.idleBytes() == 0;
+		assert memory.allocated.get() == memory.freed.get();
+	}
+
+	/**
+	 * Claim and release throughput of the pool compared to the previous method, which called
+	 * memAlloc and memFree for every buffer while holding one lock.
+	 */
+	@Test
+	void benchmark() throws InterruptedException {
+		final int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+		final Object lock = new Object();
+
+		final double synchronizedRate = opsPerMs(threads, bytes -> {
+			synchronized (lock) {
+				return MemoryUtil.memAlloc(TransferBufferPool.capacityFor(bytes));
+			}
+		}, b -> {
+			synchronized (lock) {
+				MemoryUtil.memFree(b);
+			}
+		});
+
+		final TransferBufferPool pool = new TransferBufferPool(MemoryUtil::memAlloc, MemoryUtil::memFree, System::nanoTime, 1 << 26, Long.MAX_VALUE, false);
+		final double pooledRate = opsPerMs(threads, pool::claim, pool::release);
+		pool.trim();
+
+		System.out.println(String.format("Transfer buffers, %d threads: synchronized allocation %.0f claims/ms, pool %.0f claims/ms",
+				threads, synchronizedRate, pooledRate));
+	}
+
+	interface Claim {
+		ByteBuffer claim(int bytes);
+	}
+
+	interface Release {
+		void release(ByteBuffer buffer);
+	}
+
+	static double opsPerMs(int threadCount, Claim claim, Release release) throws InterruptedException {
+		final AtomicBoolean stop = new AtomicBoolean();
+		final AtomicLong ops = new AtomicLong();
+		final CountDownLatch start = new CountDownLatch(1);
+		final Thread[] threads = new Thread[threadCount];
+		final Random seeds = new Random(42);
+
+		for (int t = 0; t < threadCount; ++t) {
+			final Random rand = new Random(seeds.nextLong());
+
+			threads[t] = new Thread(() -> {
+				final ByteBuffer[] held = new ByteBuffer[4];
+				long count = 0;
+
+				try {
+					start.await();
+				} catch (final InterruptedException e) {
+					return;
+				}
+
+				while (!stop.get()) {
+					final int i = rand.nextInt(held.length);
+
+					if (held[i] != null) {
+						release.release(held[i]);
+					}
+
+					held[i] = claim.claim(1024 + rand.nextInt(64 * 1024));
+					++count;
+				}
+
+				for (final ByteBuffer b : held) {
+					if (b != null) {
+						release.release(b);
+					}
+				}
+
+				ops.addAndGet(count);
+			});
+		}
+
+		for (final Thread thread : threads) {
+			thread.start();
+		}
+
+		final long startNanos = System.nanoTime();
+		start.countDown();
+		Thread.sleep(300);
+		stop.set(true);
+
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+
+		return ops.get() * 1e6 / (System.nanoTime() - startNanos);
+	}
+}
@@ -0,0 +1,123 @@
+package grondag.canvas;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.terrain.render.UploadScheduler;
+
+class UploadSchedulerTest {
+	final IntArrayList uploaded = new IntArrayList();
+	final IntArrayList discarded = new IntArrayList();
+	long now = 0;
+
+	/** Each upload advances the fake clock by its cost. */
+	class FakeUpload implements UploadScheduler.PendingUpload {
+		final int id;
+		final Object owner;
+		final boolean isFull;
+		final int priority;
+		final int bytes;
+		final long nanos;
+
+		FakeUpload(int id, Object owner, boolean isFull, int priority, int bytes, long nanos) {
+			this.id = id;
+			this.owner = owner;
+			this.isFull = isFull;
+			this.priority = priority;
+			this.bytes = bytes;
+			this.nanos = nanos;
+		}
+
+		@Override
+		public Object owner() {
+			return owner;
+		}
+
+		@Override
+		public boolean isFull() {
+			return isFull;
+		}
+
+		@Override
+		public int priority() {
+			return priority;
+		}
+
+		@Override
+		public int byteCount() {
+			return bytes;
+		}
+
+		@Override
+		public void upload() {
+			now += nanos;
+			uploaded.add(id);
+		}
+
+		@Override
+		public void discard() {
+			discarded.add(id);
+		}
+	}
+
+	@Test
+	void test() {
+		final UploadScheduler scheduler = new UploadScheduler(() -> now);
+		final Object a = new Object();
+		final Object b = new Object();
+		final Object c = new Object();
+
+		// nearest first, byte budget stops after crossing limit
+		scheduler.offer(new FakeUpload(1, a, true, 9, 100, 1));
+		scheduler.offer(new FakeUpload(2, b, true, 1, 100, 1));
+		scheduler.offer(new FakeUpload(3, c, true, 4, 100, 1));
+		assert scheduler.drain(1000, 200);
+		assert uploaded.equals(IntArrayList.wrap(new int[] {2, 3}));
+		assert scheduler.pendingCount() == 1;
+		assert scheduler.lastUploadBytes() == 200;
+
+		// remainder goes next frame
+		uploaded.clear();
+		assert scheduler.drain(1000, 200);
+		assert uploaded.equals(IntArrayList.wrap(new int[] {1}));
+		assert scheduler.isEmpty();
+		assert !scheduler.drain(1000, 200);
+
+		// time budget stops after elapsed exceeds limit, but always makes progress
+		uploaded.clear();
+		scheduler.offer(new FakeUpload(4, a, true, 1, 1, 50));
+		scheduler.offer(new FakeUpload(5, b, true, 2, 1, 50));
+		scheduler.offer(new FakeUpload(6, c, true, 3, 1, 50));
+		scheduler.drain(10, 1000);
+		assert uploaded.equals(IntArrayList.wrap(new int[] {4}));
+		scheduler.drain(100, 1000);
+		assert uploaded.equals(IntArrayList.wrap(new int[] {4, 5, 6}));
+
+		// newer full build supersedes pending full and partial uploads for same owner
+		uploaded.clear();
+		scheduler.offer(new FakeUpload(7, a, true, 1, 1, 1));
+		scheduler.offer(new FakeUpload(8, a, false, 1, 1, 1));
+		scheduler.offer(new FakeUpload(9, b, false, 2, 1, 1));
+		scheduler.offer(new FakeUpload(10, b, false, 2, 1, 1));
+		scheduler.offer(new FakeUpload(11, a, true, 1, 1, 1));
+		scheduler.drain(1000, 1000);
+		assert uploaded.equals(IntArrayList.wrap(new int[] {11, 10}));
+		assert discarded.equals(IntArrayList.wrap(new int[] {9, 7, 8}));
+		assert scheduler.lastDiscardCount() == 3;
+
+		// partial after full keeps both, full first
+		uploaded.clear();
+		scheduler.offer(new FakeUpload(12, c, true, 5, 1, 1));
+		scheduler.offer(new FakeUpload(13, c, false, 5, 1, 1));
+		scheduler.drain(1000, 1000);
+		assert uploaded.equals(IntArrayList.wrap(new int[] {12, 13}));
+
+		// clear discards everything
+		discarded.clear();
+		scheduler.offer(new FakeUpload(14, a, true, 1, 1, 1));
+		scheduler.offer(new FakeUpload(15, b, false, 1, 1, 1));
+		scheduler.clear();
+		assert scheduler.isEmpty();
+		assert discarded.size() == 2;
+	}
+}
@@ -0,0 +1,63 @@
+package grondag.canvas.buffer.encoding;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import org.junit.jupiter.api.Test;
+
+class GreedyQuadEncoderTest {
+	static final int NORTH = 2;
+	static final int BASE = 0xFF808080;
+	static final int OVERLAY = 0xFF30C030;
+
+	/** North face of a block in the template layout, full sprite and one color. */
+	static int[] template(int color) {
+		final int[] template = new int[GreedyQuadEncoder.TEMPLATE_LENGTH];
+		template[0] = NORTH;
+
+		for (int i = 0; i < 4; ++i) {
+			final int t = 1 + i * GreedyQuadEncoder.TEMPLATE_VERTEX_STRIDE;
+			final int cornerU = i == 1 || i == 2 ? 1 : 0;
+			final int cornerV = i >= 2 ? 1 : 0;
+			template[t] = cornerU;
+			template[t + 1] = cornerV;
+			template[t + 2] = color;
+			template[t + 3] = (cornerU == 0 ? 0 : 0xFFFF) | (cornerV == 0 ? 0 : 0xFFFF0000);
+		}
+
+		return template;
+	}
+
+	@Test
+	void test() {
+		final GreedyQuadEncoder encoder = new GreedyQuadEncoder();
+		// colors of quads in the order they reach the collector, including quads buffered by the caller
+		final IntArrayList written = new IntArrayList();
+		encoder.prepare(0, 0, 0, (material, data, length) -> {
+			assert length == 32;
+			written.add(data[3]);
+		});
+
+		// overlay that can be merged lands on a held face
+		assert encoder.hold(template(BASE), null, NORTH, 3, 4, 5);
+		assert written.isEmpty();
+		assert !encoder.hold(template(OVERLAY), null, NORTH, 3, 4, 5);
+		written.add(OVERLAY);
+		assert written.equals(IntArrayList.wrap(new int[] {BASE, OVERLAY}));
+
+		// overlay that can't be merged lands on a held face
+		assert encoder.hold(template(BASE), null, NORTH, 7, 7, 7);
+		encoder.isolate(NORTH, 7, 7, 7);
+		written.add(OVERLAY);
+		assert written.equals(IntArrayList.wrap(new int[] {BASE, OVERLAY, BASE, OVERLAY}));
+
+		// a face added after a direct quad is still held, but not merged
+		written.clear();
+		encoder.isolate(NORTH, 9, 9, 9);
+		assert written.isEmpty();
+		assert encoder.hold(template(BASE), null, NORTH, 9, 9, 9);
+		assert encoder.hold(template(BASE), null, NORTH, 10, 9, 9);
+
+		// faces emitted early are not emitted again
+		encoder.flush();
+		assert written.equals(IntArrayList.wrap(new int[] {BASE, BASE}));
+	}
+}
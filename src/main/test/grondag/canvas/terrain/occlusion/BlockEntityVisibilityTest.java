@@ -0,0 +1,297 @@
+package grondag.canvas.terrain.occlusion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.IntPredicate;
+
+import org.junit.jupiter.api.Test;
+
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Vec3d;
+
+import grondag.canvas.Configurator;
+import grondag.canvas.mixinterface.Matrix4fExt;
+import grondag.canvas.terrain.occlusion.geometry.PackedBox;
+
+/** In the occlusion package to set up the occluder view without a terrain frustum. */
+class BlockEntityVisibilityTest {
+	/** Region ahead of a camera at the origin looking toward -z. */
+	static final BlockPos ORIGIN = new BlockPos(-8, -8, -32);
+
+	/**
+	 * Region-relative wall facing the camera, with the near face at z = -23 and the right
+	 * edge at x = 6.  Points farther than the wall are hidden while x / distance < 6 / 23.
+	 */
+	static final int WALL = PackedBox.pack(0, 0, 8, 14, 16, 9, PackedBox.RANGE_NEAR);
+
+	@Test
+	void boxes() {
+		// region-relative, one block, tested at every occlusion range
+		assert BlockEntityVisibility.blockBox(new BlockPos(-17, 70, 33)) == PackedBox.pack(15, 6, 1, 16, 7, 2, PackedBox.RANGE_EXTREME);
+		assert BlockEntityVisibility.blockBox(new BlockPos(0, 15, -16)) == PackedBox.pack(0, 15, 0, 1, 16, 1, PackedBox.RANGE_EXTREME);
+	}
+
+	@Test
+	void test() {
+		final boolean wasParallel = Configurator.parallelOcclusionRaster;
+		final boolean wasMerged = Configurator.mergeOccluders;
+
+		try {
+			// no region to find chains in
+			Configurator.mergeOccluders = false;
+			Configurator.parallelOcclusionRaster = false;
+			test(new TerrainOccluder(null));
+			Configurator.parallelOcclusionRaster = true;
+			test(new TerrainOccluder(null));
+		} finally {
+			Configurator.parallelOcclusionRaster = wasParallel;
+			Configurator.mergeOccluders = wasMerged;
+		}
+	}
+
+	static void test(TerrainOccluder occluder) {
+		final List<BlockPos> blockEntities = new ArrayList<>();
+		// nearer than the wall
+		blockEntities.add(ORIGIN.add(4, 8, 12));
+		// far behind the wall
+		blockEntities.add(ORIGIN.add(4, 8, 2));
+		// behind the wall, near its edge: padded box reaches x = 6 at distance 28
+		blockEntities.add(ORIGIN.add(12, 8, 2));
+		// block reaches x = 6 at distance 25 and is hidden, but padded box reaches x = 7 at distance 24
+		blockEntities.add(ORIGIN.add(13, 8, 6));
+		// past the edge of the wall
+		blockEntities.add(ORIGIN.add(15, 8, 6));
+
+		final int[] positionCount = new int[1];
+		final Function<BlockPos, BlockPos> positions = pos -> {
+			++positionCount[0];
+			return pos;
+		};
+
+		final int[] testCount = new int[1];
+		final IntPredicate boxTest = box -> {
+			++testCount[0];
+			return occluder.isBoxVisible(box);
+		};
+
+		// same calls as BuiltRenderRegion.updateBlockEntityVisibility
+		occluder.prepareScene(Vec3d.ZERO, 1, perspective(70, 2, 0.05f, 512), new ViewMatrix(1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1, 0, 0, 0, 0, 1));
+		occluder.prepareRegion(ORIGIN, PackedBox.RANGE_NEAR, 4);
+		final int emptyVersion = occluder.rasterVersion();
+		final BlockEntityVisibility empty = BlockEntityVisibility.update(null, blockEntities, emptyVersion, positions, boxTest);
+		assert positionCount[0] == 5;
+		assert testCount[0] == 5;
+
+		// empty raster hides nothing
+		for (int i = 0; i < 5; ++i) {
+			assert empty.isVisible(i);
+		}
+
+		// same raster needs no test
+		assert BlockEntityVisibility.update(empty, blockEntities, occluder.rasterVersion(), positions, boxTest) == empty;
+		assert testCount[0] == 5;
+
+		// occluder data starts with two words of face connectivity
+		occluder.occlude(null, new int[] {0, 0, WALL});
+		assert occluder.rasterVersion() != emptyVersion;
+
+		// changed raster is tested again with the same boxes
+		final BlockEntityVisibility walled = BlockEntityVisibility.update(empty, blockEntities, occluder.rasterVersion(), positions, boxTest);
+		assert walled != empty;
+		assert walled.isCurrent(blockEntities, occluder.rasterVersion());
+		assert positionCount[0] == 5;
+		assert testCount[0] == 10;
+
+		assert walled.isVisible(0);
+		assert !walled.isVisible(1);
+		assert !walled.isVisible(2);
+		assert walled.isVisible(3);
+		assert walled.isVisible(4);
+
+		// new build of the region needs new boxes
+		final List<BlockPos> rebuilt = new ArrayList<>(blockEntities);
+		final BlockEntityVisibility rebuiltVisibility = BlockEntityVisibility.update(walled, rebuilt, occluder.rasterVersion(), positions, boxTest);
+		assert rebuiltVisibility.appliesTo(rebuilt);
+		assert !rebuiltVisibility.appliesTo(blockEntities);
+		assert positionCount[0] == 10;
+		assert testCount[0] == 15;
+		assert !rebuiltVisibility.isVisible(1);
+		assert rebuiltVisibility.isVisible(3);
+	}
+
+	/** Same as the OpenGL projection matrix. */
+	static ViewMatrix perspective(float fovDegrees, float aspect, float near, float far) {
+		final float f = (float) (1 / Math.tan(Math.toRadians(fovDegrees) / 2));
+		return new ViewMatrix(f / aspect, 0, 0, 0, 0, f, 0, 0, 0, 0, (far + near) / (near - far), 2 * far * near / (near - far), 0, 0, -1, 0);
+	}
+
+	static class ViewMatrix implements Matrix4fExt {
+		/** Row major. */
+		private final float[] m;
+
+		ViewMatrix(float... m) {
+			this.m = m;
+		}
+
+		@Override
+		public float a00() {
+			return m[0];
+		}
+
+		@Override
+		public void a00(float val) {
+			m[0] = val;
+		}
+
+		@Override
+		public float a01() {
+			return m[1];
+		}
+
+		@Override
+		public void a01(float val) {
+			m[1] = val;
+		}
+
+		@Override
+		public float a02() {
+			return m[2];
+		}
+
+		@Override
+		public void a02(float val) {
+			m[2] = val;
+		}
+
+		@Override
+		public float a03() {
+			return m[3];
+		}
+
+		@Override
+		public void a03(float val) {
+			m[3] = val;
+		}
+
+		@Override
+		public float a10() {
+			return m[4];
+		}
+
+		@Override
+		public void a10(float val) {
+			m[4] = val;
+		}
+
+		@Override
+		public float a11() {
+			return m[5];
+		}
+
+		@Override
+		public void a11(float val) {
+			m[5] = val;
+		}
+
+		@Override
+		public float a12() {
+			return m[6];
+		}
+
+		@Override
+		public void a12(float val) {
+			m[6] = val;
+		}
+
+		@Override
+		public float a13() {
+			return m[7];
+		}
+
+		@Override
+		public void a13(float val) {
+			m[7] = val;
+		}
+
+		@Override
+		public float a20() {
+			return m[8];
+		}
+
+		@Override
+		public void a20(float val) {
+			m[8] = val;
+		}
+
+		@Override
+		public float a21() {
+			return m[9];
+		}
+
+		@Override
+		public void a21(float val) {
+			m[9] = val;
+		}
+
+		@Override
+		public float a22() {
+			return m[10];
+		}
+
+		@Override
+		public void a22(float val) {
+			m[10] = val;
+		}
+
+		@Override
+		public float a23() {
+			return m[11];
+		}
+
+		@Override
+		public void a23(float val) {
+			m[11] = val;
+		}
+
+		@Override
+		public float a30() {
+			return m[12];
+		}
+
+		@Override
+		public void a30(float val) {
+			m[12] = val;
+		}
+
+		@Override
+		public float a31() {
+			return m[13];
+		}
+
+		@Override
+		public void a31(float val) {
+			m[13] = val;
+		}
+
+		@Override
+		public float a32() {
+			return m[14];
+		}
+
+		@Override
+		public void a32(float val) {
+			m[14] = val;
+		}
+
+		@Override
+		public float a33() {
+			return m[15];
+		}
+
+		@Override
+		public void a33(float val) {
+			m[15] = val;
+		}
+	}
+}
@@ -0,0 +1,162 @@
+package grondag.canvas.terrain.occlusion;
+
+import static grondag.canvas.terrain.occlusion.Constants.V000;
+import static grondag.canvas.terrain.occlusion.Constants.V001;
+import static grondag.canvas.terrain.occlusion.Constants.V010;
+import static grondag.canvas.terrain.occlusion.Constants.V011;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.Configurator;
+
+/** In the occlusion package so that quad tests can be compared on the package-private rasterizer. */
+class CoveragePyramidTest {
+	static final int TILE_WIDTH = 128;
+	static final int TILE_HEIGHT = 64;
+
+	final long[] tiles = new long[TILE_WIDTH * TILE_HEIGHT];
+	final CoveragePyramid pyramid = new CoveragePyramid();
+
+	/** Same layout as the rasterizer - 8x8 tile blocks are contiguous. */
+	static int tileIndex(int tileX, int tileY) {
+		return ((tileY & ~7) << 7) | ((tileX & ~7) << 3) | ((tileY & 7) << 3) | (tileX & 7);
+	}
+
+	void draw(int tileX, int tileY, long coverage) {
+		final int index = tileIndex(tileX, tileY);
+		tiles[index] |= coverage;
+		pyramid.update(index, tiles[index]);
+	}
+
+	boolean flatFull(int x0, int y0, int x1, int y1) {
+		for (int y = y0; y <= y1; ++y) {
+			for (int x = x0; x <= x1; ++x) {
+				if (tiles[tileIndex(x, y)] != -1L) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	boolean flatEmpty(int x0, int y0, int x1, int y1) {
+		for (int y = y0; y <= y1; ++y) {
+			for (int x = x0; x <= x1; ++x) {
+				if (tiles[tileIndex(x, y)] != 0) {
+					return false;
+				}
+			}
+		}
+
+		return true;
+	}
+
+	void check(Random r, int count) {
+		for (int i = 0; i < count; ++i) {
+			final int x0 = r.nextInt(TILE_WIDTH);
+			final int y0 = r.nextInt(TILE_HEIGHT);
+			final int x1 = x0 + r.nextInt(TILE_WIDTH - x0);
+			final int y1 = y0 + r.nextInt(TILE_HEIGHT - y0);
+			assert pyramid.isTileRectFull(x0, y0, x1, y1) == flatFull(x0, y0, x1, y1);
+			assert pyramid.isTileRectEmpty(x0, y0, x1, y1) == flatEmpty(x0, y0, x1, y1);
+		}
+	}
+
+	@Test
+	void test() {
+		final Random r = new Random(42);
+
+		assert pyramid.isTileRectEmpty(0, 0, TILE_WIDTH - 1, TILE_HEIGHT - 1);
+		assert !pyramid.isTileRectFull(0, 0, 0, 0);
+
+		// fill with random rectangles of full and partial tiles, checking against the flat tiles as coverage grows
+		for (int pass = 0; pass < 200; ++pass) {
+			final int x0 = r.nextInt(TILE_WIDTH);
+			final int y0 = r.nextInt(TILE_HEIGHT);
+			final int x1 = Math.min(TILE_WIDTH - 1, x0 + r.nextInt(40));
+			final int y1 = Math.min(TILE_HEIGHT - 1, y0 + r.nextInt(30));
+			final boolean full = r.nextInt(4) != 0;
+
+			for (int y = y0; y <= y1; ++y) {
+				for (int x = x0; x <= x1; ++x) {
+					draw(x, y, full ? -1L : r.nextLong() & r.nextLong());
+				}
+			}
+
+			check(r, 200);
+		}
+
+		// whole screen
+		for (int y = 0; y < TILE_HEIGHT; ++y) {
+			for (int x = 0; x < TILE_WIDTH; ++x) {
+				draw(x, y, -1L);
+			}
+		}
+
+		assert pyramid.isTileRectFull(0, 0, TILE_WIDTH - 1, TILE_HEIGHT - 1);
+		check(r, 200);
+
+		// copy and clear
+		final CoveragePyramid copy = new CoveragePyramid();
+		copy.copyFrom(pyramid);
+		assert copy.isTileRectFull(0, 0, TILE_WIDTH - 1, TILE_HEIGHT - 1);
+
+		pyramid.clear();
+		assert pyramid.isTileRectEmpty(0, 0, TILE_WIDTH - 1, TILE_HEIGHT - 1);
+		assert copy.isTileRectFull(0, 0, TILE_WIDTH - 1, TILE_HEIGHT - 1);
+	}
+
+	/** Quad tests with the pyramid's early reject give the same results as the flat tile walk. */
+	@Test
+	void rasterMatch() {
+		final boolean wasParallel = Configurator.parallelOcclusionRaster;
+		final Rasterizer raster = new Rasterizer();
+		final Rasterizer flat = new Rasterizer();
+		int visibleCount = 0;
+		int hiddenCount = 0;
+
+		try {
+			Configurator.parallelOcclusionRaster = false;
+
+			for (long seed = 1; seed <= 4; ++seed) {
+				final float[] occluders = RasterBandsTest.scene(seed, 3000);
+				final float[] boxes = RasterBandsTest.scene(seed + 100, 3000);
+				final Random r = new Random(seed);
+				raster.clear();
+				int i = 0;
+
+				// compare as coverage grows
+				while (i < 3000) {
+					final int to = Math.min(3000, i + 1 + r.nextInt(400));
+					RasterBandsTest.draw(raster, occluders, i, to);
+					i = to;
+
+					// an empty pyramid never rejects, so every test walks the tiles
+					flat.copyFrom(raster);
+					flat.pyramid.clear();
+
+					for (int j = 0; j < 200; ++j) {
+						final int box = r.nextInt(3000);
+						RasterBandsTest.setupQuad(raster, boxes, box);
+						RasterBandsTest.setupQuad(flat, boxes, box);
+						final boolean visible = raster.testQuad(V000, V001, V011, V010);
+						assert visible == flat.testQuad(V000, V001, V011, V010);
+
+						if (visible) {
+							++visibleCount;
+						} else {
+							++hiddenCount;
+						}
+					}
+				}
+			}
+		} finally {
+			Configurator.parallelOcclusionRaster = wasParallel;
+		}
+
+		assert visibleCount > 0 && hiddenCount > 0;
+	}
+}
@@ -0,0 +1,197 @@
+package grondag.canvas.terrain.occlusion;
+
+import static grondag.canvas.terrain.occlusion.Constants.HALF_PRECISE_HEIGHT;
+import static grondag.canvas.terrain.occlusion.Constants.HALF_PRECISE_WIDTH;
+import static grondag.canvas.terrain.occlusion.Constants.IDX_VERTEX_DATA;
+import static grondag.canvas.terrain.occlusion.Constants.MID_HEIGHT;
+import static grondag.canvas.terrain.occlusion.Constants.MID_WIDTH;
+import static grondag.canvas.terrain.occlusion.Constants.PV_PX;
+import static grondag.canvas.terrain.occlusion.Constants.PV_PY;
+import static grondag.canvas.terrain.occlusion.Constants.PV_W;
+import static grondag.canvas.terrain.occlusion.Constants.PV_X;
+import static grondag.canvas.terrain.occlusion.Constants.PV_Y;
+import static grondag.canvas.terrain.occlusion.Constants.PV_Z;
+import static grondag.canvas.terrain.occlusion.Constants.TILE_COUNT;
+import static grondag.canvas.terrain.occlusion.Constants.TILE_HEIGHT;
+import static grondag.canvas.terrain.occlusion.Constants.TILE_WIDTH;
+import static grondag.canvas.terrain.occlusion.Constants.V000;
+import static grondag.canvas.terrain.occlusion.Constants.V001;
+import static grondag.canvas.terrain.occlusion.Constants.V010;
+import static grondag.canvas.terrain.occlusion.Constants.V011;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.Configurator;
+
+/** In the occlusion package because the rasterizer is package-private. */
+class RasterBandsTest {
+	static final int VERTEX_FLOATS = 16;
+
+	/** Random quads as clip-space x, y, z, w for four vertices, some crossing the near plane. */
+	static float[] scene(long seed, int count) {
+		final Random r = new Random(seed);
+		final float[] result = new float[count * VERTEX_FLOATS];
+
+		for (int i = 0; i < count; ++i) {
+			final double cx = r.nextDouble() * 2.4 - 1.2;
+			final double cy = r.nextDouble() * 2.4 - 1.2;
+			final double size = 0.002 * Math.pow(300, r.nextDouble());
+			final double angle = r.nextDouble() * Math.PI * 2;
+			final boolean clipped = r.nextInt(10) == 0;
+
+			for (int v = 0; v < 4; ++v) {
+				final double a = angle + v * Math.PI / 2;
+				final float w = 2 + r.nextFloat() * 300;
+				final int base = i * VERTEX_FLOATS + v * 4;
+				result[base] = (float) ((cx + Math.cos(a) * size) * w);
+				result[base + 1] = (float) ((cy + Math.sin(a) * size) * w);
+				// one vertex of clipped quads is behind the near plane
+				result[base + 2] = clipped && v == 0 ? -w * 0.5f : w * 0.5f;
+				result[base + 3] = w;
+			}
+		}
+
+		return result;
+	}
+
+	/** Same math as {@link Rasterizer#setupVertex(int, int, int, int)} after the matrix transform. */
+	static void vertex(Rasterizer raster, int baseIndex, float[] scene, int index) {
+		final int[] data = raster.data;
+		final float x = scene[index];
+		final float y = scene[index + 1];
+		final float w = scene[index + 3];
+		data[baseIndex + PV_X + IDX_VERTEX_DATA] = Float.floatToRawIntBits(x);
+		data[baseIndex + PV_Y + IDX_VERTEX_DATA] = Float.floatToRawIntBits(y);
+		data[baseIndex + PV_Z + IDX_VERTEX_DATA] = Float.floatToRawIntBits(scene[index + 2]);
+		data[baseIndex + PV_W + IDX_VERTEX_DATA] = Float.floatToRawIntBits(w);
+
+		final float iw = 1f / w;
+		data[baseIndex + PV_PX + IDX_VERTEX_DATA] = Math.round(x * iw * HALF_PRECISE_WIDTH) + HALF_PRECISE_WIDTH;
+		data[baseIndex + PV_PY + IDX_VERTEX_DATA] = Math.round(y * iw * HALF_PRECISE_HEIGHT) + HALF_PRECISE_HEIGHT;
+	}
+
+	static void setupQuad(Rasterizer raster, float[] scene, int quad) {
+		final int base = quad * VERTEX_FLOATS;
+		vertex(raster, V000, scene, base);
+		vertex(raster, V001, scene, base + 4);
+		vertex(raster, V011, scene, base + 8);
+		vertex(raster, V010, scene, base + 12);
+	}
+
+	static void draw(Rasterizer raster, float[] scene, int from, int to) {
+		for (int i = from; i < to; ++i) {
+			setupQuad(raster, scene, i);
+			raster.drawQuad(V000, V001, V011, V010);
+		}
+	}
+
+	static void assertSame(Rasterizer a, Rasterizer b) {
+		a.flush();
+		b.flush();
+
+		for (int i = 0; i < TILE_COUNT; ++i) {
+			assert a.tiles[i] == b.tiles[i];
+			assert a.depth.depth(i) == b.depth.depth(i);
+		}
+
+		for (int y = 0; y < MID_HEIGHT; ++y) {
+			for (int x = 0; x < MID_WIDTH; ++x) {
+				final int x0 = x << 3;
+				final int y0 = y << 3;
+				assert a.pyramid.isTileRectFull(x0, y0, x0 + 7, y0 + 7) == b.pyramid.isTileRectFull(x0, y0, x0 + 7, y0 + 7);
+				assert a.pyramid.isTileRectEmpty(x0, y0, x0 + 7, y0 + 7) == b.pyramid.isTileRectEmpty(x0, y0, x0 + 7, y0 + 7);
+				assert a.depth.isTileRectBehind(x0, y0, x0 + 7, y0 + 7, 1000) == b.depth.isTileRectBehind(x0, y0, x0 + 7, y0 + 7, 1000);
+			}
+		}
+
+		// top level spans the full height
+		assert a.pyramid.isTileRectFull(0, 0, TILE_WIDTH / 2 - 1, TILE_HEIGHT - 1) == b.pyramid.isTileRectFull(0, 0, TILE_WIDTH / 2 - 1, TILE_HEIGHT - 1);
+		assert a.pyramid.isTileRectFull(TILE_WIDTH / 2, 0, TILE_WIDTH - 1, TILE_HEIGHT - 1) == b.pyramid.isTileRectFull(TILE_WIDTH / 2, 0, TILE_WIDTH - 1, TILE_HEIGHT - 1);
+	}
+
+	@Test
+	void test() {
+		final boolean wasParallel = Configurator.parallelOcclusionRaster;
+		final Rasterizer serial = new Rasterizer();
+		final Rasterizer banded = new Rasterizer();
+
+		try {
+			for (long seed = 1; seed <= 4; ++seed) {
+				final float[] scene = scene(seed, 3000);
+				final Random r = new Random(seed);
+				serial.clear();
+				banded.clear();
+				int i = 0;
+
+				// tests between batches see every prior occluder
+				while (i < 3000) {
+					final int to = Math.min(3000, i + 1 + r.nextInt(400));
+					Configurator.parallelOcclusionRaster = false;
+					draw(serial, scene, i, to);
+					Configurator.parallelOcclusionRaster = true;
+					draw(banded, scene, i, to);
+					i = to;
+
+					final int probe = r.nextInt(3000);
+					setupQuad(serial, scene, probe);
+					setupQuad(banded, scene, probe);
+					assert serial.testQuad(V000, V001, V011, V010) == banded.testQuad(V000, V001, V011, V010);
+				}
+
+				assertSame(serial, banded);
+			}
+
+			// switching modes with quads pending keeps submission order
+			final float[] scene = scene(5, 1000);
+			serial.clear();
+			banded.clear();
+			Configurator.parallelOcclusionRaster = false;
+			draw(serial, scene, 0, 1000);
+			Configurator.parallelOcclusionRaster = true;
+			draw(banded, scene, 0, 600);
+			Configurator.parallelOcclusionRaster = false;
+			draw(banded, scene, 600, 1000);
+			assertSame(serial, banded);
+		} finally {
+			Configurator.parallelOcclusionRaster = wasParallel;
+		}
+	}
+
+	/** Prints quads drawn per millisecond with and without bands. Only meaningful with more than one core. */
+	@Test
+	void benchmark() {
+		final boolean wasParallel = Configurator.parallelOcclusionRaster;
+		final float[] scene = scene(42, 4000);
+		final Rasterizer raster = new Rasterizer();
+
+		try {
+			for (int pass = 0; pass < 2; ++pass) {
+				final boolean isLast = pass == 1;
+				final long serialNanos = time(raster, scene, false, isLast ? 40 : 10);
+				final long bandedNanos = time(raster, scene, true, isLast ? 40 : 10);
+
+				if (isLast) {
+					System.out.println(String.format("Occlusion raster, %d threads: serial %.1f quads/ms, banded %.1f quads/ms",
+							Runtime.getRuntime().availableProcessors(), 40 * 4000 * 1e6 / serialNanos, 40 * 4000 * 1e6 / bandedNanos));
+				}
+			}
+		} finally {
+			Configurator.parallelOcclusionRaster = wasParallel;
+		}
+	}
+
+	static long time(Rasterizer raster, float[] scene, boolean parallel, int repeats) {
+		Configurator.parallelOcclusionRaster = parallel;
+		final long start = System.nanoTime();
+
+		for (int i = 0; i < repeats; ++i) {
+			raster.clear();
+			draw(raster, scene, 0, scene.length / VERTEX_FLOATS);
+			raster.flush();
+		}
+
+		return System.nanoTime() - start;
+	}
+}
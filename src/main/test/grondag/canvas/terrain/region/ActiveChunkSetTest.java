@@ -0,0 +1,215 @@
+package grondag.canvas.terrain.region;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class ActiveChunkSetTest {
+	static final int SLOT_COUNT = 128 * 128;
+
+	@Test
+	void test() {
+		final ActiveChunkSet set = new ActiveChunkSet(SLOT_COUNT);
+		assert set.size() == 0;
+		assert !set.isDirty();
+		assert set.refresh() == 0;
+
+		set.add(5);
+		set.add(9);
+		set.add(5);
+		assert set.size() == 2;
+		assert set.isDirty();
+		assert set.refresh() == 2;
+		assert !set.isDirty();
+		assert set.snapshotSlot(0) == 5 && set.snapshotSlot(1) == 9;
+
+		// removing a missing slot changes nothing
+		set.remove(7);
+		assert !set.isDirty();
+
+		// copy is unchanged until refreshed
+		set.remove(5);
+		assert set.isDirty();
+		assert set.snapshotSlot(0) == 5;
+		assert set.refresh() == 1;
+		assert set.snapshotSlot(0) == 9;
+		assert !set.contains(5) && set.contains(9);
+
+		// reopen
+		set.add(5);
+		assert set.contains(5);
+		assert set.refresh() == 2;
+
+		// random opens and closes match a reference
+		final Random rand = new Random(42);
+		final boolean[] expected = new boolean[SLOT_COUNT];
+		expected[5] = true;
+		expected[9] = true;
+		int expectedSize = 2;
+
+		for (int pass = 0; pass < 100; ++pass) {
+			for (int i = 0; i < 500; ++i) {
+				final int slot = rand.nextInt(SLOT_COUNT);
+
+				if (rand.nextBoolean()) {
+					set.add(slot);
+
+					if (!expected[slot]) {
+						expected[slot] = true;
+						++expectedSize;
+					}
+				} else {
+					set.remove(slot);
+
+					if (expected[slot]) {
+						expected[slot] = false;
+						--expectedSize;
+					}
+				}
+			}
+
+			final int size = set.refresh();
+			assert size == expectedSize;
+			final boolean[] seen = new boolean[SLOT_COUNT];
+
+			for (int i = 0; i < size; ++i) {
+				final int slot = set.snapshotSlot(i);
+				assert expected[slot] && !seen[slot];
+				seen[slot] = true;
+			}
+		}
+	}
+
+	/** Stands in for {@link RenderRegionChunk} in the update sweep - locked, with distance and region updates. */
+	static class FakeChunk {
+		final int[] regionDistances = new int[16];
+		int chunkX;
+		int chunkZ;
+		boolean isOpen;
+		int distanceVersion;
+		int squaredDistance;
+		int updateCount;
+
+		synchronized void update(int version, int cameraX, int cameraZ) {
+			if (version != distanceVersion) {
+				distanceVersion = version;
+				final int cx = cameraX - chunkX;
+				final int cz = cameraZ - chunkZ;
+				squaredDistance = cx * cx + cz * cz;
+			}
+
+			if (isOpen) {
+				for (int y = 0; y < 16; ++y) {
+					regionDistances[y] = squaredDistance + y * y;
+				}
+
+				++updateCount;
+			}
+		}
+	}
+
+	static int slot(int chunkX, int chunkZ) {
+		return (chunkX & 127) | ((chunkZ & 127) << 7);
+	}
+
+	static void open(FakeChunk[] chunks, ActiveChunkSet set, int chunkX, int chunkZ) {
+		final int slot = slot(chunkX, chunkZ);
+		final FakeChunk chunk = chunks[slot];
+		chunk.chunkX = chunkX;
+		chunk.chunkZ = chunkZ;
+		chunk.isOpen = true;
+		set.add(slot);
+	}
+
+	static void close(FakeChunk[] chunks, ActiveChunkSet set, int chunkX, int chunkZ) {
+		final int slot = slot(chunkX, chunkZ);
+		chunks[slot].isOpen = false;
+		set.remove(slot);
+	}
+
+	/**
+	 * Runs the per-pass update sweep with the camera moving one chunk every few passes, so that
+	 * columns open and close at the edges and the active set is refreshed.
+	 *
+	 * @return elapsed nanos and total chunk updates
+	 */
+	static long[] sweep(int distance, boolean activeOnly, int passes) {
+		final FakeChunk[] chunks = new FakeChunk[SLOT_COUNT];
+
+		for (int i = 0; i < SLOT_COUNT; ++i) {
+			chunks[i] = new FakeChunk();
+		}
+
+		final ActiveChunkSet set = new ActiveChunkSet(SLOT_COUNT);
+		// stays inside 128 slots while the camera moves
+		final int radius = Math.min(distance, 62);
+
+		for (int x = -radius; x <= radius; ++x) {
+			for (int z = -radius; z <= radius; ++z) {
+				open(chunks, set, x, z);
+			}
+		}
+
+		int cameraX = 0;
+		int version = 1;
+		final long start = System.nanoTime();
+
+		for (int pass = 0; pass < passes; ++pass) {
+			if (pass % 20 == 19) {
+				for (int z = -radius; z <= radius; ++z) {
+					close(chunks, set, cameraX - radius, z);
+					open(chunks, set, cameraX + radius + 1, z);
+				}
+
+				++cameraX;
+				++version;
+			}
+
+			if (activeOnly) {
+				final int count = set.refresh();
+
+				for (int i = 0; i < count; ++i) {
+					chunks[set.snapshotSlot(i)].update(version, cameraX, 0);
+				}
+			} else {
+				for (int i = 0; i < SLOT_COUNT; ++i) {
+					chunks[i].update(version, cameraX, 0);
+				}
+			}
+		}
+
+		final long nanos = System.nanoTime() - start;
+		long updates = 0;
+
+		for (final FakeChunk chunk : chunks) {
+			updates += chunk.updateCount;
+		}
+
+		return new long[] {nanos, updates};
+	}
+
+	/** Sweep cost of visiting every slot compared to visiting active slots, at different chunk distances. */
+	@Test
+	void benchmark() {
+		final int passes = 1000;
+
+		for (final int distance : new int[] {12, 32, 64}) {
+			long fullNanos = Long.MAX_VALUE;
+			long activeNanos = Long.MAX_VALUE;
+
+			// best of several runs, the first ones warm up
+			for (int run = 0; run < 5; ++run) {
+				final long[] full = sweep(distance, false, passes);
+				final long[] active = sweep(distance, true, passes);
+
+				// same chunks updated the same number of times
+				assert full[1] == active[1];
+				fullNanos = Math.min(fullNanos, full[0]);
+				activeNanos = Math.min(activeNanos, active[0]);
+			}
+
+			System.out.println(String.format("Region chunk sweep, distance %d: all slots %.1f us, active slots %.1f us per pass",
+					distance, fullNanos / passes / 1000.0, activeNanos / passes / 1000.0));
+		}
+	}
+}
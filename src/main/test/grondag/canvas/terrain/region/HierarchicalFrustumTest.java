@@ -0,0 +1,153 @@
+package grondag.canvas.terrain.region;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import grondag.canvas.render.CanvasFrustum;
+
+/** In the region package to test column classification used by region storage. */
+class HierarchicalFrustumTest {
+	static final double NEAR = 0.05;
+	static final double FAR = 1024;
+
+	static class TestFrustum extends CanvasFrustum {
+		/** Perspective projection looking along the given yaw and pitch from the given position. */
+		void prepare(double x, double y, double z, double yaw, double pitch, double fovY, double aspect) {
+			final double f = 1 / Math.tan(fovY / 2);
+			final double[][] p = {
+				{f / aspect, 0, 0, 0},
+				{0, f, 0, 0},
+				{0, 0, (FAR + NEAR) / (NEAR - FAR), 2 * FAR * NEAR / (NEAR - FAR)},
+				{0, 0, -1, 0}
+			};
+
+			final double cp = Math.cos(pitch);
+			final double sp = Math.sin(pitch);
+			final double cy = Math.cos(yaw);
+			final double sy = Math.sin(yaw);
+			final double[][] rx = {{1, 0, 0, 0}, {0, cp, -sp, 0}, {0, sp, cp, 0}, {0, 0, 0, 1}};
+			final double[][] ry = {{cy, 0, sy, 0}, {0, 1, 0, 0}, {-sy, 0, cy, 0}, {0, 0, 0, 1}};
+			final double[][] m = multiply(p, multiply(rx, ry));
+
+			mvpMatrix.a00((float) m[0][0]);
+			mvpMatrix.a01((float) m[0][1]);
+			mvpMatrix.a02((float) m[0][2]);
+			mvpMatrix.a03((float) m[0][3]);
+			mvpMatrix.a10((float) m[1][0]);
+			mvpMatrix.a11((float) m[1][1]);
+			mvpMatrix.a12((float) m[1][2]);
+			mvpMatrix.a13((float) m[1][3]);
+			mvpMatrix.a20((float) m[2][0]);
+			mvpMatrix.a21((float) m[2][1]);
+			mvpMatrix.a22((float) m[2][2]);
+			mvpMatrix.a23((float) m[2][3]);
+			mvpMatrix.a30((float) m[3][0]);
+			mvpMatrix.a31((float) m[3][1]);
+			mvpMatrix.a32((float) m[3][2]);
+			mvpMatrix.a33((float) m[3][3]);
+
+			lastViewXf = (float) x;
+			lastViewYf = (float) y;
+			lastViewZf = (float) z;
+			extractPlanes();
+		}
+
+		static double[][] multiply(double[][] a, double[][] b) {
+			final double[][] result = new double[4][4];
+
+			for (int r = 0; r < 4; ++r) {
+				for (int c = 0; c < 4; ++c) {
+					for (int i = 0; i < 4; ++i) {
+						result[r][c] += a[r][i] * b[i][c];
+					}
+				}
+			}
+
+			return result;
+		}
+	}
+
+	@Test
+	void test() {
+		final Random rand = new Random(42);
+		final TestFrustum frustum = new TestFrustum();
+		int visibleBoxes = 0;
+		int visibleRegions = 0;
+		int outsideGroups = 0;
+		int insideGroups = 0;
+
+		for (int view = 0; view < 200; ++view) {
+			// some views far from the origin, where float coordinates are coarse
+			final double range = view % 4 == 0 ? 1000000 : 1000;
+			final double camX = (rand.nextDouble() - 0.5) * range;
+			final double camY = rand.nextDouble() * 256;
+			final double camZ = (rand.nextDouble() - 0.5) * range;
+			frustum.prepare(camX, camY, camZ, rand.nextDouble() * Math.PI * 2, (rand.nextDouble() - 0.5) * Math.PI,
+					Math.toRadians(30 + rand.nextInt(80)), 0.5 + rand.nextDouble() * 2);
+
+			// boxes tested one at a time, like particles and entities, use cached cell masks
+			for (int i = 0; i < 2000; ++i) {
+				final double x0 = camX + (rand.nextDouble() - 0.5) * 256;
+				final double y0 = camY + (rand.nextDouble() - 0.5) * 256;
+				final double z0 = camZ + (rand.nextDouble() - 0.5) * 256;
+				final double size = i % 10 == 0 ? rand.nextDouble() * 40 : rand.nextDouble() * 3;
+				final double x1 = x0 + rand.nextDouble() * size;
+				final double y1 = y0 + rand.nextDouble() * size;
+				final double z1 = z0 + rand.nextDouble() * size;
+				final boolean expected = frustum.isVisible(x0, y0, z0, x1, y1, z1, CanvasFrustum.ALL_PLANES);
+
+				// twice so the second test finds the cell cached
+				assert frustum.isVisible(x0, y0, z0, x1, y1, z1) == expected;
+				assert frustum.isVisible(x0, y0, z0, x1, y1, z1) == expected;
+
+				if (expected) {
+					++visibleBoxes;
+				}
+			}
+
+			// 4x4 column groups, then columns, then regions with centers computed like BuiltRenderRegion
+			final int camChunkX = (int) Math.floor(camX) >> 4;
+			final int camChunkZ = (int) Math.floor(camZ) >> 4;
+
+			for (int g = 0; g < 20; ++g) {
+				final int minChunkX = ((camChunkX + rand.nextInt(32) - 16) & ~3);
+				final int minChunkZ = ((camChunkZ + rand.nextInt(32) - 16) & ~3);
+				final int groupMask = RenderRegionChunk.classifyColumns(frustum, camX, camY, camZ, minChunkX, minChunkZ, minChunkX + 3, minChunkZ + 3, CanvasFrustum.ALL_PLANES);
+
+				if (groupMask == CanvasFrustum.OUTSIDE) {
+					++outsideGroups;
+				} else if (groupMask == 0) {
+					++insideGroups;
+				}
+
+				for (int chunkX = minChunkX; chunkX < minChunkX + 4; ++chunkX) {
+					for (int chunkZ = minChunkZ; chunkZ < minChunkZ + 4; ++chunkZ) {
+						final int columnMask = groupMask == CanvasFrustum.OUTSIDE || groupMask == 0 ? groupMask
+								: RenderRegionChunk.classifyColumns(frustum, camX, camY, camZ, chunkX, chunkZ, chunkX, chunkZ, groupMask);
+
+						assert columnMask == CanvasFrustum.OUTSIDE || (columnMask & ~groupMask) == 0;
+
+						for (int y = 0; y < 256; y += 16) {
+							final float cx = (float) ((chunkX << 4) + 8 - camX);
+							final float cy = (float) (y + 8 - camY);
+							final float cz = (float) ((chunkZ << 4) + 8 - camZ);
+							final boolean expected = frustum.isRegionVisible(cx, cy, cz, CanvasFrustum.ALL_PLANES);
+							assert (columnMask != CanvasFrustum.OUTSIDE && frustum.isRegionVisible(cx, cy, cz, columnMask)) == expected;
+
+							if (expected) {
+								++visibleRegions;
+							}
+						}
+					}
+				}
+			}
+		}
+
+		// make sure the test covers every case
+		assert visibleBoxes > 0;
+		assert visibleRegions > 0;
+		assert outsideGroups > 0;
+		assert insideGroups > 0;
+	}
+}
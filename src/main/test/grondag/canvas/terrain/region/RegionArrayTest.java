@@ -0,0 +1,251 @@
+package grondag.canvas.terrain.region;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+class RegionArrayTest {
+	static final int LENGTH = 16;
+
+	static class Region {
+		final int generation;
+		final int index;
+		final AtomicInteger closeCount = new AtomicInteger();
+
+		Region(int generation, int index) {
+			this.generation = generation;
+			this.index = index;
+		}
+	}
+
+	/** Same calls as the region column: lookups try the array before creating, close holds the lock. */
+	static class Column {
+		final RegionArray<Region> regions = new RegionArray<>(this, LENGTH);
+		final AtomicInteger created = new AtomicInteger();
+		final AtomicInteger closed = new AtomicInteger();
+		int generation = 0;
+
+		Region getOrCreate(int index) {
+			final Region r = regions.get(index);
+			return r == null ? create(index) : r;
+		}
+
+		Region create(int index) {
+			return regions.create(index, () -> {
+				assert Thread.holdsLock(this) && !regions.isOpen();
+				++generation;
+			}, () -> {
+				assert Thread.holdsLock(this) && regions.get(index) == null;
+				created.incrementAndGet();
+				return new Region(generation, index);
+			});
+		}
+
+		synchronized void close() {
+			regions.close(r -> {
+				assert r.closeCount.incrementAndGet() == 1;
+				closed.incrementAndGet();
+			});
+		}
+
+		synchronized int generation() {
+			return generation;
+		}
+	}
+
+	@Test
+	void test() {
+		final Object owner = new Object();
+		final RegionArray<Region> array = new RegionArray<>(owner, LENGTH);
+		assert !array.isOpen();
+		assert array.get(3) == null;
+		assert !array.close(r -> {
+			assert false;
+		});
+
+		final AtomicInteger opened = new AtomicInteger();
+		final Region a = new Region(1, 3);
+		final Region b = new Region(1, 7);
+		assert array.create(3, opened::incrementAndGet, () -> a) == a;
+		assert opened.get() == 1;
+		assert array.isOpen();
+		assert array.create(7, opened::incrementAndGet, () -> b) == b;
+		assert opened.get() == 1;
+		assert array.get(3) == a && array.get(7) == b && array.get(4) == null;
+
+		// existing region is returned without calling the factory
+		assert array.create(3, opened::incrementAndGet, () -> {
+			assert false;
+			return null;
+		}) == a;
+
+		final AtomicInteger visited = new AtomicInteger();
+		array.forEach(r -> visited.incrementAndGet());
+		assert visited.get() == 2;
+
+		visited.set(0);
+		assert array.close(r -> {
+			assert Thread.holdsLock(owner);
+			visited.incrementAndGet();
+		});
+		assert visited.get() == 2;
+		assert !array.isOpen();
+		assert array.get(3) == null;
+
+		// reopened array is empty
+		final Region c = new Region(2, 7);
+		assert array.create(7, opened::incrementAndGet, () -> c) == c;
+		assert opened.get() == 2;
+		assert array.get(3) == null && array.get(7) == c;
+	}
+
+	@Test
+	void stress() throws InterruptedException {
+		final Column column = new Column();
+		final AtomicBoolean stop = new AtomicBoolean();
+		final AtomicBoolean failed = new AtomicBoolean();
+		final int threadCount = Math.max(4, Runtime.getRuntime().availableProcessors());
+		final Thread[] threads = new Thread[threadCount];
+
+		for (int t = 0; t < threadCount; ++t) {
+			final int role = t % 4;
+
+			threads[t] = new Thread(() -> {
+				final ThreadLocalRandom rand = ThreadLocalRandom.current();
+
+				try {
+					while (!stop.get()) {
+						final int index = rand.nextInt(LENGTH);
+
+						if (role == 0) {
+							// closer
+							column.close();
+							Thread.yield();
+						} else if (role == 1) {
+							// creator - same instance for every caller until closed
+							final Region r = column.getOrCreate(index);
+
+							if (r.index != index) {
+								failed.set(true);
+							}
+						} else {
+							// lookup - only fully constructed regions of this index from a published generation
+							final Region r = column.regions.get(index);
+
+							if (r != null && (r.index != index || r.generation < 1 || r.generation > column.generation())) {
+								failed.set(true);
+							}
+
+							column.regions.forEach(x -> {
+								if (x.generation < 1) {
+									failed.set(true);
+								}
+							});
+						}
+					}
+				} catch (final Throwable e) {
+					failed.set(true);
+				}
+			});
+		}
+
+		for (final Thread thread : threads) {
+			thread.start();
+		}
+
+		Thread.sleep(500);
+		stop.set(true);
+
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+
+		column.close();
+		assert !failed.get();
+		assert column.created.get() > 0;
+		// every region created was closed exactly once
+		assert column.created.get() == column.closed.get();
+	}
+
+	/** Lookups with the previous monitor per column compared to lock-free lookups, with creation and close running. */
+	@Test
+	void benchmark() throws InterruptedException {
+		final int readers = Math.max(2, Runtime.getRuntime().availableProcessors() - 1);
+		final double locked = lookupsPerMs(readers, true);
+		final double lockFree = lookupsPerMs(readers, false);
+
+		System.out.println(String.format("Region lookup, %d reader threads: synchronized %.0f lookups/ms, lock-free %.0f lookups/ms",
+				readers, locked, lockFree));
+	}
+
+	static double lookupsPerMs(int readers, boolean synchronize) throws InterruptedException {
+		final Column column = new Column();
+		final AtomicBoolean stop = new AtomicBoolean();
+		final AtomicInteger lookups = new AtomicInteger();
+		final CountDownLatch start = new CountDownLatch(1);
+		final Thread[] threads = new Thread[readers + 1];
+
+		for (int index = 0; index < LENGTH; ++index) {
+			column.getOrCreate(index);
+		}
+
+		// writer churns creation and close like chunks loading and unloading
+		threads[0] = new Thread(() -> {
+			int index = 0;
+
+			while (!stop.get()) {
+				if ((++index & 1023) == 0) {
+					column.close();
+				}
+
+				column.getOrCreate(index & (LENGTH - 1));
+			}
+		});
+
+		for (int t = 1; t <= readers; ++t) {
+			threads[t] = new Thread(() -> {
+				try {
+					start.await();
+				} catch (final InterruptedException e) {
+					return;
+				}
+
+				int count = 0;
+
+				while (!stop.get()) {
+					for (int i = 0; i < 1024; ++i) {
+						if (synchronize) {
+							synchronized (column) {
+								column.regions.get(i & (LENGTH - 1));
+							}
+						} else {
+							column.regions.get(i & (LENGTH - 1));
+						}
+					}
+
+					count += 1024;
+				}
+
+				lookups.addAndGet(count);
+			});
+		}
+
+		for (final Thread thread : threads) {
+			thread.start();
+		}
+
+		final long startNanos = System.nanoTime();
+		start.countDown();
+		Thread.sleep(300);
+		stop.set(true);
+
+		for (final Thread thread : threads) {
+			thread.join();
+		}
+
+		return lookups.get() * 1e6 / (System.nanoTime() - startNanos);
+	}
+}